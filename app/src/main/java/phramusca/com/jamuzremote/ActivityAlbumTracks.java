@@ -4,7 +4,6 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
@@ -26,7 +25,7 @@ import okhttp3.OkHttpClient;
 
 public class ActivityAlbumTracks extends AppCompatActivity {
 
-    AdapterCursorAlbumTrack adapterCursorAlbumTrack;
+    AdapterPagedAlbumTrack adapterPagedAlbumTrack;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -46,11 +45,11 @@ public class ActivityAlbumTracks extends AppCompatActivity {
 
         Playlist playlist = new Playlist(idPath, true);
         playlist.setIdPath(idPath);
-        Cursor cursor = playlist.getTracks();
+        TrackPager pager = playlist.getTracksPager();
 
         Track track = null;
-        if (cursor != null && cursor.moveToPosition(0)) {
-            track = HelperLibrary.musicLibrary.cursorToTrack(cursor, false);
+        if (pager != null) {
+            track = pager.load(0);
         }
         if (track == null) {
             return;
@@ -64,12 +63,11 @@ public class ActivityAlbumTracks extends AppCompatActivity {
         button_download.setOnClickListener(v -> {
             Map<Track, Integer> newTracks = new HashMap<>();
             List<Track.Status> statuses = Arrays.asList(Track.Status.INFO, Track.Status.ERROR);
-            for (int i = 0; i < adapterCursorAlbumTrack.getItemCount(); i++) {
-                Track track1 = adapterCursorAlbumTrack.getTrack(i);
+            for (int i = 0; i < adapterPagedAlbumTrack.getItemCount(); i++) {
+                Track track1 = adapterPagedAlbumTrack.getTrack(i);
                 if (statuses.contains(track1.getStatus())) {
-                    track1.getTags(true);
                     track1.setStatus(Track.Status.NEW);
-                    adapterCursorAlbumTrack.updateStatus(track1.getStatus(), i, "");
+                    adapterPagedAlbumTrack.updateStatus(track1.getStatus(), i, "");
                     newTracks.put(track1, i);
                 }
             }
@@ -81,8 +79,8 @@ public class ActivityAlbumTracks extends AppCompatActivity {
 
         RecyclerView recyclerView = findViewById(R.id.list_album_tracks);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
-        adapterCursorAlbumTrack = new AdapterCursorAlbumTrack(this, cursor, searchQuery);
-        recyclerView.setAdapter(adapterCursorAlbumTrack);
+        adapterPagedAlbumTrack = new AdapterPagedAlbumTrack(pager, searchQuery);
+        recyclerView.setAdapter(adapterPagedAlbumTrack);
 
         title.setText(finalTrack.getAlbum());
 
@@ -92,7 +90,7 @@ public class ActivityAlbumTracks extends AppCompatActivity {
                 underlayButtons.add(new HelperSwipe.UnderlayButton(
                         ButtonInfo.PLAY,
                         pos -> {
-                            Track track = adapterCursorAlbumTrack.getTrack(pos);
+                            Track track = adapterPagedAlbumTrack.getTrack(pos);
                             insertAndSetResult(track, true, pos);
                         },
                         getApplicationContext()));
@@ -100,7 +98,7 @@ public class ActivityAlbumTracks extends AppCompatActivity {
                 underlayButtons.add(new HelperSwipe.UnderlayButton(
                         ButtonInfo.QUEUE,
                         pos -> {
-                            Track track = adapterCursorAlbumTrack.getTrack(pos);
+                            Track track = adapterPagedAlbumTrack.getTrack(pos);
                             insertAndSetResult(track, false, pos);
                         },
                         getApplicationContext()));
@@ -108,6 +106,14 @@ public class ActivityAlbumTracks extends AppCompatActivity {
         };
     }
 
+    @Override
+    protected void onDestroy() {
+        if (adapterPagedAlbumTrack != null) {
+            adapterPagedAlbumTrack.close();
+        }
+        super.onDestroy();
+    }
+
     private DownloadProcess processDownload;
 
     private void startDownloads(Map<Track, Integer> newTracks, String title) {
@@ -174,6 +180,6 @@ public class ActivityAlbumTracks extends AppCompatActivity {
     }
 
     private void updateStatus(Track track, String msg, int position) {
-        runOnUiThread(() -> adapterCursorAlbumTrack.updateStatus(track.getStatus(), position, msg));
+        runOnUiThread(() -> adapterPagedAlbumTrack.updateStatus(track.getStatus(), position, msg));
     }
 }
@@ -121,6 +121,7 @@ public class ActivityMain extends AppCompatActivity {
     private static final int SPEECH_REQUEST_CODE = 15489;
     private static final int LISTS_REQUEST_CODE = 60568;
     private static final int SETTINGS_REQUEST_CODE = 23548;
+    private static final int MAX_SEARCH_TRACKS = 100;
     private static PrettyTime prettyTime;
 
     // GUI elements
@@ -1313,6 +1314,9 @@ public class ActivityMain extends AppCompatActivity {
     protected void onPause() {
         super.onPause();
         Log.i(TAG, "ActivityMain onPause"); //NON-NLS
+        if (HelperLibrary.musicLibrary != null) {
+            HelperLibrary.musicLibrary.getWriteQueue().flushAsync();
+        }
         wasRemoteConnected = isRemoteConnected();
         stopRemote();
         LocalBroadcastManager.getInstance(this).unregisterReceiver(mMessageReceiver);
@@ -1478,7 +1482,14 @@ public class ActivityMain extends AppCompatActivity {
                                     ? "%" + arguments + "%" : arguments;
                             Playlist playlist = new Playlist(arguments, true);
                             playlist.setArtist(arguments);
-                            if (PlayQueue.queue.insert(playlist) > 0) {
+                            int nbInserted = PlayQueue.queue.insert(playlist);
+                            if (nbInserted <= 0 && keyWord.getCommand().equals(VoiceKeyWords.Command.PLAY_ARTIST)
+                                    && HelperLibrary.musicLibrary != null) {
+                                //Not found as spoken: search its words, whatever their case, accents and order
+                                nbInserted = PlayQueue.queue.insert(HelperLibrary.musicLibrary.searchTracks(
+                                        keyWord.getKeyword(), MusicLibraryDb.COL_TRACKS_ARTIST, MAX_SEARCH_TRACKS));
+                            }
+                            if (nbInserted > 0) {
                                 getMediaController().getTransportControls().skipToNext();
                                 msg = "";
                             }
@@ -1495,7 +1506,14 @@ public class ActivityMain extends AppCompatActivity {
                                     ? "%" + arguments + "%" : arguments;
                             Playlist playlist = new Playlist(arguments, true);
                             playlist.setAlbum(arguments);
-                            if (PlayQueue.queue.insert(playlist) > 0) {
+                            int nbInserted = PlayQueue.queue.insert(playlist);
+                            if (nbInserted <= 0 && keyWord.getCommand().equals(VoiceKeyWords.Command.PLAY_ALBUM)
+                                    && HelperLibrary.musicLibrary != null) {
+                                //Not found as spoken: search its words, whatever their case, accents and order
+                                nbInserted = PlayQueue.queue.insert(HelperLibrary.musicLibrary.searchTracks(
+                                        keyWord.getKeyword(), MusicLibraryDb.COL_TRACKS_ALBUM, MAX_SEARCH_TRACKS));
+                            }
+                            if (nbInserted > 0) {
                                 getMediaController().getTransportControls().skipToNext();
                                 msg = "";
                             }
@@ -2101,14 +2119,22 @@ public class ActivityMain extends AppCompatActivity {
 
     private void refreshLocalPlaylistSpinner(final boolean refreshAll) {
         if (localSelectedPlaylist != null) {
+            //Counts from cache, then only those that changed are read again in background
+            final List<Playlist> stalePlaylists = new ArrayList<>();
+            for (Playlist playlist : refreshAll ? localPlaylists.values()
+                    : Collections.singletonList(localSelectedPlaylist)) {
+                if (!playlist.getNbFilesCached()) {
+                    stalePlaylists.add(playlist);
+                }
+            }
+            runOnUiThread(() -> playListArrayAdapter.notifyDataSetChanged());
+            if (stalePlaylists.isEmpty()) {
+                return;
+            }
             new Thread() {
                 public void run() {
-                    if (refreshAll) {
-                        for (Playlist playlist : localPlaylists.values()) {
-                            playlist.getNbFiles();
-                        }
-                    } else {
-                        localSelectedPlaylist.getNbFiles();
+                    for (Playlist playlist : stalePlaylists) {
+                        playlist.getNbFiles();
                     }
                     runOnUiThread(() -> playListArrayAdapter.notifyDataSetChanged());
                 }
@@ -89,6 +89,12 @@ public class ActivitySettings extends AppCompatActivity {
         );
         displayServer.setChecked(preferences.getBoolean("displayServer", true));
 
+        CheckBox forceFullMerge = findViewById(R.id.settingsCheckBoxForceFullMerge);
+        forceFullMerge.setOnCheckedChangeListener(
+                (buttonView, isChecked) -> setConfig("forceFullMerge", isChecked)
+        );
+        forceFullMerge.setChecked(preferences.getBoolean("forceFullMerge", false));
+
         CheckBox displayMediaStore = findViewById(R.id.settingsCheckBoxDisplayMediaStore);
         displayMediaStore.setOnCheckedChangeListener(
                 (buttonView, isChecked) ->  {
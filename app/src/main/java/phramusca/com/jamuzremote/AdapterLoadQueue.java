@@ -25,6 +25,7 @@ public abstract class AdapterLoadQueue extends AdapterLoad {
     AdapterLoadQueue(Context context, List<Track> tracks, int positionPlaying, RecyclerView recyclerView) {
         super(context, recyclerView);
         mContext = context;
+        readTags(tracks);
         trackList = new TrackList(tracks, positionPlaying);
         complete = false;
         completeTop = false;
@@ -66,18 +67,29 @@ public abstract class AdapterLoadQueue extends AdapterLoad {
         });
     }
 
+    /**
+     * Reads tags of tracks in bulk, so that binding a row does not query them
+     */
+    private static void readTags(List<Track> tracks) {
+        if (HelperLibrary.musicLibrary != null) {
+            HelperLibrary.musicLibrary.readTags(tracks, false);
+        }
+    }
+
     abstract List<Track> getMore();
 
     abstract List<Track> getTop();
 
     private boolean addMore() {
         List<Track> newTracks = getMore();
+        readTags(newTracks);
         this.trackList.addBottom(newTracks);
         return newTracks.size() > 0;
     }
 
     private int addTop() {
         List<Track> newTracks = getTop();
+        readTags(newTracks);
         this.trackList.addTop(newTracks);
         return newTracks.size();
     }
@@ -97,7 +109,6 @@ public abstract class AdapterLoadQueue extends AdapterLoad {
         if (holder instanceof UserViewHolder) {
             UserViewHolder userViewHolder = (UserViewHolder) holder;
             Track track = trackList.get(position);
-            track.getTags(false);
             setView(position, userViewHolder,
                     track.getTitle(),
                     track.getArtist(),
@@ -1,30 +1,44 @@
 package phramusca.com.jamuzremote;
 
-import android.content.Context;
-import android.database.Cursor;
 import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
-import androidx.core.content.ContextCompat;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
 
 import org.jetbrains.annotations.NotNull;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class AdapterCursorAlbumTrack extends AdapterCursor<AdapterLoad.UserViewHolder> {
+/**
+ * Tracks of a playlist, read by pages (TrackPager) in background as they get close to be displayed:
+ * the page of a bound track, and the next page once half of it is bound.
+ */
+public class AdapterPagedAlbumTrack extends RecyclerView.Adapter<AdapterLoad.UserViewHolder> {
 
     private ViewGroup parent;
 
-    // Trick to get track new status after download as cursor is not updated
+    // Trick to get track new status after download as pages are not updated
     private final Map<Integer, Track.Status> newStatuses;
     private final String searchQuery;
-
-    public AdapterCursorAlbumTrack(Context context, Cursor cursor, String searchQuery) {
-        super(cursor);
+    private final TrackPager pager;
+    private final Set<Integer> loadingPages = new HashSet<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "Thread.AdapterPagedAlbumTrack")); //NON-NLS
+
+    public AdapterPagedAlbumTrack(TrackPager pager, String searchQuery) {
+        this.pager = pager;
         this.searchQuery = searchQuery;
         newStatuses = new HashMap<>();
     }
@@ -37,14 +51,18 @@ public class AdapterCursorAlbumTrack extends AdapterCursor<AdapterLoad.UserViewH
         return new AdapterLoad.UserViewHolder(itemView);
     }
 
+    @Override
+    public int getItemCount() {
+        return pager.getCount();
+    }
+
+    /**
+     * @return track, its page being read if not loaded yet
+     */
     public Track getTrack(int position) {
-        Track track = null;
-        Cursor cursor = getCursor();
-        if (cursor.moveToPosition(position)) {
-            track = HelperLibrary.musicLibrary.cursorToTrack(cursor, false);
-            if(newStatuses.containsKey(position)) {
-                track.setStatus(newStatuses.get(position));
-            }
+        Track track = pager.load(position);
+        if (track != null && newStatuses.containsKey(position)) {
+            track.setStatus(newStatuses.get(position));
         }
         return track;
     }
@@ -57,10 +75,47 @@ public class AdapterCursorAlbumTrack extends AdapterCursor<AdapterLoad.UserViewH
         }
     }
 
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private void loadPages(int position) {
+        int page = pager.getPage(position);
+        loadPage(page);
+        if (position % TrackPager.PAGE_SIZE >= TrackPager.PAGE_SIZE / 2) {
+            loadPage(page + 1);
+        }
+    }
+
+    private void loadPage(int page) {
+        if (pager.isLoaded(page) || !loadingPages.add(page)) {
+            return;
+        }
+        executor.execute(() -> {
+            pager.loadPage(page);
+            handler.post(() -> {
+                loadingPages.remove(page);
+                int start = page * TrackPager.PAGE_SIZE;
+                if (start < getItemCount()) {
+                    notifyItemRangeChanged(start, Math.min(TrackPager.PAGE_SIZE, getItemCount() - start));
+                }
+            });
+        });
+    }
+
     @Override
-    public void onBindViewHolder(AdapterLoad.UserViewHolder viewHolder, Cursor cursor, int position) {
-        Track track = HelperLibrary.musicLibrary.cursorToTrack(cursor, false);
-        track.getTags(false);
+    public void onBindViewHolder(@NonNull AdapterLoad.UserViewHolder viewHolder, int position) {
+        loadPages(position);
+        Track track = pager.get(position);
+        if (track == null) {
+            //Page is being loaded
+            viewHolder.item_line1.setText("");
+            viewHolder.item_line2.setText("");
+            viewHolder.item_line3.setText("");
+            viewHolder.item_line4.setText("");
+            viewHolder.imageViewCover.setImageBitmap(HelperBitmap.getEmptyThumb(parent.getContext()));
+            return;
+        }
 
         if(newStatuses.containsKey(position)) {
             track.setStatus(newStatuses.get(position));
@@ -0,0 +1,167 @@
+package phramusca.com.jamuzremote;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded producer/consumer pipeline: a background thread produces batches 0 to count-1 in order
+ * (fetching and decoding sync batches), at most lookahead batches ahead of the consumer
+ * (reconciling and writing them), so network and database work overlap.
+ * Per-stage timings are kept to check that overlap.
+ * To be consumed by a single thread, then closed.
+ */
+class BatchPrefetcher<T> implements AutoCloseable {
+
+    interface Producer<T> {
+        /**
+         * @param index index of batch, from 0 to count-1
+         * @return batch, not null
+         */
+        T produce(int index) throws Exception;
+    }
+
+    private static final class Item<T> {
+        final T batch;
+        final Exception error;
+
+        Item(T batch, Exception error) {
+            this.batch = batch;
+            this.error = error;
+        }
+    }
+
+    private final Item<T> end = new Item<>(null, null);
+    private final BlockingQueue<Item<T>> queue;
+    private final Thread thread;
+    private final Runnable onClose;
+    private volatile boolean closed = false;
+
+    private volatile long produceTime = 0;
+    private volatile long produceWaitTime = 0;
+    private long consumeWaitTime = 0;
+    private int consumed = 0;
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * Starts producing
+     *
+     * @param name      name of producer thread
+     * @param count     number of batches
+     * @param lookahead max number of batches produced but not consumed yet (at least 1)
+     * @param producer  produces batches, in background
+     */
+    BatchPrefetcher(String name, int count, int lookahead, Producer<T> producer) {
+        this(name, count, lookahead, producer, null);
+    }
+
+    /**
+     * Starts producing
+     *
+     * @param name      name of producer thread
+     * @param count     number of batches
+     * @param lookahead max number of batches produced but not consumed yet (at least 1)
+     * @param producer  produces batches, in background
+     * @param onClose   called by close(), after producer thread is interrupted, to abort a production
+     *                  that interrupt does not stop (such as a blocking network read). Can be null.
+     */
+    BatchPrefetcher(String name, int count, int lookahead, Producer<T> producer, Runnable onClose) {
+        this.onClose = onClose;
+        queue = new ArrayBlockingQueue<>(Math.max(lookahead, 1));
+        thread = new Thread(() -> {
+            try {
+                for (int i = 0; i < count && !closed; i++) {
+                    long start = System.currentTimeMillis();
+                    Item<T> item;
+                    try {
+                        item = new Item<>(producer.produce(i), null);
+                    } catch (Exception ex) {
+                        item = new Item<>(null, ex);
+                    }
+                    long produced = System.currentTimeMillis();
+                    produceTime += produced - start;
+                    if (!put(item)) {
+                        return;
+                    }
+                    produceWaitTime += System.currentTimeMillis() - produced;
+                    if (item.error != null) {
+                        return;
+                    }
+                }
+                put(end);
+            } catch (InterruptedException ignored) {
+                //Closed
+            }
+        }, "Thread.BatchPrefetcher." + name); //NON-NLS
+        thread.start();
+    }
+
+    /**
+     * Waits for room in queue, unless closed
+     *
+     * @return false if closed
+     */
+    private boolean put(Item<T> item) throws InterruptedException {
+        while (!closed) {
+            if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits for next batch
+     *
+     * @return next batch, null when all were consumed
+     * @throws IOException          error producing the batch (wrapped if not an IOException)
+     * @throws InterruptedException producer was interrupted, or aborted
+     */
+    T take() throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        Item<T> item = queue.take();
+        consumeWaitTime += System.currentTimeMillis() - start;
+        if (item == end) {
+            queue.offer(end);
+            return null;
+        }
+        if (item.error instanceof IOException) {
+            throw (IOException) item.error;
+        } else if (item.error instanceof InterruptedException) {
+            throw (InterruptedException) item.error;
+        } else if (item.error != null) {
+            throw new IOException(item.error);
+        }
+        consumed++;
+        return item.batch;
+    }
+
+    /**
+     * Stops producer, if not done yet, and waits for it
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        thread.interrupt();
+        try {
+            if (onClose != null) {
+                onClose.run();
+            }
+        } finally {
+            queue.clear();
+            thread.join();
+        }
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH,
+                "BatchPrefetcher: %d batches in %d ms. Producer: %d ms (+%d ms waiting for room). Consumer waited %d ms", //NON-NLS
+                consumed, System.currentTimeMillis() - startTime, produceTime, produceWaitTime, consumeWaitTime);
+    }
+}
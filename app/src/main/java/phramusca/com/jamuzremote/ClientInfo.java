@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.Objects;
 
+import okhttp3.Call;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -68,15 +69,39 @@ public class ClientInfo implements Serializable {
         return getBody(request, client).string();
     }
 
-    private ResponseBody getBody(Request request, OkHttpClient client) throws IOException, ServiceSync.ServerException {
-        Response response = client.newCall(request).execute();
+    public ResponseBody getBody(Request request, OkHttpClient client) throws IOException, ServiceSync.ServerException {
+        return getResponse(request, client).body();
+    }
+
+    /**
+     * @param call call to execute, that can be cancelled from another thread, even while its body is read
+     */
+    public ResponseBody getBody(Call call) throws IOException, ServiceSync.ServerException {
+        return getResponse(call).body();
+    }
+
+    /**
+     * @return successful response, to be closed
+     * @throws ServiceSync.ServerException if not successful
+     */
+    public Response getResponse(Request request, OkHttpClient client) throws IOException, ServiceSync.ServerException {
+        return getResponse(client.newCall(request));
+    }
+
+    /**
+     * @return successful response, to be closed
+     * @throws ServiceSync.ServerException if not successful
+     */
+    public Response getResponse(Call call) throws IOException, ServiceSync.ServerException {
+        Request request = call.request();
+        Response response = call.execute();
         if (!response.isSuccessful()) {
             if (response.code() == 301) {
                 throw new ServiceSync.ServerException(request.header("api-version") + " not supported. " + Objects.requireNonNull(response.body()).string()); //NON-NLS
             }
-            throw new ServiceSync.ServerException(response.code() + ": " + response.message());
+            throw new ServiceSync.ServerException(response.code(), response.code() + ": " + response.message());
         }
-        return response.body();
+        return response;
     }
 
     public String getAddress() {
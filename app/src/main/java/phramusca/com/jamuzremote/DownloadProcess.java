@@ -102,9 +102,11 @@ public class DownloadProcess extends ProcessAbstract {
         if(wifiLock!=null && !wifiLock.isHeld()) {
             wifiLock.acquire();
         }
+        if (HelperLibrary.musicLibrary != null) {
+            HelperLibrary.musicLibrary.readTags(newTracks.keySet(), true);
+        }
         for (Map.Entry<Track, Integer> entry : newTracks.entrySet()) {
             Track track = entry.getKey();
-            track.getTags(true);
             DownloadTask downloadTask = new DownloadTask(track, entry.getValue(), this::notifyBarProgress, clientInfo, clientDownload, wifiLock);
             downloadServices.add(downloadTask);
             pool.submit(downloadTask);
@@ -70,7 +70,7 @@ public class HelperDateTime {
      * @return to SQL format
      */
     public static String formatUTCtoSqlUTC(Date date) {
-        return formatUTC(date, DateTimeFormat.SQL, false);
+        return formatSqlUtc(date.getTime());
     }
 
     /**
@@ -93,7 +93,14 @@ public class HelperDateTime {
      * @return current UTC dateTime in SQL format.
      */
     public static String getCurrentUtcSql() {
-        return formatUTC(new Date(), DateTimeFormat.SQL, false);
+        return formatSqlUtc(System.currentTimeMillis());
+    }
+
+    private static String formatSqlUtc(long epochMillis) {
+        if (SqlDateCodec.canFormat(epochMillis)) {
+            return SqlDateCodec.format(epochMillis);
+        }
+        return formatUTC(new Date(epochMillis), DateTimeFormat.SQL.getPattern(), false);
     }
 
     /**
@@ -120,6 +127,10 @@ public class HelperDateTime {
      * @return UTC dateTime
      */
     public static Date parseSqlUtc(String date) {
+        long epochMillis = SqlDateCodec.parse(date);
+        if (epochMillis != SqlDateCodec.INVALID) {
+            return new Date(epochMillis);
+        }
         return parseUTC(date, DateTimeFormat.SQL);
     }
 }
@@ -0,0 +1,103 @@
+package phramusca.com.jamuzremote;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Locks of MusicLibrary, and its version:
+ * <ul>
+ * <li>connections lock: held exclusively to open or close connections, shared by all other accesses;</li>
+ * <li>writer lock: one writer at a time, taken after a shared connections lock.</li>
+ * </ul>
+ * Locks are reentrant. When the outermost writer lock is released after changes, listener is called
+ * and version is incremented, once: a batch of nested changes is handled once, and readers only see
+ * the version of committed changes.
+ */
+class LibraryLock {
+
+    interface Listener {
+        /**
+         * Called when the outermost writer lock is released after changes, with writer lock still held
+         *
+         * @param version version of the changes, set once listener returns
+         */
+        void onChanged(long version);
+    }
+
+    private final ReentrantReadWriteLock connectionsLock = new ReentrantReadWriteLock();
+    private final ReentrantLock writerLock = new ReentrantLock();
+    private final AtomicLong version = new AtomicLong();
+    private final Listener listener;
+    /**
+     * Changes made since outermost writer lock was taken. Guarded by writerLock
+     */
+    private boolean changed = false;
+
+    LibraryLock(Listener listener) {
+        this.listener = listener;
+    }
+
+    void lockConnections() {
+        connectionsLock.writeLock().lock();
+    }
+
+    void unlockConnections() {
+        connectionsLock.writeLock().unlock();
+    }
+
+    void lockShared() {
+        connectionsLock.readLock().lock();
+    }
+
+    void unlockShared() {
+        connectionsLock.readLock().unlock();
+    }
+
+    void lockWriter() {
+        connectionsLock.readLock().lock();
+        writerLock.lock();
+    }
+
+    void unlockWriter() {
+        try {
+            if (changed && writerLock.getHoldCount() == 1) {
+                changed = false;
+                try {
+                    listener.onChanged(version.get() + 1);
+                } finally {
+                    version.incrementAndGet();
+                }
+            }
+        } finally {
+            writerLock.unlock();
+            connectionsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flags a change, versioned when outermost writer lock is released. To be called with writer lock held
+     */
+    void setChanged() {
+        changed = true;
+    }
+
+    /**
+     * Unlocks writer after a change (once committed, so readers of the new version see it)
+     */
+    void unlockWriterChanged() {
+        setChanged();
+        unlockWriter();
+    }
+
+    /**
+     * @return library version, incremented once per outermost writer lock with changes
+     */
+    long getVersion() {
+        return version.get();
+    }
+
+    boolean isWriterHeldByCurrentThread() {
+        return writerLock.isHeldByCurrentThread();
+    }
+}
@@ -0,0 +1,471 @@
+package phramusca.com.jamuzremote;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory columnar copy of the library columns used by playlist filters:
+ * one primitive array per column, one bitset of rows per tag. Rows are sorted by idFileRemote.
+ * Playlist counts and random samples are evaluated on it, without SQLite.
+ * <p>
+ * Loaded at once by MusicLibrary, for a library version. Changes of tracks (TrackWriteQueue flushes,
+ * sync batches, scan, status updates and deletions) are applied to it; other changes make it stale,
+ * and it is loaded again.
+ * Thread-safe.
+ */
+final class LibrarySnapshot {
+
+    private static final Track.Status[] STATUSES = Track.Status.values();
+
+    private long version;
+    private int size = 0;
+    private int[] ids;
+    private byte[] statuses;
+    private byte[] ratings;
+    private int[] genres;
+    private long[] lastPlayed;
+    private int[] lengths;
+    private int[] sizes;
+    private final List<String> genreValues = new ArrayList<>();
+    private final Map<String, Integer> genreIds = new HashMap<>();
+    private final Map<String, BitSet> tags = new HashMap<>();
+    private final BitSet tagged = new BitSet();
+
+    /**
+     * Committed change of library, applied to snapshot rather than loading it again
+     */
+    interface Change {
+        /**
+         * @return false if snapshot cannot follow the change, and is to be loaded again
+         */
+        boolean applyTo(LibrarySnapshot snapshot);
+    }
+
+    /**
+     * @param capacity number of tracks
+     * @param version  library version the snapshot is read at
+     */
+    LibrarySnapshot(int capacity, long version) {
+        this.version = version;
+        ids = new int[capacity];
+        statuses = new byte[capacity];
+        ratings = new byte[capacity];
+        genres = new int[capacity];
+        lastPlayed = new long[capacity];
+        lengths = new int[capacity];
+        sizes = new int[capacity];
+    }
+
+    /**
+     * Playlist filter, as evaluated on a snapshot. Built by PlaylistQuery.Builder
+     */
+    static final class Filter {
+        private final List<String> statuses;
+        private final String ratingOperator;
+        private final int rating;
+        private final long playedBefore;
+        private final List<String> genresIncluded;
+        private final List<String> genresExcluded;
+        private final List<String> tagsIncluded;
+        private final List<String> tagsExcluded;
+        private final TriStateButton.STATE unTagged;
+        private final List<Integer> excluded;
+
+        Filter(List<String> statuses, String ratingOperator, int rating, long playedBefore,
+               List<String> genresIncluded, List<String> genresExcluded,
+               List<String> tagsIncluded, List<String> tagsExcluded,
+               TriStateButton.STATE unTagged, List<Integer> excluded) {
+            this.statuses = new ArrayList<>(statuses);
+            this.ratingOperator = ratingOperator;
+            this.rating = rating;
+            this.playedBefore = playedBefore;
+            this.genresIncluded = new ArrayList<>(genresIncluded);
+            this.genresExcluded = new ArrayList<>(genresExcluded);
+            this.tagsIncluded = new ArrayList<>(tagsIncluded);
+            this.tagsExcluded = new ArrayList<>(tagsExcluded);
+            this.unTagged = unTagged;
+            this.excluded = new ArrayList<>(excluded);
+        }
+    }
+
+    /**
+     * @param idFileRemote to be greater than the previous one
+     */
+    synchronized void addTrack(int idFileRemote, String status, int rating, String genre,
+                               long lastPlayed, int length, long size) {
+        if (this.size > 0 && idFileRemote <= ids[this.size - 1]) {
+            throw new IllegalArgumentException("Tracks are to be added by idFileRemote: " + idFileRemote); //NON-NLS
+        }
+        if (this.size >= ids.length) {
+            grow();
+        }
+        int row = this.size++;
+        ids[row] = idFileRemote;
+        setColumns(row, status, rating, genre, lastPlayed, length, size);
+    }
+
+    private void setColumns(int row, String status, int rating, String genre, long lastPlayed, int length, long size) {
+        statuses[row] = getStatus(status);
+        ratings[row] = (byte) rating;
+        genres[row] = getGenreId(genre);
+        this.lastPlayed[row] = lastPlayed;
+        lengths[row] = length;
+        sizes[row] = (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Inserts or updates a track, and replaces its tags
+     *
+     * @return false if track is new and not after the last one
+     */
+    synchronized boolean putTrack(int idFileRemote, String status, int rating, String genre,
+                                  long lastPlayed, int length, long size, List<String> tags) {
+        int row = getRow(idFileRemote);
+        if (row >= 0) {
+            setColumns(row, status, rating, genre, lastPlayed, length, size);
+        } else if (this.size > 0 && idFileRemote <= ids[this.size - 1]) {
+            return false;
+        } else {
+            addTrack(idFileRemote, status, rating, genre, lastPlayed, length, size);
+            row = this.size - 1;
+        }
+        setTags(row, tags);
+        return true;
+    }
+
+    /**
+     * Updates statistics of a track, and replaces its tags
+     *
+     * @return false if track is not in snapshot
+     */
+    synchronized boolean setStats(int idFileRemote, int rating, String genre, long lastPlayed, List<String> tags) {
+        int row = getRow(idFileRemote);
+        if (row < 0) {
+            return false;
+        }
+        ratings[row] = (byte) rating;
+        genres[row] = getGenreId(genre);
+        this.lastPlayed[row] = lastPlayed;
+        setTags(row, tags);
+        return true;
+    }
+
+    /**
+     * @return false if track is not in snapshot
+     */
+    synchronized boolean setStatus(int idFileRemote, String status) {
+        int row = getRow(idFileRemote);
+        if (row < 0) {
+            return false;
+        }
+        statuses[row] = getStatus(status);
+        return true;
+    }
+
+    /**
+     * Removes a track, if in snapshot
+     */
+    synchronized void removeTrack(int idFileRemote) {
+        int row = getRow(idFileRemote);
+        if (row < 0) {
+            return;
+        }
+        int moved = size - row - 1;
+        System.arraycopy(ids, row + 1, ids, row, moved);
+        System.arraycopy(statuses, row + 1, statuses, row, moved);
+        System.arraycopy(ratings, row + 1, ratings, row, moved);
+        System.arraycopy(genres, row + 1, genres, row, moved);
+        System.arraycopy(lastPlayed, row + 1, lastPlayed, row, moved);
+        System.arraycopy(lengths, row + 1, lengths, row, moved);
+        System.arraycopy(sizes, row + 1, sizes, row, moved);
+        for (BitSet tagRows : tags.values()) {
+            removeRow(tagRows, row);
+        }
+        removeRow(tagged, row);
+        size--;
+    }
+
+    private void removeRow(BitSet rows, int row) {
+        BitSet after = rows.get(row + 1, size);
+        rows.clear(row, size);
+        for (int i = after.nextSetBit(0); i >= 0; i = after.nextSetBit(i + 1)) {
+            rows.set(row + i);
+        }
+    }
+
+    /**
+     * @return false if track is not in snapshot
+     */
+    synchronized boolean addTag(int idFileRemote, String tag) {
+        int row = getRow(idFileRemote);
+        if (row < 0) {
+            return false;
+        }
+        setTag(row, tag, true);
+        return true;
+    }
+
+    synchronized long getVersion() {
+        return version;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Applies committed changes, if snapshot is at the library version they were applied to.
+     *
+     * @param changes       changes, committed
+     * @param versionBefore library version before the changes
+     * @param versionAfter  library version after the changes
+     * @return true if snapshot is now at versionAfter
+     */
+    synchronized boolean apply(Collection<? extends Change> changes, long versionBefore, long versionAfter) {
+        if (version != versionBefore) {
+            return false;
+        }
+        for (Change change : changes) {
+            if (!change.applyTo(this)) {
+                return false;
+            }
+        }
+        version = versionAfter;
+        return true;
+    }
+
+    /**
+     * Applies changes of a TrackWriteQueue flush
+     *
+     * @return false if track is not in snapshot
+     */
+    synchronized boolean apply(TrackWriteQueue.TrackWrite write) {
+        int row = getRow(write.idFileRemote);
+        if (row < 0) {
+            return false;
+        }
+        if (write.rating != null) {
+            ratings[row] = (byte) (double) write.rating;
+        }
+        if (write.genre != null) {
+            genres[row] = getGenreId(write.genre);
+        }
+        if (write.playCounter != null) {
+            lastPlayed[row] = write.lastPlayed;
+        }
+        for (Map.Entry<String, Boolean> tag : write.tags.entrySet()) {
+            setTag(row, tag.getKey(), tag.getValue());
+        }
+        return true;
+    }
+
+    /**
+     * @return number of tracks, total size and total length, as MusicLibrary.getNb()
+     */
+    synchronized Triplet<Integer, Long, Long> count(Filter filter) {
+        BitSet rows = match(filter);
+        long sizeTotal = 0;
+        long lengthTotal = 0;
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            sizeTotal += sizes[row];
+            lengthTotal += lengths[row];
+        }
+        return new Triplet<>(rows.cardinality(), sizeTotal, lengthTotal);
+    }
+
+    /**
+     * @return idFileRemote of matching tracks
+     */
+    synchronized int[] getIds(Filter filter) {
+        BitSet rows = match(filter);
+        int[] matches = new int[rows.cardinality()];
+        int i = 0;
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            matches[i++] = ids[row];
+        }
+        return matches;
+    }
+
+    /**
+     * Same semantics as PlaylistQuery SQL
+     */
+    private BitSet match(Filter filter) {
+        BitSet rows = new BitSet(size);
+        if (filter.statuses.isEmpty()) {
+            return rows;
+        }
+        rows.set(0, size);
+        //Tags
+        BitSet unTaggedRows = new BitSet(size);
+        unTaggedRows.set(0, size);
+        unTaggedRows.andNot(tagged);
+        if (filter.unTagged.equals(TriStateButton.STATE.TRUE)) {
+            rows.and(unTaggedRows);
+        } else {
+            for (String tag : filter.tagsIncluded) {
+                BitSet tagRows = tags.get(tag);
+                if (tagRows == null) {
+                    rows.clear();
+                    break;
+                }
+                rows.and(tagRows);
+            }
+            for (String tag : filter.tagsExcluded) {
+                BitSet tagRows = tags.get(tag);
+                if (tagRows != null) {
+                    rows.andNot(tagRows);
+                }
+            }
+            if (filter.unTagged.equals(TriStateButton.STATE.ANY)) {
+                rows.or(unTaggedRows);
+            } else {
+                rows.and(tagged);
+            }
+        }
+        //Excluded tracks
+        for (int idFileRemote : filter.excluded) {
+            int row = getRow(idFileRemote);
+            if (row >= 0) {
+                rows.clear(row);
+            }
+        }
+        //Columns
+        boolean[] statusMatch = new boolean[STATUSES.length];
+        for (String status : filter.statuses) {
+            int index = getStatus(status);
+            if (index >= 0) {
+                statusMatch[index] = true;
+            }
+        }
+        boolean[] genreIncluded = getGenres(filter.genresIncluded);
+        boolean[] genreExcluded = getGenres(filter.genresExcluded);
+        boolean checkGenreIncluded = !filter.genresIncluded.isEmpty();
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            if (statuses[row] < 0 || !statusMatch[statuses[row]]
+                    || !matchRating(ratings[row], filter.ratingOperator, filter.rating)
+                    || (filter.playedBefore >= 0 && lastPlayed[row] >= filter.playedBefore)
+                    || (checkGenreIncluded && !genreIncluded[genres[row]])
+                    || genreExcluded[genres[row]]) {
+                rows.clear(row);
+            }
+        }
+        return rows;
+    }
+
+    private static boolean matchRating(int rating, String operator, int value) {
+        if (operator.equals(Playlist.Operator.IS.toString())) {
+            return rating == value;
+        } else if (operator.equals(Playlist.Operator.LESSTHAN.toString())) {
+            return rating <= value;
+        }
+        return rating >= value;
+    }
+
+    private boolean[] getGenres(List<String> values) {
+        boolean[] match = new boolean[genreValues.size()];
+        for (String value : values) {
+            Integer genreId = genreIds.get(value);
+            if (genreId != null) {
+                match[genreId] = true;
+            }
+        }
+        return match;
+    }
+
+    private int getRow(int idFileRemote) {
+        int row = Arrays.binarySearch(ids, 0, size, idFileRemote);
+        return row >= 0 ? row : -1;
+    }
+
+    private void setTag(int row, String tag, boolean value) {
+        BitSet tagRows = tags.get(tag);
+        if (tagRows == null) {
+            if (!value) {
+                return;
+            }
+            tagRows = new BitSet(size);
+            tags.put(tag, tagRows);
+        }
+        tagRows.set(row, value);
+        if (value) {
+            tagged.set(row);
+        } else {
+            boolean hasTags = false;
+            for (BitSet otherRows : tags.values()) {
+                if (otherRows.get(row)) {
+                    hasTags = true;
+                    break;
+                }
+            }
+            tagged.set(row, hasTags);
+        }
+    }
+
+    private void setTags(int row, List<String> values) {
+        for (BitSet tagRows : tags.values()) {
+            tagRows.clear(row);
+        }
+        tagged.clear(row);
+        for (String tag : values) {
+            setTag(row, tag, true);
+        }
+    }
+
+    private int getGenreId(String genre) {
+        Integer genreId = genreIds.get(genre);
+        if (genreId == null) {
+            genreId = genreValues.size();
+            genreValues.add(genre);
+            genreIds.put(genre, genreId);
+        }
+        return genreId;
+    }
+
+    private static byte getStatus(String status) {
+        for (Track.Status value : STATUSES) {
+            if (value.name().equals(status)) {
+                return (byte) value.ordinal();
+            }
+        }
+        return -1;
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, ids.length * 2);
+        ids = Arrays.copyOf(ids, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        ratings = Arrays.copyOf(ratings, capacity);
+        genres = Arrays.copyOf(genres, capacity);
+        lastPlayed = Arrays.copyOf(lastPlayed, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+    }
+
+    /**
+     * @return approximate heap used by columns and bitsets, in bytes (genre strings excluded)
+     */
+    synchronized long getMemorySize() {
+        long bytes = (long) ids.length * (4 + 1 + 1 + 4 + 8 + 4 + 4);
+        bytes += tagged.size() / 8;
+        for (BitSet tagRows : tags.values()) {
+            bytes += tagRows.size() / 8;
+        }
+        return bytes;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ENGLISH,
+                "LibrarySnapshot: version %d, %d tracks, %d genres, %d tags, %d KiB", //NON-NLS
+                version, size, genreValues.size(), tags.size(), getMemorySize() / 1024);
+    }
+}
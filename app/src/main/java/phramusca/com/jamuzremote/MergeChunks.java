@@ -0,0 +1,100 @@
+package phramusca.com.jamuzremote;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Files to merge with server, posted chunk by chunk: files changed locally since last merge (dirty),
+ * and for a full merge, every file after the last merged one (so that an interrupted full merge resumes
+ * after its last merged chunk).
+ * Files are sorted by idFileRemote, for a chunk to be merged after all files before it.
+ */
+class MergeChunks {
+
+    /**
+     * mergedUpTo of a merge of dirty files only
+     */
+    static final int DIRTY_ONLY = Integer.MAX_VALUE;
+    /**
+     * mergedUpTo of a full merge, from start
+     */
+    static final int FULL = -1;
+
+    private final List<Track> tracks = new ArrayList<>();
+    private final Map<Integer, Long> dirty;
+    private final int chunkSize;
+
+    /**
+     * @param tracks     files that can be merged
+     * @param dirty      dirty counter by idFileRemote, as read before merge
+     * @param mergedUpTo idFileRemote of last merged file of an interrupted full merge, FULL to start one,
+     *                   DIRTY_ONLY to merge dirty files only
+     * @param chunkSize  max number of files in a chunk
+     */
+    MergeChunks(Collection<Track> tracks, Map<Integer, Long> dirty, int mergedUpTo, int chunkSize) {
+        this.dirty = dirty;
+        this.chunkSize = chunkSize;
+        for (Track track : tracks) {
+            if (dirty.containsKey(track.getIdFileRemote()) || track.getIdFileRemote() > mergedUpTo) {
+                this.tracks.add(track);
+            }
+        }
+        Collections.sort(this.tracks, (o1, o2) -> Integer.compare(o1.getIdFileRemote(), o2.getIdFileRemote()));
+    }
+
+    /**
+     * @return number of files to merge
+     */
+    int size() {
+        return tracks.size();
+    }
+
+    int getNbChunks() {
+        return (tracks.size() + chunkSize - 1) / chunkSize;
+    }
+
+    List<Track> getChunk(int index) {
+        return tracks.subList(index * chunkSize, Math.min((index + 1) * chunkSize, tracks.size()));
+    }
+
+    /**
+     * @return dirty counter of file, as read before merge (0 if not dirty)
+     */
+    long getDirty(int idFileRemote) {
+        Long counter = dirty.get(idFileRemote);
+        return counter == null ? 0 : counter;
+    }
+
+    /**
+     * @return dirty counter by idFileRemote of dirty files of chunk, to be cleared once chunk is merged
+     */
+    Map<Integer, Long> getMerged(int index) {
+        Map<Integer, Long> merged = new HashMap<>();
+        for (Track track : getChunk(index)) {
+            Long counter = dirty.get(track.getIdFileRemote());
+            if (counter != null) {
+                merged.put(track.getIdFileRemote(), counter);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return mergedUpTo to resume a full merge interrupted once chunk is merged
+     */
+    int getMergedUpTo(int index) {
+        List<Track> chunk = getChunk(index);
+        return chunk.get(chunk.size() - 1).getIdFileRemote();
+    }
+
+    /**
+     * @return number of files merged once chunk is merged, for progress
+     */
+    int getNbMerged(int index) {
+        return Math.min((index + 1) * chunkSize, tracks.size());
+    }
+}
@@ -1,5 +1,6 @@
 package phramusca.com.jamuzremote;
 
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_ALBUM_NB_TRACKS;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ADDED_DATE;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ALBUM;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ALBUM_ARTIST;
@@ -11,6 +12,7 @@ import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_CHECKED_FLAG;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_COMMENT;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_COPYRIGHT;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_COVER_HASH;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_DIRTY;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_DISC_NO;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_DISC_TOTAL;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_FORMAT;
@@ -38,19 +40,20 @@ import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_TRACK_GAIN;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_TRACK_NO;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_TRACK_TOTAL;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_YEAR;
+import static phramusca.com.jamuzremote.MusicLibraryDb.TABLE_ALBUM;
 import static phramusca.com.jamuzremote.MusicLibraryDb.TABLE_GENRE;
 import static phramusca.com.jamuzremote.MusicLibraryDb.TABLE_TAG;
 import static phramusca.com.jamuzremote.MusicLibraryDb.TABLE_TAG_FILE;
 import static phramusca.com.jamuzremote.MusicLibraryDb.TABLE_TRACKS;
+import static phramusca.com.jamuzremote.MusicLibraryDb.WHERE_DIRTY_UNCHANGED;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
-import android.provider.BaseColumns;
 import android.util.Log;
 
 import java.io.File;
@@ -60,18 +63,60 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by raph on 12/06/17.
+ * <p>
+ * Concurrency model:
+ * <ul>
+ * <li>Changes go through the writer connection (db) and its compiled statements, one thread at a time
+ * (writerLock). Lookups using compiled statements take writerLock too.</li>
+ * <li>Other queries do not take writerLock: they run concurrently with each other and with the writer (WAL).
+ * UI queries read the last committed changes from dbReader.</li>
+ * <li>open() and close() hold connectionsLock exclusively, all other methods hold it shared,
+ * so connections are never closed under a running statement.
+ * Returned cursors are not covered: callers must close them before close().</li>
+ * </ul>
+ * Locks (LibraryLock) are reentrant, and always taken in this order: connectionsLock, then writerLock.
  */
 public class MusicLibrary {
     SQLiteDatabase db;
+    /**
+     * Read-only connection for UI queries (albums, playlists, counters),
+     * which are not to wait for writers (sync, scan) thanks to WAL.
+     * It only sees committed changes.
+     */
+    private SQLiteDatabase dbReader;
     private final File getAppDataPath;
     private final MusicLibraryDb musicLibraryDb;
+    private StatementCache statements;
+    private TrackWriteQueue writeQueue;
+    private final LibraryLock locks = new LibraryLock(this::onChanged);
+    /**
+     * Changes since outermost writer lock was taken, to keep snapshot current. Guarded by writer lock
+     */
+    private final List<LibrarySnapshot.Change> snapshotChanges = new ArrayList<>();
+    /**
+     * Other changes since outermost writer lock was taken: snapshot is loaded again. Guarded by writer lock
+     */
+    private boolean snapshotStale = false;
+    private final Random random = new Random();
+    private final PlaylistCountCache countCache = new PlaylistCountCache();
+    private final AtomicLong tagQueries = new AtomicLong();
+    private volatile LibrarySnapshot snapshot;
+    private final Object snapshotLock = new Object();
     private static final String TAG = MusicLibrary.class.getName();
+    /**
+     * Max number of ? bindings per query, below SQLite limit (999)
+     */
+    static final int MAX_BINDINGS = 500;
     private static final List<String> NOT_SUPPORTED_FORMATS =
             Arrays.asList("audio/alac");
 
@@ -80,55 +125,303 @@ public class MusicLibrary {
         musicLibraryDb = new MusicLibraryDb(context, musicLibraryDbFile);
     }
 
-    public synchronized void open() {
-        db = musicLibraryDb.getWritableDatabase();
+    public void open() {
+        locks.lockConnections();
+        try {
+            db = musicLibraryDb.getWritableDatabase();
+            statements = new StatementCache(db);
+            writeQueue = new TrackWriteQueue(this);
+            dbReader = SQLiteDatabase.openDatabase(db.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        } finally {
+            locks.unlockConnections();
+        }
+    }
+
+    void close() {
+        writeQueue.close();
+        locks.lockConnections();
+        try {
+            statements.close();
+            snapshot = null;
+            dbReader.close();
+            db.close();
+        } finally {
+            locks.unlockConnections();
+        }
+    }
+
+    /**
+     * @return queue of user edits and playback statistics, to be written in background
+     */
+    TrackWriteQueue getWriteQueue() {
+        return writeQueue;
+    }
+
+    private void lockWriter() {
+        locks.lockWriter();
+    }
+
+    private void unlockWriter() {
+        locks.unlockWriter();
+    }
+
+    private void unlockWriterChanged() {
+        unlockWriterChanged(null);
+    }
+
+    /**
+     * @param changes changes of tracks, applied to snapshot rather than loading it again.
+     *                Null if not known, empty if tracks did not change
+     */
+    private void unlockWriterChanged(Collection<? extends LibrarySnapshot.Change> changes) {
+        if (changes == null) {
+            snapshotStale = true;
+        } else {
+            snapshotChanges.addAll(changes);
+        }
+        locks.unlockWriterChanged();
+    }
+
+    /**
+     * @return change of snapshot for a track inserted or updated (all columns or statistics only), with its tags
+     */
+    private static LibrarySnapshot.Change getSnapshotChange(Track track, boolean statsOnly) {
+        int idFileRemote = track.getIdFileRemote();
+        String status = track.getStatus().name();
+        int rating = (int) track.getRating();
+        String genre = track.getGenre();
+        long lastPlayed = track.getLastPlayed().getTime();
+        int length = track.getLength();
+        long size = track.getSize();
+        List<String> tags = track.getTags(false) == null ? new ArrayList<>() : new ArrayList<>(track.getTags(false));
+        if (statsOnly) {
+            return snapshot -> snapshot.setStats(idFileRemote, rating, genre, lastPlayed, tags);
+        }
+        return snapshot -> snapshot.putTrack(idFileRemote, status, rating, genre, lastPlayed, length, size, tags);
     }
 
-    synchronized void close() {
-        db.close();
+    /**
+     * @return change of snapshot for a track status update, if idFileRemote is known
+     */
+    private static LibrarySnapshot.Change getStatusChange(Track track) {
+        int idFileRemote = track.getIdFileRemote();
+        String status = track.getStatus().name();
+        return snapshot -> idFileRemote >= 0 && snapshot.setStatus(idFileRemote, status);
     }
 
-    private synchronized AbstractMap.SimpleEntry<Integer, Date> getTrackIdFileRemote(String path) {
-        try (Cursor cursor = db.query(TABLE_TRACKS,
-                new String[]{ COL_TRACKS_ID_REMOTE, COL_TRACKS_MODIF_DATE },
-                COL_TRACKS_PATH + " LIKE \"" + path + "\"", //NON-NLS
-                null, null, null, null)) {
-            if (cursor.getCount() == 0) {
-                return new AbstractMap.SimpleEntry<>(-1, new Date(0));
+    /**
+     * @return change of snapshot for a track deletion, if idFileRemote is known
+     */
+    private static LibrarySnapshot.Change getDeleteChange(int idFileRemote) {
+        return snapshot -> {
+            if (idFileRemote < 0) {
+                return false;
+            }
+            snapshot.removeTrack(idFileRemote);
+            return true;
+        };
+    }
+
+    /**
+     * Called once the outermost writer lock is released after changes, before new version is set
+     */
+    private void onChanged(long version) {
+        try {
+            refreshAlbums();
+            LibrarySnapshot current = snapshot;
+            if (!snapshotStale && current != null) {
+                //Kept current, rather than loaded again
+                current.apply(snapshotChanges, version - 1, version);
+            }
+        } finally {
+            snapshotStale = false;
+            snapshotChanges.clear();
+        }
+    }
+
+    /**
+     * Summarizes again albums of tracks changed since last call, in album table.
+     * Called once the outermost writer lock is released, so a sync batch or a scan
+     * summarizes each album once.
+     */
+    private void refreshAlbums() {
+        long startTime = System.currentTimeMillis();
+        try {
+            db.beginTransaction();
+            try {
+                for (String statement : MusicLibraryDb.REFRESH_ALBUMS) {
+                    statements.get(statement).execute();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
-            cursor.moveToFirst();
-            Date modifDate = HelperDateTime.parseSqlUtc(
-                    cursor.getString(cursor.getColumnIndexOrThrow(COL_TRACKS_MODIF_DATE)));
-            return new AbstractMap.SimpleEntry<>(cursor.getInt(cursor.getColumnIndexOrThrow(COL_TRACKS_ID_REMOTE)), modifDate);
         } catch (SQLiteException | IllegalStateException ex) {
-            Log.e(TAG, "getTrackIdFileRemote(" + path + ")", ex); //NON-NLS
+            Log.e(TAG, "refreshAlbums()", ex); //NON-NLS
+        }
+        long time = System.currentTimeMillis() - startTime;
+        if (time > 10) {
+            Log.i(TAG, "refreshAlbums() :" + time + " ms"); //NON-NLS
+        }
+    }
+
+    /**
+     * @return library version, incremented once changes are committed
+     */
+    long getVersion() {
+        return locks.getVersion();
+    }
+
+    /**
+     * @param query playlist query
+     * @return counts from cache, or null if library changed since they were read
+     */
+    Triplet<Integer, Long, Long> getNbCached(PlaylistQuery query) {
+        return countCache.get(query, locks.getVersion());
+    }
+
+    /**
+     * @return snapshot at current library version, loaded if needed. Null if it could not be read
+     */
+    LibrarySnapshot getSnapshot() {
+        synchronized (snapshotLock) {
+            long version = locks.getVersion();
+            LibrarySnapshot current = snapshot;
+            //Snapshot can be ahead, from changes being versioned
+            if (current != null && current.getVersion() >= version) {
+                return current;
+            }
+            locks.lockShared();
+            try {
+                snapshot = loadSnapshot(version);
+                return snapshot;
+            } finally {
+                locks.unlockShared();
+            }
+        }
+    }
+
+    /**
+     * @param version current library version, read before loading.
+     *                If library changes while loading, snapshot is stale and will be loaded again.
+     */
+    private LibrarySnapshot loadSnapshot(long version) {
+        long startTime = System.currentTimeMillis();
+        try (Cursor tracks = dbReader.rawQuery("SELECT " + COL_TRACKS_ID_REMOTE + ", " + COL_TRACKS_STATUS //NON-NLS
+                + ", " + COL_TRACKS_RATING + ", " + COL_TRACKS_GENRE + ", " + COL_TRACKS_LAST_PLAYED //NON-NLS
+                + ", " + COL_TRACKS_LENGTH + ", " + COL_TRACKS_SIZE //NON-NLS
+                + " FROM " + TABLE_TRACKS + " ORDER BY " + COL_TRACKS_ID_REMOTE, null); //NON-NLS
+             Cursor tags = dbReader.rawQuery("SELECT F." + COL_TAG_FILE_ID_FILE + ", T." + COL_TAG_VALUE //NON-NLS
+                     + " FROM " + TABLE_TAG_FILE + " F JOIN " + TABLE_TAG + " T ON T." + COL_TAG_ID //NON-NLS
+                     + "=F." + COL_TAG_FILE_ID_TAG, null)) { //NON-NLS
+            LibrarySnapshot loaded = new LibrarySnapshot(tracks.getCount(), version);
+            while (tracks.moveToNext()) {
+                loaded.addTrack(tracks.getInt(0), tracks.getString(1), tracks.getInt(2), tracks.getString(3),
+                        tracks.getLong(4), tracks.getInt(5), tracks.getLong(6));
+            }
+            while (tags.moveToNext()) {
+                loaded.addTag(tags.getInt(0), tags.getString(1));
+            }
+            Log.i(TAG, "loadSnapshot(): " + loaded + " :" + (System.currentTimeMillis() - startTime) + " ms"); //NON-NLS
+            return loaded;
+        } catch (SQLiteException | IllegalStateException | IllegalArgumentException ex) {
+            Log.e(TAG, "loadSnapshot()", ex); //NON-NLS
+        }
+        return null;
+    }
+
+    /**
+     * @return compiled statements cache hits and misses
+     */
+    String getStatementCacheStats() {
+        lockWriter();
+        try {
+            return statements.toString();
+        } finally {
+            unlockWriter();
+        }
+    }
+
+    void resetStatementCacheStats() {
+        lockWriter();
+        try {
+            statements.resetCounters();
+        } finally {
+            unlockWriter();
+        }
+    }
+
+    /**
+     * Refreshes query planner statistics for the managed indexes.
+     * To be called after bulk changes (sync, scan).
+     */
+    void analyze() {
+        lockWriter();
+        try {
+            try {
+                long startTime = System.currentTimeMillis();
+                db.execSQL("ANALYZE"); //NON-NLS
+                Log.i(TAG, "analyze() :" + (System.currentTimeMillis() - startTime) + " ms"); //NON-NLS
+            } catch (SQLiteException | IllegalStateException ex) {
+                Log.e(TAG, "analyze()", ex); //NON-NLS
+            }
+        } finally {
+            unlockWriter();
+        }
+    }
+
+    private AbstractMap.SimpleEntry<Integer, Date> getTrackIdFileRemote(String path) {
+        locks.lockShared();
+        try {
+            try (Cursor cursor = db.query(TABLE_TRACKS,
+                    new String[]{ COL_TRACKS_ID_REMOTE, COL_TRACKS_MODIF_DATE },
+                    COL_TRACKS_PATH + "=?", //NON-NLS
+                    new String[]{ path }, null, null, null)) {
+                if (cursor.getCount() == 0) {
+                    return new AbstractMap.SimpleEntry<>(-1, new Date(0));
+                }
+                cursor.moveToFirst();
+                Date modifDate = new Date(cursor.getLong(cursor.getColumnIndexOrThrow(COL_TRACKS_MODIF_DATE)));
+                return new AbstractMap.SimpleEntry<>(cursor.getInt(cursor.getColumnIndexOrThrow(COL_TRACKS_ID_REMOTE)), modifDate);
+            } catch (SQLiteException | IllegalStateException ex) {
+                Log.e(TAG, "getTrackIdFileRemote(" + path + ")", ex); //NON-NLS
+            }
+            return new AbstractMap.SimpleEntry<>(-1, new Date(0));
+        } finally {
+            locks.unlockShared();
         }
-        return new AbstractMap.SimpleEntry<>(-1, new Date(0));
     }
 
-    private synchronized int getTrackIdFileRemote(int idFileServer) {
-        try (Cursor cursor = db.query(TABLE_TRACKS,
-                new String[]{ COL_TRACKS_ID_REMOTE },
-                COL_TRACKS_ID_SERVER + "=" + idFileServer,
-                null, null, null, null)) {
-            if (cursor.getCount() == 0) {
+    private int getTrackIdFileRemote(int idFileServer) {
+        lockWriter();
+        try {
+            try {
+                SQLiteStatement statement = statements.get("SELECT " + COL_TRACKS_ID_REMOTE //NON-NLS
+                        + " FROM " + TABLE_TRACKS + " WHERE " + COL_TRACKS_ID_SERVER + "=?"); //NON-NLS
+                statement.bindLong(1, idFileServer);
+                return (int) statement.simpleQueryForLong();
+            } catch (SQLiteDoneException ex) {
                 return -1;
+            } catch (SQLiteException | IllegalStateException ex) {
+                Log.e(TAG, "getTrackIdFileRemote(" + idFileServer + ")", ex); //NON-NLS
             }
-            cursor.moveToFirst();
-            return cursor.getInt(cursor.getColumnIndexOrThrow(COL_TRACKS_ID_REMOTE));
-        } catch (SQLiteException | IllegalStateException ex) {
-            Log.e(TAG, "getTrackIdFileRemote(" + idFileServer + ")", ex); //NON-NLS
+            return -1;
+        } finally {
+            unlockWriter();
         }
-        return -1;
     }
 
-    List<Track> getTracks(String where, String having, String order, int limit) {
-        return getTracks(false, where, having, order, limit);
+    List<Track> getTracks(PlaylistQuery query, String order, int limit) {
+        return getTracks(query.getWhere(), query.getArgs(), order, limit);
     }
 
-    List<Track> getTracks(boolean statsOnly, String where, String having, String order, int limit) {
-        Cursor cursor = getTracksCursor(statsOnly, where, having, order, limit);
-        List<Track> tracks = getTracks(cursor, statsOnly);
+    /**
+     * Reads tracks, and their tags in bulk.
+     */
+    private List<Track> getTracks(String where, String[] args, String order, int limit) {
+        Cursor cursor = getTracksCursor(false, where, args, order, limit);
+        List<Track> tracks = getTracks(cursor, false);
+        setTags(tracks);
         if (limit > 0) {
             Collections.shuffle(tracks);
         }
@@ -138,536 +431,1085 @@ public class MusicLibrary {
         return tracks;
     }
 
-    Cursor getTracksCursor(boolean statsOnly, String where, String having, String order, int limit) {
-        Cursor cursor = null;
-        try {
-            String select = "GROUP_CONCAT("+TABLE_TAG+"."+COL_TAG_VALUE+") AS tags, "+TABLE_TRACKS+".*"; //NON-NLS
-            if (statsOnly) {
-                select = TABLE_TRACKS+"."+ COL_TRACKS_ID_REMOTE +", "+TABLE_TRACKS+"."+ COL_TRACKS_ID_SERVER +", " +
-                        TABLE_TRACKS+"."+ COL_TRACKS_RATING +", "+TABLE_TRACKS+"."+ COL_TRACKS_ADDED_DATE +", " +
-                        TABLE_TRACKS+"."+ COL_TRACKS_LAST_PLAYED +", "+TABLE_TRACKS+"."+ COL_TRACKS_PLAY_COUNTER +", " +
-                        TABLE_TRACKS+"."+ COL_TRACKS_GENRE +", "+TABLE_TRACKS+"."+ COL_TRACKS_PATH +", " +
-                        TABLE_TRACKS+"."+ COL_TRACKS_SIZE +", "+TABLE_TRACKS+"."+ COL_TRACKS_STATUS +", " +
-                        TABLE_TRACKS+"."+ COL_TRACKS_LENGTH +", "+TABLE_TRACKS+"."+ COL_TRACKS_ID_PATH +", "+TABLE_TRACKS+"."+ COL_TRACKS_MODIF_DATE; //NON-NLS
-            } //NON-NLS
-            String query = "SELECT " + select + " \n" + //NON-NLS
-                    " FROM "+TABLE_TRACKS+" \n" + //NON-NLS
-                    " LEFT JOIN "+TABLE_TAG_FILE+" ON "+TABLE_TRACKS+"."+ COL_TRACKS_ID_REMOTE +"="+TABLE_TAG_FILE+"."+COL_TAG_FILE_ID_FILE+" \n" + //NON-NLS //NON-NLS
-                    " LEFT JOIN "+TABLE_TAG+" ON "+TABLE_TAG+"."+COL_TAG_ID+"="+TABLE_TAG_FILE+"."+COL_TAG_FILE_ID_TAG+" \n" + //NON-NLS
-                    " " + where + " \n" +
-                    " GROUP BY tracks.idFileRemote \n" + //NON-NLS
-                    " " + having + " \n" +
-                    " " + order + " \n" + //NON-NLS
-                    " " + (limit > 0 ? "LIMIT " + limit : ""); //NON-NLS
-            Log.i(TAG, query);
-            cursor = db.rawQuery(query, new String[]{});
-            Log.i(TAG, "getTracks(" + where + "," + having + "," + order + "): " + cursor.getCount()); //NON-NLS //NON-NLS
-        } catch (SQLiteException | IllegalStateException ex) {
-            Log.e(TAG, "getTracks(" + where + "," + having + "," + order + ")", ex); //NON-NLS
+    /**
+     * Reads a page of tracks, and their tags in bulk
+     *
+     * @param query    playlist filter
+     * @param after    key of the page, TrackPage.Key.first() for first page
+     * @param pageSize number of tracks per page
+     * @return page, null on error
+     */
+    TrackPage getTracksPage(PlaylistQuery query, TrackPage.Key after, int pageSize) {
+        String[] queryArgs = query.getArgs();
+        String[] afterArgs = after.getArgs();
+        String[] args = Arrays.copyOf(queryArgs, queryArgs.length + afterArgs.length);
+        System.arraycopy(afterArgs, 0, args, queryArgs.length, afterArgs.length);
+        Cursor cursor = getTracksCursor(false, query.getWhere() + after.getWhere(), args,
+                after.getOrderBy(), pageSize);
+        if (cursor == null) {
+            return null;
         }
-        return cursor;
+        List<Track> tracks = getTracks(cursor, false);
+        cursor.close();
+        setTags(tracks);
+        after.sort(tracks);
+        return new TrackPage(tracks, after.next(tracks, pageSize));
     }
 
-    public Triplet<Integer, Long, Long> getNb(String where, String having) {
-        Cursor cursor = null;
+    /**
+     * @param query playlist filter
+     * @return ids of matching tracks, shuffled, to read pages of a random order (see TrackPage.Key.shuffled())
+     */
+    int[] getTrackIdsShuffled(PlaylistQuery query) {
+        int[] ids = getTrackIds(query);
+        return TrackSampler.sample(ids, ids.length, random);
+    }
+
+    /**
+     * Uniform random sample of matching tracks.
+     * Only ids of matching tracks are read, then only sampled tracks are read fully,
+     * instead of sorting the whole selection by RANDOM().
+     *
+     * @param query playlist filter
+     * @param limit number of tracks to pick
+     * @return sampled tracks, in random order
+     */
+    List<Track> getTracksSample(PlaylistQuery query, int limit) {
+        long startTime = System.currentTimeMillis();
+        int[] ids = getTrackIds(query);
+        int[] sample = TrackSampler.sample(ids, limit, random);
+        if (sample.length <= 0) {
+            return new ArrayList<>();
+        }
+        String[] args = new String[sample.length];
+        for (int i = 0; i < sample.length; i++) {
+            args[i] = String.valueOf(sample[i]);
+        }
+        List<Track> tracks = getTracks(
+                " WHERE " + TABLE_TRACKS + "." + COL_TRACKS_ID_REMOTE //NON-NLS
+                        + " IN (" + PlaylistQuery.getBindings(args.length) + ") ", //NON-NLS
+                args, "", -1);
+        Collections.shuffle(tracks, random);
+        Log.i(TAG, "getTracksSample(" + limit + "): " + tracks.size() + "/" + ids.length //NON-NLS
+                + " :" + (System.currentTimeMillis() - startTime) + " ms"); //NON-NLS
+        return tracks;
+    }
+
+    private int[] getTrackIds(PlaylistQuery query) {
+        if (query.getFilter() != null) {
+            LibrarySnapshot current = getSnapshot();
+            if (current != null) {
+                return current.getIds(query.getFilter());
+            }
+        }
+        locks.lockShared();
         try {
-            String query = "SELECT count(*), SUM("+ COL_TRACKS_SIZE +") AS sizeTotal, SUM("+ COL_TRACKS_LENGTH +") AS lengthTotal \n" + //NON-NLS
-                    " FROM (SELECT " + COL_TRACKS_SIZE + ", "+ COL_TRACKS_LENGTH +" FROM "+TABLE_TRACKS+" \n" + //NON-NLS
-                    " LEFT JOIN "+TABLE_TAG_FILE+" ON "+TABLE_TRACKS+".idFileRemote=tagfile.idFile \n" + //NON-NLS
-                    " LEFT JOIN "+TABLE_TAG+" ON "+TABLE_TAG+"."+COL_TAG_ID+"="+TABLE_TAG_FILE+"."+COL_TAG_FILE_ID_TAG+" \n" + //NON-NLS
-                    " " + where + " \n" + //NON-NLS
-                    " GROUP BY "+TABLE_TRACKS+"."+ COL_TRACKS_ID_REMOTE +" \n" + //NON-NLS
-                    " " + having + ")";
-            cursor = db.rawQuery(query, new String[]{});
-            if (cursor != null && cursor.moveToNext()) {
-                int count = cursor.getInt(0);
-                long sizeTotal = cursor.getLong(1);
-                long lengthTotal = cursor.getLong(2);
-                return new Triplet<>(count, sizeTotal, lengthTotal);
+            String sql = "SELECT " + TABLE_TRACKS + "." + COL_TRACKS_ID_REMOTE + " \n" + //NON-NLS
+                    " FROM " + TABLE_TRACKS + " \n" + //NON-NLS
+                    " " + query.getWhere();
+            try (Cursor cursor = dbReader.rawQuery(sql, query.getArgs())) {
+                int[] ids = new int[cursor.getCount()];
+                int i = 0;
+                while (cursor.moveToNext() && i < ids.length) {
+                    ids[i++] = cursor.getInt(0);
+                }
+                return i < ids.length ? Arrays.copyOf(ids, i) : ids;
+            } catch (SQLiteException | IllegalStateException ex) {
+                Log.e(TAG, "getTrackIds(" + query + ")", ex); //NON-NLS
             }
-        } catch (SQLiteException | IllegalStateException ex) { //NON-NLS
-            Log.e(TAG, "getNb(" + where + "," + having + ")", ex); //NON-NLS
+            return new int[0];
         } finally {
-            if (cursor != null) {
-                cursor.close();
+            locks.unlockShared();
+        }
+    }
+
+    Cursor getTracksCursor(boolean statsOnly, PlaylistQuery query, String order, int limit) {
+        return getTracksCursor(statsOnly, query.getWhere(), query.getArgs(), order, limit);
+    }
+
+    Cursor getTracksCursor(boolean statsOnly, String where, String order, int limit) {
+        return getTracksCursor(statsOnly, where, new String[]{}, order, limit);
+    }
+
+    private Cursor getTracksCursor(boolean statsOnly, String where, String[] args, String order, int limit) {
+        locks.lockShared();
+        try {
+            Cursor cursor = null;
+            try {
+                String select = TABLE_TRACKS+".*"; //NON-NLS
+                if (statsOnly) {
+                    select = TABLE_TRACKS+"."+ COL_TRACKS_ID_REMOTE +", "+TABLE_TRACKS+"."+ COL_TRACKS_ID_SERVER +", " +
+                            TABLE_TRACKS+"."+ COL_TRACKS_RATING +", "+TABLE_TRACKS+"."+ COL_TRACKS_ADDED_DATE +", " +
+                            TABLE_TRACKS+"."+ COL_TRACKS_LAST_PLAYED +", "+TABLE_TRACKS+"."+ COL_TRACKS_PLAY_COUNTER +", " +
+                            TABLE_TRACKS+"."+ COL_TRACKS_GENRE +", "+TABLE_TRACKS+"."+ COL_TRACKS_PATH +", " +
+                            TABLE_TRACKS+"."+ COL_TRACKS_SIZE +", "+TABLE_TRACKS+"."+ COL_TRACKS_STATUS +", " +
+                            TABLE_TRACKS+"."+ COL_TRACKS_LENGTH +", "+TABLE_TRACKS+"."+ COL_TRACKS_ID_PATH +", "+TABLE_TRACKS+"."+ COL_TRACKS_MODIF_DATE; //NON-NLS
+                } //NON-NLS
+                String query = "SELECT " + select + " \n" + //NON-NLS
+                        " FROM "+TABLE_TRACKS+" \n" + //NON-NLS
+                        " " + where + " \n" +
+                        " " + order + " \n" + //NON-NLS
+                        " " + (limit > 0 ? "LIMIT " + limit : ""); //NON-NLS
+                Log.i(TAG, query);
+                long startTime = System.currentTimeMillis();
+                cursor = dbReader.rawQuery(query, args);
+                Log.i(TAG, "getTracks(" + where + "," + order + "): " + cursor.getCount() //NON-NLS //NON-NLS
+                        + " :" + (System.currentTimeMillis() - startTime) + " ms"); //NON-NLS
+            } catch (SQLiteException | IllegalStateException ex) {
+                Log.e(TAG, "getTracks(" + where + "," + order + ")", ex); //NON-NLS
             }
+            return cursor;
+        } finally {
+            locks.unlockShared();
         }
-        return new Triplet<>(-1, (long) -1, (long) -1);
     }
 
-    synchronized boolean insertOrUpdateTrack(Uri contentUri, Context context, String idPath, Date dateModified, long size) {
-        Track track = new Track(contentUri.toString(), idPath);
-        track.setModifDate(dateModified);
-        track.setSize(size);
-        if (track.read(context) && !NOT_SUPPORTED_FORMATS.contains(track.getFormat())) {
-            return insertOrUpdateTrack(track, dateModified);
+    public Triplet<Integer, Long, Long> getNb(PlaylistQuery query) {
+        long version = locks.getVersion();
+        Triplet<Integer, Long, Long> cached = countCache.get(query, version);
+        if (cached != null) {
+            return cached;
+        }
+        if (query.getFilter() != null) {
+            LibrarySnapshot current = getSnapshot();
+            if (current != null) {
+                long startTime = System.nanoTime();
+                Triplet<Integer, Long, Long> nb = current.count(query.getFilter());
+                countCache.put(query, current.getVersion(), nb);
+                Log.i(TAG, "getNb(" + query + "): " + nb.getFirst() + " from snapshot :" //NON-NLS
+                        + (System.nanoTime() - startTime) / 1000 + " us"); //NON-NLS
+                return nb;
+            }
+        }
+        locks.lockShared();
+        try {
+            Cursor cursor = null;
+            try {
+                String sql = "SELECT count(*), SUM("+ COL_TRACKS_SIZE +") AS sizeTotal, SUM("+ COL_TRACKS_LENGTH +") AS lengthTotal \n" + //NON-NLS
+                        " FROM "+TABLE_TRACKS+" \n" + //NON-NLS
+                        " " + query.getWhere();
+                long startTime = System.currentTimeMillis();
+                cursor = dbReader.rawQuery(sql, query.getArgs());
+                if (cursor != null && cursor.moveToNext()) {
+                    int count = cursor.getInt(0);
+                    long sizeTotal = cursor.getLong(1);
+                    long lengthTotal = cursor.getLong(2);
+                    Log.i(TAG, "getNb(" + query + "): " + count //NON-NLS
+                            + " :" + (System.currentTimeMillis() - startTime) + " ms"); //NON-NLS
+                    Triplet<Integer, Long, Long> nb = new Triplet<>(count, sizeTotal, lengthTotal);
+                    countCache.put(query, version, nb);
+                    return nb;
+                }
+            } catch (SQLiteException | IllegalStateException ex) { //NON-NLS
+                Log.e(TAG, "getNb(" + query + ")", ex); //NON-NLS
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            return new Triplet<>(-1, (long) -1, (long) -1);
+        } finally {
+            locks.unlockShared();
         }
-        return false;
     }
 
-    synchronized boolean insertOrUpdateTrack(Track track, Date dateModified) {
-        AbstractMap.SimpleEntry<Integer, Date> fileRemote = getTrackIdFileRemote(track.getPath());
-        boolean result;
-        if (fileRemote.getKey() >= 0) {
-            track.setIdFileRemote(fileRemote.getKey());
-            if(dateModified.after(fileRemote.getValue())) {
-                result = updateTrack(track, false);
+    boolean insertOrUpdateTrack(Uri contentUri, Context context, String idPath, Date dateModified, long size) {
+        lockWriter();
+        try {
+            Track track = new Track(contentUri.toString(), idPath);
+            track.setModifDate(dateModified);
+            track.setSize(size);
+            if (track.read(context) && !NOT_SUPPORTED_FORMATS.contains(track.getFormat())) {
+                return insertOrUpdateTrack(track, dateModified);
+            }
+            return false;
+        } finally {
+            unlockWriter();
+        }
+    }
+
+    boolean insertOrUpdateTrack(Track track, Date dateModified) {
+        lockWriter();
+        try {
+            AbstractMap.SimpleEntry<Integer, Date> fileRemote = getTrackIdFileRemote(track.getPath());
+            boolean result;
+            if (fileRemote.getKey() >= 0) {
+                track.setIdFileRemote(fileRemote.getKey());
+                if(dateModified.after(fileRemote.getValue())) {
+                    result = updateTrack(track, false);
+                } else {
+                    return true;
+                }
             } else {
-                return true;
+                result = insertTrack(track);
             }
-        } else {
-            result = insertTrack(track);
+            return result;
+        } finally {
+            unlockWriter();
         }
-        return result;
     } //NON-NLS
 
-    synchronized boolean insertTrack(Track track) {
-        try { //NON-NLS
-            Log.d(TAG, "insertTrack " + track.getPath()); //NON-NLS
-            int id = (int) db.insert(TABLE_TRACKS, null, TrackToValues(track, false));
-            if (id > 0) {
-                track.setIdFileRemote(id);
-                for (String tag : track.getTags(false)) {
-                    if (!addTag(id, tag)) {
-                        return false;
+    boolean insertTrack(Track track) {
+        lockWriter();
+        boolean inserted = false;
+        try {
+            try { //NON-NLS
+                Log.d(TAG, "insertTrack " + track.getPath()); //NON-NLS
+                db.beginTransaction();
+                try {
+                    SQLiteStatement statement = statements.get(SQL_INSERT_TRACK);
+                    bindTrack(statement, track, false);
+                    int id = (int) statement.executeInsert();
+                    if (id > 0) {
+                        track.setIdFileRemote(id);
+                        inserted = addTags(id, track.getTags(false));
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                return inserted;
+            } catch (SQLiteException | IllegalStateException ex) {
+                Log.e(TAG, "insertTrack(" + track + ")", ex); //NON-NLS
+                inserted = false;
+            }
+            return false;
+        } finally {
+            unlockWriterChanged(inserted ? Collections.singletonList(getSnapshotChange(track, false)) : null);
+        }
+    }
+
+    boolean insertTrackOrUpdateStatus(Collection<Track> tracks) { //NON-NLS
+        lockWriter();
+        try {
+            db.beginTransaction();
+            try {
+                String sqlTracks = "INSERT OR IGNORE INTO " + TABLE_TRACKS + " (" //NON-NLS
+                        + COL_TRACKS_TITLE + ", " + COL_TRACKS_ALBUM + ", "
+                        + COL_TRACKS_ARTIST + ", " + COL_TRACKS_STATUS + ", "
+                        + COL_TRACKS_GENRE + ", " + COL_TRACKS_PATH + ", "
+                        + COL_TRACKS_RATING + ", " + COL_TRACKS_ADDED_DATE + ", "
+                        + COL_TRACKS_LAST_PLAYED + ", " + COL_TRACKS_PLAY_COUNTER + ", "
+                        + COL_TRACKS_ID_SERVER + ", " + COL_TRACKS_SIZE + ", " + COL_TRACKS_LENGTH + ") " + //NON-NLS //NON-NLS
+                        " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"; //NON-NLS
+                String sqlUpdateStatus = "UPDATE " + TABLE_TRACKS + " " + //NON-NLS
+                        "SET " + COL_TRACKS_STATUS + "=?, " + COL_TRACKS_PATH + "=? WHERE " + COL_TRACKS_ID_SERVER + "=?"; //NON-NLS
+                String sqlTagsDelete = "DELETE FROM "+TABLE_TAG_FILE+" WHERE "+COL_TAG_FILE_ID_FILE+"=?"; //NON-NLS //NON-NLS
+                String sqlTags = "INSERT OR REPLACE INTO "+TABLE_TAG_FILE+" ("+COL_TAG_FILE_ID_FILE+ ", "+ COL_TAG_FILE_ID_TAG + ") " + //NON-NLS
+                        "VALUES (?, (SELECT "+COL_TAG_ID+" FROM "+TABLE_TAG+" WHERE "+COL_TAG_VALUE+"=?))"; //NON-NLS
+                SQLiteStatement stmtTracks = statements.get(sqlTracks);
+                SQLiteStatement stmtStatus = statements.get(sqlUpdateStatus);
+                SQLiteStatement stmtTags = statements.get(sqlTags);
+                SQLiteStatement stmtTagsDelete = statements.get(sqlTagsDelete);
+                for (Track track : tracks) {
+                    int idFile = getTrackIdFileRemote(track.getIdFileServer());
+                    if (idFile >= 0) {
+                        stmtStatus.bindString(1, track.getStatus().name());
+                        stmtStatus.bindString(2, track.getPath());
+                        stmtStatus.bindLong(3, track.getIdFileServer());
+                        stmtStatus.executeUpdateDelete();
+                        stmtStatus.clearBindings();
+                    } else {
+                        stmtTracks.bindString(1, track.getTitle());
+                        stmtTracks.bindString(2, track.getAlbum());
+                        stmtTracks.bindString(3, track.getArtist());
+                        stmtTracks.bindString(4, track.getStatus().name());
+                        stmtTracks.bindString(5, track.getGenre());
+                        stmtTracks.bindString(6, track.getPath());
+                        stmtTracks.bindDouble(7, track.getRating());
+                        stmtTracks.bindLong(8, track.getAddedDate().getTime());
+                        stmtTracks.bindLong(9, track.getLastPlayed().getTime());
+                        stmtTracks.bindLong(10, track.getPlayCounter());
+                        stmtTracks.bindLong(11, track.getIdFileServer());
+                        stmtTracks.bindLong(12, track.getSize());
+                        stmtTracks.bindLong(13, track.getLength());
+                        idFile = (int) stmtTracks.executeInsert();
+                        stmtTracks.clearBindings();
+                    }
+                    stmtTagsDelete.bindLong(1, idFile);
+                    stmtTagsDelete.execute();
+                    stmtTagsDelete.clearBindings();
+                    for (String tag : track.getTags(false)) {
+                        stmtTags.bindLong(1, idFile);
+                        stmtTags.bindString(2, tag);
+                        stmtTags.execute();
+                        stmtTags.clearBindings();
                     } //NON-NLS
                 }
+                db.setTransactionSuccessful();
                 return true;
+            } catch (SQLiteException | IllegalStateException ex) {
+                Log.e(TAG, "insertTrackOrUpdateStatus(" + tracks + ")", ex); //NON-NLS
+                return false;
+            } finally {
+                db.endTransaction();
             }
-        } catch (SQLiteException | IllegalStateException ex) {
-            Log.e(TAG, "insertTrack(" + track + ")", ex); //NON-NLS
+        } finally {
+            unlockWriterChanged();
         }
-        return false;
     }
 
-    synchronized boolean insertTrackOrUpdateStatus(Collection<Track> tracks) { //NON-NLS
-        db.beginTransaction();
-        try {
-            String sqlTracks = "INSERT OR IGNORE INTO " + TABLE_TRACKS + " (" //NON-NLS
-                    + COL_TRACKS_TITLE + ", " + COL_TRACKS_ALBUM + ", "
-                    + COL_TRACKS_ARTIST + ", " + COL_TRACKS_STATUS + ", "
-                    + COL_TRACKS_GENRE + ", " + COL_TRACKS_PATH + ", "
-                    + COL_TRACKS_RATING + ", " + COL_TRACKS_ADDED_DATE + ", "
-                    + COL_TRACKS_LAST_PLAYED + ", " + COL_TRACKS_PLAY_COUNTER + ", "
-                    + COL_TRACKS_ID_SERVER + ", " + COL_TRACKS_SIZE + ", " + COL_TRACKS_LENGTH + ") " + //NON-NLS //NON-NLS
-                    " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"; //NON-NLS
-            String sqlUpdateStatus = "UPDATE " + TABLE_TRACKS + " " + //NON-NLS
-                    "SET " + COL_TRACKS_STATUS + "=?, " + COL_TRACKS_PATH + "=? WHERE " + COL_TRACKS_ID_SERVER + "=?"; //NON-NLS
-            String sqlTagsDelete = "DELETE FROM "+TABLE_TAG_FILE+" WHERE "+COL_TAG_FILE_ID_FILE+"=?"; //NON-NLS //NON-NLS
-            String sqlTags = "INSERT OR REPLACE INTO "+TABLE_TAG_FILE+" ("+COL_TAG_FILE_ID_FILE+ ", "+ COL_TAG_FILE_ID_TAG + ") " + //NON-NLS
-                    "VALUES (?, (SELECT "+COL_TAG_ID+" FROM "+TABLE_TAG+" WHERE "+COL_TAG_VALUE+"=?))"; //NON-NLS
-            SQLiteStatement stmtTracks = db.compileStatement(sqlTracks);
-            SQLiteStatement stmtStatus = db.compileStatement(sqlUpdateStatus);
-            SQLiteStatement stmtTags = db.compileStatement(sqlTags);
-            SQLiteStatement stmtTagsDelete = db.compileStatement(sqlTagsDelete);
-            for (Track track : tracks) {
-                int idFile = getTrackIdFileRemote(track.getIdFileServer());
-                if (idFile >= 0) {
+    private static final String[] COLUMNS_STATS = {
+            COL_TRACKS_GENRE, COL_TRACKS_RATING, COL_TRACKS_ADDED_DATE,
+            COL_TRACKS_LAST_PLAYED, COL_TRACKS_PLAY_COUNTER };
+
+    private static final String[] COLUMNS_ALL = {
+            COL_TRACKS_GENRE, COL_TRACKS_RATING, COL_TRACKS_ADDED_DATE,
+            COL_TRACKS_LAST_PLAYED, COL_TRACKS_PLAY_COUNTER,
+            COL_TRACKS_ID_SERVER, COL_TRACKS_PATH, COL_TRACKS_TITLE, COL_TRACKS_ALBUM,
+            COL_TRACKS_ARTIST, COL_TRACKS_SIZE, COL_TRACKS_LENGTH, COL_TRACKS_STATUS,
+            COL_TRACKS_ID_PATH, COL_TRACKS_ALBUM_ARTIST, COL_TRACKS_YEAR, COL_TRACKS_TRACK_NO,
+            COL_TRACKS_TRACK_TOTAL, COL_TRACKS_DISC_NO, COL_TRACKS_DISC_TOTAL, COL_TRACKS_BITRATE,
+            COL_TRACKS_FORMAT, COL_TRACKS_BPM, COL_TRACKS_MODIF_DATE, COL_TRACKS_CHECKED_FLAG,
+            COL_TRACKS_COPYRIGHT, COL_TRACKS_COVER_HASH, COL_TRACKS_PATH_MODIF_DATE,
+            COL_TRACKS_PATH_MB_ID, COL_TRACKS_COMMENT, COL_TRACKS_TRACK_GAIN, COL_TRACKS_ALBUM_GAIN };
+
+    private static final String SQL_INSERT_TRACK = getInsertSql();
+    private static final String SQL_UPDATE_TRACK = getUpdateSql(COLUMNS_ALL);
+    private static final String SQL_UPDATE_TRACK_STATS = getUpdateSql(COLUMNS_STATS);
+
+    /**
+     * Applies a batch of server files changes in a single transaction,
+     * with compiled statements.
+     * Statistics updates of tracks which dirty counter changed since read (changed locally meanwhile,
+     * by TrackWriteQueue) are skipped, and removed from batch: those changes are merged next time.
+     *
+     * @param batch changes to apply
+     * @return true if whole batch has been applied, false if rolled back
+     */
+    boolean applySyncBatch(SyncBatch batch) {
+        lockWriter();
+        List<LibrarySnapshot.Change> changes = null;
+        try {
+            if (batch.isEmpty()) {
+                return true;
+            }
+            long startTime = System.currentTimeMillis();
+            db.beginTransaction();
+            try {
+                SQLiteStatement stmtInsert = statements.get(SQL_INSERT_TRACK);
+                for (Track track : batch.getInserts()) {
+                    bindTrack(stmtInsert, track, false);
+                    int idFileRemote = (int) stmtInsert.executeInsert();
+                    if (idFileRemote < 0) {
+                        throw new SQLiteException("Insert failed for " + track.getIdFileServer()); //NON-NLS
+                    }
+                    track.setIdFileRemote(idFileRemote);
+                    replaceTags(idFileRemote, track.getTags(false));
+                }
+                SQLiteStatement stmtUpdate = statements.get(SQL_UPDATE_TRACK);
+                for (Track track : batch.getUpdates()) {
+                    bindTrack(stmtUpdate, track, false);
+                    stmtUpdate.bindLong(COLUMNS_ALL.length + 1, track.getIdFileRemote());
+                    stmtUpdate.executeUpdateDelete();
+                    replaceTags(track.getIdFileRemote(), track.getTags(false));
+                }
+                SQLiteStatement stmtUpdateStats = statements.get(SQL_UPDATE_TRACK_STATS);
+                SQLiteStatement stmtDirty = statements.get("SELECT count(*) FROM " + TABLE_TRACKS //NON-NLS
+                        + WHERE_DIRTY_UNCHANGED);
+                Iterator<Track> statsUpdates = batch.getStatsUpdates().iterator();
+                while (statsUpdates.hasNext()) {
+                    Track track = statsUpdates.next();
+                    stmtDirty.bindLong(1, track.getIdFileRemote());
+                    stmtDirty.bindLong(2, batch.getStatsDirty(track));
+                    if (stmtDirty.simpleQueryForLong() <= 0) {
+                        statsUpdates.remove();
+                        continue;
+                    }
+                    bindTrack(stmtUpdateStats, track, true);
+                    stmtUpdateStats.bindLong(COLUMNS_STATS.length + 1, track.getIdFileRemote());
+                    stmtUpdateStats.executeUpdateDelete();
+                    replaceTags(track.getIdFileRemote(), track.getTags(false));
+                }
+                SQLiteStatement stmtStatus = statements.get("UPDATE " + TABLE_TRACKS //NON-NLS
+                        + " SET " + COL_TRACKS_STATUS + "=? WHERE " + COL_TRACKS_ID_SERVER + "=?"); //NON-NLS
+                for (Track track : batch.getStatusUpdates()) {
                     stmtStatus.bindString(1, track.getStatus().name());
-                    stmtStatus.bindString(2, track.getPath());
-                    stmtStatus.bindLong(3, track.getIdFileServer());
+                    stmtStatus.bindLong(2, track.getIdFileServer());
                     stmtStatus.executeUpdateDelete();
-                    stmtStatus.clearBindings();
-                } else {
-                    stmtTracks.bindString(1, track.getTitle());
-                    stmtTracks.bindString(2, track.getAlbum());
-                    stmtTracks.bindString(3, track.getArtist());
-                    stmtTracks.bindString(4, track.getStatus().name());
-                    stmtTracks.bindString(5, track.getGenre());
-                    stmtTracks.bindString(6, track.getPath());
-                    stmtTracks.bindDouble(7, track.getRating());
-                    stmtTracks.bindString(8, track.getFormattedAddedDate());
-                    stmtTracks.bindString(9, track.getFormattedLastPlayed());
-                    stmtTracks.bindLong(10, track.getPlayCounter());
-                    stmtTracks.bindLong(11, track.getIdFileServer());
-                    stmtTracks.bindLong(12, track.getSize());
-                    stmtTracks.bindLong(13, track.getLength());
-                    idFile = (int) stmtTracks.executeInsert();
-                    stmtTracks.clearBindings();
                 }
-                stmtTagsDelete.bindLong(1, idFile);
-                stmtTagsDelete.execute();
-                stmtTagsDelete.clearBindings();
-                for (String tag : track.getTags(false)) {
-                    stmtTags.bindLong(1, idFile);
-                    stmtTags.bindString(2, tag);
-                    stmtTags.execute();
-                    stmtTags.clearBindings();
-                } //NON-NLS
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
-            db.setTransactionSuccessful();
+            changes = getSnapshotChanges(batch);
+            Log.i(TAG, "applySyncBatch(" + batch.size() + ") :" //NON-NLS
+                    + (System.currentTimeMillis() - startTime) + " ms"); //NON-NLS
             return true;
         } catch (SQLiteException | IllegalStateException ex) {
-            Log.e(TAG, "insertTrackOrUpdateStatus(" + tracks + ")", ex); //NON-NLS
+            Log.e(TAG, "applySyncBatch(" + batch.size() + ")", ex); //NON-NLS
             return false;
         } finally {
-            db.endTransaction();
+            if (batch.isEmpty()) {
+                unlockWriter();
+            } else {
+                unlockWriterChanged(changes);
+            }
         }
     }
 
-    synchronized boolean addTag(int idFile, String tag) {
-        try {
-            int idTag = getIdTag(tag);
-            if (idTag > 0) {
-                ContentValues values = new ContentValues();
-                values.put(COL_TAG_FILE_ID_FILE, idFile);
-                values.put(COL_TAG_FILE_ID_TAG, idTag); //NON-NLS
-                db.insertWithOnConflict("tagfile", BaseColumns._ID, values, SQLiteDatabase.CONFLICT_IGNORE); //NON-NLS
-                return true;
+    private static List<LibrarySnapshot.Change> getSnapshotChanges(SyncBatch batch) {
+        List<LibrarySnapshot.Change> changes = new ArrayList<>(batch.size());
+        for (Track track : batch.getInserts()) {
+            changes.add(getSnapshotChange(track, false));
+        }
+        for (Track track : batch.getUpdates()) {
+            changes.add(getSnapshotChange(track, false));
+        }
+        for (Track track : batch.getStatsUpdates()) {
+            changes.add(getSnapshotChange(track, true));
+        }
+        for (Track track : batch.getStatusUpdates()) {
+            changes.add(getStatusChange(track));
+        }
+        return changes;
+    }
+
+    private static String getInsertSql() {
+        StringBuilder insertColumns = new StringBuilder();
+        StringBuilder insertValues = new StringBuilder();
+        for (String column : COLUMNS_ALL) {
+            insertColumns.append(insertColumns.length() > 0 ? ", " : "").append(column);
+            insertValues.append(insertValues.length() > 0 ? ", " : "").append("?");
+        }
+        return "INSERT INTO " + TABLE_TRACKS //NON-NLS
+                + " (" + insertColumns + ") VALUES (" + insertValues + ")"; //NON-NLS
+    }
+
+    private static String getUpdateSql(String[] columns) {
+        StringBuilder set = new StringBuilder();
+        for (String column : columns) {
+            set.append(set.length() > 0 ? ", " : "").append(column).append("=?");
+        }
+        return "UPDATE " + TABLE_TRACKS + " SET " + set //NON-NLS
+                + " WHERE " + COL_TRACKS_ID_REMOTE + "=?"; //NON-NLS
+    }
+
+    /**
+     * Binds track values, in COLUMNS_STATS or COLUMNS_ALL order
+     */
+    private void bindTrack(SQLiteStatement statement, Track track, boolean statsOnly) {
+        statement.clearBindings();
+        bindString(statement, 1, track.getGenre());
+        statement.bindDouble(2, track.getRating());
+        statement.bindLong(3, track.getAddedDate().getTime());
+        statement.bindLong(4, track.getLastPlayed().getTime());
+        statement.bindLong(5, track.getPlayCounter());
+        if (!statsOnly) {
+            statement.bindLong(6, track.getIdFileServer());
+            bindString(statement, 7, track.getPath());
+            bindString(statement, 8, track.getTitle());
+            bindString(statement, 9, track.getAlbum());
+            bindString(statement, 10, track.getArtist());
+            statement.bindLong(11, track.getSize());
+            statement.bindLong(12, track.getLength());
+            bindString(statement, 13, track.getStatus().name());
+            bindString(statement, 14, track.getIdPath());
+            bindString(statement, 15, track.getAlbumArtist());
+            bindString(statement, 16, track.getYear());
+            statement.bindLong(17, track.getTrackNo());
+            statement.bindLong(18, track.getTrackTotal());
+            statement.bindLong(19, track.getDiscNo());
+            statement.bindLong(20, track.getDiscTotal());
+            bindString(statement, 21, track.getBitrate());
+            bindString(statement, 22, track.getFormat());
+            statement.bindDouble(23, track.getBPM());
+            statement.bindLong(24, track.getModifDate().getTime());
+            bindString(statement, 25, track.getCheckedFlag());
+            bindString(statement, 26, track.getCopyRight());
+            bindString(statement, 27, track.getCoverHash());
+            statement.bindLong(28, track.getPathModifDate().getTime());
+            bindString(statement, 29, track.getPathMbId());
+            bindString(statement, 30, track.getComment());
+            ReplayGain.GainValues gainValues = track.getReplayGain();
+            statement.bindDouble(31, gainValues.getTrackGain());
+            statement.bindDouble(32, gainValues.getAlbumGain());
+        }
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Replaces tags of a file. Tags not in tag table are ignored.
+     * To be called within a transaction.
+     */
+    private void replaceTags(int idFile, List<String> tags) {
+        SQLiteStatement stmtTagsDelete = statements.get("DELETE FROM " + TABLE_TAG_FILE //NON-NLS
+                + " WHERE " + COL_TAG_FILE_ID_FILE + "=?"); //NON-NLS
+        stmtTagsDelete.bindLong(1, idFile);
+        stmtTagsDelete.executeUpdateDelete();
+        if (tags == null) {
+            return;
+        }
+        SQLiteStatement stmtTags = statements.get("INSERT OR IGNORE INTO " + TABLE_TAG_FILE //NON-NLS
+                + " (" + COL_TAG_FILE_ID_FILE + ", " + COL_TAG_FILE_ID_TAG + ")" //NON-NLS
+                + " SELECT ?, " + COL_TAG_ID + " FROM " + TABLE_TAG + " WHERE " + COL_TAG_VALUE + "=?"); //NON-NLS
+        for (String tag : tags) {
+            stmtTags.bindLong(1, idFile);
+            stmtTags.bindString(2, tag);
+            stmtTags.executeInsert();
+        }
+    }
+
+    /**
+     * Adds tags to a file, until one is not in tag table.
+     * To be called within writer lock and a transaction.
+     *
+     * @return false if a tag is not in tag table
+     */
+    private boolean addTags(int idFile, List<String> tags) {
+        for (String tag : tags) {
+            if (!addTag(idFile, tag)) {
+                return false;
             }
-        } catch (SQLiteException | IllegalStateException ex) {
-            Log.e(TAG, "addTag(" + idFile + "," + tag + ")", ex); //NON-NLS
+        }
+        return true;
+    }
+
+    /**
+     * To be called within writer lock (and a transaction)
+     *
+     * @return false if tag is not in tag table
+     */
+    private boolean addTag(int idFile, String tag) {
+        int idTag = getIdTag(tag);
+        if (idTag > 0) {
+            SQLiteStatement statement = statements.get("INSERT OR IGNORE INTO " + TABLE_TAG_FILE //NON-NLS
+                    + " (" + COL_TAG_FILE_ID_FILE + ", " + COL_TAG_FILE_ID_TAG + ") VALUES (?, ?)"); //NON-NLS
+            statement.bindLong(1, idFile);
+            statement.bindLong(2, idTag);
+            statement.executeInsert();
+            return true;
         }
         return false;
     }
 
-    synchronized boolean updateTrack(Track track, boolean statsOnly) {
+    boolean updateTrack(Track track, boolean statsOnly) {
+        lockWriter();
+        boolean updated = false;
         try {
-            if (track.getIdFileRemote() >= 0 && db.update(TABLE_TRACKS, TrackToValues(track, statsOnly),
-                    COL_TRACKS_ID_REMOTE + " = " + track.getIdFileRemote(), null) == 1) {
-                removeTags(track.getIdFileRemote());
-                for (String tag : track.getTags(false)) {
-                    if (!addTag(track.getIdFileRemote(), tag)) { //NON-NLS
-                        return false;
+            try {
+                db.beginTransaction();
+                try {
+                    String[] columns = statsOnly ? COLUMNS_STATS : COLUMNS_ALL;
+                    SQLiteStatement statement = statements.get(statsOnly ? SQL_UPDATE_TRACK_STATS : SQL_UPDATE_TRACK);
+                    bindTrack(statement, track, statsOnly);
+                    statement.bindLong(columns.length + 1, track.getIdFileRemote());
+                    if (track.getIdFileRemote() >= 0 && statement.executeUpdateDelete() == 1) {
+                        removeTags(track.getIdFileRemote());
+                        updated = addTags(track.getIdFileRemote(), track.getTags(false));
                     }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
                 }
-                return true;
+                return updated;
+            } catch (SQLiteException | IllegalStateException ex) {
+                Log.e(TAG, "updateTrack(" + track.getIdFileRemote() + "," + track + ")", ex); //NON-NLS
+                updated = false;
             }
-        } catch (SQLiteException | IllegalStateException ex) {
-            Log.e(TAG, "updateTrack(" + track.getIdFileRemote() + "," + track + ")", ex); //NON-NLS
+            return false;
+        } finally {
+            unlockWriterChanged(updated ? Collections.singletonList(getSnapshotChange(track, statsOnly)) : null);
         }
-        return false;
     }
 
-    synchronized int deleteTrack(String path) {
+    int deleteTrack(String path) {
+        lockWriter();
+        int idFileRemote = -1;
+        int deleted = -1;
         try {
-            return db.delete(TABLE_TRACKS, COL_TRACKS_PATH + " = \"" + path + "\"", null); //NON-NLS
-        } catch (SQLiteException | IllegalStateException ex) { //NON-NLS //NON-NLS
-            Log.e(TAG, "deleteTrack(" + path + ")", ex); //NON-NLS
+            try {
+                idFileRemote = getTrackIdFileRemote(path).getKey();
+                SQLiteStatement statement = statements.get("DELETE FROM " + TABLE_TRACKS //NON-NLS
+                        + " WHERE " + COL_TRACKS_PATH + "=?"); //NON-NLS
+                statement.bindString(1, path);
+                deleted = statement.executeUpdateDelete();
+                return deleted;
+            } catch (SQLiteException | IllegalStateException ex) { //NON-NLS //NON-NLS
+                Log.e(TAG, "deleteTrack(" + path + ")", ex); //NON-NLS
+            }
+            return -1;
+        } finally {
+            unlockWriterChanged(deleted == 1 ? Collections.singletonList(getDeleteChange(idFileRemote)) : null);
         }
-        return -1;
     }
 
-    synchronized int deleteTrack(int idFileServer) {
+    int deleteTrack(int idFileServer) {
+        lockWriter();
+        int idFileRemote = -1;
+        int deleted = -1;
         try {
-            return db.delete(TABLE_TRACKS, COL_TRACKS_ID_SERVER + " = " + idFileServer, null);
-        } catch (SQLiteException | IllegalStateException ex) { //NON-NLS //NON-NLS
-            Log.e(TAG, "deleteTrack(" + idFileServer + ")", ex); //NON-NLS
+            try {
+                idFileRemote = getTrackIdFileRemote(idFileServer);
+                SQLiteStatement statement = statements.get("DELETE FROM " + TABLE_TRACKS //NON-NLS
+                        + " WHERE " + COL_TRACKS_ID_SERVER + "=?"); //NON-NLS
+                statement.bindLong(1, idFileServer);
+                deleted = statement.executeUpdateDelete();
+                return deleted;
+            } catch (SQLiteException | IllegalStateException ex) { //NON-NLS //NON-NLS
+                Log.e(TAG, "deleteTrack(" + idFileServer + ")", ex); //NON-NLS
+            }
+            return -1;
+        } finally {
+            unlockWriterChanged(deleted == 1 ? Collections.singletonList(getDeleteChange(idFileRemote)) : null);
         }
-        return -1;
     }
 
     private List<Track> getTracks(Cursor cursor, boolean statsOnly) {
         List<Track> tracks = new ArrayList<>();
         if (cursor != null && cursor.moveToFirst()) {
+            TrackCursorMapper mapper = getMapper(cursor, statsOnly);
             do {
-                Track track = cursorToTrack(cursor, statsOnly);
+                Track track = mapper.map(cursor);
                 tracks.add(track);
             } while (cursor.moveToNext());
         }
         return tracks;
     }
 
-    private synchronized ContentValues TrackToValues(Track track, boolean statsOnly) {
-        ContentValues values = new ContentValues();
-        values.put(COL_TRACKS_GENRE, track.getGenre());
-        values.put(COL_TRACKS_RATING, track.getRating());
-        values.put(COL_TRACKS_ADDED_DATE, track.getFormattedAddedDate());
-        values.put(COL_TRACKS_LAST_PLAYED, track.getFormattedLastPlayed());
-        values.put(COL_TRACKS_PLAY_COUNTER, track.getPlayCounter());
-        if (!statsOnly) {
-            values.put(COL_TRACKS_ID_SERVER, track.getIdFileServer());
-            values.put(COL_TRACKS_PATH, track.getPath());
-            values.put(COL_TRACKS_TITLE, track.getTitle());
-            values.put(COL_TRACKS_ALBUM, track.getAlbum());
-            values.put(COL_TRACKS_ARTIST, track.getArtist());
-            values.put(COL_TRACKS_SIZE, track.getSize());
-            values.put(COL_TRACKS_LENGTH, track.getLength());
-            values.put(COL_TRACKS_STATUS, track.getStatus().name());
-            values.put(COL_TRACKS_ID_PATH, track.getIdPath());
-            values.put(COL_TRACKS_ALBUM_ARTIST, track.getAlbumArtist());
-            values.put(COL_TRACKS_YEAR, track.getYear());
-            values.put(COL_TRACKS_TRACK_NO, track.getTrackNo());
-            values.put(COL_TRACKS_TRACK_TOTAL, track.getTrackTotal());
-            values.put(COL_TRACKS_DISC_NO, track.getDiscNo());
-            values.put(COL_TRACKS_DISC_TOTAL, track.getDiscTotal());
-            values.put(COL_TRACKS_BITRATE, track.getBitrate());
-            values.put(COL_TRACKS_FORMAT, track.getFormat());
-            values.put(COL_TRACKS_BPM, track.getBPM());
-            values.put(COL_TRACKS_MODIF_DATE, HelperDateTime.formatUTCtoSqlUTC(track.getModifDate()));
-            values.put(COL_TRACKS_CHECKED_FLAG, track.getCheckedFlag());
-            values.put(COL_TRACKS_COPYRIGHT, track.getCopyRight());
-            values.put(COL_TRACKS_COVER_HASH, track.getCoverHash());
-            values.put(COL_TRACKS_PATH_MODIF_DATE, HelperDateTime.formatUTCtoSqlUTC(track.getPathModifDate()));
-            values.put(COL_TRACKS_PATH_MB_ID, track.getPathMbId());
-            values.put(COL_TRACKS_COMMENT, track.getComment());
-            ReplayGain.GainValues gainValues = track.getReplayGain();
-            values.put(COL_TRACKS_TRACK_GAIN, gainValues.getTrackGain());
-            values.put(COL_TRACKS_ALBUM_GAIN, gainValues.getAlbumGain());
-        }
-        return values;
-    }
-
+    /**
+     * Maps a single row. Use getMapper() to map more rows of the same cursor.
+     *
+     * @param c         cursor, at the row to map
+     * @param statsOnly only map statistics columns
+     * @return track from current row
+     */
     public Track cursorToTrack(Cursor c, boolean statsOnly) {
-        int idFileRemote = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_ID_REMOTE));
-        int idFileServer = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_ID_SERVER));
-        double rating = c.getDouble(c.getColumnIndexOrThrow(COL_TRACKS_RATING));
-        String status = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_STATUS));
-        long size = c.getLong(c.getColumnIndexOrThrow(COL_TRACKS_SIZE));
-        int length = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_LENGTH));
-        String path = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_PATH));
-        String genre = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_GENRE));
-        Date addedDate = HelperDateTime.parseSqlUtc(
-                c.getString(c.getColumnIndexOrThrow(COL_TRACKS_ADDED_DATE)));
-        Date lastPlayed = HelperDateTime.parseSqlUtc(
-                c.getString(c.getColumnIndexOrThrow(COL_TRACKS_LAST_PLAYED)));
-        int playCounter = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_PLAY_COUNTER));
-        String idPath = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_ID_PATH));
-        Date modifDate = HelperDateTime.parseSqlUtc(
-                c.getString(c.getColumnIndexOrThrow(COL_TRACKS_MODIF_DATE)));
-
-        String title = "";
-        String album = "";
-        String artist = "";
-        String albumArtist = "";
-        String year = "";
-        int trackNo = -1;
-        int trackTotal = -1;
-        int discNo = -1;
-        int discTotal = -1;
-        String bitRate = "";
-        String format = "";
-        double bpm = -1;
-        String checkedFlag = "";
-        String copyRight = "";
-        String coverHash = "";
-        Date pathModifDate = new Date(0);
-        String pathMbid = "";
-        String comment = "";
-        float trackGain = -1;
-        float albumGain = -1;
+        return getMapper(c, statsOnly).map(c);
+    }
 
-        if (!statsOnly) {
-            title = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_TITLE));
-            album = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_ALBUM));
-            artist = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_ARTIST));
-            albumArtist = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_ALBUM_ARTIST));
-            year = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_YEAR));
-            trackNo = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_TRACK_NO));
-            trackTotal = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_TRACK_TOTAL));
-            discNo = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_DISC_NO));
-            discTotal = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_DISC_TOTAL));
-            bitRate = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_BITRATE));
-            format = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_FORMAT));
-            bpm = c.getDouble(c.getColumnIndexOrThrow(COL_TRACKS_BPM));
-            checkedFlag = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_CHECKED_FLAG));
-            copyRight = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_COPYRIGHT));
-            coverHash = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_COVER_HASH));
-            pathModifDate = HelperDateTime.parseSqlUtc(
-                    c.getString(c.getColumnIndexOrThrow(COL_TRACKS_PATH_MODIF_DATE)));
-            pathMbid = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_PATH_MB_ID));
-            comment = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_COMMENT));
-            trackGain = c.getFloat(c.getColumnIndexOrThrow(COL_TRACKS_TRACK_GAIN));
-            albumGain = c.getFloat(c.getColumnIndexOrThrow(COL_TRACKS_ALBUM_GAIN));
-        }
-
-        //TODO Use below in sync or merge processes (DO NOT store in db, or values from remote)
-//        boolean deleted=c.getString(c.getColumnIndexOrThrow(COL_));
-//        int previousPlayCounter=c.getInt(c.getColumnIndexOrThrow(COL_));
-//        Date genreModifDate=c.getString(c.getColumnIndexOrThrow(COL_));
-//        Date tagsModifDate=c.getString(c.getColumnIndexOrThrow(COL_));
-//        Date ratingModifDate=c.getString(c.getColumnIndexOrThrow(COL_));
-
-        return new Track(pathModifDate, pathMbid, comment, idPath, albumArtist, year,
-                trackNo, trackTotal, discNo, discTotal, bitRate, format, bpm, modifDate, checkedFlag,
-                copyRight, getAppDataPath, idFileRemote, idFileServer, rating, title, album, artist,
-                coverHash, path, genre, addedDate, lastPlayed, playCounter, status, size, length, //NON-NLS
-                trackGain, albumGain);
+    /**
+     * @param cursor    cursor which rows are to be mapped
+     * @param statsOnly only map statistics columns
+     * @return a mapper, with column indexes of given cursor resolved
+     */
+    public TrackCursorMapper getMapper(Cursor cursor, boolean statsOnly) {
+        return new TrackCursorMapper(cursor, statsOnly, getAppDataPath);
     }
 
     List<String> getGenres() {
-        List<String> genres = new ArrayList<>();
-        Cursor cursor = db.query(TABLE_GENRE, new String[]{ COL_GENRE_VALUE },"",null, null, null, COL_GENRE_VALUE);
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                genres.add(cursor.getString(0));
-            } while (cursor.moveToNext());
-        }
-        if (cursor != null) {
-            cursor.close();
+        locks.lockShared();
+        try {
+            List<String> genres = new ArrayList<>();
+            Cursor cursor = dbReader.query(TABLE_GENRE, new String[]{ COL_GENRE_VALUE },"",null, null, null, COL_GENRE_VALUE);
+            if (cursor != null && cursor.moveToFirst()) {
+                do {
+                    genres.add(cursor.getString(0));
+                } while (cursor.moveToNext());
+            }
+            if (cursor != null) {
+                cursor.close();
+            }
+            return genres;
+        } finally {
+            locks.unlockShared();
         }
-        return genres;
     }
 
     public Map<Integer, String> getTags() {
-        Map<Integer, String> tags = new LinkedHashMap<>();
-        Cursor cursor = db.query(TABLE_TAG, new String[]{ COL_TAG_ID, COL_TAG_VALUE },"",null, null, null, COL_TAG_VALUE);
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                tags.put(cursor.getInt(0), cursor.getString(1));
-            } while (cursor.moveToNext());
-        }
-        if (cursor != null) {
-            cursor.close();
+        locks.lockShared();
+        try {
+            Map<Integer, String> tags = new LinkedHashMap<>();
+            Cursor cursor = dbReader.query(TABLE_TAG, new String[]{ COL_TAG_ID, COL_TAG_VALUE },"",null, null, null, COL_TAG_VALUE);
+            if (cursor != null && cursor.moveToFirst()) {
+                do {
+                    tags.put(cursor.getInt(0), cursor.getString(1));
+                } while (cursor.moveToNext());
+            }
+            if (cursor != null) {
+                cursor.close();
+            }
+            return tags;
+        } finally {
+            locks.unlockShared();
         }
-        return tags;
     }
 
     ArrayList<String> getTags(int idFile) {
-        ArrayList<String> tags = new ArrayList<>();
-        Cursor cursor = db.rawQuery("SELECT "+COL_TAG_VALUE+" FROM "+TABLE_TAG+" T " + //NON-NLS //NON-NLS //NON-NLS
-                "JOIN "+TABLE_TAG_FILE+" F ON T."+COL_TAG_ID+"=F."+COL_TAG_FILE_ID_TAG+" " + //NON-NLS //NON-NLS
-                "WHERE F."+COL_TAG_FILE_ID_FILE+"=? " + //NON-NLS
-                "ORDER BY "+COL_TAG_VALUE, new String[]{String.valueOf(idFile)}); //NON-NLS
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                tags.add(cursor.getString(0));
-            } while (cursor.moveToNext());
-        }
-        if (cursor != null) {
-            cursor.close();
+        locks.lockShared();
+        try {
+            tagQueries.incrementAndGet();
+            ArrayList<String> tags = new ArrayList<>();
+            Cursor cursor = db.rawQuery("SELECT "+COL_TAG_VALUE+" FROM "+TABLE_TAG+" T " + //NON-NLS //NON-NLS //NON-NLS
+                    "JOIN "+TABLE_TAG_FILE+" F ON T."+COL_TAG_ID+"=F."+COL_TAG_FILE_ID_TAG+" " + //NON-NLS //NON-NLS
+                    "WHERE F."+COL_TAG_FILE_ID_FILE+"=? " + //NON-NLS
+                    "ORDER BY "+COL_TAG_VALUE, new String[]{String.valueOf(idFile)}); //NON-NLS
+            if (cursor != null && cursor.moveToFirst()) {
+                do {
+                    tags.add(cursor.getString(0));
+                } while (cursor.moveToNext());
+            }
+            if (cursor != null) {
+                cursor.close();
+            }
+            return tags;
+        } finally {
+            locks.unlockShared();
         }
-        return tags;
     }
 
-    synchronized int addTag(String tag) {
-        int idTag = -1;
+    /**
+     * Tags of several tracks, read in chunks of MAX_BINDINGS ids
+     *
+     * @param idFiles idFileRemote of tracks
+     * @return sorted tags by idFileRemote. Tracks without tags get an empty list
+     */
+    Map<Integer, ArrayList<String>> getTags(Collection<Integer> idFiles) {
+        locks.lockShared();
         try {
-            //Add the tag in db if it does not exist
-            ContentValues values = new ContentValues(); //NON-NLS //NON-NLS //NON-NLS //NON-NLS //NON-NLS
-            values.put(COL_TAG_VALUE, tag); //NON-NLS
-            idTag = (int) db.insertWithOnConflict(TABLE_TAG, BaseColumns._ID, values, //NON-NLS
-                    SQLiteDatabase.CONFLICT_IGNORE);
-        } catch (SQLiteException | IllegalStateException ex) { //NON-NLS //NON-NLS
-            Log.e(TAG, "addTag(" + tag + ")", ex); //NON-NLS
+            Map<Integer, ArrayList<String>> tags = new HashMap<>();
+            List<String> args = new ArrayList<>();
+            for (int idFile : idFiles) {
+                tags.put(idFile, new ArrayList<>());
+                args.add(String.valueOf(idFile));
+            }
+            long startTime = System.currentTimeMillis();
+            for (int i = 0; i < args.size(); i += MAX_BINDINGS) {
+                List<String> chunk = args.subList(i, Math.min(i + MAX_BINDINGS, args.size()));
+                tagQueries.incrementAndGet();
+                try (Cursor cursor = dbReader.rawQuery("SELECT F."+COL_TAG_FILE_ID_FILE+", T."+COL_TAG_VALUE //NON-NLS
+                        + " FROM "+TABLE_TAG_FILE+" F JOIN "+TABLE_TAG+" T ON T."+COL_TAG_ID+"=F."+COL_TAG_FILE_ID_TAG //NON-NLS
+                        + " WHERE F."+COL_TAG_FILE_ID_FILE+" IN ("+PlaylistQuery.getBindings(chunk.size())+")" //NON-NLS
+                        + " ORDER BY T."+COL_TAG_VALUE, chunk.toArray(new String[0]))) { //NON-NLS
+                    while (cursor.moveToNext()) {
+                        ArrayList<String> trackTags = tags.get(cursor.getInt(0));
+                        if (trackTags != null) {
+                            trackTags.add(StringPool.get().intern(cursor.getString(1)));
+                        }
+                    }
+                } catch (SQLiteException | IllegalStateException ex) {
+                    Log.e(TAG, "getTags(" + chunk.size() + " files)", ex); //NON-NLS
+                }
+            }
+            Log.i(TAG, "getTags(" + args.size() + " files) :" + (System.currentTimeMillis() - startTime) + " ms"); //NON-NLS
+            return tags;
+        } finally {
+            locks.unlockShared();
+        }
+    }
+
+    private void setTags(List<Track> tracks) {
+        readTags(tracks, true);
+    }
+
+    /**
+     * Reads tags of tracks in bulk (one query per MAX_BINDINGS tracks), rather than one query per track
+     * as Track.getTags() does
+     *
+     * @param tracks tracks to read tags of
+     * @param force  false to only read tags of tracks which tags were not read yet
+     */
+    void readTags(Collection<Track> tracks, boolean force) {
+        List<Track> toRead = new ArrayList<>();
+        List<Integer> idFiles = new ArrayList<>();
+        for (Track track : tracks) {
+            if (track != null && track.getIdFileRemote() > -1 && (force || !track.isTagsRead())) {
+                toRead.add(track);
+                idFiles.add(track.getIdFileRemote());
+            }
+        }
+        if (toRead.isEmpty()) {
+            return;
+        }
+        Map<Integer, ArrayList<String>> tags = getTags(idFiles);
+        for (Track track : toRead) {
+            track.setTags(tags.get(track.getIdFileRemote()));
         }
-        return idTag; //NON-NLS
     }
 
-    synchronized int deleteTag(int idTag) { //NON-NLS
+    /**
+     * @return number of tag queries issued (single track and bulk), to compare with number of tracks
+     */
+    long getTagQueries() {
+        return tagQueries.get();
+    }
+
+    int addTag(String tag) {
+        lockWriter();
         try {
-            return db.delete(TABLE_TAG, COL_TAG_ID+" = \"" + idTag + "\"", null); //NON-NLS
-        } catch (SQLiteException | IllegalStateException ex) {
-            Log.e(TAG, "deleteTag(" + idTag + ")", ex); //NON-NLS //NON-NLS
+            int idTag = -1;
+            try {
+                //Add the tag in db if it does not exist
+                SQLiteStatement statement = statements.get("INSERT OR IGNORE INTO " + TABLE_TAG //NON-NLS
+                        + " (" + COL_TAG_VALUE + ") VALUES (?)"); //NON-NLS
+                statement.bindString(1, tag);
+                idTag = (int) statement.executeInsert();
+            } catch (SQLiteException | IllegalStateException ex) { //NON-NLS //NON-NLS
+                Log.e(TAG, "addTag(" + tag + ")", ex); //NON-NLS
+            }
+            return idTag; //NON-NLS
+        } finally {
+            unlockWriterChanged(Collections.emptyList());
         }
-        return -1;
     }
 
-    synchronized boolean removeTag(int idFile, String tag) {
+    int deleteTag(int idTag) { //NON-NLS
+        lockWriter();
         try {
-            int idTag = getIdTag(tag);
-            if (idTag > 0) { //NON-NLS
-                db.delete(TABLE_TAG_FILE, COL_TAG_FILE_ID_FILE+"=? AND "+COL_TAG_FILE_ID_TAG+"=?", //NON-NLS
-                        new String[]{String.valueOf(idFile), String.valueOf(idTag)});
+            try {
+                SQLiteStatement statement = statements.get("DELETE FROM " + TABLE_TAG //NON-NLS
+                        + " WHERE " + COL_TAG_ID + "=?"); //NON-NLS
+                statement.bindLong(1, idTag);
+                return statement.executeUpdateDelete();
+            } catch (SQLiteException | IllegalStateException ex) {
+                Log.e(TAG, "deleteTag(" + idTag + ")", ex); //NON-NLS //NON-NLS
             }
-            return true; //NON-NLS //NON-NLS
-        } catch (SQLiteException | IllegalStateException ex) {
-            Log.e(TAG, "removeTag(" + idFile + "," + tag + ")", ex); //NON-NLS
+            return -1;
+        } finally {
+            unlockWriterChanged();
         }
-        return false;
     }
 
-    private synchronized boolean removeTags(int idFile) { //NON-NLS
+    /**
+     * To be called within writer lock (and a transaction)
+     */
+    private void removeTag(int idFile, String tag) {
+        int idTag = getIdTag(tag);
+        if (idTag > 0) { //NON-NLS
+            SQLiteStatement statement = statements.get("DELETE FROM " + TABLE_TAG_FILE //NON-NLS
+                    + " WHERE " + COL_TAG_FILE_ID_FILE + "=? AND " + COL_TAG_FILE_ID_TAG + "=?"); //NON-NLS
+            statement.bindLong(1, idFile);
+            statement.bindLong(2, idTag);
+            statement.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * To be called within writer lock (and a transaction)
+     */
+    private void removeTags(int idFile) { //NON-NLS
+        SQLiteStatement statement = statements.get("DELETE FROM " + TABLE_TAG_FILE //NON-NLS
+                + " WHERE " + COL_TAG_FILE_ID_FILE + "=?"); //NON-NLS
+        statement.bindLong(1, idFile);
+        statement.executeUpdateDelete();
+    }
+
+    /**
+     * To be called within writer lock
+     *
+     * @return id of tag, -1 if not in tag table
+     */
+    private int getIdTag(String tag) { //NON-NLS
         try {
-            db.delete(TABLE_TAG_FILE, COL_TAG_FILE_ID_FILE+"=?", //NON-NLS
-                    new String[]{String.valueOf(idFile)});
-            return true;
-        } catch (SQLiteException | IllegalStateException ex) { //NON-NLS //NON-NLS
-            Log.e(TAG, "removeTags(" + idFile + ")", ex); //NON-NLS
+            SQLiteStatement statement = statements.get("SELECT " + COL_TAG_ID + " FROM " + TABLE_TAG //NON-NLS
+                    + " WHERE " + COL_TAG_VALUE + "=?"); //NON-NLS
+            statement.bindString(1, tag);
+            return (int) statement.simpleQueryForLong();
+        } catch (SQLiteDoneException ignored) {
+            return -1;
         }
-        return false;
     }
- //NON-NLS
-    private synchronized int getIdTag(String tag) { //NON-NLS
-        int idTag = -1;
-        try (Cursor cursor = db.query(TABLE_TAG, new String[]{ COL_TAG_ID }, COL_TAG_VALUE+"=?", //NON-NLS //NON-NLS
-                new String[]{tag}, "", "", "")) {
-            if (cursor.getCount() > 0) { //NON-NLS
-                cursor.moveToFirst();
-                idTag = cursor.getInt(0);
+
+    boolean updateStatus(Track track) {
+        lockWriter();
+        boolean updated = false;
+        try {
+            try {
+                Log.d(TAG, "updateStatus(" + track.getIdFileServer() + "): " + track.getStatus()); //NON-NLS
+                SQLiteStatement statement = statements.get("UPDATE " + TABLE_TRACKS //NON-NLS
+                        + " SET " + COL_TRACKS_STATUS + "=? WHERE " + COL_TRACKS_ID_SERVER + "=?"); //NON-NLS
+                statement.bindString(1, track.getStatus().name());
+                statement.bindLong(2, track.getIdFileServer());
+                statement.executeUpdateDelete();
+                updated = true;
+                return true;
+            } catch (SQLiteException | IllegalStateException ex) {
+                Log.e(TAG, "updateStatus(" + track.getIdFileServer() + "): " + track.getStatus(), ex); //NON-NLS
             }
-        } catch (SQLiteException | IllegalStateException ex) { //NON-NLS //NON-NLS //NON-NLS //NON-NLS
-            Log.e(TAG, "getIdTag(" + tag + ")", ex); //NON-NLS
+            return false;
+        } finally {
+            unlockWriterChanged(updated ? Collections.singletonList(getStatusChange(track)) : null);
         }
-        return idTag; //NON-NLS
     }
 
-    synchronized boolean updateStatus(Track track) {
+    /**
+     * To be called within writer lock (and a transaction)
+     */
+    private void updateGenre(int idFileRemote, String genre) {
+        SQLiteStatement statement = statements.get("UPDATE " + TABLE_TRACKS //NON-NLS
+                + " SET " + COL_TRACKS_GENRE + "=? WHERE " + COL_TRACKS_ID_REMOTE + "=?"); //NON-NLS
+        statement.bindString(1, genre);
+        statement.bindLong(2, idFileRemote);
+        statement.executeUpdateDelete();
+    }
+
+    /**
+     * To be called within writer lock (and a transaction)
+     */
+    private void updateRating(int idFileRemote, double rating) {
+        SQLiteStatement statement = statements.get("UPDATE " + TABLE_TRACKS //NON-NLS
+                + " SET " + COL_TRACKS_RATING + "=? WHERE " + COL_TRACKS_ID_REMOTE + "=?"); //NON-NLS
+        statement.bindDouble(1, rating);
+        statement.bindLong(2, idFileRemote);
+        statement.executeUpdateDelete();
+    }
+
+    /**
+     * To be called within writer lock (and a transaction)
+     */
+    private void updatePlayCounterAndLastPlayed(int idFileRemote, int playCounter, long lastPlayed) {
+        SQLiteStatement statement = statements.get("UPDATE " + TABLE_TRACKS //NON-NLS
+                + " SET " + COL_TRACKS_PLAY_COUNTER + "=?, " + COL_TRACKS_LAST_PLAYED + "=?" //NON-NLS
+                + " WHERE " + COL_TRACKS_ID_REMOTE + "=?"); //NON-NLS
+        statement.bindLong(1, playCounter);
+        statement.bindLong(2, lastPlayed);
+        statement.bindLong(3, idFileRemote);
+        statement.executeUpdateDelete();
+    }
+
+    /**
+     * Applies pending changes of TrackWriteQueue in a single transaction.
+     * Snapshot is kept current, and library versioned once committed.
+     *
+     * @param writes changes to apply
+     * @return true if applied, false if rolled back
+     */
+    boolean applyTrackWrites(Collection<TrackWriteQueue.TrackWrite> writes) {
+        lockWriter();
         try {
-            Log.d(TAG, "updateStatus(" + track.getIdFileServer() + "): " + track.getStatus()); //NON-NLS
-            ContentValues values = new ContentValues();
-            values.put(COL_TRACKS_STATUS, track.getStatus().name());
-            db.update(TABLE_TRACKS,
-                    values,
-                    COL_TRACKS_ID_SERVER + " = " + track.getIdFileServer(), null);
+            db.beginTransaction();
+            try {
+                for (TrackWriteQueue.TrackWrite write : writes) {
+                    if (write.rating != null) {
+                        updateRating(write.idFileRemote, write.rating);
+                    }
+                    if (write.genre != null) {
+                        updateGenre(write.idFileRemote, write.genre);
+                    }
+                    if (write.playCounter != null) {
+                        updatePlayCounterAndLastPlayed(write.idFileRemote, write.playCounter, write.lastPlayed);
+                    }
+                    for (Map.Entry<String, Boolean> tag : write.tags.entrySet()) {
+                        if (tag.getValue()) {
+                            addTag(write.idFileRemote, tag.getKey());
+                        } else {
+                            removeTag(write.idFileRemote, tag.getKey());
+                        }
+                    }
+                    markDirty(write.idFileRemote);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            snapshotChanges.addAll(writes);
+            locks.setChanged();
             return true;
         } catch (SQLiteException | IllegalStateException ex) {
-            Log.e(TAG, "updateStatus(" + track.getIdFileServer() + "): " + track.getStatus(), ex); //NON-NLS
+            Log.e(TAG, "applyTrackWrites(" + writes.size() + ")", ex); //NON-NLS
+            return false;
+        } finally {
+            unlockWriter();
         }
-        return false;
     }
 
-    synchronized int updateGenre(Track track) {
-        try {
-            ContentValues values = new ContentValues();
-            values.put(COL_TRACKS_GENRE, track.getGenre());
-            return db.update(TABLE_TRACKS, //NON-NLS
-                    values,
-                    COL_TRACKS_ID_REMOTE + " = " + track.getIdFileRemote(), null);
-        } catch (SQLiteException | IllegalStateException ex) {
-            Log.e(TAG, "updateGenre(" + track.getIdFileRemote() + ")", ex); //NON-NLS //NON-NLS
-        }
-        return -1;
+    private void markDirty(int idFileRemote) {
+        SQLiteStatement statement = statements.get("UPDATE " + TABLE_TRACKS //NON-NLS
+                + " SET " + COL_TRACKS_DIRTY + "=" + COL_TRACKS_DIRTY + "+1" //NON-NLS
+                + " WHERE " + COL_TRACKS_ID_REMOTE + "=?"); //NON-NLS
+        statement.bindLong(1, idFileRemote);
+        statement.executeUpdateDelete();
     }
 
-    synchronized int updateRating(Track track) {
+    /**
+     * @return dirty counter by idFileRemote, of tracks changed locally (REC only) since last merge
+     */
+    Map<Integer, Long> getDirtyTracks() {
+        locks.lockShared();
         try {
-            ContentValues values = new ContentValues();
-            values.put(COL_TRACKS_RATING, track.getRating());
-            return db.update(TABLE_TRACKS, //NON-NLS
-                    values,
-                    COL_TRACKS_ID_REMOTE + " = " + track.getIdFileRemote(), null);
-        } catch (SQLiteException | IllegalStateException ex) {
-            Log.e(TAG, "updateRating(" + track.getIdFileRemote() + ")", ex); //NON-NLS //NON-NLS
+            Map<Integer, Long> dirty = new HashMap<>();
+            try (Cursor cursor = dbReader.rawQuery("SELECT " + COL_TRACKS_ID_REMOTE + ", " + COL_TRACKS_DIRTY //NON-NLS
+                    + " FROM " + TABLE_TRACKS + " WHERE " + COL_TRACKS_DIRTY + ">0" //NON-NLS
+                    + " AND " + COL_TRACKS_STATUS + "=?", new String[]{Track.Status.REC.name()})) { //NON-NLS
+                while (cursor.moveToNext()) {
+                    dirty.put(cursor.getInt(0), cursor.getLong(1));
+                }
+            } catch (SQLiteException | IllegalStateException ex) {
+                Log.e(TAG, "getDirtyTracks()", ex); //NON-NLS
+            }
+            return dirty;
+        } finally {
+            locks.unlockShared();
         }
-        return -1;
     }
 
-    synchronized int updatePlayCounterAndLastPlayed(Track track) {
+    /**
+     * Clears dirty state of merged tracks, unless they changed again since read by getDirtyTracks()
+     *
+     * @param merged dirty counter by idFileRemote, as read before merge
+     * @return true if cleared, false if rolled back
+     */
+    boolean clearDirty(Map<Integer, Long> merged) {
+        if (merged.isEmpty()) {
+            return true;
+        }
+        lockWriter();
         try {
-            ContentValues values = new ContentValues();
-            values.put(COL_TRACKS_PLAY_COUNTER, track.getPlayCounter());
-            values.put(COL_TRACKS_LAST_PLAYED, track.getFormattedLastPlayed());
-            return db.update(TABLE_TRACKS, //NON-NLS
-                    values,
-                    COL_TRACKS_ID_REMOTE + " = " + track.getIdFileRemote(), null);
-        } catch (SQLiteException | IllegalStateException ex) {
-            Log.e(TAG, "updatePlayCounterAndLastPlayed(" + track.getIdFileRemote() + ")", ex); //NON-NLS //NON-NLS
+            db.beginTransaction();
+            try {
+                SQLiteStatement statement = statements.get("UPDATE " + TABLE_TRACKS //NON-NLS
+                        + " SET " + COL_TRACKS_DIRTY + "=0" //NON-NLS
+                        + WHERE_DIRTY_UNCHANGED);
+                for (Map.Entry<Integer, Long> entry : merged.entrySet()) {
+                    statement.bindLong(1, entry.getKey());
+                    statement.bindLong(2, entry.getValue());
+                    statement.executeUpdateDelete();
+                }
+                db.setTransactionSuccessful();
+                return true;
+            } catch (SQLiteException | IllegalStateException ex) {
+                Log.e(TAG, "clearDirty(" + merged.size() + ")", ex); //NON-NLS
+                return false;
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            //Dirty state is not in snapshot: versioned, snapshot kept current
+            unlockWriterChanged(Collections.emptyList());
         }
-        return -1;
     }
 
-    synchronized boolean addGenre(String genre) { //NON-NLS
+    boolean addGenre(String genre) { //NON-NLS
+        lockWriter();
         try {
-            //Add the genre in db if it does not exist //NON-NLS //NON-NLS //NON-NLS
-            ContentValues values = new ContentValues(); //NON-NLS //NON-NLS
-            values.put(COL_GENRE_VALUE, genre); //NON-NLS
-            db.insertWithOnConflict(TABLE_GENRE, BaseColumns._ID, values, //NON-NLS
-                    SQLiteDatabase.CONFLICT_IGNORE);
-            return true; //NON-NLS //NON-NLS
-        } catch (SQLiteException | IllegalStateException ex) { //NON-NLS //NON-NLS
-            Log.e(TAG, "addGenre(" + genre + ")", ex); //NON-NLS
-            return false; //NON-NLS
+            try {
+                //Add the genre in db if it does not exist //NON-NLS //NON-NLS //NON-NLS
+                SQLiteStatement statement = statements.get("INSERT OR IGNORE INTO " + TABLE_GENRE //NON-NLS
+                        + " (" + COL_GENRE_VALUE + ") VALUES (?)"); //NON-NLS
+                statement.bindString(1, genre);
+                statement.executeInsert();
+                return true; //NON-NLS //NON-NLS
+            } catch (SQLiteException | IllegalStateException ex) { //NON-NLS //NON-NLS
+                Log.e(TAG, "addGenre(" + genre + ")", ex); //NON-NLS
+                return false; //NON-NLS
+            }
+        } finally {
+            unlockWriterChanged(Collections.emptyList());
         }
     }
 
-    synchronized int deleteGenre(String genre) { //NON-NLS //NON-NLS //NON-NLS
+    int deleteGenre(String genre) { //NON-NLS //NON-NLS //NON-NLS
+        lockWriter();
         try {
-            return db.delete(TABLE_GENRE, COL_GENRE_VALUE+" = \"" + genre + "\"", null); //NON-NLS //NON-NLS
-        } catch (SQLiteException | IllegalStateException ex) {
-            Log.e(TAG, "deleteGenre(" + genre + ")", ex); //NON-NLS //NON-NLS //NON-NLS
+            try {
+                SQLiteStatement statement = statements.get("DELETE FROM " + TABLE_GENRE //NON-NLS
+                        + " WHERE " + COL_GENRE_VALUE + "=?"); //NON-NLS
+                statement.bindString(1, genre);
+                return statement.executeUpdateDelete();
+            } catch (SQLiteException | IllegalStateException ex) {
+                Log.e(TAG, "deleteGenre(" + genre + ")", ex); //NON-NLS //NON-NLS //NON-NLS
+            }
+            return -1;
+        } finally {
+            unlockWriterChanged(Collections.emptyList());
         }
-        return -1;
     }
 
     /**
@@ -675,48 +1517,111 @@ public class MusicLibrary {
      * @param userPath       User path (new one) to exclude from deletion //NON-NLS
      * @return the number of rows affected.
      */
-    synchronized int deleteTrack(File getAppDataPath, String userPath) { //NON-NLS //NON-NLS
+    int deleteTrack(File getAppDataPath, String userPath) { //NON-NLS //NON-NLS
+        lockWriter();
         try {
-            return db.delete(TABLE_TRACKS,
-                    COL_TRACKS_PATH + " NOT LIKE \"" + getAppDataPath.getAbsolutePath() + "%\" " + //NON-NLS
-                            "AND " + COL_TRACKS_PATH + " NOT LIKE \"" + userPath + "%\"", null); //NON-NLS
-        } catch (SQLiteException | IllegalStateException ex) { //NON-NLS
-            Log.e(TAG, "deleteTrack(" + getAppDataPath.getAbsolutePath() + "\", \"" + userPath + "\")", ex); //NON-NLS
+            try {
+                return db.delete(TABLE_TRACKS,
+                        COL_TRACKS_PATH + " NOT LIKE \"" + getAppDataPath.getAbsolutePath() + "%\" " + //NON-NLS
+                                "AND " + COL_TRACKS_PATH + " NOT LIKE \"" + userPath + "%\"", null); //NON-NLS
+            } catch (SQLiteException | IllegalStateException ex) { //NON-NLS
+                Log.e(TAG, "deleteTrack(" + getAppDataPath.getAbsolutePath() + "\", \"" + userPath + "\")", ex); //NON-NLS
+            }
+            return -1;
+        } finally {
+            unlockWriterChanged();
         }
-        return -1;
     }
 
     Cursor getAlbums() {
         return getAlbums(""); //NON-NLS
     }
 
+    /**
+     * @param search words to search (prefixes) in album, artist, albumArtist and title. Empty for all albums
+     * @return albums, ranked by the best score of their tracks when searching (matching album titles first)
+     */
     Cursor getAlbums(String search) {
-        Cursor cursor = null;
-        ArrayList<Track.Status> statuses = ActivityMain.getScope(true);
-        if(statuses.size()>0) {
-            try {
-                String query = "SELECT status, count(" + COL_TRACKS_ID_REMOTE + ") AS " + COL_TRACKS_PLAY_COUNTER + ", \n" + //NON-NLS //NON-NLS //NON-NLS
-                        "round(avg(" + COL_TRACKS_RATING + "), 2) AS " + COL_TRACKS_RATING + ", \n" + //NON-NLS //NON-NLS //NON-NLS
-                        "group_concat(distinct " + COL_TRACKS_GENRE + ") AS " + COL_TRACKS_GENRE + ", \n" + //NON-NLS //NON-NLS //NON-NLS //NON-NLS
-                        "group_concat(distinct " + COL_TRACKS_ARTIST + ") AS " + COL_TRACKS_ARTIST + ", \n" + //NON-NLS //NON-NLS
-                        COL_TRACKS_ALBUM + ", " + COL_TRACKS_COVER_HASH + ", " + COL_TRACKS_PATH + ", " + COL_TRACKS_ID_PATH + " \n"+ //NON-NLS
-                        "FROM tracks \n" +//NON-NLS
-                        " WHERE " + Playlist.getWhereStatus(statuses) +
-                        (search.isEmpty()?"":
-                                " AND (" + COL_TRACKS_ALBUM + " LIKE \"%"+search+"%\" " + //NON-NLS //NON-NLS //NON-NLS
-                                "OR " + COL_TRACKS_ARTIST + " LIKE \"%"+search+"%\" " + //NON-NLS //NON-NLS
-                                "OR " + COL_TRACKS_ALBUM_ARTIST + " LIKE \"%"+search+"%\" " + //NON-NLS
-                                "OR " + COL_TRACKS_TITLE + " LIKE \"%"+search+"%\") \n") + //NON-NLS
-                        " GROUP BY " + COL_TRACKS_ID_PATH + " \n" + //NON-NLS //NON-NLS
-                        " HAVING MIN(CASE status WHEN 'REC' THEN 1 WHEN 'LOCAL' THEN 2 ELSE 3 END) \n" +
-                        " ORDER BY " + COL_TRACKS_RATING + " DESC, " + COL_TRACKS_PLAY_COUNTER + " DESC, " + COL_TRACKS_ALBUM + ", " + COL_TRACKS_ARTIST; //NON-NLS
-                Log.i(TAG, query);
-                cursor = db.rawQuery(query, new String[]{}); //NON-NLS
-                Log.i(TAG, "getAlbums(): " + cursor.getCount()); //NON-NLS //NON-NLS
-            } catch (SQLiteException | IllegalStateException ex) { //NON-NLS
-                Log.e(TAG, "getAlbums()", ex); //NON-NLS
+        locks.lockShared();
+        try {
+            Cursor cursor = null;
+            ArrayList<Track.Status> statuses = ActivityMain.getScope(true);
+            if(statuses.size()>0) {
+                try {
+                    String match = SearchQuery.getMatch(search, null);
+                    String query;
+                    String[] args;
+                    if (match.isEmpty()) {
+                        //Read from summaries: an album has either server or LOCAL tracks (MediaStore idPath),
+                        // and scope includes either all server statuses or none, so filtering by album status is enough
+                        query = "SELECT status, " + COL_ALBUM_NB_TRACKS + " AS " + COL_TRACKS_PLAY_COUNTER + ", \n" + //NON-NLS
+                                COL_TRACKS_RATING + ", " + COL_TRACKS_GENRE + ", " + COL_TRACKS_ARTIST + ", \n" + //NON-NLS
+                                COL_TRACKS_ALBUM + ", " + COL_TRACKS_COVER_HASH + ", " + COL_TRACKS_PATH + ", " + COL_TRACKS_ID_PATH + " \n" + //NON-NLS
+                                "FROM " + TABLE_ALBUM + " \n" + //NON-NLS
+                                " WHERE " + Playlist.getWhereStatus(statuses) +
+                                " ORDER BY " + COL_TRACKS_RATING + " DESC, " + COL_ALBUM_NB_TRACKS + " DESC, " //NON-NLS
+                                + COL_TRACKS_ALBUM + ", " + COL_TRACKS_ARTIST; //NON-NLS
+                        args = new String[]{};
+                    } else {
+                        query = "SELECT status, count(" + COL_TRACKS_ID_REMOTE + ") AS " + COL_TRACKS_PLAY_COUNTER + ", \n" + //NON-NLS //NON-NLS //NON-NLS
+                                "round(avg(" + COL_TRACKS_RATING + "), 2) AS " + COL_TRACKS_RATING + ", \n" + //NON-NLS //NON-NLS //NON-NLS
+                                "group_concat(distinct " + COL_TRACKS_GENRE + ") AS " + COL_TRACKS_GENRE + ", \n" + //NON-NLS //NON-NLS //NON-NLS //NON-NLS
+                                "group_concat(distinct " + COL_TRACKS_ARTIST + ") AS " + COL_TRACKS_ARTIST + ", \n" + //NON-NLS //NON-NLS
+                                "max(" + SearchQuery.getScore(COL_TRACKS_ID_REMOTE, SearchQuery.ALBUM_WEIGHTS) + ") AS rank, \n" + //NON-NLS
+                                COL_TRACKS_ALBUM + ", " + COL_TRACKS_COVER_HASH + ", " + COL_TRACKS_PATH + ", " + COL_TRACKS_ID_PATH + " \n"+ //NON-NLS
+                                "FROM tracks \n" +//NON-NLS
+                                " WHERE " + Playlist.getWhereStatus(statuses) +
+                                " AND " + COL_TRACKS_ID_REMOTE + " IN (" + SearchQuery.IDS + ") \n" + //NON-NLS
+                                " GROUP BY " + COL_TRACKS_ID_PATH + " \n" + //NON-NLS //NON-NLS
+                                " HAVING MIN(CASE status WHEN 'REC' THEN 1 WHEN 'LOCAL' THEN 2 ELSE 3 END) \n" +
+                                " ORDER BY rank DESC, " //NON-NLS
+                                + COL_TRACKS_RATING + " DESC, " + COL_TRACKS_PLAY_COUNTER + " DESC, " + COL_TRACKS_ALBUM + ", " + COL_TRACKS_ARTIST; //NON-NLS
+                        List<String> scoreArgs = SearchQuery.getScoreArgs(search, SearchQuery.ALBUM_WEIGHTS);
+                        scoreArgs.add(match);
+                        args = scoreArgs.toArray(new String[0]);
+                    }
+                    Log.i(TAG, query);
+                    long startTime = System.currentTimeMillis();
+                    cursor = dbReader.rawQuery(query, args); //NON-NLS
+                    Log.i(TAG, "getAlbums(" + match + "): " + cursor.getCount() //NON-NLS //NON-NLS
+                            + " :" + (System.currentTimeMillis() - startTime) + " ms"); //NON-NLS
+                } catch (SQLiteException | IllegalStateException ex) { //NON-NLS
+                    Log.e(TAG, "getAlbums()", ex); //NON-NLS
+                }
             }
+            return cursor;
+        } finally {
+            locks.unlockShared();
         }
-        return cursor;
+    }
+
+    /**
+     * @param search words to search (prefixes), case and accents folded
+     * @param column column to search in (album, artist, albumArtist or title), null for all of them
+     * @param limit  maximum number of tracks
+     * @return matching tracks, ranked by score (title matches first), then by rating and play counter
+     */
+    List<Track> searchTracks(String search, String column, int limit) {
+        List<Track> tracks = new ArrayList<>();
+        String match = SearchQuery.getMatch(search, column);
+        ArrayList<Track.Status> statuses = ActivityMain.getScope(true);
+        if (match.isEmpty() || statuses.isEmpty()) {
+            return tracks;
+        }
+        List<String> args = new ArrayList<>();
+        args.add(match);
+        args.addAll(SearchQuery.getScoreArgs(search, SearchQuery.TRACK_WEIGHTS));
+        Cursor cursor = getTracksCursor(false,
+                " WHERE " + Playlist.getWhereStatus(statuses) //NON-NLS
+                        + " AND " + TABLE_TRACKS + "." + COL_TRACKS_ID_REMOTE + " IN (" + SearchQuery.IDS + ") ", //NON-NLS
+                args.toArray(new String[0]),
+                " ORDER BY " + SearchQuery.getScore(TABLE_TRACKS + "." + COL_TRACKS_ID_REMOTE, SearchQuery.TRACK_WEIGHTS) //NON-NLS
+                        + " DESC, " + COL_TRACKS_RATING + " DESC, " + COL_TRACKS_PLAY_COUNTER + " DESC", limit); //NON-NLS
+        if (cursor != null) {
+            tracks = getTracks(cursor, false);
+            cursor.close();
+        }
+        setTags(tracks);
+        return tracks;
     }
 }
@@ -3,15 +3,28 @@ package phramusca.com.jamuzremote;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Created by raph on 10/06/17.
  */
 public class MusicLibraryDb extends SQLiteOpenHelper {
 
-    private static final int DB_VERSION = 7;
+    private static final String TAG = MusicLibraryDb.class.getName();
+
+    static final int DB_VERSION = 12;
+
+    /**
+     * Oldest schema version that can be migrated in place.
+     * Databases older than that are dropped and re-created (full scan and sync needed).
+     */
+    static final int DB_VERSION_MIN_MIGRATION = 7;
 
     static final String TABLE_TRACKS = "tracks"; //NON-NLS
 
@@ -48,6 +61,16 @@ public class MusicLibraryDb extends SQLiteOpenHelper {
     static final String COL_TRACKS_PATH_MB_ID = "pathMbId";
     static final String COL_TRACKS_TRACK_GAIN = "trackGain";
     static final String COL_TRACKS_ALBUM_GAIN = "albumGain";
+    /**
+     * Local user changes (rating, genre, tags, play counter) not merged with server yet.
+     * A counter rather than a flag, so that changes made while merging are kept dirty.
+     */
+    static final String COL_TRACKS_DIRTY = "dirty"; //NON-NLS
+    /**
+     * Where clause matching a track (idFileRemote) only if its dirty counter is still as read before merge
+     */
+    static final String WHERE_DIRTY_UNCHANGED = " WHERE " + COL_TRACKS_ID_REMOTE + "=? AND " + COL_TRACKS_DIRTY + "=?"; //NON-NLS
+    // Dates (addedDate, lastPlayed, modifDate, pathModifDate) are stored as UTC epoch milliseconds
 
     private static final String CREATE_TABLE_TRACKS = "CREATE TABLE " + TABLE_TRACKS + " (" //NON-NLS //NON-NLS
             + COL_TRACKS_ID_REMOTE + " INTEGER PRIMARY KEY AUTOINCREMENT, " //NON-NLS //NON-NLS
@@ -62,7 +85,7 @@ public class MusicLibraryDb extends SQLiteOpenHelper {
             + COL_TRACKS_BITRATE + " TEXT NOT NULL, " //NON-NLS
             + COL_TRACKS_FORMAT + " TEXT NOT NULL, " //NON-NLS
             + COL_TRACKS_BPM + " TEXT NOT NULL, " //NON-NLS
-            + COL_TRACKS_MODIF_DATE + " TEXT NOT NULL, " //NON-NLS //NON-NLS
+            + COL_TRACKS_MODIF_DATE + " INTEGER NOT NULL, " //NON-NLS //NON-NLS
             + COL_TRACKS_CHECKED_FLAG + " TEXT NOT NULL, " //NON-NLS
             + COL_TRACKS_COPYRIGHT + " TEXT NOT NULL, " //NON-NLS
             + COL_TRACKS_COVER_HASH + " TEXT NOT NULL, " //NON-NLS //NON-NLS //NON-NLS
@@ -71,18 +94,19 @@ public class MusicLibraryDb extends SQLiteOpenHelper {
             + COL_TRACKS_ALBUM + " TEXT NOT NULL, " //NON-NLS
             + COL_TRACKS_GENRE + " TEXT NOT NULL, " //NON-NLS //NON-NLS
             + COL_TRACKS_RATING + " INTEGER NOT NULL, " //NON-NLS //NON-NLS
-            + COL_TRACKS_ADDED_DATE + " TEXT NOT NULL, " //NON-NLS
+            + COL_TRACKS_ADDED_DATE + " INTEGER NOT NULL, " //NON-NLS
             + COL_TRACKS_PLAY_COUNTER + " INTEGER NOT NULL, " //NON-NLS //NON-NLS
-            + COL_TRACKS_LAST_PLAYED + " TEXT NOT NULL, " //NON-NLS //NON-NLS
+            + COL_TRACKS_LAST_PLAYED + " INTEGER NOT NULL, " //NON-NLS //NON-NLS
             + COL_TRACKS_STATUS + " TEXT NOT NULL, " //NON-NLS //NON-NLS
             + COL_TRACKS_SIZE + " LONG NOT NULL, " //NON-NLS
             + COL_TRACKS_LENGTH + " INTEGER NOT NULL, " //NON-NLS
-            + COL_TRACKS_PATH_MODIF_DATE + " TEXT NOT NULL, " //NON-NLS
+            + COL_TRACKS_PATH_MODIF_DATE + " INTEGER NOT NULL, " //NON-NLS
             + COL_TRACKS_PATH_MB_ID + " TEXT NOT NULL, " //NON-NLS //NON-NLS //NON-NLS
             + COL_TRACKS_COMMENT + " TEXT NOT NULL, " //NON-NLS //NON-NLS //NON-NLS //NON-NLS
             + COL_TRACKS_TRACK_GAIN + " REAL, " //NON-NLS
             + COL_TRACKS_ALBUM_GAIN + " REAL, " //NON-NLS
-            + COL_TRACKS_PATH + " TEXT NOT NULL); "; //NON-NLS
+            + COL_TRACKS_PATH + " TEXT NOT NULL, " //NON-NLS
+            + COL_TRACKS_DIRTY + " INTEGER NOT NULL DEFAULT 0); "; //NON-NLS
 
     static final String TABLE_TAG = "tag";
     static final String COL_TAG_ID = "id";
@@ -109,26 +133,298 @@ public class MusicLibraryDb extends SQLiteOpenHelper {
             + COL_GENRE_ID + " INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, \n" //NON-NLS
             + COL_GENRE_VALUE + " TEXT NOT NULL);"; //NON-NLS
 
+    /**
+     * Managed secondary indexes, for hot lookups and playlist filters.
+     * Created on new installs, by migrations, and checked on open.
+     */
+    static final List<String> CREATE_INDEXES = Collections.unmodifiableList(Arrays.asList(
+            //Not a partial index on idFileServer>=0 (LOCAL tracks have -1): it is not used to look up a bound idFileServer
+            "CREATE INDEX IF NOT EXISTS idx_tracks_idFileServer ON " + TABLE_TRACKS + " (" + COL_TRACKS_ID_SERVER + ")", //NON-NLS
+            "CREATE INDEX IF NOT EXISTS idx_tracks_path ON " + TABLE_TRACKS + " (" + COL_TRACKS_PATH + ")", //NON-NLS
+            "CREATE INDEX IF NOT EXISTS idx_tracks_status_rating ON " + TABLE_TRACKS + " (" + COL_TRACKS_STATUS + ", " + COL_TRACKS_RATING + ")", //NON-NLS
+            "CREATE INDEX IF NOT EXISTS idx_tracks_idPath ON " + TABLE_TRACKS + " (" + COL_TRACKS_ID_PATH + ")", //NON-NLS
+            "CREATE INDEX IF NOT EXISTS idx_tracks_lastPlayed ON " + TABLE_TRACKS + " (" + COL_TRACKS_LAST_PLAYED + ")", //NON-NLS
+            "CREATE INDEX IF NOT EXISTS idx_tracks_playCounter_lastPlayed ON " + TABLE_TRACKS //NON-NLS
+                    + " (" + COL_TRACKS_PLAY_COUNTER + ", " + COL_TRACKS_LAST_PLAYED + ")", //NON-NLS
+            "CREATE INDEX IF NOT EXISTS idx_tagfile_idTag ON " + TABLE_TAG_FILE + " (" + COL_TAG_FILE_ID_TAG + ", " + COL_TAG_FILE_ID_FILE + ")")); //NON-NLS
+
+    /**
+     * Indexes created by migrations 8 and 9, frozen as they were in version 8,
+     * so that what a migration does never changes. Later indexes of CREATE_INDEXES are created on open.
+     */
+    private static final List<String> CREATE_INDEXES_V8 = Collections.unmodifiableList(Arrays.asList(
+            "CREATE INDEX IF NOT EXISTS idx_tracks_idFileServer ON tracks (idFileServer)", //NON-NLS
+            "CREATE INDEX IF NOT EXISTS idx_tracks_path ON tracks (path)", //NON-NLS
+            "CREATE INDEX IF NOT EXISTS idx_tracks_status_rating ON tracks (status, rating)", //NON-NLS
+            "CREATE INDEX IF NOT EXISTS idx_tracks_idPath ON tracks (idPath)", //NON-NLS
+            "CREATE INDEX IF NOT EXISTS idx_tracks_lastPlayed ON tracks (lastPlayed)", //NON-NLS
+            "CREATE INDEX IF NOT EXISTS idx_tagfile_idTag ON tagfile (idTag, idFile)")); //NON-NLS
+
+    /**
+     * Partial index of dirty tracks, kept apart from CREATE_INDEXES as dirty column only exists from version 12.
+     * Also run by migration 12: a change needs a new migration.
+     */
+    private static final String CREATE_INDEX_DIRTY = "CREATE INDEX IF NOT EXISTS idx_tracks_dirty ON " + TABLE_TRACKS //NON-NLS
+            + " (" + COL_TRACKS_ID_REMOTE + ") WHERE " + COL_TRACKS_DIRTY + ">0"; //NON-NLS
+
+    static final String TABLE_TRACKS_FTS = "tracks_fts"; //NON-NLS
+    private static final String FTS_COLUMNS = COL_TRACKS_ALBUM + ", " + COL_TRACKS_ARTIST + ", " //NON-NLS
+            + COL_TRACKS_ALBUM_ARTIST + ", " + COL_TRACKS_TITLE; //NON-NLS
+    private static final String FTS_DELETE = "DELETE FROM " + TABLE_TRACKS_FTS + " WHERE docid=old.rowid; "; //NON-NLS
+    private static final String FTS_INSERT = "INSERT INTO " + TABLE_TRACKS_FTS + " (docid, " + FTS_COLUMNS + ") " //NON-NLS
+            + "VALUES (new.rowid, new." + COL_TRACKS_ALBUM + ", new." + COL_TRACKS_ARTIST //NON-NLS
+            + ", new." + COL_TRACKS_ALBUM_ARTIST + ", new." + COL_TRACKS_TITLE + "); "; //NON-NLS
+
+    /**
+     * Full-text index of album, artist, albumArtist and title, for searches.
+     * External content: only the index is stored, tracks rows are its content,
+     * kept in sync by triggers (updates of other columns, as statistics, do not touch it).
+     * unicode61 tokenizer folds case and removes diacritics.
+     * Also run by migration 10: a change needs a new migration.
+     */
+    static final List<String> CREATE_FTS = Collections.unmodifiableList(Arrays.asList(
+            "CREATE VIRTUAL TABLE " + TABLE_TRACKS_FTS + " USING fts4(content=\"" + TABLE_TRACKS + "\", " //NON-NLS
+                    + FTS_COLUMNS + ", tokenize=unicode61)", //NON-NLS
+            "CREATE TRIGGER tracks_fts_bd BEFORE DELETE ON " + TABLE_TRACKS //NON-NLS
+                    + " BEGIN " + FTS_DELETE + "END", //NON-NLS
+            "CREATE TRIGGER tracks_fts_bu BEFORE UPDATE OF " + FTS_COLUMNS + " ON " + TABLE_TRACKS //NON-NLS
+                    + " BEGIN " + FTS_DELETE + "END", //NON-NLS
+            "CREATE TRIGGER tracks_fts_au AFTER UPDATE OF " + FTS_COLUMNS + " ON " + TABLE_TRACKS //NON-NLS
+                    + " BEGIN " + FTS_INSERT + "END", //NON-NLS
+            "CREATE TRIGGER tracks_fts_ai AFTER INSERT ON " + TABLE_TRACKS //NON-NLS
+                    + " BEGIN " + FTS_INSERT + "END")); //NON-NLS
+
+    static final String TABLE_ALBUM = "album"; //NON-NLS
+    static final String TABLE_ALBUM_CHANGED = "album_changed"; //NON-NLS
+    static final String COL_ALBUM_NB_TRACKS = "nbTracks";
+    private static final String ALBUM_COLUMNS = COL_TRACKS_ID_PATH + ", " + COL_TRACKS_STATUS + ", " //NON-NLS
+            + COL_ALBUM_NB_TRACKS + ", " + COL_TRACKS_RATING + ", " + COL_TRACKS_GENRE + ", " + COL_TRACKS_ARTIST + ", " //NON-NLS
+            + COL_TRACKS_ALBUM + ", " + COL_TRACKS_COVER_HASH + ", " + COL_TRACKS_PATH; //NON-NLS
+    private static final String ALBUM_TRACKS_COLUMNS = COL_TRACKS_ID_PATH + ", " + COL_TRACKS_STATUS + ", " //NON-NLS
+            + COL_TRACKS_RATING + ", " + COL_TRACKS_GENRE + ", " + COL_TRACKS_ARTIST + ", " //NON-NLS
+            + COL_TRACKS_ALBUM + ", " + COL_TRACKS_COVER_HASH + ", " + COL_TRACKS_PATH; //NON-NLS
+    private static final String ALBUM_CHANGED = "INSERT OR IGNORE INTO " + TABLE_ALBUM_CHANGED //NON-NLS
+            + " (" + COL_TRACKS_ID_PATH + ") VALUES (%s.idPath); "; //NON-NLS
+
+    /**
+     * @param where tracks to summarize
+     * @return album summaries (one per idPath) of tracks, as in album table.
+     * Status, album, coverhash and path are taken from a REC track first, then LOCAL, then any other.
+     */
+    private static String getAlbumSelect(String where) {
+        return "SELECT " + COL_TRACKS_ID_PATH + ", " + COL_TRACKS_STATUS + ", " //NON-NLS
+                + "count(" + COL_TRACKS_ID_REMOTE + "), round(avg(" + COL_TRACKS_RATING + "), 2), " //NON-NLS
+                + "group_concat(distinct " + COL_TRACKS_GENRE + "), group_concat(distinct " + COL_TRACKS_ARTIST + "), " //NON-NLS
+                + COL_TRACKS_ALBUM + ", " + COL_TRACKS_COVER_HASH + ", " + COL_TRACKS_PATH //NON-NLS
+                + " FROM " + TABLE_TRACKS + where //NON-NLS
+                + " GROUP BY " + COL_TRACKS_ID_PATH //NON-NLS
+                + " HAVING MIN(CASE " + COL_TRACKS_STATUS + " WHEN 'REC' THEN 1 WHEN 'LOCAL' THEN 2 ELSE 3 END)"; //NON-NLS
+    }
+
+    /**
+     * Album summaries, one row per idPath, ordered as the Albums screen by idx_album_order.
+     * Triggers only list idPath of inserted, deleted and updated tracks in album_changed
+     * (statistics as playCounter and lastPlayed are not summarized, so not listed);
+     * MusicLibrary then summarizes those albums again, once per change (see REFRESH_ALBUMS),
+     * rather than once per track which would slow down syncs and scans.
+     * idPath is not a rowid alias as MediaStore albums have TEXT idPath.
+     * Also run by migration 11: a change needs a new migration.
+     */
+    static final List<String> CREATE_ALBUM = Collections.unmodifiableList(Arrays.asList(
+            "CREATE TABLE " + TABLE_ALBUM + " (" //NON-NLS
+                    + COL_TRACKS_ID_PATH + " INTEGER NOT NULL PRIMARY KEY, " //NON-NLS
+                    + COL_TRACKS_STATUS + " TEXT NOT NULL, " //NON-NLS
+                    + COL_ALBUM_NB_TRACKS + " INTEGER NOT NULL, " //NON-NLS
+                    + COL_TRACKS_RATING + " REAL NOT NULL, " //NON-NLS
+                    + COL_TRACKS_GENRE + " TEXT NOT NULL, " //NON-NLS
+                    + COL_TRACKS_ARTIST + " TEXT NOT NULL, " //NON-NLS
+                    + COL_TRACKS_ALBUM + " TEXT NOT NULL, " //NON-NLS
+                    + COL_TRACKS_COVER_HASH + " TEXT NOT NULL, " //NON-NLS
+                    + COL_TRACKS_PATH + " TEXT NOT NULL) WITHOUT ROWID", //NON-NLS
+            "CREATE INDEX idx_album_order ON " + TABLE_ALBUM + " (" + COL_TRACKS_RATING + " DESC, " //NON-NLS
+                    + COL_ALBUM_NB_TRACKS + " DESC, " + COL_TRACKS_ALBUM + ", " + COL_TRACKS_ARTIST + ")", //NON-NLS
+            "CREATE TABLE " + TABLE_ALBUM_CHANGED + " (" //NON-NLS
+                    + COL_TRACKS_ID_PATH + " INTEGER NOT NULL PRIMARY KEY) WITHOUT ROWID", //NON-NLS
+            "CREATE TRIGGER album_ai AFTER INSERT ON " + TABLE_TRACKS //NON-NLS
+                    + " BEGIN " + String.format(ALBUM_CHANGED, "new") + "END", //NON-NLS
+            "CREATE TRIGGER album_ad AFTER DELETE ON " + TABLE_TRACKS //NON-NLS
+                    + " BEGIN " + String.format(ALBUM_CHANGED, "old") + "END", //NON-NLS
+            "CREATE TRIGGER album_au AFTER UPDATE OF " + ALBUM_TRACKS_COLUMNS + " ON " + TABLE_TRACKS //NON-NLS
+                    + " BEGIN " + String.format(ALBUM_CHANGED, "old") + String.format(ALBUM_CHANGED, "new") + "END")); //NON-NLS
+
+    /**
+     * Summarizes albums listed in album_changed again, and empties it. To be run in a transaction.
+     */
+    static final List<String> REFRESH_ALBUMS = Collections.unmodifiableList(Arrays.asList(
+            "DELETE FROM " + TABLE_ALBUM + " WHERE " + COL_TRACKS_ID_PATH //NON-NLS
+                    + " IN (SELECT " + COL_TRACKS_ID_PATH + " FROM " + TABLE_ALBUM_CHANGED + ")", //NON-NLS
+            "INSERT INTO " + TABLE_ALBUM + " (" + ALBUM_COLUMNS + ") " //NON-NLS
+                    + getAlbumSelect(" WHERE " + COL_TRACKS_ID_PATH + " IN (SELECT " //NON-NLS
+                    + COL_TRACKS_ID_PATH + " FROM " + TABLE_ALBUM_CHANGED + ")"), //NON-NLS
+            "DELETE FROM " + TABLE_ALBUM_CHANGED)); //NON-NLS
+
     MusicLibraryDb(final Context context, File musicLibraryDbFile) {
         super(context, musicLibraryDbFile.getAbsolutePath(), null, DB_VERSION);
+        //Readers are not blocked by the writer, and commits do not rewrite the db file
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        db.execSQL(CREATE_TABLE_TRACKS);
-        db.execSQL(CREATE_TABLE_TAG);
-        db.execSQL(CREATE_TABLE_TAG_FILE);
-        db.execSQL(CREATE_TABLE_GENRE);
+        for (String statement : getCreateStatements()) {
+            db.execSQL(statement);
+        }
+    }
+
+    /**
+     * @return statements creating the schema of a new install, in order
+     */
+    static List<String> getCreateStatements() {
+        List<String> statements = new ArrayList<>(Arrays.asList(
+                CREATE_TABLE_TRACKS, CREATE_TABLE_TAG, CREATE_TABLE_TAG_FILE, CREATE_TABLE_GENRE));
+        statements.addAll(CREATE_INDEXES);
+        statements.add(CREATE_INDEX_DIRTY);
+        statements.addAll(CREATE_FTS);
+        statements.addAll(CREATE_ALBUM);
+        return statements;
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly()) {
+            createIndexes(db);
+        }
+    }
+
+    private static void createIndexes(SQLiteDatabase db) {
+        for (String createIndex : CREATE_INDEXES) {
+            db.execSQL(createIndex);
+        }
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) { //NON-NLS
-        //TODO: How to warn user he needs to sync before upgrading version ? //NON-NLS //NON-NLS //NON-NLS
-        // in case database change and this is called. //NON-NLS
-        db.execSQL("DROP TABLE " + TABLE_TRACKS + ";"); //NON-NLS //NON-NLS
-        db.execSQL("DROP TABLE " + TABLE_TAG + ";"); //NON-NLS //NON-NLS
-        db.execSQL("DROP TABLE " + TABLE_TAG_FILE + ";"); //NON-NLS //NON-NLS
-        db.execSQL("DROP TABLE " + TABLE_GENRE + ";"); //NON-NLS //NON-NLS
-        onCreate(db);
+        if (oldVersion < DB_VERSION_MIN_MIGRATION) {
+            //TODO: How to warn user he needs to sync before upgrading version ? //NON-NLS //NON-NLS //NON-NLS
+            // in case database change and this is called. //NON-NLS
+            Log.w(TAG, "No migration from version " + oldVersion + ". Re-creating database."); //NON-NLS
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_TRACKS + ";"); //NON-NLS //NON-NLS
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_TAG + ";"); //NON-NLS //NON-NLS
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_TAG_FILE + ";"); //NON-NLS //NON-NLS
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_GENRE + ";"); //NON-NLS //NON-NLS
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_TRACKS_FTS + ";"); //NON-NLS
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_ALBUM + ";"); //NON-NLS
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_ALBUM_CHANGED + ";"); //NON-NLS
+            onCreate(db);
+            return;
+        }
+        //SQLiteOpenHelper runs onUpgrade in a transaction: if a migration fails, none is applied
+        for (Migration migration : getMigrations(oldVersion, newVersion)) {
+            long startTime = System.currentTimeMillis();
+            migration.apply(db);
+            Log.i(TAG, "Migrated database to version " + migration.version + " :" //NON-NLS
+                    + (System.currentTimeMillis() - startTime) + " ms"); //NON-NLS
+        }
+    }
+
+    /**
+     * Schema migrations, one per version, kept in version order.
+     * Migration N brings schema from version N-1 to version N, keeping existing rows.
+     * When bumping DB_VERSION, update the CREATE statements above (used for new installs)
+     * AND add the matching migration below (used for upgrades).
+     * Statements of a released migration never change: new indexes go to CREATE_INDEXES (created on open),
+     * other schema changes to a new migration.
+     */
+    static final List<Migration> MIGRATIONS = Collections.unmodifiableList(Arrays.asList(
+            new Migration(8, concat(CREATE_INDEXES_V8, "ANALYZE")), //NON-NLS
+            new Migration(9, concat(Arrays.asList(
+                    //Dates from "yyyy-MM-dd HH:mm:ss" UTC TEXT to INTEGER UTC epoch milliseconds.
+                    //SQLite cannot alter column types, so re-creating the table
+                    "CREATE TABLE tracks_v9 (" //NON-NLS
+                            + "idFileRemote INTEGER PRIMARY KEY AUTOINCREMENT, idFileServer INTEGER NOT NULL, " //NON-NLS
+                            + "idPath INTEGER NOT NULL, albumArtist TEXT NOT NULL, year TEXT NOT NULL, " //NON-NLS
+                            + "trackNo INTEGER NOT NULL, trackTotal INTEGER NOT NULL, discNo INTEGER NOT NULL, " //NON-NLS
+                            + "discTotal INTEGER NOT NULL, bitrate TEXT NOT NULL, format TEXT NOT NULL, " //NON-NLS
+                            + "bpm TEXT NOT NULL, modifDate INTEGER NOT NULL, checkedFlag TEXT NOT NULL, " //NON-NLS
+                            + "copyright TEXT NOT NULL, coverhash TEXT NOT NULL, artist TEXT NOT NULL, " //NON-NLS
+                            + "title TEXT NOT NULL, album TEXT NOT NULL, genre TEXT NOT NULL, " //NON-NLS
+                            + "rating INTEGER NOT NULL, addedDate INTEGER NOT NULL, playCounter INTEGER NOT NULL, " //NON-NLS
+                            + "lastPlayed INTEGER NOT NULL, status TEXT NOT NULL, size LONG NOT NULL, " //NON-NLS
+                            + "length INTEGER NOT NULL, pathModifDate INTEGER NOT NULL, pathMbId TEXT NOT NULL, " //NON-NLS
+                            + "comment TEXT NOT NULL, trackGain REAL, albumGain REAL, path TEXT NOT NULL)", //NON-NLS
+                    "INSERT INTO tracks_v9 SELECT " //NON-NLS
+                            + "idFileRemote, idFileServer, idPath, albumArtist, year, trackNo, trackTotal, discNo, " //NON-NLS
+                            + "discTotal, bitrate, format, bpm, " + sqlDateToEpoch("modifDate") + ", " //NON-NLS
+                            + "checkedFlag, copyright, coverhash, artist, title, album, genre, rating, " //NON-NLS
+                            + sqlDateToEpoch("addedDate") + ", playCounter, " + sqlDateToEpoch("lastPlayed") + ", " //NON-NLS
+                            + "status, size, length, " + sqlDateToEpoch("pathModifDate") + ", " //NON-NLS
+                            + "pathMbId, comment, trackGain, albumGain, path FROM tracks", //NON-NLS
+                    "DROP TABLE tracks", //NON-NLS
+                    "ALTER TABLE tracks_v9 RENAME TO tracks"), //NON-NLS
+                    concat(CREATE_INDEXES_V8, "ANALYZE"))), //NON-NLS
+            new Migration(10, concat(CREATE_FTS,
+                    "INSERT INTO " + TABLE_TRACKS_FTS + "(" + TABLE_TRACKS_FTS + ") VALUES('rebuild')")), //NON-NLS
+            new Migration(11, concat(CREATE_ALBUM,
+                    "INSERT INTO " + TABLE_ALBUM + " (" + ALBUM_COLUMNS + ") " + getAlbumSelect(""))), //NON-NLS
+            new Migration(12,
+                    "ALTER TABLE " + TABLE_TRACKS + " ADD COLUMN " + COL_TRACKS_DIRTY + " INTEGER NOT NULL DEFAULT 0", //NON-NLS
+                    //Changes made before upgrade are unknown: merging all files once
+                    "UPDATE " + TABLE_TRACKS + " SET " + COL_TRACKS_DIRTY + "=1", //NON-NLS
+                    CREATE_INDEX_DIRTY)
+    ));
+
+    private static String sqlDateToEpoch(String column) {
+        return "COALESCE(CAST(strftime('%s', " + column + ") AS INTEGER), 0) * 1000"; //NON-NLS
+    }
+
+    private static String[] concat(List<String> statements, String... more) {
+        List<String> all = new ArrayList<>(statements);
+        all.addAll(Arrays.asList(more));
+        return all.toArray(new String[0]);
+    }
+
+    /**
+     * @param oldVersion current database version
+     * @param newVersion target database version
+     * @return migrations to apply, in order, to go from oldVersion to newVersion
+     * @throws IllegalStateException if a version has no migration
+     */
+    static List<Migration> getMigrations(int oldVersion, int newVersion) {
+        List<Migration> migrations = new ArrayList<>();
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            Migration found = null;
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version == version) {
+                    found = migration;
+                    break;
+                }
+            }
+            if (found == null) {
+                throw new IllegalStateException("No migration to database version " + version); //NON-NLS
+            }
+            migrations.add(found);
+        }
+        return migrations;
+    }
+
+    /**
+     * A schema migration to a given version, as a list of SQL statements.
+     * Override apply() if statements are not enough.
+     */
+    static class Migration {
+        final int version;
+        final List<String> statements;
+
+        Migration(int version, String... statements) {
+            this.version = version;
+            this.statements = Arrays.asList(statements);
+        }
+
+        void apply(SQLiteDatabase db) {
+            for (String statement : statements) {
+                db.execSQL(statement);
+            }
+        }
     }
 }
@@ -1,22 +1,12 @@
 package phramusca.com.jamuzremote;
 
-import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ALBUM;
-import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ARTIST;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_DISC_NO;
-import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_GENRE;
-import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ID_PATH;
-import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ID_REMOTE;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_LAST_PLAYED;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_PLAY_COUNTER;
-import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_RATING;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_STATUS;
-import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TAG_VALUE;
 import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_TRACK_NO;
-import static phramusca.com.jamuzremote.MusicLibraryDb.TABLE_TAG;
-import static phramusca.com.jamuzremote.MusicLibraryDb.TABLE_TRACKS;
 
 import android.content.Context;
-import android.database.Cursor;
 
 import androidx.annotation.NonNull;
 
@@ -25,11 +15,13 @@ import com.google.gson.annotations.SerializedName;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TimeZone;
 
 /**
  * Created by raph on 11/06/17.
@@ -67,32 +59,70 @@ public class Playlist implements Comparable, Serializable {
 
     public List<Track> getTracks(int limit, List<Integer> excluded, List<Track.Status> statuses) {
         if (HelperLibrary.musicLibrary != null) {
-            return HelperLibrary.musicLibrary.getTracks(getWhere(excluded, statuses), getHaving(), order.value, limit);
+            PlaylistQuery query = getQuery(excluded, statuses);
+            if (order.equals(Order.RANDOM) && limit > 0) {
+                return HelperLibrary.musicLibrary.getTracksSample(query, limit);
+            }
+            return HelperLibrary.musicLibrary.getTracks(query, order.value, limit);
         }
         return new ArrayList<>();
     }
 
-    public Cursor getTracks() {
+    /**
+     * @return tracks, read by pages in playlist order, as they are scrolled to. Null if library is not open
+     */
+    public TrackPager getTracksPager() {
         if(HelperLibrary.musicLibrary!=null) {
-            return HelperLibrary.musicLibrary.getTracksCursor(
-                    false,
-                    getWhere(new ArrayList<>(), ActivityMain.getScope(true)),
-                    getHaving(), order.value, -1);
+            MusicLibrary musicLibrary = HelperLibrary.musicLibrary;
+            PlaylistQuery query = getQuery(new ArrayList<>(), ActivityMain.getScope(true));
+            int count;
+            TrackPage.Key first;
+            if (order.equals(Order.RANDOM)) {
+                //Shuffled once, so that pages do not overlap
+                int[] ids = musicLibrary.getTrackIdsShuffled(query);
+                count = ids.length;
+                first = TrackPage.Key.shuffled(ids, TrackPager.PAGE_SIZE);
+            } else {
+                count = musicLibrary.getNb(query).getFirst();
+                first = TrackPage.Key.first(order);
+            }
+            return new TrackPager(count, first, TrackPager.PAGE_SIZE,
+                    (key, pageSize) -> musicLibrary.getTracksPage(query, key, pageSize));
         }
         return null;
     }
 
     public void getNbFiles() {
         if (HelperLibrary.musicLibrary != null) {
-            Triplet<Integer, Long, Long> entry = HelperLibrary.musicLibrary.getNb(
-                    getWhere(new ArrayList<>(), ActivityMain.getScope()), getHaving());
-            nbFiles = entry.getFirst();
-            //TODO: Offer choice to display one or the other (length OR size) OR both
-            /*lengthOrSize = StringManager.humanReadableByteCount(entry.getSecond(), false);*/
-            lengthOrSize = HelperString.humanReadableSeconds(entry.getThird(), "");
+            setNbFiles(HelperLibrary.musicLibrary.getNb(
+                    getQuery(new ArrayList<>(), ActivityMain.getScope())));
         }
     }
 
+    /**
+     * Reads number of files and length from cache, without querying database
+     *
+     * @return false if library changed since last count: getNbFiles() is to be called (in background)
+     */
+    public boolean getNbFilesCached() {
+        if (HelperLibrary.musicLibrary != null) {
+            Triplet<Integer, Long, Long> entry = HelperLibrary.musicLibrary.getNbCached(
+                    getQuery(new ArrayList<>(), ActivityMain.getScope()));
+            if (entry != null) {
+                setNbFiles(entry);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void setNbFiles(Triplet<Integer, Long, Long> entry) {
+        nbFiles = entry.getFirst();
+        //TODO: Offer choice to display one or the other (length OR size) OR both
+        /*lengthOrSize = StringManager.humanReadableByteCount(entry.getSecond(), false);*/
+        lengthOrSize = HelperString.humanReadableSeconds(entry.getThird(), "");
+    }
+
     public Set<Map.Entry<String, TriStateButton.STATE>> getTags() {
         return tags.entrySet();
     }
@@ -312,106 +342,32 @@ public class Playlist implements Comparable, Serializable {
         return COL_TRACKS_STATUS + " IN ( " + getInClause(statusString) + " )"; //NON-NLS
     }
 
-    private String getWhere(List<Integer> excluded, List<Track.Status> statuses) {
-        if(statuses.size()<=0) {
-            return " WHERE 0 ";
-        }
-
-        ArrayList<String> statusString = new ArrayList<>();
-        for(Track.Status status : statuses) {
-            statusString.add(status.name());
+    /**
+     * @param excluded idFileRemote of tracks to exclude
+     * @param statuses statuses of tracks to include
+     * @return this playlist filter, compiled to SQL
+     */
+    PlaylistQuery getQuery(List<Integer> excluded, List<Track.Status> statuses) {
+        PlaylistQuery.Builder builder = new PlaylistQuery.Builder();
+        for (Track.Status status : statuses) {
+            builder.status(status.name());
         }
-        String in = " WHERE " + getWhereStatus(statuses) + //NON-NLS
-                " AND " + COL_TRACKS_RATING + " " + getRatingString() + " "; //NON-NLS
-
+        builder.rating(ratingOperator.toString(), rating);
         if (limitValue > 0) {
-            in += "\n AND " + COL_TRACKS_LAST_PLAYED + " < datetime(datetime('now'), '-" + limitValue + " " + limitUnit.value + "')"; //NON-NLS
+            builder.playedBefore(limitUnit.getCutOff(limitValue));
         }
-
-        ArrayList<String> include = new ArrayList<>();
-        ArrayList<String> exclude = new ArrayList<>();
         for (Map.Entry<String, TriStateButton.STATE> entry : genres.entrySet()) {
-            switch (entry.getValue()) {
-                case FALSE:
-                    exclude.add(entry.getKey());
-                    break;
-                case TRUE:
-                    include.add(entry.getKey());
-                    break;
-            }
-        }
-
-        if (include.size() > 0) {
-            in += "\n AND " + COL_TRACKS_GENRE + " IN (" + getInClause(include) + ") "; //NON-NLS
+            builder.genre(entry.getKey(), entry.getValue());
         }
-        if (exclude.size() > 0) {
-            in += "\n AND " + COL_TRACKS_GENRE + " NOT IN (" + getInClause(exclude) + ") "; //NON-NLS
-        }
-
-        if (artist != null) {
-            in += "\n AND " + COL_TRACKS_ARTIST + " LIKE \"" + artist + "\" "; //NON-NLS
-        }
-
-        if (album != null) {
-            in += "\n AND " + COL_TRACKS_ALBUM + " LIKE \"" + album + "\" "; //NON-NLS
+        for (Map.Entry<String, TriStateButton.STATE> entry : tags.entrySet()) {
+            builder.tag(entry.getKey(), entry.getValue());
         }
-
-        if (idPath != null) {
-            in += "\n AND " + COL_TRACKS_ID_PATH + " = \"" + idPath + "\" "; //NON-NLS
-        }
-
-        in += getInClause(excluded);
-
-        return in;
-    }
-
-    private String getHaving() {
-        //FILTER by TAGS
-        String in;
-        if (unTaggedState.equals(TriStateButton.STATE.TRUE)) {
-            in = " HAVING " + TABLE_TAG + "." + COL_TAG_VALUE + " IS NULL "; //NON-NLS
-        } else {
-            //Include or exclude tags according to states
-            in = " HAVING ( "; //NON-NLS
-            if (tags.size() > 0) {
-                ArrayList<String> include = new ArrayList<>();
-                ArrayList<String> exclude = new ArrayList<>();
-                for (Map.Entry<String, TriStateButton.STATE> entry : tags.entrySet()) {
-                    switch (entry.getValue()) {
-                        case FALSE:
-                            exclude.add(entry.getKey());
-                            break;
-                        case TRUE:
-                            include.add(entry.getKey());
-                            break;
-                    }
-                }
-                in += getInClause(include, include.size());
-                in += "\n AND " + getInClause(exclude, 0); //NON-NLS
-            } else {
-                in += " 1 "; //NON-NLS
-            }
-            in += " ) "; //NON-NLS
-            //Include or exclude untagged
-            if (unTaggedState.equals(TriStateButton.STATE.ANY)) {
-                in += "\n OR " + TABLE_TAG + "." + COL_TAG_VALUE + " IS NULL "; //NON-NLS
-            } else if (unTaggedState.equals(TriStateButton.STATE.FALSE)) {
-                in += "\n AND " + TABLE_TAG + "." + COL_TAG_VALUE + " IS NOT NULL "; //NON-NLS
-            }
-        }
-        return in;
-    }
-
-    private static String getInClause(List<Integer> excluded) {
-        StringBuilder builder = new StringBuilder();
-        if (excluded.size() > 0) {
-            builder.append("\n AND " + TABLE_TRACKS + "." + COL_TRACKS_ID_REMOTE + " NOT IN ("); //NON-NLS
-            for (int integer : excluded) {
-                builder.append(integer).append(",");
-            }
-            builder.deleteCharAt(builder.length() - 1).append(") ");
-        }
-        return builder.toString();
+        return builder.unTagged(unTaggedState)
+                .artist(artist)
+                .album(album)
+                .idPath(idPath)
+                .exclude(excluded)
+                .build();
     }
 
     private static String getInClause(ArrayList<String> include) {
@@ -422,21 +378,6 @@ public class Playlist implements Comparable, Serializable {
         return in.substring(0, in.length() - 1);
     }
 
-    private String getInClause(ArrayList<String> include, int length) {
-        StringBuilder in = new StringBuilder();
-        if (include.size() > 0) {
-            in.append(" sum(case when " + TABLE_TAG + "." + COL_TAG_VALUE + " IN ("); //NON-NLS
-            for (String entry : include) {
-                in.append("\"").append(entry).append("\","); //NON-NLS
-            }
-            in = new StringBuilder(in.substring(0, in.length() - 1));
-            in.append(" ) then 1 else 0 end) = ").append(length); //NON-NLS
-        } else {
-            in.append(" 1 "); //NON-NLS
-        }
-        return in.toString();
-    }
-
     public String getName() {
         return name;
     }
@@ -526,22 +467,37 @@ public class Playlist implements Comparable, Serializable {
 
     public enum LimitUnit {
         @SerializedName("minutes") //NON-NLS
-        MINUTES("minutes", 0), //NON-NLS
+        MINUTES("minutes", 0, Calendar.MINUTE), //NON-NLS
         @SerializedName("hours") //NON-NLS
-        HOURS("hours", 1), //NON-NLS
+        HOURS("hours", 1, Calendar.HOUR_OF_DAY), //NON-NLS
         @SerializedName("days") //NON-NLS
-        DAYS("days", 2), //NON-NLS
+        DAYS("days", 2, Calendar.DAY_OF_MONTH), //NON-NLS
         @SerializedName("months") //NON-NLS
-        MONTHS("months", 3), //NON-NLS
+        MONTHS("months", 3, Calendar.MONTH), //NON-NLS
         @SerializedName("years") //NON-NLS
-        YEARS("years", 4); //NON-NLS
+        YEARS("years", 4, Calendar.YEAR); //NON-NLS
 
         private final String value;
         private final int index;
+        private final int calendarField;
 
-        LimitUnit(String value, int index) {
+        LimitUnit(String value, int index, int calendarField) {
             this.value = value;
             this.index = index;
+            this.calendarField = calendarField;
+        }
+
+        /**
+         * @param limitValue number of units
+         * @return UTC epoch milliseconds, limitValue units ago, truncated to the minute
+         * (so playlist queries built within a same minute are equal, and their counts cached)
+         */
+        public long getCutOff(int limitValue) {
+            Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            calendar.add(calendarField, -limitValue);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            return calendar.getTimeInMillis();
         }
 
         public String getDisplay(Context context) {
@@ -0,0 +1,74 @@
+package phramusca.com.jamuzremote;
+
+import androidx.annotation.NonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Counts of playlists (number of tracks, size, length), by playlist query.
+ * An entry is valid as long as the library version it was read at is the current one.
+ * Least recently used entries are dropped above MAX_SIZE (edited playlists produce new queries).
+ */
+class PlaylistCountCache {
+
+    static final int MAX_SIZE = 64;
+
+    private final Map<PlaylistQuery, Entry> entries = new LinkedHashMap<PlaylistQuery, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PlaylistQuery, Entry> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+    private long hits = 0;
+    private long misses = 0;
+
+    private static class Entry {
+        private final long version;
+        private final Triplet<Integer, Long, Long> nb;
+
+        private Entry(long version, Triplet<Integer, Long, Long> nb) {
+            this.version = version;
+            this.nb = nb;
+        }
+    }
+
+    /**
+     * @param query   playlist query
+     * @param version current library version
+     * @return counts, or null if not read yet or read at another version
+     */
+    synchronized Triplet<Integer, Long, Long> get(PlaylistQuery query, long version) {
+        Entry entry = entries.get(query);
+        if (entry == null || entry.version != version) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.nb;
+    }
+
+    /**
+     * @param query   playlist query
+     * @param version library version, read BEFORE counting
+     * @param nb      counts
+     */
+    synchronized void put(PlaylistQuery query, long version, Triplet<Integer, Long, Long> nb) {
+        Entry entry = entries.get(query);
+        if (entry == null || entry.version <= version) {
+            entries.put(query, new Entry(version, nb));
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ENGLISH, "PlaylistCountCache: %d entries, %d hits, %d misses", //NON-NLS
+                entries.size(), hits, misses);
+    }
+}
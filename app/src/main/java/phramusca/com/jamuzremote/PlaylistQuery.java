@@ -0,0 +1,401 @@
+package phramusca.com.jamuzremote;
+
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TAG_FILE_ID_FILE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TAG_FILE_ID_TAG;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TAG_ID;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TAG_VALUE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ALBUM;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ARTIST;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_GENRE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ID_PATH;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ID_REMOTE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_LAST_PLAYED;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_RATING;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_STATUS;
+import static phramusca.com.jamuzremote.MusicLibraryDb.TABLE_TAG;
+import static phramusca.com.jamuzremote.MusicLibraryDb.TABLE_TAG_FILE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.TABLE_TRACKS;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Playlist filter, compiled to a where clause with ? bindings.
+ * SQL only depends on the shape of the filter (its signature: number of statuses, genres, tags, ...),
+ * not on values. It is built once per signature, and SQLite gets the same SQL text,
+ * so it can reuse its compiled statement, whatever the values (quotes included).
+ * Excluded ids are padded to power of two buckets, for the queue not to produce a new shape for each track.
+ * Beyond MAX_EXCLUDED_BINDINGS, first excluded ids are inlined in SQL (not cached) to stay below SQLite bindings limit.
+ * Tags are filtered with EXISTS / NOT EXISTS on tagfile indexes, so tracks need neither a join
+ * with tags nor a GROUP BY.
+ */
+final class PlaylistQuery {
+
+    static final int MIN_EXCLUDED_BUCKET = 16;
+    /**
+     * Max number of bound excluded ids, a power of two, for queries to stay below SQLite limit (999 bindings)
+     */
+    static final int MAX_EXCLUDED_BINDINGS = 512;
+    /**
+     * Padding value of excluded ids, not an idFileRemote
+     */
+    static final String NO_ID = "-1";
+
+    private static final Map<String, String> SQL_CACHE = new ConcurrentHashMap<>();
+    private static final AtomicInteger cacheHits = new AtomicInteger();
+
+    private static final String TAG_FILE_OF_TRACK = "SELECT 1 FROM " + TABLE_TAG_FILE //NON-NLS
+            + " WHERE " + TABLE_TAG_FILE + "." + COL_TAG_FILE_ID_FILE + "=" + TABLE_TRACKS + "." + COL_TRACKS_ID_REMOTE; //NON-NLS
+    /**
+     * Track has at least one tag
+     */
+    static final String TAGGED = "EXISTS (" + TAG_FILE_OF_TRACK + ")"; //NON-NLS
+    /**
+     * Track has the tag bound to ?
+     */
+    static final String HAS_TAG = "EXISTS (" + TAG_FILE_OF_TRACK //NON-NLS
+            + " AND " + TABLE_TAG_FILE + "." + COL_TAG_FILE_ID_TAG //NON-NLS
+            + "=(SELECT " + COL_TAG_ID + " FROM " + TABLE_TAG + " WHERE " + COL_TAG_VALUE + "=?))"; //NON-NLS
+    /**
+     * Track has none of the tags bound to %s (?,?,..)
+     */
+    static final String HAS_NO_TAG_IN = "NOT EXISTS (" + TAG_FILE_OF_TRACK //NON-NLS
+            + " AND " + TABLE_TAG_FILE + "." + COL_TAG_FILE_ID_TAG //NON-NLS
+            + " IN (SELECT " + COL_TAG_ID + " FROM " + TABLE_TAG + " WHERE " + COL_TAG_VALUE + " IN (%s)))"; //NON-NLS
+
+    private final String signature;
+    private final String where;
+    private final String[] args;
+    private final LibrarySnapshot.Filter filter;
+
+    private PlaylistQuery(String signature, String where, String[] args, LibrarySnapshot.Filter filter) {
+        this.signature = signature;
+        this.where = where;
+        this.args = args;
+        this.filter = filter;
+    }
+
+    /**
+     * @return where clause, with ? bindings
+     */
+    String getWhere() {
+        return where;
+    }
+
+    /**
+     * @return values of where clause bindings
+     */
+    String[] getArgs() {
+        return args;
+    }
+
+    String getSignature() {
+        return signature;
+    }
+
+    /**
+     * @return same filter, to evaluate on a LibrarySnapshot. Null if not supported (artist, album or idPath)
+     */
+    LibrarySnapshot.Filter getFilter() {
+        return filter;
+    }
+
+    static int getCacheSize() {
+        return SQL_CACHE.size();
+    }
+
+    static int getCacheHits() {
+        return cacheHits.get();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return signature;
+    }
+
+    /**
+     * Same signature (so same SQL) and same values
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof PlaylistQuery)) {
+            return false;
+        }
+        PlaylistQuery other = (PlaylistQuery) obj;
+        return signature.equals(other.signature) && Arrays.equals(args, other.args);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * signature.hashCode() + Arrays.hashCode(args);
+    }
+
+    static class Builder {
+        private final List<String> statuses = new ArrayList<>();
+        private String ratingOperator = Playlist.Operator.GREATERTHAN.toString();
+        private int rating = 0;
+        private long playedBefore = -1;
+        private final List<String> genresIncluded = new ArrayList<>();
+        private final List<String> genresExcluded = new ArrayList<>();
+        private String artist;
+        private String album;
+        private String idPath;
+        private final List<String> tagsIncluded = new ArrayList<>();
+        private final List<String> tagsExcluded = new ArrayList<>();
+        private TriStateButton.STATE unTagged = TriStateButton.STATE.ANY;
+        private final List<Integer> excluded = new ArrayList<>();
+
+        Builder status(String status) {
+            statuses.add(status);
+            return this;
+        }
+
+        /**
+         * @param operator one of Playlist.Operator
+         * @param rating   rating value
+         */
+        Builder rating(String operator, int rating) {
+            this.ratingOperator = operator;
+            this.rating = rating;
+            return this;
+        }
+
+        /**
+         * @param epochMillis only tracks last played before this UTC epoch milliseconds
+         */
+        Builder playedBefore(long epochMillis) {
+            this.playedBefore = epochMillis;
+            return this;
+        }
+
+        Builder genre(String genre, TriStateButton.STATE state) {
+            add(genre, state, genresIncluded, genresExcluded);
+            return this;
+        }
+
+        Builder tag(String tag, TriStateButton.STATE state) {
+            add(tag, state, tagsIncluded, tagsExcluded);
+            return this;
+        }
+
+        Builder unTagged(TriStateButton.STATE state) {
+            this.unTagged = state;
+            return this;
+        }
+
+        Builder artist(String artist) {
+            this.artist = artist;
+            return this;
+        }
+
+        Builder album(String album) {
+            this.album = album;
+            return this;
+        }
+
+        Builder idPath(String idPath) {
+            this.idPath = idPath;
+            return this;
+        }
+
+        Builder exclude(List<Integer> idFileRemotes) {
+            excluded.addAll(idFileRemotes);
+            return this;
+        }
+
+        private static void add(String value, TriStateButton.STATE state, List<String> include, List<String> exclude) {
+            switch (state) {
+                case TRUE:
+                    include.add(value);
+                    break;
+                case FALSE:
+                    exclude.add(value);
+                    break;
+            }
+        }
+
+        PlaylistQuery build() {
+            int excludedBucket = getBucket(excluded.size());
+            List<Integer> inlined = excluded.subList(0, Math.max(0, excluded.size() - excludedBucket));
+            String signature = statuses.size()
+                    + "|" + ratingOperator //NON-NLS
+                    + "|" + (playedBefore >= 0 ? "P" : "") //NON-NLS
+                    + "|" + genresIncluded.size() + "|" + genresExcluded.size() //NON-NLS
+                    + "|" + (artist != null ? "A" : "") //NON-NLS
+                    + "|" + (album != null ? "B" : "") //NON-NLS
+                    + "|" + (idPath != null ? "I" : "") //NON-NLS
+                    + "|" + excludedBucket //NON-NLS
+                    + "|" + unTagged.name() //NON-NLS
+                    + "|" + tagsIncluded.size() + "|" + tagsExcluded.size() //NON-NLS
+                    + (inlined.isEmpty() ? "" : "|" + inlined); //NON-NLS
+            String sql = inlined.isEmpty() ? SQL_CACHE.get(signature) : null;
+            if (sql == null) {
+                sql = buildWhere(excludedBucket, inlined);
+                if (inlined.isEmpty()) {
+                    SQL_CACHE.put(signature, sql);
+                }
+            } else {
+                cacheHits.incrementAndGet();
+            }
+            LibrarySnapshot.Filter filter = null;
+            if (artist == null && album == null && idPath == null) {
+                filter = new LibrarySnapshot.Filter(statuses, ratingOperator, rating, playedBefore,
+                        genresIncluded, genresExcluded, tagsIncluded, tagsExcluded, unTagged, excluded);
+            }
+            return new PlaylistQuery(signature, sql, buildArgs(excludedBucket, inlined.size()), filter);
+        }
+
+        /**
+         * @param nbInlined number of first excluded ids, inlined rather than bound
+         */
+        private String[] buildArgs(int excludedBucket, int nbInlined) {
+            List<String> args = new ArrayList<>();
+            if (statuses.size() > 0) {
+                args.addAll(statuses);
+                args.add(String.valueOf(rating));
+                if (playedBefore >= 0) {
+                    args.add(String.valueOf(playedBefore));
+                }
+                args.addAll(genresIncluded);
+                args.addAll(genresExcluded);
+                if (artist != null) {
+                    args.add(artist);
+                }
+                if (album != null) {
+                    args.add(album);
+                }
+                if (idPath != null) {
+                    args.add(idPath);
+                }
+                for (int id : excluded.subList(nbInlined, excluded.size())) {
+                    args.add(String.valueOf(id));
+                }
+                for (int i = excluded.size() - nbInlined; i < excludedBucket; i++) {
+                    args.add(NO_ID);
+                }
+                if (!unTagged.equals(TriStateButton.STATE.TRUE)) {
+                    args.addAll(tagsIncluded);
+                    args.addAll(tagsExcluded);
+                }
+            }
+            return args.toArray(new String[0]);
+        }
+
+        private String buildWhere(int excludedBucket, List<Integer> inlined) {
+            if (statuses.size() <= 0) {
+                return " WHERE 0 "; //NON-NLS
+            }
+            StringBuilder where = new StringBuilder(" WHERE ").append(COL_TRACKS_STATUS) //NON-NLS
+                    .append(" IN (").append(getBindings(statuses.size())).append(")") //NON-NLS
+                    .append(" AND ").append(COL_TRACKS_RATING).append(" ").append(ratingOperator).append(" ? "); //NON-NLS
+            if (playedBefore >= 0) {
+                where.append("\n AND ").append(COL_TRACKS_LAST_PLAYED).append(" < ? "); //NON-NLS
+            }
+            if (genresIncluded.size() > 0) {
+                where.append("\n AND ").append(COL_TRACKS_GENRE) //NON-NLS
+                        .append(" IN (").append(getBindings(genresIncluded.size())).append(") "); //NON-NLS
+            }
+            if (genresExcluded.size() > 0) {
+                where.append("\n AND ").append(COL_TRACKS_GENRE) //NON-NLS
+                        .append(" NOT IN (").append(getBindings(genresExcluded.size())).append(") "); //NON-NLS
+            }
+            if (artist != null) {
+                where.append("\n AND ").append(COL_TRACKS_ARTIST).append(" LIKE ? "); //NON-NLS
+            }
+            if (album != null) {
+                where.append("\n AND ").append(COL_TRACKS_ALBUM).append(" LIKE ? "); //NON-NLS
+            }
+            if (idPath != null) {
+                where.append("\n AND ").append(COL_TRACKS_ID_PATH).append(" = ? "); //NON-NLS
+            }
+            if (excludedBucket > 0) {
+                where.append("\n AND ").append(TABLE_TRACKS).append(".").append(COL_TRACKS_ID_REMOTE) //NON-NLS
+                        .append(" NOT IN (").append(getBindings(excludedBucket)).append(") "); //NON-NLS
+            }
+            if (!inlined.isEmpty()) {
+                where.append("\n AND ").append(TABLE_TRACKS).append(".").append(COL_TRACKS_ID_REMOTE) //NON-NLS
+                        .append(" NOT IN (").append(getInClause(inlined)).append(") "); //NON-NLS
+            }
+            appendTags(where);
+            return where.toString();
+        }
+
+        private void appendTags(StringBuilder where) {
+            if (unTagged.equals(TriStateButton.STATE.TRUE)) {
+                where.append("\n AND NOT ").append(TAGGED).append(" "); //NON-NLS
+                return;
+            }
+            //Include or exclude tags according to states
+            StringBuilder tags = new StringBuilder();
+            for (int i = 0; i < tagsIncluded.size(); i++) {
+                tags.append(tags.length() > 0 ? "\n AND " : "").append(HAS_TAG); //NON-NLS
+            }
+            if (tagsExcluded.size() > 0) {
+                tags.append(tags.length() > 0 ? "\n AND " : "") //NON-NLS
+                        .append(String.format(HAS_NO_TAG_IN, getBindings(tagsExcluded.size())));
+            }
+            //Include or exclude untagged
+            if (unTagged.equals(TriStateButton.STATE.ANY)) {
+                if (tagsIncluded.size() > 0) {
+                    where.append("\n AND ((").append(tags).append(")\n OR NOT ").append(TAGGED).append(") "); //NON-NLS
+                } else if (tags.length() > 0) {
+                    where.append("\n AND ").append(tags).append(" "); //NON-NLS
+                }
+            } else {
+                if (tags.length() > 0) {
+                    where.append("\n AND ").append(tags); //NON-NLS
+                }
+                where.append("\n AND ").append(TAGGED).append(" "); //NON-NLS
+            }
+        }
+    }
+
+    /**
+     * @param size number of excluded ids
+     * @return 0 if none, a power of two otherwise, from MIN_EXCLUDED_BUCKET to MAX_EXCLUDED_BINDINGS
+     */
+    static int getBucket(int size) {
+        if (size <= 0) {
+            return 0;
+        }
+        int bucket = MIN_EXCLUDED_BUCKET;
+        while (bucket < size && bucket < MAX_EXCLUDED_BINDINGS) {
+            bucket <<= 1;
+        }
+        return bucket;
+    }
+
+    /**
+     * @param ids integers, safe to inline
+     * @return "1,2,3"
+     */
+    private static String getInClause(List<Integer> ids) {
+        StringBuilder in = new StringBuilder();
+        for (int id : ids) {
+            in.append(in.length() > 0 ? "," : "").append(id);
+        }
+        return in.toString();
+    }
+
+    /**
+     * @param count number of bindings
+     * @return "?,?,?" with count ?
+     */
+    static String getBindings(int count) {
+        StringBuilder bindings = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            bindings.append(i > 0 ? ",?" : "?");
+        }
+        return bindings.toString();
+    }
+}
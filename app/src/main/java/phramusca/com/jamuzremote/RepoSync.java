@@ -20,15 +20,19 @@ public final class RepoSync {
     private static final String TAG = RepoSync.class.getName();
     private static Table<Integer, Track.Status, Track> tracks = null;
 
-    public synchronized static void read() {
+    /**
+     * @param delta true for a delta sync: NEW files are kept NEW, as only changed files are listed by server
+     */
+    public synchronized static void read(boolean delta) {
         tracks = HashBasedTable.create();
         Cursor cursor = HelperLibrary.musicLibrary.getTracksCursor(true,
                 "WHERE " + COL_TRACKS_STATUS + "!=\"" + Track.Status.LOCAL.name() + "\"",  //NON-NLS
-                "", "", -1); //NON-NLS
+                "", -1); //NON-NLS
         if (cursor != null && cursor.moveToFirst()) {
+            TrackCursorMapper mapper = HelperLibrary.musicLibrary.getMapper(cursor, true);
             do {
-                Track track = HelperLibrary.musicLibrary.cursorToTrack(cursor, true);
-                if(track.getStatus().equals(Track.Status.NEW)) {
+                Track track = mapper.map(cursor);
+                if(!delta && track.getStatus().equals(Track.Status.NEW)) {
                     // Assuming it is INFO and not NEW to avoid downloading files that moved to INFO on server
                     // Not an issue as:
                     // merge list only takes REC files
@@ -96,6 +100,12 @@ public final class RepoSync {
         }
     }
 
+    public synchronized static void remove(int idFileServer) {
+        if (tracks != null) {
+            tracks.row(idFileServer).clear();
+        }
+    }
+
     public synchronized static Track getFile(int idFileServer) {
         if (tracks.containsRow(idFileServer)) {
             return tracks.row(idFileServer).values().iterator().next();
@@ -111,6 +121,10 @@ public final class RepoSync {
         return new ArrayList<>(tracks.column(Track.Status.REC).values());
     }
 
+    public synchronized static boolean isEmpty() {
+        return tracks.isEmpty();
+    }
+
     public synchronized static List<Track> getNotSyncedList() {
         List<Track> trackList = new ArrayList<>();
         for (Track track : tracks.values()) {
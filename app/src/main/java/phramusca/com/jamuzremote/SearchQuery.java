@@ -0,0 +1,107 @@
+package phramusca.com.jamuzremote;
+
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ALBUM;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ALBUM_ARTIST;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ARTIST;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_TITLE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.TABLE_TRACKS_FTS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Full-text MATCH expressions of user searches, for tracks_fts.
+ * Words typed are prefixes ("beat ab" finds "Beatles - Abbey Road"), all of them must match.
+ * Only letters and digits are kept, so FTS syntax (quotes, *, -, :, parentheses) cannot be injected,
+ * and words are lower-cased so they are never taken for AND/OR/NOT/NEAR operators.
+ * Results are ranked by a weighted score of the columns matching all words.
+ */
+final class SearchQuery {
+
+    /**
+     * Sub-query of ids of tracks matching a MATCH expression, bound to ?
+     */
+    static final String IDS = "SELECT docid FROM " + TABLE_TRACKS_FTS + " WHERE " + TABLE_TRACKS_FTS + " MATCH ?"; //NON-NLS
+    /**
+     * Scored columns, in order of weights given to getScore()
+     */
+    static final String[] COLUMNS = {COL_TRACKS_TITLE, COL_TRACKS_ARTIST, COL_TRACKS_ALBUM, COL_TRACKS_ALBUM_ARTIST};
+    /**
+     * Weights of title, artist, album and albumArtist matches, to search tracks.
+     * Powers of two: a title match ranks first, whatever other columns match
+     */
+    static final int[] TRACK_WEIGHTS = {8, 4, 2, 1};
+    /**
+     * Weights of title, artist, album and albumArtist matches, to search albums
+     */
+    static final int[] ALBUM_WEIGHTS = {1, 4, 8, 2};
+
+    private SearchQuery() {
+    }
+
+    /**
+     * @param search user search
+     * @return words of search, lower-cased
+     */
+    static List<String> getWords(String search) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= search.length(); i++) {
+            if (i < search.length() && Character.isLetterOrDigit(search.charAt(i))) {
+                word.append(search.charAt(i));
+            } else if (word.length() > 0) {
+                words.add(word.toString().toLowerCase(Locale.ROOT));
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * @param search user search
+     * @param column column to search in, null for all columns
+     * @return MATCH expression, empty if search has no words
+     */
+    static String getMatch(String search, String column) {
+        StringBuilder match = new StringBuilder();
+        for (String word : getWords(search)) {
+            match.append(match.length() > 0 ? " " : "")
+                    .append(column != null ? column + ":" : "")
+                    .append(word).append("*");
+        }
+        return match.toString();
+    }
+
+    /**
+     * @param idColumn column of track id (docid of tracks_fts)
+     * @param weights  weights of COLUMNS
+     * @return score of a track, sum of weights of its columns matching all words of search,
+     * with one ? per column of non-zero weight, bound to getScoreArgs()
+     */
+    static String getScore(String idColumn, int[] weights) {
+        StringBuilder score = new StringBuilder();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (weights[i] != 0) {
+                score.append(score.length() > 0 ? " + " : "") //NON-NLS
+                        .append("(").append(idColumn).append(" IN (").append(IDS).append(")) * ").append(weights[i]); //NON-NLS
+            }
+        }
+        return score.length() > 0 ? score.toString() : "0";
+    }
+
+    /**
+     * @param search  user search
+     * @param weights weights of COLUMNS
+     * @return values of getScore() bindings
+     */
+    static List<String> getScoreArgs(String search, int[] weights) {
+        List<String> args = new ArrayList<>();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (weights[i] != 0) {
+                args.add(getMatch(search, COLUMNS[i]));
+            }
+        }
+        return args;
+    }
+}
@@ -207,11 +207,7 @@ public class ServiceAudioPlayer extends MediaBrowserServiceCompat implements Med
         if (track != null) {
             Track displayedTrack = PlayQueue.queue.get(PlayQueue.queue.positionPlaying);
             if(displayedTrack!=null) {
-                new Thread() {
-                    public void run() {
-                        displayedTrack.updatePlayCounterAndLastPlayed();
-                    }
-                }.start();
+                displayedTrack.updatePlayCounterAndLastPlayed();
             }
             // and Play next one
             if (play(track)) {
@@ -626,6 +622,9 @@ public class ServiceAudioPlayer extends MediaBrowserServiceCompat implements Med
     @Override
     public void onDestroy() {
         super.onDestroy();
+        if (HelperLibrary.musicLibrary != null) {
+            HelperLibrary.musicLibrary.getWriteQueue().flushAsync();
+        }
         AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
         audioManager.abandonAudioFocus(audioFocusChangeListener);
         unregisterReceiver(noisyReceiver);
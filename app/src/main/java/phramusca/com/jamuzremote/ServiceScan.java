@@ -80,6 +80,7 @@ public class ServiceScan extends ServiceBase {
                     //Scan MediaStore and cleanup library
                     scan();
                     waitScan();
+                    HelperLibrary.musicLibrary.analyze();
 
                     RepoAlbums.reset();
                     SharedPreferences.Editor editor = defaultSharedPreferences.edit();
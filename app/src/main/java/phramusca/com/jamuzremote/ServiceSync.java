@@ -4,8 +4,10 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.net.wifi.WifiManager;
 import android.os.PowerManager;
+import android.preference.PreferenceManager;
 import android.util.Log;
 
 import org.json.JSONArray;
@@ -16,17 +18,20 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import okhttp3.Call;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
 
 /**
  * @author phramusca
@@ -35,6 +40,22 @@ public class ServiceSync extends ServiceBase {
 
     private static final String TAG = ServiceSync.class.getName();
     public static final String USER_STOP_SERVICE_REQUEST = "USER_STOP_SERVICE_SCAN_REMOTE"; //NON-NLS
+    /**
+     * Number of file batches fetched ahead, while current one is checked and written
+     */
+    private static final int SYNC_LOOKAHEAD = 2;
+    /**
+     * Number of files posted per merge request. Response of each is written in its own transaction
+     */
+    private static final int MERGE_CHUNK_SIZE = 500;
+    /**
+     * Number of merge chunks posted ahead, while response of current one is written
+     */
+    private static final int MERGE_LOOKAHEAD = 1;
+    /**
+     * Read timeout of merge requests, as server merges a whole chunk before answering
+     */
+    private static final int MERGE_READ_TIMEOUT_SECONDS = 600;
 
     private DownloadProcess processDownload;
     private ClientInfo clientInfo;
@@ -43,6 +64,7 @@ public class ServiceSync extends ServiceBase {
     private PowerManager.WakeLock wakeLock;
     private WifiManager.WifiLock wifiLock;
     private ProcessSync processSync;
+    private SharedPreferences preferences;
     protected static OkHttpClient client = new OkHttpClient();
     protected static OkHttpClient clientDownload;
 
@@ -52,6 +74,7 @@ public class ServiceSync extends ServiceBase {
         clientDownload = new OkHttpClient.Builder()
                 .readTimeout(60, TimeUnit.SECONDS)
                 .build();
+        preferences = PreferenceManager.getDefaultSharedPreferences(this);
         userStopReceiver = new UserStopServiceReceiver();
         registerReceiver(userStopReceiver, new IntentFilter(USER_STOP_SERVICE_REQUEST));
         super.onCreate();
@@ -80,6 +103,12 @@ public class ServiceSync extends ServiceBase {
 
     private class ProcessSync extends ProcessAbstract {
 
+        private SyncFilesClient syncFilesClient;
+        /**
+         * Watermark of last successful sync, for a delta sync. Null for a full sync
+         */
+        private String since;
+
         ProcessSync(String name) {
             super(name);
         }
@@ -96,14 +125,29 @@ public class ServiceSync extends ServiceBase {
                         .addHeader("rootPath", clientInfo.getRootPath())
                         .addHeader("model", clientInfo.getModel())
                         .build();
-                clientInfo.getBodyString(request, client); //NON-NLS
+                syncFilesClient = new SyncFilesClient(clientInfo, client, getAppDataPath);
+                String watermark = syncFilesClient.connect(request);
 
                 long startTime = System.currentTimeMillis();
                 long startTimeTotal = startTime;
                 helperNotification.notifyBar(notificationSync, getString(R.string.syncLabelReadingList));
                 checkAbort();
-                RepoSync.read();
-                Log.w(TAG, "RepoSync.read() :"+(System.currentTimeMillis() - startTime)+" ms");
+                //Local edits are to be read and merged
+                HelperLibrary.musicLibrary.getWriteQueue().flushAndWait();
+                HelperLibrary.musicLibrary.resetStatementCacheStats();
+                long tagQueries = HelperLibrary.musicLibrary.getTagQueries();
+                since = preferences.getString(getWatermarkKey(), null);
+                if (since != null && !syncFilesClient.isWatermarkAccepted(since)) {
+                    Log.w(TAG, "Watermark " + since + " rejected by server: full sync"); //NON-NLS
+                    since = null;
+                }
+                RepoSync.read(since != null);
+                if (since != null && RepoSync.isEmpty()) {
+                    //Local library was reset since last sync
+                    since = null;
+                }
+                Log.w(TAG, "RepoSync.read() :"+(System.currentTimeMillis() - startTime)+" ms. " //NON-NLS
+                        + (since == null ? "Full sync" : "Delta sync since " + since)); //NON-NLS
 
                 checkAbort();
                 getTags();
@@ -135,22 +179,37 @@ public class ServiceSync extends ServiceBase {
                 checkFiles(Track.Status.INFO);
                 Log.w(TAG, "checkFiles(Track.Status.INFO) :"+(System.currentTimeMillis() - startTime)+" ms");
 
-                startTime = System.currentTimeMillis();
-                //Remove files in db but not received from server
-                helperNotification.notifyBar(notificationSync, getString(R.string.serviceSyncNotifySyncRemovingDeleted));
-                List<Track> trackList = RepoSync.getNotSyncedList();
-                Log.w(TAG, "RepoSync.getNotSyncedList() :"+(System.currentTimeMillis() - startTime)+" ms");
-                int nbTracks = trackList.size();
-                int i = 0;
-                for (Track track : trackList) {
-                    checkAbort();
-                    i++;
-                    helperNotification.notifyBar(notificationSync, getString(R.string.serviceSyncNotifySyncRemovingDeleted), 10, i, nbTracks);
-                    File file = new File(track.getPath());
-                    //noinspection ResultOfMethodCallIgnored
-                    file.delete();
-                    HelperLibrary.musicLibrary.deleteTrack(track.getIdFileServer());
+                if (since == null) {
+                    startTime = System.currentTimeMillis();
+                    //Remove files in db but not received from server
+                    //(in delta mode, unchanged files are not received, deleted ones are flagged instead)
+                    helperNotification.notifyBar(notificationSync, getString(R.string.serviceSyncNotifySyncRemovingDeleted));
+                    List<Track> trackList = RepoSync.getNotSyncedList();
+                    Log.w(TAG, "RepoSync.getNotSyncedList() :"+(System.currentTimeMillis() - startTime)+" ms");
+                    int nbTracks = trackList.size();
+                    int i = 0;
+                    for (Track track : trackList) {
+                        checkAbort();
+                        i++;
+                        helperNotification.notifyBar(notificationSync, getString(R.string.serviceSyncNotifySyncRemovingDeleted), 10, i, nbTracks);
+                        File file = new File(track.getPath());
+                        //noinspection ResultOfMethodCallIgnored
+                        file.delete();
+                        HelperLibrary.musicLibrary.deleteTrack(track.getIdFileServer());
+                    }
                 }
+                SharedPreferences.Editor editor = preferences.edit();
+                if (watermark == null) {
+                    editor.remove(getWatermarkKey());
+                } else {
+                    editor.putString(getWatermarkKey(), watermark);
+                }
+                editor.apply();
+                Log.w(TAG, HelperLibrary.musicLibrary.getStatementCacheStats());
+                Log.w(TAG, "Tag queries: " + (HelperLibrary.musicLibrary.getTagQueries() - tagQueries)); //NON-NLS
+                Log.w(TAG, StringPool.get().toString());
+                Log.w(TAG, HelperLibrary.musicLibrary.getWriteQueue().toString());
+                HelperLibrary.musicLibrary.analyze();
                 Log.w(TAG, "TOTAL Sync :"+(System.currentTimeMillis() - startTimeTotal)+" ms");
 
                 runOnUiThread(() -> helperNotification.notifyBar(notificationSync, getString(R.string.serviceSyncNotifySyncCheckComplete), -1));
@@ -182,90 +241,130 @@ public class ServiceSync extends ServiceBase {
                     status.name().toLowerCase());
             helperNotification.notifyBar(notificationSync, msg);
             if (nbFilesServer > 0) {
-                for (int i = 0; i <= nbFilesServer; i = i + nbFilesInBatch) {
-                    checkAbort();
-                    Map<Integer, Track> filesMapBatch = getFiles(i, nbFilesInBatch, status);
-                    int j = 0;
-                    for (Track trackServer : filesMapBatch.values()) {
-                        checkAbort();
-                        helperNotification.notifyBar(notificationSync, msg, 50, i + j, nbFilesServer);
-                        j++;
-                        Track trackRemote = RepoSync.getFile(trackServer.getIdFileServer());
-                        if (trackRemote != null) {
-                            //Only path, length and size can be compared.
-                            // Other available fields are for merge usage
-                            // Other metadata changes done in JaMuz should result in a file save (so changes getModifDate)
-                            if (trackServer.getSize() != trackRemote.getSize()
-                                    || trackServer.getLength() != trackRemote.getLength()
-                                    || !trackServer.getModifDate().equals(trackRemote.getModifDate())
-                                    || !trackServer.getRelativeFullPath().equals(trackRemote.getRelativeFullPath())) {
+                long applyTime = 0;
+                int nbBatches = nbFilesServer / nbFilesInBatch + 1;
+                //Next batches are fetched and decoded in background, while current one is checked and written
+                try (BatchPrefetcher<List<Track>> prefetcher = new BatchPrefetcher<>(status.name(), nbBatches, SYNC_LOOKAHEAD,
+                        index -> {
+                            List<Track> files = new ArrayList<>();
+                            getFiles(index * nbFilesInBatch, nbFilesInBatch, status, trackServer -> {
+                                checkAbort();
+                                files.add(trackServer);
+                            });
+                            return files;
+                        })) {
+                    int i = 0;
+                    List<Track> files;
+                    //Statistics changed locally since last merge are not overwritten, to be merged next time
+                    Set<Integer> dirty = HelperLibrary.musicLibrary.getDirtyTracks().keySet();
+                    while ((files = prefetcher.take()) != null) {
+                        long startTime = System.currentTimeMillis();
+                        SyncBatch batch = new SyncBatch();
+                        List<Track> tracksRemote = new ArrayList<>();
+                        for (Track trackServer : files) {
+                            tracksRemote.add(RepoSync.getFile(trackServer.getIdFileServer()));
+                        }
+                        HelperLibrary.musicLibrary.readTags(tracksRemote, false);
+                        for (Track trackServer : files) {
+                            checkAbort();
+                            helperNotification.notifyBar(notificationSync, msg, 50, i, nbFilesServer);
+                            i++;
+                            checkFile(trackServer, batch, dirty);
+                        }
+                        if (!HelperLibrary.musicLibrary.applySyncBatch(batch)) {
+                            throw new IOException("Database error applying batch of " + batch.size() + " files"); //NON-NLS
+                        }
+                        applyTime += System.currentTimeMillis() - startTime;
+                    }
+                    Log.w(TAG, "checkFiles(" + status.name() + ") " + prefetcher + ". Check and write: " + applyTime + " ms"); //NON-NLS
+                }
+            }
+        }
+
+        /**
+         * @param dirty idFileRemote of tracks which statistics changed locally since last merge
+         */
+        private void checkFile(Track trackServer, SyncBatch batch, Set<Integer> dirty) {
+            Track trackRemote = RepoSync.getFile(trackServer.getIdFileServer());
+            if (since != null && trackServer.isDeleted()) {
+                if (trackRemote != null) {
+                    File file = new File(trackRemote.getPath());
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                    HelperLibrary.musicLibrary.deleteTrack(trackServer.getIdFileServer());
+                    RepoSync.remove(trackServer.getIdFileServer());
+                }
+                return;
+            }
+            if (trackRemote != null) {
+                trackServer.setIdFileRemote(trackRemote.getIdFileRemote());
+                //Only path, length and size can be compared.
+                // Other available fields are for merge usage
+                // Other metadata changes done in JaMuz should result in a file save (so changes getModifDate)
+                if (trackServer.getSize() != trackRemote.getSize()
+                        || trackServer.getLength() != trackRemote.getLength()
+                        || !trackServer.getModifDate().equals(trackRemote.getModifDate())
+                        || !trackServer.getRelativeFullPath().equals(trackRemote.getRelativeFullPath())) {
+                    File file = new File(trackRemote.getPath());
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                    batch.update(trackServer);
+                } else {
+                    if (!dirty.contains(trackRemote.getIdFileRemote())) {
+                        batch.updateStatsIfChanged(trackServer, trackRemote);
+                    }
+                    switch (trackServer.getStatus()) {
+                        case INFO:
+                            if (!trackRemote.getStatus().equals(Track.Status.INFO)) {
                                 File file = new File(trackRemote.getPath());
                                 //noinspection ResultOfMethodCallIgnored
                                 file.delete();
-                                trackServer.setIdFileRemote(trackRemote.getIdFileRemote());
-                                HelperLibrary.musicLibrary.updateTrack(trackServer, false);
-                            } else {
-                                switch (trackServer.getStatus()) {
-                                    case INFO:
-                                        if (!trackRemote.getStatus().equals(Track.Status.INFO)) {
-                                            File file = new File(trackRemote.getPath());
-                                            //noinspection ResultOfMethodCallIgnored
-                                            file.delete();
-                                            HelperLibrary.musicLibrary.updateStatus(trackServer);
-                                        }
-                                        break;
-                                    case NEW:
-                                        if (trackRemote.getStatus().equals(Track.Status.REC)) {
-                                            trackServer.setStatus(Track.Status.REC);
-                                        } else if (!trackRemote.getStatus().equals(Track.Status.NEW)) {
-                                            HelperLibrary.musicLibrary.updateStatus(trackServer);
-                                        }
-                                        break;
-                                }
+                                batch.updateStatus(trackServer);
                             }
-                        } else {
-                            if (trackServer.getStatus().equals(Track.Status.NEW) && RepoSync.checkFile(trackServer)) {
+                            break;
+                        case NEW:
+                            if (trackRemote.getStatus().equals(Track.Status.REC)) {
                                 trackServer.setStatus(Track.Status.REC);
+                            } else if (!trackRemote.getStatus().equals(Track.Status.NEW)) {
+                                batch.updateStatus(trackServer);
                             }
-                            HelperLibrary.musicLibrary.insertTrack(trackServer);
-                        }
-                        RepoSync.update(trackServer);
+                            break;
                     }
                 }
+            } else {
+                if (trackServer.getStatus().equals(Track.Status.NEW) && RepoSync.checkFile(trackServer)) {
+                    trackServer.setStatus(Track.Status.REC);
+                }
+                batch.insert(trackServer);
             }
+            RepoSync.update(trackServer);
         }
 
-        //TODO: use gson (or retrofit !) instead of JSONObject to deserialize body
-//                    final Gson gson = new Gson();
-//                    Results fromJson = gson.fromJson(response.body().string(), Results.class);
-//                    fromJson.chromaprint=chromaprint;
-
-        private Map<Integer, Track> getFiles(int idFrom, int nbFilesInBatch, Track.Status status) throws IOException {
+        /**
+         * Reads files of a batch as a stream, handing each to handler as soon as it is decoded.
+         * On error, request is retried from the first file not handled yet.
+         */
+        private void getFiles(int idFrom, int nbFilesInBatch, Track.Status status, TrackJsonReader.TrackHandler handler)
+                throws IOException, InterruptedException {
 
-            //RetryInterceptor cannot catch .body().string() network errors, so looping here instead
+            //RetryInterceptor cannot catch body read network errors, so looping here instead
             int nbRetries = 0;
             int sleepSeconds = 5;
             int maxNbRetries = 20;
-            Map<Integer, Track> newTracks = null;
+            int[] nbReceived = {0};
             String msg = "";
             do {
                 nbRetries++;
                 try {
-                    HttpUrl.Builder urlBuilder = clientInfo.getUrlBuilder("files/" + status.name()); //NON-NLS
-                    urlBuilder.addQueryParameter("idFrom", String.valueOf(idFrom));
-                    urlBuilder.addQueryParameter("nbFilesInBatch", String.valueOf(nbFilesInBatch));
-                    String body = clientInfo.getBodyString(urlBuilder, client);
-                    final JSONObject jObject = new JSONObject(body);
-                    JSONArray files = (JSONArray) jObject.get("files"); //NON-NLS
-                    newTracks = new LinkedHashMap<>();
-                    for (int i = 0; i < files.length(); i++) {
-                        Track fileReceived = new Track(
-                                (JSONObject) files.get(i),
-                                getAppDataPath, false);
-                        fileReceived.setSync();
-                        newTracks.put(fileReceived.getIdFileServer(), fileReceived);
-                    }
-                    break;
+                    syncFilesClient.getFiles(idFrom + nbReceived[0], nbFilesInBatch - nbReceived[0], status, since,
+                            fileReceived -> {
+                                fileReceived.setSync();
+                                handler.onTrack(fileReceived);
+                                nbReceived[0]++;
+                            });
+                    return;
+                } catch (InterruptedException e) {
+                    throw e;
                 } catch (Exception e) {
                     msg = e.getLocalizedMessage();
                     Log.d(TAG, "ERROR: " + msg); //NON-NLS
@@ -277,29 +376,21 @@ public class ServiceSync extends ServiceBase {
                             nbRetries + 1,
                             maxNbRetries,
                             msg));
-                    try {
-                        sleep(sleepSeconds * 1000);
-                    } catch (InterruptedException ex) {
-                        ex.printStackTrace();
-                    }
+                    //Interrupted when BatchPrefetcher is closed
+                    sleep(sleepSeconds * 1000);
                 }
             } while (nbRetries < maxNbRetries - 1);
-            if (newTracks == null) {
-                throw new IOException(msg);
-            }
-            return newTracks;
+            throw new IOException(msg);
         }
 
         private Integer getFilesCount(Track.Status status) throws IOException, ServerException {
-            HttpUrl.Builder urlBuilder = clientInfo.getUrlBuilder("files/" + status.name()); //NON-NLS
-            urlBuilder.addQueryParameter("getCount", "true"); //NON-NLS
-            String body = clientInfo.getBodyString(urlBuilder, client);
+            int count = syncFilesClient.getFilesCount(status, since);
             helperNotification.notifyBar(notificationSync, String.format(
                     "%s \"%s\" %s", //NON-NLS
                     getString(R.string.serviceSyncNotifySyncReceived),
                     status.name(),
                     getString(R.string.serviceSyncNotifySyncReceivedSuffix)));
-            return Integer.valueOf(body);
+            return count;
         }
 
         private void getTags() throws IOException, ServerException, JSONException {
@@ -331,45 +422,122 @@ public class ServiceSync extends ServiceBase {
             sendMessage("setupGenres");
         }
 
-        private void requestMerge() throws JSONException, ServerException, IOException {
+        private void requestMerge() throws IOException, InterruptedException {
             helperNotification.notifyBar(notificationSync, getString(R.string.serviceSyncNotifySyncPreparingMerge));
             List<Track> tracks = RepoSync.getMergeList();
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .readTimeout(Math.min(Math.max(tracks.size(), 30), 600), TimeUnit.SECONDS) //Between 30s and 10min
-                    .build();
+            //Read before merge, so that changes made while merging are merged next time
+            Map<Integer, Long> dirty = HelperLibrary.musicLibrary.getDirtyTracks();
+            boolean forceFullMerge = preferences.getBoolean("forceFullMerge", false); //NON-NLS
+            //An interrupted full merge resumes after last merged chunk
+            int mergedUpTo = forceFullMerge
+                    ? preferences.getInt(getMergeProgressKey(), MergeChunks.FULL) : MergeChunks.DIRTY_ONLY;
+            MergeChunks chunks = new MergeChunks(tracks, dirty, mergedUpTo, MERGE_CHUNK_SIZE);
+            int nbMerge = chunks.size();
+            Log.i(TAG, "requestMerge() " + nbMerge + "/" + tracks.size() + " files"); //NON-NLS
+            if (nbMerge > 0) {
+                OkHttpClient client = new OkHttpClient.Builder()
+                        .readTimeout(MERGE_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                        .build();
+                helperNotification.notifyBar(notificationSync, getString(R.string.serviceSyncNotifySyncRequestingMerge));
+                long applyTime = 0;
+                //Next chunk is posted while response of current one is written.
+                // On close, its request is cancelled, as interrupt does not stop a blocking read
+                AtomicReference<Call> inFlight = new AtomicReference<>();
+                try (BatchPrefetcher<SyncBatch> prefetcher = new BatchPrefetcher<>("merge", chunks.getNbChunks(), MERGE_LOOKAHEAD, //NON-NLS
+                        index -> postMerge(client, chunks, index, inFlight),
+                        () -> {
+                            Call call = inFlight.get();
+                            if (call != null) {
+                                call.cancel();
+                            }
+                        })) {
+                    int i = 0;
+                    SyncBatch batch;
+                    while ((batch = prefetcher.take()) != null) {
+                        checkAbort();
+                        long startTime = System.currentTimeMillis();
+                        if (!HelperLibrary.musicLibrary.applySyncBatch(batch)) {
+                            throw new IOException("Database error applying merge of " + batch.size() + " files"); //NON-NLS
+                        }
+                        //Progress is kept, chunk by chunk: dirty state of merged tracks, and last merged track of a full merge
+                        HelperLibrary.musicLibrary.clearDirty(chunks.getMerged(i));
+                        if (forceFullMerge) {
+                            preferences.edit()
+                                    .putInt(getMergeProgressKey(), chunks.getMergedUpTo(i))
+                                    .apply();
+                        }
+                        applyTime += System.currentTimeMillis() - startTime;
+                        helperNotification.notifyBar(notificationSync, getString(R.string.serviceSyncNotifySyncUpdateDatabase),
+                                1, chunks.getNbMerged(i), nbMerge);
+                        i++;
+                    }
+                    Log.w(TAG, "requestMerge() " + prefetcher + ". Write: " + applyTime + " ms"); //NON-NLS
+                }
+            }
+            preferences.edit().remove(getMergeProgressKey()).apply();
+            helperNotification.notifyBar(notificationSync, getString(R.string.serviceSyncNotifySyncMergeComplete));
+        }
+
+        /**
+         * Posts a chunk of files to merge
+         *
+         * @param index    index of chunk
+         * @param inFlight set to the call while it runs, for it to be cancelled
+         * @return stats of merged files, as returned by server
+         */
+        private SyncBatch postMerge(OkHttpClient client, MergeChunks chunks, int index, AtomicReference<Call> inFlight)
+                throws JSONException, ServerException, IOException, InterruptedException {
             JSONObject obj = new JSONObject();
             obj.put("type", "FilesToMerge");
             JSONArray filesToMerge = new JSONArray();
-            for (Track track : tracks) {
-                track.getTags(true);
+            List<Track> chunk = chunks.getChunk(index);
+            HelperLibrary.musicLibrary.readTags(chunk, true);
+            for (Track track : chunk) {
                 filesToMerge.put(track.toJSONObject());
             }
             obj.put("files", filesToMerge); //NON-NLS
             HttpUrl.Builder urlBuilder = clientInfo.getUrlBuilder("files"); //NON-NLS
             Request request = clientInfo.getRequestBuilder(urlBuilder) //NON-NLS
                     .post(RequestBody.create(obj.toString(), MediaType.parse("application/json; charset=utf-8"))).build(); //NON-NLS
-            helperNotification.notifyBar(notificationSync, getString(R.string.serviceSyncNotifySyncRequestingMerge));
-            String body = clientInfo.getBodyString(request, client);
-            helperNotification.notifyBar(notificationSync, getString(R.string.serviceSyncNotifySyncUpdateDatabase)); //NON-NLS
-            final JSONObject jObject = new JSONObject(body);
-            JSONArray filesToUpdate = (JSONArray) jObject.get("files"); //NON-NLS
-            for (int i = 0; i < filesToUpdate.length(); i++) {
-                Track trackServer = new Track(
-                        (JSONObject) filesToUpdate.get(i),
-                        getAppDataPath, true);
-                trackServer.setStatus(Track.Status.REC);
-                Track trackRemote = RepoSync.getFile(trackServer.getIdFileServer());
-                if (trackRemote != null) {
-                    trackServer.setIdFileRemote(trackRemote.getIdFileRemote());
-                    HelperLibrary.musicLibrary.updateTrack(trackServer, true);
-                }
-                helperNotification.notifyBar(notificationSync, getString(R.string.serviceSyncNotifySyncUpdateDatabase),
-                        10, i + 1, filesToUpdate.length());
+            SyncBatch batch = new SyncBatch();
+            Call call = client.newCall(request);
+            inFlight.set(call);
+            if (Thread.currentThread().isInterrupted()) {
+                //Closed before call was set
+                call.cancel();
             }
-            helperNotification.notifyBar(notificationSync, getString(R.string.serviceSyncNotifySyncMergeComplete));
+            try (ResponseBody body = clientInfo.getBody(call)) {
+                TrackJsonReader.read(body.charStream(), getAppDataPath, true, trackServer -> {
+                    checkAbort();
+                    trackServer.setStatus(Track.Status.REC);
+                    Track trackRemote = RepoSync.getFile(trackServer.getIdFileServer());
+                    if (trackRemote != null) {
+                        trackServer.setIdFileRemote(trackRemote.getIdFileRemote());
+                        //Not applied if changed locally while merging, to be merged next time
+                        batch.updateStats(trackServer, chunks.getDirty(trackRemote.getIdFileRemote()));
+                    }
+                });
+            } finally {
+                inFlight.compareAndSet(call, null);
+            }
+            return batch;
         }
     }
 
+    /**
+     * @return preference key of sync watermark, by server
+     */
+    private String getWatermarkKey() {
+        return "syncWatermark-" + clientInfo.getAddress() + ":" + clientInfo.getPort(); //NON-NLS
+    }
+
+    /**
+     * @return preference key of last merged track (idFileRemote) of an interrupted full merge, by server
+     */
+    private String getMergeProgressKey() {
+        return "mergeProgress-" + clientInfo.getAddress() + ":" + clientInfo.getPort(); //NON-NLS
+    }
+
     @Override
     public void onDestroy() {
         unregisterReceiver(userStopReceiver);
@@ -383,9 +551,23 @@ public class ServiceSync extends ServiceBase {
     }
 
     static class ServerException extends Exception {
+        private final int code;
+
         public ServerException(String errorMessage) {
-            super(errorMessage);
+            this(-1, errorMessage);
         } //NON-NLS
+
+        public ServerException(int code, String errorMessage) {
+            super(errorMessage);
+            this.code = code;
+        }
+
+        /**
+         * @return HTTP status code, -1 if not an HTTP error
+         */
+        public int getCode() {
+            return code;
+        }
     }
 
     public class UserStopServiceReceiver extends BroadcastReceiver {
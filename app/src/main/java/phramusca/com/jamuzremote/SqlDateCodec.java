@@ -0,0 +1,148 @@
+package phramusca.com.jamuzremote;
+
+/**
+ * Formats and parses UTC dateTimes in SQL format ("yyyy-MM-dd HH:mm:ss"),
+ * without SimpleDateFormat, Calendar nor TimeZone.
+ * Stateless, so thread-safe.
+ * Only handles years 1583 to 9999 (proleptic and actual gregorian calendars match),
+ * with strictly formatted input: callers fall back to SimpleDateFormat otherwise.
+ */
+final class SqlDateCodec {
+
+    static final int LENGTH = 19;
+    /**
+     * Returned by parse() for input it does not handle
+     */
+    static final long INVALID = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long SECONDS_PER_DAY = 86400L;
+    private static final int MIN_YEAR = 1583;
+    private static final int MAX_YEAR = 9999;
+    private static final long MIN_MILLIS = daysFromCivil(MIN_YEAR, 1, 1) * SECONDS_PER_DAY * MILLIS_PER_SECOND;
+    private static final long MAX_MILLIS = daysFromCivil(MAX_YEAR + 1, 1, 1) * SECONDS_PER_DAY * MILLIS_PER_SECOND;
+
+    private SqlDateCodec() {
+    }
+
+    /**
+     * @param epochMillis UTC epoch milliseconds
+     * @return true if format() handles it
+     */
+    static boolean canFormat(long epochMillis) {
+        return epochMillis >= MIN_MILLIS && epochMillis < MAX_MILLIS;
+    }
+
+    /**
+     * @param epochMillis UTC epoch milliseconds, checked with canFormat()
+     * @return SQL formatted UTC dateTime (milliseconds are truncated)
+     */
+    static String format(long epochMillis) {
+        long seconds = floorDiv(epochMillis, MILLIS_PER_SECOND);
+        long days = floorDiv(seconds, SECONDS_PER_DAY);
+        int secondOfDay = (int) (seconds - days * SECONDS_PER_DAY);
+
+        // Civil from days (H. Hinnant), with eras of 400 years starting on March 1st
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+
+        char[] chars = new char[LENGTH];
+        put(chars, 0, year / 100);
+        put(chars, 2, year % 100);
+        chars[4] = '-';
+        put(chars, 5, month);
+        chars[7] = '-';
+        put(chars, 8, day);
+        chars[10] = ' ';
+        put(chars, 11, secondOfDay / 3600);
+        chars[13] = ':';
+        put(chars, 14, secondOfDay / 60 % 60);
+        chars[16] = ':';
+        put(chars, 17, secondOfDay % 60);
+        return new String(chars);
+    }
+
+    /**
+     * @param date SQL formatted UTC dateTime
+     * @return UTC epoch milliseconds, or INVALID if not strictly formatted or out of range
+     */
+    static long parse(CharSequence date) {
+        if (date == null || date.length() != LENGTH
+                || date.charAt(4) != '-' || date.charAt(7) != '-' || date.charAt(10) != ' '
+                || date.charAt(13) != ':' || date.charAt(16) != ':') {
+            return INVALID;
+        }
+        int year = digits(date, 0, 4);
+        int month = digits(date, 5, 2);
+        int day = digits(date, 8, 2);
+        int hour = digits(date, 11, 2);
+        int minute = digits(date, 14, 2);
+        int second = digits(date, 17, 2);
+        if (year < MIN_YEAR || month < 1 || month > 12
+                || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID;
+        }
+        long seconds = daysFromCivil(year, month, day) * SECONDS_PER_DAY
+                + hour * 3600 + minute * 60 + second;
+        return seconds * MILLIS_PER_SECOND;
+    }
+
+    // Math.floorDiv() is not available before API 24
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+
+    private static void put(char[] chars, int offset, int twoDigits) {
+        chars[offset] = (char) ('0' + twoDigits / 10);
+        chars[offset + 1] = (char) ('0' + twoDigits % 10);
+    }
+
+    /**
+     * @return value of the digits, or -1 if any is not a digit
+     */
+    private static int digits(CharSequence date, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = date.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // Days from civil (H. Hinnant)
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        long era = floorDiv(y, 400);
+        int yearOfEra = (int) (y - era * 400);
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,71 @@
+package phramusca.com.jamuzremote;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compiled statements of a database connection, by SQL.
+ * Statements are parsed and planned once, then only re-bound.
+ * NOT thread-safe: callers must hold the lock of the database writer.
+ */
+class StatementCache {
+
+    private final SQLiteDatabase db;
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+    private long hits = 0;
+    private long misses = 0;
+
+    StatementCache(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    /**
+     * @param sql statement with ? bindings
+     * @return compiled statement, with bindings cleared
+     */
+    SQLiteStatement get(String sql) {
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            misses++;
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        } else {
+            hits++;
+            statement.clearBindings();
+        }
+        return statement;
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+    void resetCounters() {
+        hits = 0;
+        misses = 0;
+    }
+
+    void close() {
+        for (SQLiteStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "StatementCache: %d statements, %d hits, %d misses", //NON-NLS
+                statements.size(), hits, misses);
+    }
+}
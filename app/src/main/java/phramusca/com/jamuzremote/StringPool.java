@@ -0,0 +1,89 @@
+package phramusca.com.jamuzremote;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dictionary of repeated track metadata, so that tracks read from database or server share
+ * one String instance per value instead of one copy per track.
+ * Values are kept for the life of the process, so only pool low-cardinality fields
+ * (genre, artist, albumArtist, year, format, bitRate, checkedFlag and tags), not values nearly unique
+ * to a track or an album (idPath, album, coverHash, copyRight), which would fill the pool for little saving.
+ * Bounded: above MAX_SIZE values, new values are returned as is.
+ * Thread-safe.
+ */
+final class StringPool {
+
+    static final int MAX_SIZE = 50000;
+    /**
+     * Approximate heap of a String: object header and fields, plus its array header
+     */
+    private static final int STRING_OVERHEAD = 40;
+
+    private static final StringPool POOL = new StringPool(MAX_SIZE);
+
+    private final int maxSize;
+    private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong savedBytes = new AtomicLong();
+
+    StringPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return pool shared by Track readers
+     */
+    static StringPool get() {
+        return POOL;
+    }
+
+    /**
+     * @param value value to share
+     * @return instance equal to value, the same for all equal values (if pool is not full)
+     */
+    String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String pooled = values.get(value);
+        if (pooled == null) {
+            misses.incrementAndGet();
+            if (values.size() >= maxSize) {
+                return value;
+            }
+            pooled = values.putIfAbsent(value, value);
+            if (pooled == null) {
+                return value;
+            }
+        } else {
+            hits.incrementAndGet();
+        }
+        if (pooled != value) {
+            savedBytes.addAndGet(STRING_OVERHEAD + value.length() * 2L);
+        }
+        return pooled;
+    }
+
+    int size() {
+        return values.size();
+    }
+
+    /**
+     * @return approximate heap not used thanks to the pool, by instances that were dropped for a pooled one
+     */
+    long getSavedBytes() {
+        return savedBytes.get();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "StringPool: %d values, %d hits, %d misses, ~%d KiB saved", //NON-NLS
+                values.size(), hits.get(), misses.get(), savedBytes.get() / 1024);
+    }
+}
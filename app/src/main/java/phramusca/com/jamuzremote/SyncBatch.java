@@ -0,0 +1,118 @@
+package phramusca.com.jamuzremote;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Database changes for a batch of server files,
+ * to be applied in a single transaction by MusicLibrary.applySyncBatch()
+ */
+public class SyncBatch {
+
+    private final List<Track> inserts = new ArrayList<>();
+    private final List<Track> updates = new ArrayList<>();
+    private final List<Track> statsUpdates = new ArrayList<>();
+    private final List<Track> statusUpdates = new ArrayList<>();
+    private final Map<Integer, Long> statsDirty = new HashMap<>();
+
+    /**
+     * @param track new track, with its tags. Its idFileRemote is set once applied.
+     */
+    void insert(Track track) {
+        inserts.add(track);
+    }
+
+    /**
+     * @param track track to update (all columns), with its tags
+     */
+    void update(Track track) {
+        updates.add(track);
+    }
+
+    /**
+     * @param track track to update (statistics only), with its tags, and its idFileRemote set
+     * @param dirty dirty counter of track, as read before sync or merge (0 if not dirty).
+     *              Update is skipped if the counter changed since, not to overwrite newer local changes.
+     */
+    void updateStats(Track track, long dirty) {
+        statsUpdates.add(track);
+        statsDirty.put(track.getIdFileRemote(), dirty);
+    }
+
+    /**
+     * Updates statistics of a file unchanged on server, if they changed there.
+     * To be called only if they did not change locally since last merge, as merge comes first then.
+     *
+     * @param trackServer file from server, with its statistics and tags, and its idFileRemote set
+     * @param trackLocal  same file in library, with its tags
+     * @return true if statistics are to be updated
+     */
+    boolean updateStatsIfChanged(Track trackServer, Track trackLocal) {
+        if (isStatsChanged(trackServer, trackLocal)) {
+            updateStats(trackServer, 0);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if statistics (as merged: rating, genre, dates, play counter and tags) differ
+     */
+    static boolean isStatsChanged(Track trackServer, Track trackLocal) {
+        return trackServer.getRating() != trackLocal.getRating()
+                || !trackServer.getGenre().equals(trackLocal.getGenre())
+                || trackServer.getPlayCounter() != trackLocal.getPlayCounter()
+                || !Objects.equals(trackServer.getLastPlayed(), trackLocal.getLastPlayed())
+                || !Objects.equals(trackServer.getAddedDate(), trackLocal.getAddedDate())
+                || !getTagSet(trackServer.getTags(false)).equals(getTagSet(trackLocal.getTags(false)));
+    }
+
+    private static Set<String> getTagSet(Collection<String> tags) {
+        return tags == null ? new HashSet<>() : new HashSet<>(tags);
+    }
+
+    /**
+     * @param track track which status is to be updated, by idFileServer
+     */
+    void updateStatus(Track track) {
+        statusUpdates.add(track);
+    }
+
+    List<Track> getInserts() {
+        return inserts;
+    }
+
+    List<Track> getUpdates() {
+        return updates;
+    }
+
+    List<Track> getStatsUpdates() {
+        return statsUpdates;
+    }
+
+    /**
+     * @return dirty counter of track (statistics update), as read before sync or merge
+     */
+    long getStatsDirty(Track track) {
+        Long dirty = statsDirty.get(track.getIdFileRemote());
+        return dirty == null ? 0 : dirty;
+    }
+
+    List<Track> getStatusUpdates() {
+        return statusUpdates;
+    }
+
+    int size() {
+        return inserts.size() + updates.size() + statsUpdates.size() + statusUpdates.size();
+    }
+
+    boolean isEmpty() {
+        return size() <= 0;
+    }
+}
@@ -0,0 +1,95 @@
+package phramusca.com.jamuzremote;
+
+import java.io.File;
+import java.io.IOException;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Requests files lists (files/{status}) to server, either all of them,
+ * or in delta mode only the ones changed (or deleted) since a watermark.
+ * Watermark is an opaque value (server timestamp or change sequence), sent by server on connection:
+ * as it is read before lists are requested, changes made during a sync are listed again on next one.
+ */
+class SyncFilesClient {
+
+    static final String HEADER_WATERMARK = "sync-watermark"; //NON-NLS
+    /**
+     * Server does not know changes since watermark anymore (HTTP Gone): a full sync is needed
+     */
+    static final int WATERMARK_REJECTED = 410;
+
+    private final ClientInfo clientInfo;
+    private final OkHttpClient client;
+    private final File getAppDataPath;
+
+    SyncFilesClient(ClientInfo clientInfo, OkHttpClient client, File getAppDataPath) {
+        this.clientInfo = clientInfo;
+        this.client = client;
+        this.getAppDataPath = getAppDataPath;
+    }
+
+    /**
+     * @param request connection request
+     * @return server watermark, null if server does not support delta sync
+     */
+    String connect(Request request) throws IOException, ServiceSync.ServerException {
+        try (Response response = clientInfo.getResponse(request, client)) {
+            return response.header(HEADER_WATERMARK);
+        }
+    }
+
+    /**
+     * @param since watermark of last successful sync
+     * @return false if server rejects watermark
+     */
+    boolean isWatermarkAccepted(String since) throws IOException, ServiceSync.ServerException {
+        try {
+            getFilesCount(Track.Status.NEW, since);
+            return true;
+        } catch (ServiceSync.ServerException ex) {
+            if (ex.getCode() == WATERMARK_REJECTED) {
+                return false;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * @param since watermark, null for all files
+     * @return number of files with given status (changed since watermark)
+     */
+    int getFilesCount(Track.Status status, String since) throws IOException, ServiceSync.ServerException {
+        HttpUrl.Builder urlBuilder = getUrlBuilder(status, since);
+        urlBuilder.addQueryParameter("getCount", "true"); //NON-NLS
+        return Integer.parseInt(clientInfo.getBodyString(urlBuilder, client).trim());
+    }
+
+    /**
+     * Reads a batch of files as a stream. In delta mode, files deleted on server are flagged (Track.isDeleted()).
+     *
+     * @param since watermark, null for all files
+     * @return number of files read
+     */
+    int getFiles(int idFrom, int nbFilesInBatch, Track.Status status, String since, TrackJsonReader.TrackHandler handler)
+            throws IOException, ServiceSync.ServerException, InterruptedException {
+        HttpUrl.Builder urlBuilder = getUrlBuilder(status, since);
+        urlBuilder.addQueryParameter("idFrom", String.valueOf(idFrom));
+        urlBuilder.addQueryParameter("nbFilesInBatch", String.valueOf(nbFilesInBatch));
+        try (ResponseBody body = clientInfo.getBody(urlBuilder, client)) {
+            return TrackJsonReader.read(body.charStream(), getAppDataPath, false, handler);
+        }
+    }
+
+    private HttpUrl.Builder getUrlBuilder(Track.Status status, String since) {
+        HttpUrl.Builder urlBuilder = clientInfo.getUrlBuilder("files/" + status.name()); //NON-NLS
+        if (since != null) {
+            urlBuilder.addQueryParameter("since", since); //NON-NLS
+        }
+        return urlBuilder;
+    }
+}
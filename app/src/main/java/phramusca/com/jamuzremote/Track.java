@@ -49,6 +49,7 @@ public class Track implements Serializable {
     private boolean isHistory = false;
     private boolean isLocked = false;
     private boolean isSync = false;
+    private boolean isDeleted = false;
     private int idFileRemote = -1;
     private int idFileServer = -1;
     private String artist = "";
@@ -296,17 +297,18 @@ public class Track implements Serializable {
             addedDate = getDate(file, "addedDate");
             rating = file.getInt("rating"); //NON-NLS
             lastPlayed = getDate(file, "lastPlayed");
+            StringPool pool = StringPool.get();
             JSONArray jsonTags = (JSONArray) file.get("tags"); //NON-NLS
             tags = new ArrayList<>();
             for (int i = 0; i < jsonTags.length(); i++) {
                 String tag = (String) jsonTags.get(i);
-                tags.add(tag);
+                tags.add(pool.intern(tag));
             }
             relativeFullPath = file.getString("path"); //NON-NLS
             path = new File(getAppDataPath, relativeFullPath)
                     .getAbsolutePath();
             idFileServer = file.getInt("idFile");
-            genre = file.getString("genre"); //NON-NLS
+            genre = pool.intern(file.getString("genre")); //NON-NLS
             playCounter = file.getInt("playCounter");
             //TODO Use those below, to improve sync and/or merge
 //            boolean deleted = file.getBoolean("deleted");
@@ -317,23 +319,23 @@ public class Track implements Serializable {
 //            Date ratingModifDate = getDate(file, "ratingModifDate");
 //            //END Those are only valid during merge process
             if (!statsOnly) {
-                artist = file.getString("artist"); //NON-NLS //NON-NLS
+                artist = pool.intern(file.getString("artist")); //NON-NLS //NON-NLS
                 title = file.getString("title"); //NON-NLS
                 album = file.getString("album"); //NON-NLS //NON-NLS
                 length = file.getInt("length"); //NON-NLS
                 size = file.getLong("size"); //NON-NLS
                 status = Status.valueOf(file.getString("status")); //NON-NLS
                 idPath = file.getString("idPath"); //NON-NLS
-                albumArtist = file.getString("albumArtist");
-                year = file.getString("year"); //NON-NLS
+                albumArtist = pool.intern(file.getString("albumArtist"));
+                year = pool.intern(file.getString("year")); //NON-NLS
                 trackNo = file.getInt("trackNo");
                 trackTotal = file.getInt("trackTotal");
                 discNo = file.getInt("discNo");
                 discTotal = file.getInt("discTotal"); //NON-NLS
-                bitRate = file.getString("bitRate");
-                format = file.getString("format"); //NON-NLS
+                bitRate = pool.intern(file.getString("bitRate"));
+                format = pool.intern(file.getString("format")); //NON-NLS
                 BPM = file.getDouble("BPM");
-                checkedFlag = file.getString("checkedFlag");
+                checkedFlag = pool.intern(file.getString("checkedFlag"));
                 copyRight = file.getString("copyRight");
                 coverHash = file.getString("coverHash");
                 modifDate = getDate(file, "modifDate");
@@ -608,6 +610,20 @@ public class Track implements Serializable {
         return tags;
     }
 
+    /**
+     * @return false if getTags(false) is to query tags
+     */
+    boolean isTagsRead() {
+        return tags != null;
+    }
+
+    /**
+     * @param tags tags read in bulk, so that getTags(false) does not query them again
+     */
+    void setTags(ArrayList<String> tags) {
+        this.tags = tags;
+    }
+
     public String getTags() {
         String tagsString = "";
         ArrayList<String> tags = getTags(false);
@@ -631,10 +647,10 @@ public class Track implements Serializable {
         if (HelperLibrary.musicLibrary != null) {
             if (getTags(false).contains(value)) {
                 tags.remove(value);
-                HelperLibrary.musicLibrary.removeTag(idFileRemote, value);
+                HelperLibrary.musicLibrary.getWriteQueue().removeTag(this, value);
             } else {
                 tags.add(value);
-                HelperLibrary.musicLibrary.addTag(idFileRemote, value);
+                HelperLibrary.musicLibrary.getWriteQueue().addTag(this, value);
             }
         }
     }
@@ -642,8 +658,7 @@ public class Track implements Serializable {
     public boolean updateGenre(String genre) {
         if (HelperLibrary.musicLibrary != null) {
             setGenre(genre);
-            HelperLibrary.musicLibrary.updateGenre(this);
-            RepoAlbums.reset();
+            HelperLibrary.musicLibrary.getWriteQueue().updateGenre(this);
         }
         return false;
     }
@@ -651,8 +666,7 @@ public class Track implements Serializable {
     public boolean updateRating(int rating) {
         if (HelperLibrary.musicLibrary != null) {
             setRating(rating);
-            HelperLibrary.musicLibrary.updateRating(this);
-            RepoAlbums.reset();
+            HelperLibrary.musicLibrary.getWriteQueue().updateRating(this);
         }
         return false;
     }
@@ -661,8 +675,7 @@ public class Track implements Serializable {
         if (HelperLibrary.musicLibrary != null) {
             setPlayCounter(getPlayCounter() + 1);
             setLastPlayed(new Date());
-            HelperLibrary.musicLibrary.updatePlayCounterAndLastPlayed(this);
-            RepoAlbums.reset();
+            HelperLibrary.musicLibrary.getWriteQueue().updatePlayCounterAndLastPlayed(this);
         }
         return false;
     }
@@ -717,4 +730,15 @@ public class Track implements Serializable {
     public void setSync() {
         isSync = true;
     }
+
+    /**
+     * @return true if deleted on server (only sent by delta sync)
+     */
+    boolean isDeleted() {
+        return isDeleted;
+    }
+
+    void setDeleted(boolean deleted) {
+        isDeleted = deleted;
+    }
 }
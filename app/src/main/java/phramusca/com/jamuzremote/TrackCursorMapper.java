@@ -0,0 +1,213 @@
+package phramusca.com.jamuzremote;
+
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ADDED_DATE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ALBUM;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ALBUM_ARTIST;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ALBUM_GAIN;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ARTIST;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_BITRATE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_BPM;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_CHECKED_FLAG;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_COMMENT;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_COPYRIGHT;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_COVER_HASH;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_DISC_NO;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_DISC_TOTAL;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_FORMAT;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_GENRE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ID_PATH;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ID_REMOTE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ID_SERVER;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_LAST_PLAYED;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_LENGTH;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_MODIF_DATE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_PATH;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_PATH_MB_ID;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_PATH_MODIF_DATE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_PLAY_COUNTER;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_RATING;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_SIZE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_STATUS;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_TITLE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_TRACK_GAIN;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_TRACK_NO;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_TRACK_TOTAL;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_YEAR;
+
+import android.database.Cursor;
+
+import java.io.File;
+import java.util.Date;
+
+/**
+ * Maps rows of a tracks cursor to Track.
+ * Column indexes are resolved once per cursor, and columns missing from the projection
+ * get Track default values. Full metadata is only read if not statsOnly.
+ * Dates are read from their UTC epoch milliseconds columns.
+ * NOT thread-safe: use one mapper per cursor.
+ */
+public class TrackCursorMapper {
+
+    private final File getAppDataPath;
+    private final boolean statsOnly;
+
+    private final int idFileRemote;
+    private final int idFileServer;
+    private final int rating;
+    private final int status;
+    private final int size;
+    private final int length;
+    private final int path;
+    private final int genre;
+    private final int addedDate;
+    private final int lastPlayed;
+    private final int playCounter;
+    private final int idPath;
+    private final int modifDate;
+
+    private final int title;
+    private final int album;
+    private final int artist;
+    private final int albumArtist;
+    private final int year;
+    private final int trackNo;
+    private final int trackTotal;
+    private final int discNo;
+    private final int discTotal;
+    private final int bitRate;
+    private final int format;
+    private final int bpm;
+    private final int checkedFlag;
+    private final int copyRight;
+    private final int coverHash;
+    private final int pathModifDate;
+    private final int pathMbId;
+    private final int comment;
+    private final int trackGain;
+    private final int albumGain;
+
+    /**
+     * @param cursor         cursor which columns are to be mapped
+     * @param statsOnly      only map statistics columns, even if others are available
+     * @param getAppDataPath application folder, to get relative path of tracks
+     */
+    TrackCursorMapper(Cursor cursor, boolean statsOnly, File getAppDataPath) {
+        this.getAppDataPath = getAppDataPath;
+        this.statsOnly = statsOnly || cursor.getColumnIndex(COL_TRACKS_TITLE) < 0;
+
+        idFileRemote = cursor.getColumnIndex(COL_TRACKS_ID_REMOTE);
+        idFileServer = cursor.getColumnIndex(COL_TRACKS_ID_SERVER);
+        rating = cursor.getColumnIndex(COL_TRACKS_RATING);
+        status = cursor.getColumnIndex(COL_TRACKS_STATUS);
+        size = cursor.getColumnIndex(COL_TRACKS_SIZE);
+        length = cursor.getColumnIndex(COL_TRACKS_LENGTH);
+        path = cursor.getColumnIndex(COL_TRACKS_PATH);
+        genre = cursor.getColumnIndex(COL_TRACKS_GENRE);
+        addedDate = cursor.getColumnIndex(COL_TRACKS_ADDED_DATE);
+        lastPlayed = cursor.getColumnIndex(COL_TRACKS_LAST_PLAYED);
+        playCounter = cursor.getColumnIndex(COL_TRACKS_PLAY_COUNTER);
+        idPath = cursor.getColumnIndex(COL_TRACKS_ID_PATH);
+        modifDate = cursor.getColumnIndex(COL_TRACKS_MODIF_DATE);
+
+        title = getColumnIndex(cursor, COL_TRACKS_TITLE);
+        album = getColumnIndex(cursor, COL_TRACKS_ALBUM);
+        artist = getColumnIndex(cursor, COL_TRACKS_ARTIST);
+        albumArtist = getColumnIndex(cursor, COL_TRACKS_ALBUM_ARTIST);
+        year = getColumnIndex(cursor, COL_TRACKS_YEAR);
+        trackNo = getColumnIndex(cursor, COL_TRACKS_TRACK_NO);
+        trackTotal = getColumnIndex(cursor, COL_TRACKS_TRACK_TOTAL);
+        discNo = getColumnIndex(cursor, COL_TRACKS_DISC_NO);
+        discTotal = getColumnIndex(cursor, COL_TRACKS_DISC_TOTAL);
+        bitRate = getColumnIndex(cursor, COL_TRACKS_BITRATE);
+        format = getColumnIndex(cursor, COL_TRACKS_FORMAT);
+        bpm = getColumnIndex(cursor, COL_TRACKS_BPM);
+        checkedFlag = getColumnIndex(cursor, COL_TRACKS_CHECKED_FLAG);
+        copyRight = getColumnIndex(cursor, COL_TRACKS_COPYRIGHT);
+        coverHash = getColumnIndex(cursor, COL_TRACKS_COVER_HASH);
+        pathModifDate = getColumnIndex(cursor, COL_TRACKS_PATH_MODIF_DATE);
+        pathMbId = getColumnIndex(cursor, COL_TRACKS_PATH_MB_ID);
+        comment = getColumnIndex(cursor, COL_TRACKS_COMMENT);
+        trackGain = getColumnIndex(cursor, COL_TRACKS_TRACK_GAIN);
+        albumGain = getColumnIndex(cursor, COL_TRACKS_ALBUM_GAIN);
+    }
+
+    private int getColumnIndex(Cursor cursor, String column) {
+        return statsOnly ? -1 : cursor.getColumnIndex(column);
+    }
+
+    /**
+     * @param c cursor, at the row to map
+     * @return track from current row
+     */
+    public Track map(Cursor c) {
+        //TODO Use below in sync or merge processes (DO NOT store in db, or values from remote)
+//        boolean deleted=c.getString(c.getColumnIndexOrThrow(COL_));
+//        int previousPlayCounter=c.getInt(c.getColumnIndexOrThrow(COL_));
+//        Date genreModifDate=c.getString(c.getColumnIndexOrThrow(COL_));
+//        Date tagsModifDate=c.getString(c.getColumnIndexOrThrow(COL_));
+//        Date ratingModifDate=c.getString(c.getColumnIndexOrThrow(COL_));
+
+        return new Track(
+                getDate(c, pathModifDate),
+                getString(c, pathMbId),
+                getString(c, comment),
+                getString(c, idPath),
+                getPooled(c, albumArtist),
+                getPooled(c, year),
+                getInt(c, trackNo),
+                getInt(c, trackTotal),
+                getInt(c, discNo),
+                getInt(c, discTotal),
+                getPooled(c, bitRate),
+                getPooled(c, format),
+                bpm < 0 ? -1 : c.getDouble(bpm),
+                getDate(c, modifDate),
+                getPooled(c, checkedFlag),
+                getString(c, copyRight),
+                getAppDataPath,
+                getInt(c, idFileRemote),
+                getInt(c, idFileServer),
+                rating < 0 ? 0 : c.getDouble(rating),
+                getString(c, title),
+                getString(c, album),
+                getPooled(c, artist),
+                getString(c, coverHash),
+                getString(c, path),
+                getPooled(c, genre),
+                getDate(c, addedDate),
+                getDate(c, lastPlayed),
+                playCounter < 0 ? 0 : c.getInt(playCounter),
+                status < 0 ? Track.Status.LOCAL.name() : c.getString(status),
+                size < 0 ? 0 : c.getLong(size),
+                length < 0 ? 0 : c.getInt(length),
+                getFloat(c, trackGain),
+                getFloat(c, albumGain));
+    }
+
+    private static String getString(Cursor c, int index) {
+        if (index < 0) {
+            return "";
+        }
+        String value = c.getString(index);
+        return value == null ? "" : value;
+    }
+
+    /**
+     * For values repeated among many tracks (see StringPool), to share one instance of each
+     */
+    private static String getPooled(Cursor c, int index) {
+        return StringPool.get().intern(getString(c, index));
+    }
+
+    private static int getInt(Cursor c, int index) {
+        return index < 0 ? -1 : c.getInt(index);
+    }
+
+    private static float getFloat(Cursor c, int index) {
+        return index < 0 ? -1 : c.getFloat(index);
+    }
+
+    private static Date getDate(Cursor c, int index) {
+        return new Date(index < 0 ? 0 : c.getLong(index));
+    }
+}
@@ -0,0 +1,272 @@
+package phramusca.com.jamuzremote;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Reads tracks of a server response ({"files":[{...},...]}) as a stream:
+ * neither the body nor a JSON tree of it is built, tracks are decoded and handled one at a time.
+ * Same fields as Track(JSONObject, File, boolean).
+ */
+final class TrackJsonReader {
+
+    interface TrackHandler {
+        /**
+         * @param track track read, handled before the next one is read
+         */
+        void onTrack(Track track) throws IOException, InterruptedException;
+    }
+
+    private TrackJsonReader() {
+    }
+
+    /**
+     * @param body           response body, not closed
+     * @param getAppDataPath application folder, to get absolute path of tracks
+     * @param statsOnly      only read statistics (rating, play counter, genre, tags, ...)
+     * @param handler        called for each track, in order
+     * @return number of tracks read
+     * @throws IOException on network error or malformed body
+     */
+    static int read(Reader body, File getAppDataPath, boolean statsOnly, TrackHandler handler)
+            throws IOException, InterruptedException {
+        int count = 0;
+        JsonReader reader = new JsonReader(body);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("files".equals(reader.nextName())) { //NON-NLS
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        handler.onTrack(readTrack(reader, getAppDataPath, statsOnly));
+                        count++;
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | IllegalArgumentException ex) {
+            throw new IOException("Malformed files at track " + count, ex); //NON-NLS
+        }
+        return count;
+    }
+
+    private static Track readTrack(JsonReader reader, File getAppDataPath, boolean statsOnly) throws IOException {
+        StringPool pool = StringPool.get();
+        Date pathModifDate = new Date(0);
+        String pathMbId = "";
+        String comment = "";
+        String idPath = "";
+        String albumArtist = "";
+        String year = "";
+        int trackNo = -1;
+        int trackTotal = -1;
+        int discNo = -1;
+        int discTotal = -1;
+        String bitRate = "";
+        String format = "";
+        double bpm = -1;
+        Date modifDate = new Date(0);
+        String checkedFlag = "";
+        String copyRight = "";
+        int idFileServer = -1;
+        double rating = 0;
+        String title = "";
+        String album = "";
+        String artist = "";
+        String coverHash = "";
+        String path = "";
+        String genre = "";
+        Date addedDate = new Date(0);
+        Date lastPlayed = new Date(0);
+        int playCounter = 0;
+        boolean deleted = false;
+        String status = Track.Status.LOCAL.name();
+        long size = 0;
+        int length = 0;
+        float trackGain = Float.NaN;
+        float albumGain = Float.NaN;
+        ArrayList<String> tags = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "addedDate": //NON-NLS
+                    addedDate = nextDate(reader);
+                    break;
+                case "rating": //NON-NLS
+                    rating = nextInt(reader, 0);
+                    break;
+                case "lastPlayed": //NON-NLS
+                    lastPlayed = nextDate(reader);
+                    break;
+                case "tags": //NON-NLS
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        tags.add(pool.intern(nextString(reader)));
+                    }
+                    reader.endArray();
+                    break;
+                case "path": //NON-NLS
+                    path = nextString(reader);
+                    break;
+                case "idFile": //NON-NLS
+                    idFileServer = nextInt(reader, -1);
+                    break;
+                case "genre": //NON-NLS
+                    genre = pool.intern(nextString(reader));
+                    break;
+                case "playCounter": //NON-NLS
+                    playCounter = nextInt(reader, 0);
+                    break;
+                case "deleted": //NON-NLS
+                    deleted = !isNull(reader) && reader.nextBoolean();
+                    break;
+                default:
+                    if (statsOnly) {
+                        reader.skipValue();
+                        break;
+                    }
+                    switch (name) {
+                        case "artist": //NON-NLS
+                            artist = pool.intern(nextString(reader));
+                            break;
+                        case "title": //NON-NLS
+                            title = nextString(reader);
+                            break;
+                        case "album": //NON-NLS
+                            album = nextString(reader);
+                            break;
+                        case "length": //NON-NLS
+                            length = nextInt(reader, 0);
+                            break;
+                        case "size": //NON-NLS
+                            size = nextLong(reader);
+                            break;
+                        case "status": //NON-NLS
+                            status = Track.Status.valueOf(nextString(reader)).name();
+                            break;
+                        case "idPath": //NON-NLS
+                            idPath = nextString(reader);
+                            break;
+                        case "albumArtist": //NON-NLS
+                            albumArtist = pool.intern(nextString(reader));
+                            break;
+                        case "year": //NON-NLS
+                            year = pool.intern(nextString(reader));
+                            break;
+                        case "trackNo": //NON-NLS
+                            trackNo = nextInt(reader, -1);
+                            break;
+                        case "trackTotal": //NON-NLS
+                            trackTotal = nextInt(reader, -1);
+                            break;
+                        case "discNo": //NON-NLS
+                            discNo = nextInt(reader, -1);
+                            break;
+                        case "discTotal": //NON-NLS
+                            discTotal = nextInt(reader, -1);
+                            break;
+                        case "bitRate": //NON-NLS
+                            bitRate = pool.intern(nextString(reader));
+                            break;
+                        case "format": //NON-NLS
+                            format = pool.intern(nextString(reader));
+                            break;
+                        case "BPM": //NON-NLS
+                            bpm = nextDouble(reader, -1);
+                            break;
+                        case "checkedFlag": //NON-NLS
+                            checkedFlag = pool.intern(nextString(reader));
+                            break;
+                        case "copyRight": //NON-NLS
+                            copyRight = nextString(reader);
+                            break;
+                        case "coverHash": //NON-NLS
+                            coverHash = nextString(reader);
+                            break;
+                        case "modifDate": //NON-NLS
+                            modifDate = nextDate(reader);
+                            break;
+                        case "pathModifDate": //NON-NLS
+                            pathModifDate = nextDate(reader);
+                            break;
+                        case "pathMbid": //NON-NLS
+                            pathMbId = nextString(reader);
+                            break;
+                        case "comment": //NON-NLS
+                            comment = nextString(reader);
+                            break;
+                        case "replaygain": //NON-NLS
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                switch (reader.nextName()) {
+                                    case "trackGain": //NON-NLS
+                                        trackGain = (float) nextDouble(reader, Float.NaN);
+                                        break;
+                                    case "albumGain": //NON-NLS
+                                        albumGain = (float) nextDouble(reader, Float.NaN);
+                                        break;
+                                    default:
+                                        reader.skipValue();
+                                        break;
+                                }
+                            }
+                            reader.endObject();
+                            break;
+                        default:
+                            reader.skipValue();
+                            break;
+                    }
+                    break;
+            }
+        }
+        reader.endObject();
+
+        Track track = new Track(pathModifDate, pathMbId, comment, idPath, albumArtist, year,
+                trackNo, trackTotal, discNo, discTotal, bitRate, format, bpm, modifDate,
+                checkedFlag, copyRight, getAppDataPath, -1, idFileServer, rating, title, album,
+                artist, coverHash, new File(getAppDataPath, path).getAbsolutePath(), genre,
+                addedDate, lastPlayed, playCounter, status, size, length, trackGain, albumGain);
+        track.setTags(tags);
+        track.setDeleted(deleted);
+        return track;
+    }
+
+    private static boolean isNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        return isNull(reader) ? "" : reader.nextString();
+    }
+
+    private static int nextInt(JsonReader reader, int defaultValue) throws IOException {
+        return isNull(reader) ? defaultValue : (int) reader.nextDouble();
+    }
+
+    private static long nextLong(JsonReader reader) throws IOException {
+        return isNull(reader) ? 0 : reader.nextLong();
+    }
+
+    private static double nextDouble(JsonReader reader, double defaultValue) throws IOException {
+        return isNull(reader) ? defaultValue : reader.nextDouble();
+    }
+
+    private static Date nextDate(JsonReader reader) throws IOException {
+        return HelperDateTime.parseSqlUtc(nextString(reader));
+    }
+}
@@ -0,0 +1,219 @@
+package phramusca.com.jamuzremote;
+
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_DISC_NO;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ID_REMOTE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_LAST_PLAYED;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_PLAY_COUNTER;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_TRACK_NO;
+import static phramusca.com.jamuzremote.MusicLibraryDb.TABLE_TRACKS;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A page of tracks, read by keyset pagination: the next page is read from the sort key of the last track
+ * (WHERE key > last key ORDER BY key LIMIT size), not with an OFFSET, so any page costs about
+ * the same to read and no cursor over the whole selection is kept open.
+ * A random order has no sort key: ids of the selection are shuffled once, and pages are read by their ids.
+ */
+final class TrackPage {
+
+    private static final String ARG = "CAST(? AS INTEGER)"; //NON-NLS
+
+    final List<Track> tracks;
+    /**
+     * Key to read next page, null if this is the last one
+     */
+    final Key next;
+
+    TrackPage(List<Track> tracks, Key next) {
+        this.tracks = tracks;
+        this.next = next;
+    }
+
+    /**
+     * Position of a page in an order: sort values of the last track of previous page,
+     * ties broken by idFileRemote. Or, for a shuffled selection, offset of the page in shuffled ids.
+     */
+    static final class Key {
+        private final Playlist.Order order;
+        /**
+         * Null for first page
+         */
+        private final long[] values;
+        private final int idFileRemote;
+        /**
+         * Shuffled ids of the selection, shared by keys of its pages. Null if not shuffled
+         */
+        private final int[] shuffled;
+        private final int offset;
+        private final int pageSize;
+
+        private Key(Playlist.Order order, long[] values, int idFileRemote, int[] shuffled, int offset, int pageSize) {
+            this.order = order;
+            this.values = values;
+            this.idFileRemote = idFileRemote;
+            this.shuffled = shuffled;
+            this.offset = offset;
+            this.pageSize = pageSize;
+        }
+
+        /**
+         * @param order order of pages, but Order.RANDOM (see shuffled())
+         * @return key of first page
+         */
+        static Key first(Playlist.Order order) {
+            return new Key(order, null, -1, null, 0, 0);
+        }
+
+        /**
+         * @param ids      ids of the selection, in random order
+         * @param pageSize number of ids per page
+         * @return key of first page of ids
+         */
+        static Key shuffled(int[] ids, int pageSize) {
+            return new Key(Playlist.Order.RANDOM, null, -1, ids, 0, pageSize);
+        }
+
+        /**
+         * @param tracks   tracks read with this key
+         * @param pageSize number of tracks per page
+         * @return key of the page after tracks, null if this is the last one
+         */
+        Key next(List<Track> tracks, int pageSize) {
+            if (shuffled != null) {
+                return offset + this.pageSize < shuffled.length
+                        ? new Key(order, null, -1, shuffled, offset + this.pageSize, this.pageSize)
+                        : null;
+            }
+            if (tracks.size() < pageSize) {
+                return null;
+            }
+            Track track = tracks.get(tracks.size() - 1);
+            long[] next;
+            if (order == Playlist.Order.DISC_TRACK) {
+                next = new long[]{track.getDiscNo(), track.getTrackNo()};
+            } else {
+                next = new long[]{track.getPlayCounter(), track.getLastPlayed().getTime()};
+            }
+            return new Key(order, next, track.getIdFileRemote(), null, 0, 0);
+        }
+
+        /**
+         * Package-private for tests
+         */
+        static Key of(Playlist.Order order, long[] values, int idFileRemote) {
+            return new Key(order, values, idFileRemote, null, 0, 0);
+        }
+
+        /**
+         * @return ids of the page, null if not shuffled
+         */
+        private int[] getIds() {
+            return shuffled == null ? null
+                    : Arrays.copyOfRange(shuffled, offset, Math.min(offset + pageSize, shuffled.length));
+        }
+
+        /**
+         * Sorts tracks of the page, read in no order if shuffled, as their ids
+         */
+        void sort(List<Track> tracks) {
+            if (shuffled == null) {
+                return;
+            }
+            Map<Integer, Integer> positions = new HashMap<>();
+            int[] ids = getIds();
+            for (int i = 0; i < ids.length; i++) {
+                positions.put(ids[i], i);
+            }
+            Collections.sort(tracks, (a, b) -> Integer.compare(
+                    positions.get(a.getIdFileRemote()), positions.get(b.getIdFileRemote())));
+        }
+
+        private String[] getColumns() {
+            if (order == Playlist.Order.DISC_TRACK) {
+                return new String[]{COL_TRACKS_DISC_NO, COL_TRACKS_TRACK_NO, COL_TRACKS_ID_REMOTE};
+            }
+            return new String[]{COL_TRACKS_PLAY_COUNTER, COL_TRACKS_LAST_PLAYED, COL_TRACKS_ID_REMOTE};
+        }
+
+        /**
+         * @return ORDER BY clause, ending with idFileRemote so that keys are unique. Empty if shuffled (see sort())
+         */
+        String getOrderBy() {
+            if (shuffled != null) {
+                return "";
+            }
+            StringBuilder orderBy = new StringBuilder();
+            for (String column : getColumns()) {
+                orderBy.append(orderBy.length() > 0 ? ", " : "").append(column);
+            }
+            return "ORDER BY " + orderBy; //NON-NLS
+        }
+
+        /**
+         * Expanded as a >= ? AND (a > ? OR (a = ? AND (b > ? OR ...))), as row values need SQLite 3.15.
+         * a >= ? is redundant, but lets SQLite seek the index of the order to the page instead of scanning up to it.
+         * Bindings are cast, as values are bound as text.
+         * If shuffled, tracks of the page are read by their ids.
+         *
+         * @return condition to append to a WHERE clause, empty for first page. Bind getArgs()
+         */
+        String getWhere() {
+            if (shuffled != null) {
+                return " AND " + TABLE_TRACKS + "." + COL_TRACKS_ID_REMOTE //NON-NLS
+                        + " IN (" + PlaylistQuery.getBindings(getIds().length) + ")"; //NON-NLS
+            }
+            if (values == null) {
+                return "";
+            }
+            String[] columns = getColumns();
+            StringBuilder where = new StringBuilder(columns[columns.length - 1]).append(" > " + ARG);
+            for (int i = columns.length - 2; i >= 0; i--) {
+                where.insert(0, columns[i] + " > " + ARG + " OR (" + columns[i] + " = " + ARG + " AND (").append("))"); //NON-NLS
+            }
+            return " AND " + columns[0] + " >= " + ARG + " AND (" + where + ")"; //NON-NLS
+        }
+
+        /**
+         * @return bindings of getWhere()
+         */
+        String[] getArgs() {
+            if (shuffled != null) {
+                int[] ids = getIds();
+                String[] args = new String[ids.length];
+                for (int i = 0; i < ids.length; i++) {
+                    args[i] = String.valueOf(ids[i]);
+                }
+                return args;
+            }
+            if (values == null) {
+                return new String[]{};
+            }
+            String[] args = new String[values.length * 2 + 2];
+            args[0] = String.valueOf(values[0]);
+            for (int i = 0; i < values.length; i++) {
+                args[i * 2 + 1] = String.valueOf(values[i]);
+                args[i * 2 + 2] = String.valueOf(values[i]);
+            }
+            args[args.length - 1] = String.valueOf(idFileRemote);
+            return args;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            if (shuffled != null) {
+                return String.format(Locale.ENGLISH, "%s from %d of %d", order, offset, shuffled.length); //NON-NLS
+            }
+            return String.format(Locale.ENGLISH, "%s after %s,%d", //NON-NLS
+                    order, values == null ? "start" : Arrays.toString(values), idFileRemote); //NON-NLS
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package phramusca.com.jamuzremote;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tracks of a selection by position, read one TrackPage at a time.
+ * Only MAX_PAGES pages are kept (least recently used are dropped, and read again if needed),
+ * plus the key of each page read so far, so memory does not grow with the selection.
+ * Thread-safe: pages are to be loaded in background, then read from UI thread.
+ */
+class TrackPager {
+
+    static final int PAGE_SIZE = 50;
+    static final int MAX_PAGES = 6;
+
+    interface PageLoader {
+        /**
+         * @param key      key of the page to read
+         * @param pageSize number of tracks to read
+         * @return page, null on error
+         */
+        TrackPage load(TrackPage.Key key, int pageSize);
+    }
+
+    private final PageLoader loader;
+    private final int pageSize;
+    private final int count;
+    /**
+     * keys.get(n) is the key to read page n
+     */
+    private final List<TrackPage.Key> keys = new ArrayList<>();
+    private final Map<Integer, List<Track>> pages = new LinkedHashMap<Integer, List<Track>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Track>> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private boolean end = false;
+    private int loads = 0;
+
+    /**
+     * @param count    number of tracks in selection
+     * @param first    key of first page
+     * @param pageSize number of tracks per page
+     * @param loader   reads pages
+     */
+    TrackPager(int count, TrackPage.Key first, int pageSize, PageLoader loader) {
+        this.count = Math.max(count, 0);
+        this.pageSize = pageSize;
+        this.loader = loader;
+        keys.add(first);
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    int getPage(int position) {
+        return position / pageSize;
+    }
+
+    /**
+     * @return track, or null if its page is not loaded (or the selection has less tracks than when counted)
+     */
+    synchronized Track get(int position) {
+        List<Track> tracks = pages.get(getPage(position));
+        int index = position % pageSize;
+        return tracks != null && index < tracks.size() ? tracks.get(index) : null;
+    }
+
+    /**
+     * @return true if page is loaded, or is past the end of the selection
+     */
+    synchronized boolean isLoaded(int page) {
+        return pages.containsKey(page) || (end && page >= keys.size());
+    }
+
+    /**
+     * Loads page, and the pages before it which keys are not known yet (read in order, not kept).
+     * To be called in background: lock is not held while reading.
+     *
+     * @return false on error
+     */
+    boolean loadPage(int page) {
+        while (true) {
+            int next;
+            TrackPage.Key key;
+            synchronized (this) {
+                if (isLoaded(page)) {
+                    return true;
+                }
+                next = Math.min(page, keys.size() - 1);
+                key = keys.get(next);
+            }
+            TrackPage trackPage = loader.load(key, pageSize);
+            if (trackPage == null) {
+                return false;
+            }
+            synchronized (this) {
+                loads++;
+                if (next == keys.size() - 1) {
+                    if (trackPage.next == null) {
+                        end = true;
+                    } else {
+                        keys.add(trackPage.next);
+                    }
+                }
+                pages.put(next, trackPage.tracks);
+            }
+        }
+    }
+
+    /**
+     * @return track, its page being loaded first if needed
+     */
+    Track load(int position) {
+        loadPage(getPage(position));
+        return get(position);
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ENGLISH, "TrackPager: %d tracks, %d pages loaded, %d keys, %d loads", //NON-NLS
+                count, pages.size(), keys.size(), loads);
+    }
+}
@@ -28,12 +28,15 @@ public class TrackQueue extends TrackList {
     }
 
     synchronized int insert(Playlist playlist) {
-        List<Track> playlistTracks = playlist.getTracks(ActivityMain.getScope());
-        for (Track track : playlistTracks) {
+        return insert(playlist.getTracks(ActivityMain.getScope()));
+    }
+
+    synchronized int insert(List<Track> newTracks) {
+        for (Track track : newTracks) {
             track.setLocked(true);
         }
-        tracks.addAll(positionPlaying + 1, playlistTracks);
-        return playlistTracks.size();
+        tracks.addAll(positionPlaying + 1, newTracks);
+        return newTracks.size();
     }
 
     synchronized void insert(Track track) {
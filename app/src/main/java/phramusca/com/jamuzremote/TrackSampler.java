@@ -0,0 +1,32 @@
+package phramusca.com.jamuzremote;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Uniform random sampling of track ids, without replacement.
+ */
+final class TrackSampler {
+
+    private TrackSampler() {
+    }
+
+    /**
+     * Partial Fisher-Yates shuffle: only count swaps, whatever the number of ids.
+     *
+     * @param ids    ids to sample from. Shuffled in place.
+     * @param count  number of ids to pick
+     * @param random source of randomness
+     * @return min(count, ids.length) ids, in random order
+     */
+    static int[] sample(int[] ids, int count, Random random) {
+        int size = Math.min(Math.max(count, 0), ids.length);
+        for (int i = 0; i < size; i++) {
+            int j = i + random.nextInt(ids.length - i);
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+        return Arrays.copyOf(ids, size);
+    }
+}
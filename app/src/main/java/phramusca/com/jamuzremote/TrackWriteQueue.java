@@ -0,0 +1,282 @@
+package phramusca.com.jamuzremote;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue for user edits and playback statistics (rating, genre, play counter, tags).
+ * Updates of a same track are coalesced, last value wins, until flushed in a single transaction
+ * by a background thread: FLUSH_DELAY_MS after the first pending update, or on demand
+ * (lifecycle events, before sync, on close).
+ * A flush that fails is queued again, under newer updates, for next flush.
+ * Albums cache is reset once per flush.
+ */
+class TrackWriteQueue {
+
+    private static final String TAG = TrackWriteQueue.class.getName();
+    static final long FLUSH_DELAY_MS = 3000;
+
+    private final MusicLibrary musicLibrary;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "Thread.TrackWriteQueue")); //NON-NLS
+    private Map<Integer, TrackWrite> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    private long updates = 0;
+    private long coalesced = 0;
+    private long flushes = 0;
+    private long flushesFailed = 0;
+    private long flushedTracks = 0;
+    private long flushTimeLast = 0;
+    private long flushTimeMax = 0;
+    private long flushTimeTotal = 0;
+
+    TrackWriteQueue(MusicLibrary musicLibrary) {
+        this.musicLibrary = musicLibrary;
+    }
+
+    /**
+     * Pending changes of a track
+     */
+    static class TrackWrite implements LibrarySnapshot.Change {
+        final int idFileRemote;
+        Double rating;
+        String genre;
+        Integer playCounter;
+        long lastPlayed;
+        /**
+         * Tags to add (true) or remove (false)
+         */
+        final Map<String, Boolean> tags = new LinkedHashMap<>();
+
+        TrackWrite(int idFileRemote) {
+            this.idFileRemote = idFileRemote;
+        }
+
+        @Override
+        public boolean applyTo(LibrarySnapshot snapshot) {
+            return snapshot.apply(this);
+        }
+
+        /**
+         * Sets changes of an older write of same track, where this one has none
+         */
+        void mergeOlder(TrackWrite older) {
+            if (rating == null) {
+                rating = older.rating;
+            }
+            if (genre == null) {
+                genre = older.genre;
+            }
+            if (playCounter == null) {
+                playCounter = older.playCounter;
+                lastPlayed = older.lastPlayed;
+            }
+            for (Map.Entry<String, Boolean> tag : older.tags.entrySet()) {
+                if (!tags.containsKey(tag.getKey())) {
+                    tags.put(tag.getKey(), tag.getValue());
+                }
+            }
+        }
+    }
+
+    synchronized void updateRating(Track track) {
+        TrackWrite write = get(track);
+        if (write != null) {
+            write.rating = track.getRating();
+        }
+    }
+
+    synchronized void updateGenre(Track track) {
+        TrackWrite write = get(track);
+        if (write != null) {
+            write.genre = track.getGenre();
+        }
+    }
+
+    synchronized void updatePlayCounterAndLastPlayed(Track track) {
+        TrackWrite write = get(track);
+        if (write != null) {
+            write.playCounter = track.getPlayCounter();
+            write.lastPlayed = track.getLastPlayed().getTime();
+        }
+    }
+
+    synchronized void addTag(Track track, String tag) {
+        TrackWrite write = get(track);
+        if (write != null) {
+            write.tags.put(tag, true);
+        }
+    }
+
+    synchronized void removeTag(Track track, String tag) {
+        TrackWrite write = get(track);
+        if (write != null) {
+            write.tags.put(tag, false);
+        }
+    }
+
+    private TrackWrite get(Track track) {
+        if (track.getIdFileRemote() < 0) {
+            return null;
+        }
+        updates++;
+        TrackWrite write = pending.get(track.getIdFileRemote());
+        if (write == null) {
+            write = new TrackWrite(track.getIdFileRemote());
+            pending.put(track.getIdFileRemote(), write);
+        } else {
+            coalesced++;
+        }
+        scheduleFlush();
+        return write;
+    }
+
+    private void scheduleFlush() {
+        if (scheduledFlush == null) {
+            try {
+                scheduledFlush = executor.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                Log.e(TAG, "Queue is closed, " + pending.size() + " pending updates will be lost", ex); //NON-NLS
+            }
+        }
+    }
+
+    /**
+     * Queues again writes of a failed flush, under updates queued since
+     */
+    private synchronized void requeue(Collection<TrackWrite> writes) {
+        pending = merge(writes, pending);
+        scheduleFlush();
+    }
+
+    /**
+     * @param older  writes of a failed flush
+     * @param newer  writes queued since
+     * @return writes, newer values winning, in order of older then newer
+     */
+    static Map<Integer, TrackWrite> merge(Collection<TrackWrite> older, Map<Integer, TrackWrite> newer) {
+        Map<Integer, TrackWrite> merged = new LinkedHashMap<>();
+        for (TrackWrite write : older) {
+            merged.put(write.idFileRemote, write);
+        }
+        for (TrackWrite write : newer.values()) {
+            TrackWrite previous = merged.put(write.idFileRemote, write);
+            if (previous != null) {
+                write.mergeOlder(previous);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Flushes pending updates in background, now
+     */
+    void flushAsync() {
+        try {
+            executor.execute(this::flush);
+        } catch (RejectedExecutionException ex) {
+            Log.w(TAG, "flushAsync(): queue is closed"); //NON-NLS
+        }
+    }
+
+    /**
+     * Flushes pending updates, and waits for them to be written
+     */
+    void flushAndWait() {
+        try {
+            executor.submit(this::flush).get();
+        } catch (RejectedExecutionException | ExecutionException ex) {
+            Log.e(TAG, "flushAndWait()", ex); //NON-NLS
+        } catch (InterruptedException ex) {
+            Log.w(TAG, "flushAndWait() InterruptedException"); //NON-NLS
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Flushes pending updates, then stops the queue
+     */
+    void close() {
+        flushAndWait();
+        executor.shutdown();
+    }
+
+    private void flush() {
+        Collection<TrackWrite> writes;
+        synchronized (this) {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            writes = pending.values();
+            pending = new LinkedHashMap<>();
+        }
+        long startTime = System.currentTimeMillis();
+        boolean applied = musicLibrary.applyTrackWrites(writes);
+        if (applied) {
+            RepoAlbums.reset();
+        } else {
+            Log.w(TAG, "flush(" + writes.size() + ") failed, queued again"); //NON-NLS
+            requeue(writes);
+        }
+        long flushTime = System.currentTimeMillis() - startTime;
+        synchronized (this) {
+            if (!applied) {
+                flushesFailed++;
+            }
+            flushes++;
+            flushedTracks += writes.size();
+            flushTimeLast = flushTime;
+            flushTimeMax = Math.max(flushTimeMax, flushTime);
+            flushTimeTotal += flushTime;
+        }
+        Log.i(TAG, "flush(" + writes.size() + ") :" + flushTime + " ms"); //NON-NLS
+    }
+
+    /**
+     * @return number of tracks with pending updates
+     */
+    synchronized int getDepth() {
+        return pending.size();
+    }
+
+    /**
+     * @return last flush duration, in ms
+     */
+    synchronized long getFlushTimeLast() {
+        return flushTimeLast;
+    }
+
+    /**
+     * @return longest flush duration, in ms
+     */
+    synchronized long getFlushTimeMax() {
+        return flushTimeMax;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ENGLISH,
+                "TrackWriteQueue: depth %d, %d updates (%d coalesced), %d flushes (%d failed) of %d tracks, " //NON-NLS
+                        + "flush time last %d ms, max %d ms, avg %d ms", //NON-NLS
+                pending.size(), updates, coalesced, flushes, flushesFailed, flushedTracks,
+                flushTimeLast, flushTimeMax, flushes > 0 ? flushTimeTotal / flushes : 0);
+    }
+}
@@ -0,0 +1,113 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks BatchPrefetcher produces batches in order, no more than lookahead ahead,
+ * overlaps producer and consumer, reports producer errors to consumer, and aborts production on close.
+ */
+public class BatchPrefetcherTest {
+
+    @Test
+    public void take_returnsBatchesInOrder() throws Exception {
+        AtomicInteger produced = new AtomicInteger();
+        try (BatchPrefetcher<Integer> prefetcher = new BatchPrefetcher<>("test", 5, 2, index -> { //NON-NLS
+            produced.incrementAndGet();
+            return index * 10;
+        })) {
+            Thread.sleep(100);
+            //Lookahead batches are queued, plus one waiting for room
+            assertTrue(produced.get() <= 3);
+            for (int i = 0; i < 5; i++) {
+                assertEquals(Integer.valueOf(i * 10), prefetcher.take());
+            }
+            assertNull(prefetcher.take());
+            assertNull(prefetcher.take());
+        }
+    }
+
+    @Test
+    public void take_overlapsStages() throws Exception {
+        CountDownLatch consuming = new CountDownLatch(1);
+        CountDownLatch producing = new CountDownLatch(1);
+        try (BatchPrefetcher<Integer> prefetcher = new BatchPrefetcher<>("test", 3, 1, index -> { //NON-NLS
+            if (index == 1) {
+                //Batch 1 is produced while batch 0 is consumed
+                assertTrue(consuming.await(5, TimeUnit.SECONDS));
+                producing.countDown();
+            }
+            return index;
+        })) {
+            assertEquals(Integer.valueOf(0), prefetcher.take());
+            consuming.countDown();
+            //Sequential stages would wait here until timeout
+            assertTrue(producing.await(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(1), prefetcher.take());
+            assertEquals(Integer.valueOf(2), prefetcher.take());
+            assertNull(prefetcher.take());
+        }
+    }
+
+    @Test
+    public void take_throwsProducerError() throws Exception {
+        try (BatchPrefetcher<Integer> prefetcher = new BatchPrefetcher<>("test", 5, 2, index -> { //NON-NLS
+            if (index == 1) {
+                throw new IOException("network"); //NON-NLS
+            }
+            return index;
+        })) {
+            assertEquals(Integer.valueOf(0), prefetcher.take());
+            try {
+                prefetcher.take();
+                fail("Producer error must be thrown"); //NON-NLS
+            } catch (IOException ex) {
+                assertEquals("network", ex.getMessage()); //NON-NLS
+            }
+        }
+    }
+
+    @Test
+    public void close_stopsProducer() throws Exception {
+        AtomicInteger produced = new AtomicInteger();
+        BatchPrefetcher<Integer> prefetcher = new BatchPrefetcher<>("test", 1000, 1, index -> { //NON-NLS
+            produced.incrementAndGet();
+            return index;
+        });
+        prefetcher.take();
+        prefetcher.close();
+        int count = produced.get();
+        Thread.sleep(50);
+        assertEquals(count, produced.get());
+        assertTrue(count < 1000);
+    }
+
+    @Test
+    public void close_abortsProductionNotStoppedByInterrupt() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        BatchPrefetcher<Integer> prefetcher = new BatchPrefetcher<>("test", 5, 1, index -> { //NON-NLS
+            started.countDown();
+            //Like a blocking network read: ignores interrupt, only stops when cancelled
+            while (!cancelled.get()) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ignored) {
+                }
+            }
+            throw new IOException("Canceled"); //NON-NLS
+        }, () -> cancelled.set(true));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        long start = System.currentTimeMillis();
+        prefetcher.close();
+        assertTrue(cancelled.get());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+}
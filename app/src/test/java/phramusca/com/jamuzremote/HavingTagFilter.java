@@ -0,0 +1,85 @@
+package phramusca.com.jamuzremote;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TAG_FILE_ID_FILE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TAG_FILE_ID_TAG;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TAG_ID;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TAG_VALUE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.COL_TRACKS_ID_REMOTE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.TABLE_TAG;
+import static phramusca.com.jamuzremote.MusicLibraryDb.TABLE_TAG_FILE;
+import static phramusca.com.jamuzremote.MusicLibraryDb.TABLE_TRACKS;
+
+/**
+ * Tag filter of playlists as PlaylistQuery built it before EXISTS subqueries:
+ * tracks joined with their tags, grouped by track, and tags filtered in a having clause.
+ * Kept for tests to compare both, on the same where clause (PlaylistQuery without tags).
+ */
+class HavingTagFilter {
+
+    static final String FROM = " FROM " + TABLE_TRACKS + " \n" //NON-NLS
+            + " LEFT JOIN " + TABLE_TAG_FILE + " ON " + TABLE_TRACKS + "." + COL_TRACKS_ID_REMOTE //NON-NLS
+            + "=" + TABLE_TAG_FILE + "." + COL_TAG_FILE_ID_FILE + " \n" //NON-NLS
+            + " LEFT JOIN " + TABLE_TAG + " ON " + TABLE_TAG + "." + COL_TAG_ID //NON-NLS
+            + "=" + TABLE_TAG_FILE + "." + COL_TAG_FILE_ID_TAG + " \n"; //NON-NLS
+    static final String GROUP_BY = " GROUP BY " + TABLE_TRACKS + "." + COL_TRACKS_ID_REMOTE + " \n"; //NON-NLS
+
+    private final List<String> tagsIncluded;
+    private final List<String> tagsExcluded;
+    private final TriStateButton.STATE unTagged;
+
+    HavingTagFilter(List<String> tagsIncluded, List<String> tagsExcluded, TriStateButton.STATE unTagged) {
+        this.tagsIncluded = tagsIncluded;
+        this.tagsExcluded = tagsExcluded;
+        this.unTagged = unTagged;
+    }
+
+    /**
+     * @return having clause, with ? bindings (after those of where clause)
+     */
+    String getHaving() {
+        String tagValue = TABLE_TAG + "." + COL_TAG_VALUE;
+        if (unTagged.equals(TriStateButton.STATE.TRUE)) {
+            return " HAVING " + tagValue + " IS NULL "; //NON-NLS
+        }
+        StringBuilder having = new StringBuilder(" HAVING ( "); //NON-NLS
+        if (tagsIncluded.size() > 0) {
+            having.append(" sum(case when ").append(tagValue) //NON-NLS
+                    .append(" IN (").append(PlaylistQuery.getBindings(tagsIncluded.size())) //NON-NLS
+                    .append(") then 1 else 0 end) = ").append(tagsIncluded.size()); //NON-NLS
+        } else {
+            having.append(" 1 "); //NON-NLS
+        }
+        having.append("\n AND "); //NON-NLS
+        if (tagsExcluded.size() > 0) {
+            having.append(" sum(case when ").append(tagValue) //NON-NLS
+                    .append(" IN (").append(PlaylistQuery.getBindings(tagsExcluded.size())) //NON-NLS
+                    .append(") then 1 else 0 end) = 0"); //NON-NLS
+        } else {
+            having.append(" 1 "); //NON-NLS
+        }
+        having.append(" ) "); //NON-NLS
+        if (unTagged.equals(TriStateButton.STATE.ANY)) {
+            having.append("\n OR ").append(tagValue).append(" IS NULL "); //NON-NLS
+        } else if (unTagged.equals(TriStateButton.STATE.FALSE)) {
+            having.append("\n AND ").append(tagValue).append(" IS NOT NULL "); //NON-NLS
+        }
+        return having.toString();
+    }
+
+    /**
+     * @param whereArgs bindings of where clause
+     * @return bindings of where clause, then of having clause
+     */
+    String[] getArgs(String[] whereArgs) {
+        List<String> args = new ArrayList<>(Arrays.asList(whereArgs));
+        if (!unTagged.equals(TriStateButton.STATE.TRUE)) {
+            args.addAll(tagsIncluded);
+            args.addAll(tagsExcluded);
+        }
+        return args.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,230 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stress test of MusicLibrary locking on a WAL SQLite database, as used by MusicLibrary:
+ * 20 download callbacks (as RepoSync.checkReceivedFile) insert tracks and update their status
+ * on the shared writer connection, under LibraryLock writer lock, refreshing albums on each change,
+ * while UI queries read from read-only connections under a shared lock.
+ * No access may fail, and readers only see committed, consistent states.
+ */
+public class LibraryLockStressTest {
+
+    private static final int NB_WRITERS = 20;
+    private static final int NB_DOWNLOADS = 25;
+    private static final int NB_READERS = 4;
+    private static final int NB_TRACKS = 2000;
+
+    private TestLibrary library;
+    private Connection writer;
+    private LibraryLock locks;
+    private final AtomicInteger nbChanges = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        library = new TestLibrary(NB_TRACKS, true);
+        writer = library.getConnection();
+        refreshAlbums();
+        //As MusicLibrary.onChanged(), called with writer lock held
+        locks = new LibraryLock(version -> {
+            nbChanges.incrementAndGet();
+            try {
+                refreshAlbums();
+            } catch (SQLException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        library.close();
+    }
+
+    @Test
+    public void downloadsAndUiQueries_stress() throws Exception {
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger nbReads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < NB_READERS; r++) {
+            readers.add(new Thread(() -> {
+                SQLiteConfig config = new SQLiteConfig();
+                config.setReadOnly(true);
+                //No busy timeout: a read blocked by the writer fails at once
+                config.setBusyTimeout(0);
+                try (Connection reader = config.createConnection("jdbc:sqlite:" //NON-NLS
+                        + library.getFile().getAbsolutePath())) {
+                    start.await();
+                    int last = NB_TRACKS;
+                    while (writing.get()) {
+                        locks.lockShared();
+                        try {
+                            int[] state = read(reader);
+                            //Tracks are only added, each one with its album summary refreshed on change
+                            assertTrue(state[0] >= last);
+                            assertTrue(state[0] - NB_TRACKS <= NB_WRITERS * NB_DOWNLOADS);
+                            //At most one download in progress (NEW) per writer
+                            assertTrue(state[1] <= NB_WRITERS);
+                            assertTrue(state[2] <= state[0]);
+                            last = state[0];
+                        } finally {
+                            locks.unlockShared();
+                        }
+                        nbReads.incrementAndGet();
+                    }
+                } catch (Throwable ex) {
+                    errors.add(ex);
+                }
+            }));
+        }
+
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < NB_WRITERS; w++) {
+            int writerId = w;
+            writers.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int d = 0; d < NB_DOWNLOADS; d++) {
+                        int idFileServer = 1000000 + writerId * NB_DOWNLOADS + d;
+                        insertNew(idFileServer);
+                        //Received file
+                        assertEquals(1, updateStatus(idFileServer, "REC")); //NON-NLS
+                    }
+                } catch (Throwable ex) {
+                    errors.add(ex);
+                }
+            }));
+        }
+
+        for (Thread thread : readers) {
+            thread.start();
+        }
+        for (Thread thread : writers) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : writers) {
+            thread.join();
+        }
+        writing.set(false);
+        for (Thread thread : readers) {
+            thread.join();
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertTrue(nbReads.get() > 0);
+        //One version per change (insert, then status update), once committed
+        assertEquals(NB_WRITERS * NB_DOWNLOADS * 2, locks.getVersion());
+        assertEquals(locks.getVersion(), nbChanges.get());
+        int[] state = read(writer);
+        assertEquals(NB_TRACKS + NB_WRITERS * NB_DOWNLOADS, state[0]);
+        assertEquals(0, state[1]);
+        assertEquals(state[0], state[2]);
+    }
+
+    /**
+     * As MusicLibrary.insertTrack(): a NEW track, in a transaction
+     */
+    private void insertNew(int idFileServer) throws SQLException {
+        locks.lockWriter();
+        boolean inserted = false;
+        try {
+            writer.setAutoCommit(false);
+            try (PreparedStatement statement = writer.prepareStatement("INSERT INTO tracks (" //NON-NLS
+                    + "idFileServer, idPath, albumArtist, year, trackNo, trackTotal, discNo, discTotal, " //NON-NLS
+                    + "bitrate, format, bpm, modifDate, checkedFlag, copyright, coverhash, artist, title, album, " //NON-NLS
+                    + "genre, rating, addedDate, playCounter, lastPlayed, status, size, length, pathModifDate, " //NON-NLS
+                    + "pathMbId, comment, path) VALUES (?, ?, '', '', 1, 1, 1, 1, '', '', '', 0, '', '', '', " //NON-NLS
+                    + "'Artist', ?, 'Album', 'Rock', 0, 0, 0, 0, 'NEW', 0, 0, 0, '', '', ?)")) { //NON-NLS
+                statement.setInt(1, idFileServer);
+                statement.setInt(2, idFileServer / 10);
+                statement.setString(3, "Title " + idFileServer); //NON-NLS
+                statement.setString(4, "/music/" + idFileServer + ".mp3"); //NON-NLS
+                assertEquals(1, statement.executeUpdate());
+                writer.commit();
+                inserted = true;
+            } finally {
+                if (!inserted) {
+                    writer.rollback();
+                }
+                writer.setAutoCommit(true);
+            }
+        } finally {
+            if (inserted) {
+                locks.unlockWriterChanged();
+            } else {
+                locks.unlockWriter();
+            }
+        }
+    }
+
+    /**
+     * As MusicLibrary.updateStatus()
+     */
+    private int updateStatus(int idFileServer, String status) throws SQLException {
+        locks.lockWriter();
+        try (PreparedStatement statement = writer.prepareStatement(
+                "UPDATE tracks SET status=? WHERE idFileServer=?")) { //NON-NLS
+            statement.setString(1, status);
+            statement.setInt(2, idFileServer);
+            int updated = statement.executeUpdate();
+            locks.setChanged();
+            return updated;
+        } finally {
+            locks.unlockWriter();
+        }
+    }
+
+    /**
+     * As MusicLibrary.refreshAlbums(): in a transaction, with writer lock held
+     */
+    private void refreshAlbums() throws SQLException {
+        writer.setAutoCommit(false);
+        try (Statement statement = writer.createStatement()) {
+            for (String sql : MusicLibraryDb.REFRESH_ALBUMS) {
+                statement.execute(sql);
+            }
+            writer.commit();
+        } catch (SQLException ex) {
+            writer.rollback();
+            throw ex;
+        } finally {
+            writer.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * @return number of tracks, of NEW tracks added by writers, and of tracks in album summaries,
+     * read at once (a single read transaction)
+     */
+    private static int[] read(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT (SELECT count(*) FROM tracks), " //NON-NLS
+                     + "(SELECT count(*) FROM tracks WHERE status='NEW' AND idFileServer>=1000000), " //NON-NLS
+                     + "(SELECT sum(nbTracks) FROM album)")) { //NON-NLS
+            assertTrue(resultSet.next());
+            return new int[]{resultSet.getInt(1), resultSet.getInt(2), resultSet.getInt(3)};
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks MusicLibrary locks: nesting of writer locks, version and listener on changes,
+ * exclusion of writers, and of connections open/close against all other accesses.
+ */
+public class LibraryLockTest {
+
+    private final AtomicInteger notified = new AtomicInteger();
+    private final List<Long> notifiedVersions = new ArrayList<>();
+    private final LibraryLock locks = new LibraryLock(version -> {
+        //Version is only published once listener returns
+        assertEquals(version - 1, this.locks.getVersion());
+        notifiedVersions.add(version);
+        notified.incrementAndGet();
+    });
+
+    @Test
+    public void unlockWriterChanged_versionsAndNotifiesOnceOnOutermostRelease() {
+        locks.lockWriter();
+        locks.lockWriter();
+        locks.unlockWriterChanged();
+        assertEquals(0, locks.getVersion());
+        assertEquals(0, notified.get());
+        assertTrue(locks.isWriterHeldByCurrentThread());
+        locks.lockWriter();
+        locks.unlockWriterChanged();
+        assertEquals(0, locks.getVersion());
+        assertEquals(0, notified.get());
+        locks.unlockWriter();
+        assertEquals(1, locks.getVersion());
+        assertEquals(1, notified.get());
+        assertEquals(Collections.singletonList(1L), notifiedVersions);
+        assertFalse(locks.isWriterHeldByCurrentThread());
+    }
+
+    @Test
+    public void setChanged_isVersionedOnOutermostRelease() {
+        locks.lockWriter();
+        locks.setChanged();
+        locks.setChanged();
+        assertEquals(0, locks.getVersion());
+        locks.unlockWriter();
+        assertEquals(1, locks.getVersion());
+        assertEquals(1, notified.get());
+    }
+
+    @Test
+    public void unlockWriter_withoutChange_doesNotNotify() {
+        locks.lockWriter();
+        locks.lockWriter();
+        locks.unlockWriter();
+        locks.unlockWriter();
+        assertEquals(0, locks.getVersion());
+        assertEquals(0, notified.get());
+        //Next change is notified alone
+        locks.lockWriter();
+        locks.unlockWriterChanged();
+        assertEquals(1, locks.getVersion());
+        assertEquals(1, notified.get());
+    }
+
+    @Test
+    public void unlockWriter_releasesLocksIfListenerFails() throws InterruptedException {
+        LibraryLock failing = new LibraryLock(version -> {
+            throw new IllegalStateException("listener"); //NON-NLS
+        });
+        failing.lockWriter();
+        try {
+            failing.unlockWriterChanged();
+            fail("Listener error must be thrown"); //NON-NLS
+        } catch (IllegalStateException ignored) {
+        }
+        //Changes are committed: versioned anyway
+        assertEquals(1, failing.getVersion());
+        assertFalse(failing.isWriterHeldByCurrentThread());
+        assertTrue(runsWithin(failing::lockConnections, 1000));
+    }
+
+    @Test
+    public void lockWriter_isExclusive() throws InterruptedException {
+        locks.lockWriter();
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread other = new Thread(() -> {
+            locks.lockWriter();
+            locked.countDown();
+            locks.unlockWriter();
+        });
+        other.start();
+        assertFalse(locked.await(100, TimeUnit.MILLISECONDS));
+        locks.unlockWriter();
+        assertTrue(locked.await(1, TimeUnit.SECONDS));
+        other.join();
+    }
+
+    @Test
+    public void lockShared_isNotBlockedByWriter() throws InterruptedException {
+        locks.lockWriter();
+        try {
+            assertTrue(runsWithin(() -> {
+                locks.lockShared();
+                locks.unlockShared();
+            }, 1000));
+        } finally {
+            locks.unlockWriter();
+        }
+    }
+
+    @Test
+    public void lockConnections_waitsForWritersAndReaders() throws InterruptedException {
+        locks.lockShared();
+        assertFalse(runsWithin(() -> {
+            locks.lockConnections();
+            locks.unlockConnections();
+        }, 100));
+        locks.unlockShared();
+        locks.lockWriter();
+        assertFalse(runsWithin(() -> {
+            locks.lockConnections();
+            locks.unlockConnections();
+        }, 100));
+        locks.unlockWriter();
+        assertTrue(runsWithin(() -> {
+            locks.lockConnections();
+            locks.unlockConnections();
+        }, 1000));
+    }
+
+    @Test
+    public void lockConnections_blocksWriters() throws InterruptedException {
+        locks.lockConnections();
+        try {
+            assertFalse(runsWithin(() -> {
+                locks.lockWriter();
+                locks.unlockWriter();
+            }, 100));
+        } finally {
+            locks.unlockConnections();
+        }
+    }
+
+    @Test
+    public void writers_stress() throws InterruptedException {
+        int nbThreads = 8;
+        int nbChanges = 2000;
+        int[] counter = {0};
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < nbThreads; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < nbChanges; j++) {
+                    locks.lockWriter();
+                    try {
+                        locks.lockWriter();
+                        //Not atomic: only consistent if writers are exclusive
+                        counter[0]++;
+                        locks.unlockWriterChanged();
+                    } finally {
+                        locks.unlockWriter();
+                    }
+                    if (j % 100 == 0) {
+                        locks.lockShared();
+                        locks.unlockShared();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(nbThreads * nbChanges, counter[0]);
+        assertEquals(nbThreads * nbChanges, locks.getVersion());
+        assertEquals(nbThreads * nbChanges, notified.get());
+    }
+
+    /**
+     * @return true if action ran, in another thread, within timeout. That thread is left running otherwise.
+     */
+    private static boolean runsWithin(Runnable action, long timeoutMillis) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            action.run();
+            done.countDown();
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,227 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks LibrarySnapshot evaluates playlist filters as PlaylistQuery SQL does,
+ * and reports its memory use and timings for 100k tracks.
+ */
+public class LibrarySnapshotTest {
+
+    private static final String REC = Track.Status.REC.name();
+    private static final String NEW = Track.Status.NEW.name();
+
+    private static void add(LibrarySnapshot snapshot, int id, String status, int rating, String genre,
+                            long lastPlayed, int length, long size, String... tags) {
+        snapshot.addTrack(id, status, rating, genre, lastPlayed, length, size);
+        for (String tag : tags) {
+            assertTrue(snapshot.addTag(id, tag));
+        }
+    }
+
+    private static LibrarySnapshot getSnapshot() {
+        LibrarySnapshot snapshot = new LibrarySnapshot(2, 7);
+        add(snapshot, 1, REC, 5, "Rock", 1000, 100, 10, "Calm", "Live"); //NON-NLS
+        add(snapshot, 2, REC, 3, "Rock", 2000, 200, 20, "Calm"); //NON-NLS
+        add(snapshot, 3, REC, 4, "Jazz", 3000, 300, 30); //NON-NLS
+        add(snapshot, 5, NEW, 5, "Jazz", 4000, 400, 40, "Live"); //NON-NLS
+        add(snapshot, 8, REC, 2, "Pop", 5000, 500, 50, "Live"); //NON-NLS
+        return snapshot;
+    }
+
+    private static Builder filter() {
+        return new Builder();
+    }
+
+    private static class Builder {
+        private final PlaylistQuery.Builder builder = new PlaylistQuery.Builder().status(REC);
+
+        Builder rating(Playlist.Operator operator, int rating) {
+            builder.rating(operator.toString(), rating);
+            return this;
+        }
+
+        Builder genre(String genre, TriStateButton.STATE state) {
+            builder.genre(genre, state);
+            return this;
+        }
+
+        Builder tag(String tag, TriStateButton.STATE state) {
+            builder.tag(tag, state);
+            return this;
+        }
+
+        Builder unTagged(TriStateButton.STATE state) {
+            builder.unTagged(state);
+            return this;
+        }
+
+        Builder playedBefore(long epochMillis) {
+            builder.playedBefore(epochMillis);
+            return this;
+        }
+
+        Builder exclude(Integer... ids) {
+            builder.exclude(Arrays.asList(ids));
+            return this;
+        }
+
+        Builder status(String status) {
+            builder.status(status);
+            return this;
+        }
+
+        LibrarySnapshot.Filter build() {
+            return builder.build().getFilter();
+        }
+    }
+
+    private static List<Integer> getIds(LibrarySnapshot snapshot, LibrarySnapshot.Filter filter) {
+        List<Integer> ids = new ArrayList<>();
+        for (int id : snapshot.getIds(filter)) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    @Test
+    public void filters_matchPlaylistQuerySemantics() {
+        LibrarySnapshot snapshot = getSnapshot();
+        assertEquals(Arrays.asList(1, 2, 3, 8), getIds(snapshot, filter().build()));
+        assertEquals(Arrays.asList(1, 2, 3, 5, 8), getIds(snapshot, filter().status(NEW).build()));
+        assertEquals(Collections.emptyList(), getIds(snapshot, new PlaylistQuery.Builder().build().getFilter()));
+
+        assertEquals(Arrays.asList(1, 3), getIds(snapshot, filter().rating(Playlist.Operator.GREATERTHAN, 4).build()));
+        assertEquals(Arrays.asList(2), getIds(snapshot, filter().rating(Playlist.Operator.IS, 3).build()));
+        assertEquals(Arrays.asList(2, 8), getIds(snapshot, filter().rating(Playlist.Operator.LESSTHAN, 3).build()));
+        assertEquals(Arrays.asList(1, 2), getIds(snapshot, filter().playedBefore(3000).build()));
+
+        assertEquals(Arrays.asList(1, 2), getIds(snapshot, filter().genre("Rock", TriStateButton.STATE.TRUE).build())); //NON-NLS
+        assertEquals(Arrays.asList(3, 8), getIds(snapshot, filter().genre("Rock", TriStateButton.STATE.FALSE).build())); //NON-NLS
+        assertEquals(Collections.emptyList(), getIds(snapshot, filter().genre("Blues", TriStateButton.STATE.TRUE).build())); //NON-NLS
+
+        //Untagged tracks are included by default
+        assertEquals(Arrays.asList(1, 2, 3), getIds(snapshot, filter().tag("Calm", TriStateButton.STATE.TRUE).build())); //NON-NLS
+        assertEquals(Arrays.asList(1, 2), getIds(snapshot, filter().tag("Calm", TriStateButton.STATE.TRUE) //NON-NLS
+                .unTagged(TriStateButton.STATE.FALSE).build()));
+        assertEquals(Arrays.asList(1), getIds(snapshot, filter().tag("Calm", TriStateButton.STATE.TRUE) //NON-NLS
+                .tag("Live", TriStateButton.STATE.TRUE).unTagged(TriStateButton.STATE.FALSE).build())); //NON-NLS
+        assertEquals(Arrays.asList(2, 3), getIds(snapshot, filter().tag("Live", TriStateButton.STATE.FALSE).build())); //NON-NLS
+        assertEquals(Arrays.asList(3), getIds(snapshot, filter().tag("Live", TriStateButton.STATE.TRUE) //NON-NLS
+                .unTagged(TriStateButton.STATE.TRUE).build()));
+        assertEquals(Arrays.asList(3), getIds(snapshot, filter().tag("Unknown", TriStateButton.STATE.TRUE).build())); //NON-NLS
+
+        assertEquals(Arrays.asList(2, 8), getIds(snapshot, filter().exclude(1, 3, 4).build()));
+
+        Triplet<Integer, Long, Long> nb = snapshot.count(filter().genre("Rock", TriStateButton.STATE.TRUE).build()); //NON-NLS
+        assertEquals(2, (int) nb.getFirst());
+        assertEquals(30, (long) nb.getSecond());
+        assertEquals(300, (long) nb.getThird());
+
+        assertNull(new PlaylistQuery.Builder().status(REC).album("Album").build().getFilter()); //NON-NLS
+    }
+
+    @Test
+    public void apply_keepsSnapshotCurrent() {
+        LibrarySnapshot snapshot = getSnapshot();
+        TrackWriteQueue.TrackWrite write = new TrackWriteQueue.TrackWrite(3);
+        write.rating = 1.0;
+        write.genre = "Blues"; //NON-NLS
+        write.tags.put("Calm", true); //NON-NLS
+        TrackWriteQueue.TrackWrite removeTag = new TrackWriteQueue.TrackWrite(8);
+        removeTag.tags.put("Live", false); //NON-NLS
+
+        assertFalse(snapshot.apply(Arrays.asList(write, removeTag), 6, 8));
+        assertTrue(snapshot.apply(Arrays.asList(write, removeTag), 7, 8));
+        assertEquals(8, snapshot.getVersion());
+        assertEquals(Arrays.asList(3), getIds(snapshot, filter().genre("Blues", TriStateButton.STATE.TRUE).build())); //NON-NLS
+        assertEquals(Arrays.asList(3), getIds(snapshot, filter().rating(Playlist.Operator.IS, 1).build()));
+        assertEquals(Arrays.asList(1, 2, 3), getIds(snapshot, filter().tag("Calm", TriStateButton.STATE.TRUE) //NON-NLS
+                .unTagged(TriStateButton.STATE.FALSE).build()));
+        assertEquals(Arrays.asList(8), getIds(snapshot, filter().unTagged(TriStateButton.STATE.TRUE).build()));
+    }
+
+    @Test
+    public void changes_keepSnapshotCurrent() {
+        LibrarySnapshot snapshot = getSnapshot();
+        List<LibrarySnapshot.Change> changes = Arrays.asList(
+                s -> s.putTrack(9, REC, 4, "Jazz", 6000, 600, 60, Collections.singletonList("Calm")), //NON-NLS
+                s -> s.putTrack(3, REC, 1, "Blues", 3000, 300, 30, Collections.singletonList("Live")), //NON-NLS
+                s -> s.setStats(2, 5, "Rock", 2500, Collections.emptyList()), //NON-NLS
+                s -> s.setStatus(5, REC),
+                s -> {
+                    s.removeTrack(1);
+                    return true;
+                });
+
+        assertTrue(snapshot.apply(changes, 7, 8));
+        assertEquals(8, snapshot.getVersion());
+        assertEquals(5, snapshot.size());
+        assertEquals(Arrays.asList(2, 5), getIds(snapshot, filter().rating(Playlist.Operator.IS, 5).build()));
+        assertEquals(Arrays.asList(3), getIds(snapshot, filter().genre("Blues", TriStateButton.STATE.TRUE).build())); //NON-NLS
+        assertEquals(Arrays.asList(3, 5, 8), getIds(snapshot, filter().tag("Live", TriStateButton.STATE.TRUE) //NON-NLS
+                .unTagged(TriStateButton.STATE.FALSE).build()));
+        assertEquals(Arrays.asList(9), getIds(snapshot, filter().tag("Calm", TriStateButton.STATE.TRUE) //NON-NLS
+                .unTagged(TriStateButton.STATE.FALSE).build()));
+        assertEquals(Arrays.asList(2), getIds(snapshot, filter().unTagged(TriStateButton.STATE.TRUE).build()));
+        Triplet<Integer, Long, Long> nb = snapshot.count(filter().build());
+        assertEquals(5, (int) nb.getFirst());
+        assertEquals(20 + 30 + 40 + 50 + 60, (long) nb.getSecond());
+
+        //New track before the last one: to be loaded again
+        assertFalse(snapshot.apply(Collections.singletonList(
+                s -> s.putTrack(4, REC, 4, "Jazz", 0, 0, 0, Collections.emptyList())), 8, 9)); //NON-NLS
+        assertEquals(8, snapshot.getVersion());
+    }
+
+    @Test
+    public void memoryBudget_100kTracks() {
+        int nbTracks = 100000;
+        int nbTags = 30;
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        LibrarySnapshot snapshot = new LibrarySnapshot(nbTracks, 1);
+        for (int id = 1; id <= nbTracks; id++) {
+            snapshot.addTrack(id, random.nextInt(10) > 0 ? REC : NEW, random.nextInt(6), "Genre" + random.nextInt(50), //NON-NLS
+                    random.nextLong(), 180 + random.nextInt(300), 3000000 + random.nextInt(10000000));
+            for (int tag = 0; tag < nbTags; tag++) {
+                if (random.nextInt(5) == 0) {
+                    snapshot.addTag(id, "Tag" + tag); //NON-NLS
+                }
+            }
+        }
+        long load = System.nanoTime() - start;
+
+        LibrarySnapshot.Filter filter = filter().rating(Playlist.Operator.GREATERTHAN, 3)
+                .genre("Genre1", TriStateButton.STATE.FALSE).tag("Tag1", TriStateButton.STATE.TRUE) //NON-NLS
+                .tag("Tag2", TriStateButton.STATE.FALSE).build(); //NON-NLS
+        int rounds = 100;
+        start = System.nanoTime();
+        int count = 0;
+        for (int i = 0; i < rounds; i++) {
+            count = snapshot.count(filter).getFirst();
+        }
+        long countTime = (System.nanoTime() - start) / rounds;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            TrackSampler.sample(snapshot.getIds(filter), 20, random);
+        }
+        long sampleTime = (System.nanoTime() - start) / rounds;
+
+        System.out.printf(Locale.ENGLISH, "%s%nload %d ms, count (%d tracks) %d us, sample of 20 %d us%n", //NON-NLS
+                snapshot, load / 1000000, count, countTime / 1000, sampleTime / 1000);
+        assertEquals(nbTracks, snapshot.size());
+        assertTrue(count > 0);
+        //Columns: 26 bytes per track, plus ~12.5 KiB per tag
+        assertTrue(snapshot.toString(), snapshot.getMemorySize() < 4 * 1024 * 1024);
+    }
+}
@@ -0,0 +1,212 @@
+package phramusca.com.jamuzremote;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks files to merge are chunked in idFileRemote order, and that a full merge interrupted
+ * after a chunk resumes at the next one, posting chunks to a local stand-in server as ServiceSync.requestMerge().
+ */
+public class MergeChunksTest {
+
+    private static final int CHUNK_SIZE = 10;
+    private static final int NB_TRACKS = 45;
+
+    private HttpServer server;
+    private ClientInfo clientInfo;
+    private final OkHttpClient client = new OkHttpClient();
+    /**
+     * idFileRemote of posted chunks, successful or not
+     */
+    private final List<List<Integer>> posted = new ArrayList<>();
+    /**
+     * Index of post failing (as a lost connection), -1 for none
+     */
+    private int failingPost = -1;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0); //NON-NLS
+        server.createContext("/files", this::handleMerge); //NON-NLS
+        server.start();
+        //Server port is ClientInfo port + 1
+        clientInfo = new ClientInfo("localhost", server.getAddress().getPort() - 1, //NON-NLS
+                "login", "password", 0, "appId", "/root", "model"); //NON-NLS
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Chunk is posted as idFileRemote list. Replies with number of merged files.
+     */
+    private void handleMerge(HttpExchange exchange) throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (InputStream inputStream = exchange.getRequestBody();
+             Scanner scanner = new Scanner(inputStream, "UTF-8").useDelimiter(",")) { //NON-NLS
+            while (scanner.hasNextInt()) {
+                ids.add(scanner.nextInt());
+            }
+        }
+        int index = posted.size();
+        posted.add(ids);
+        byte[] bytes = String.valueOf(ids.size()).getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(index == failingPost ? 500 : 200, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * @return NB_TRACKS tracks, with odd idFileRemote, not sorted
+     */
+    private static List<Track> getTracks() throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder("{\"files\":["); //NON-NLS
+        for (int i = 0; i < NB_TRACKS; i++) {
+            body.append(i == 0 ? "" : ",")
+                    .append("{\"idFile\":").append(i) //NON-NLS
+                    .append(",\"path\":\"").append(i).append(".mp3\",\"status\":\"REC\"}"); //NON-NLS
+        }
+        List<Track> tracks = new ArrayList<>();
+        TrackJsonReader.read(new StringReader(body.append("]}").toString()), new File("/data"), false, //NON-NLS
+                track -> {
+                    track.setIdFileRemote(track.getIdFileServer() * 2 + 1);
+                    tracks.add(track);
+                });
+        Collections.reverse(tracks);
+        return tracks;
+    }
+
+    private static List<Integer> getIds(List<Track> tracks) {
+        List<Integer> ids = new ArrayList<>();
+        for (Track track : tracks) {
+            ids.add(track.getIdFileRemote());
+        }
+        return ids;
+    }
+
+    @Test
+    public void dirtyOnly_chunksDirtyFiles() throws Exception {
+        Map<Integer, Long> dirty = new HashMap<>();
+        dirty.put(41, 2L);
+        dirty.put(7, 1L);
+        MergeChunks chunks = new MergeChunks(getTracks(), dirty, MergeChunks.DIRTY_ONLY, CHUNK_SIZE);
+        assertEquals(2, chunks.size());
+        assertEquals(1, chunks.getNbChunks());
+        assertEquals(Arrays.asList(7, 41), getIds(chunks.getChunk(0)));
+        assertEquals(dirty, chunks.getMerged(0));
+        assertEquals(2, chunks.getDirty(41));
+        assertEquals(0, chunks.getDirty(9));
+        assertEquals(2, chunks.getNbMerged(0));
+    }
+
+    @Test
+    public void full_chunksAllFilesInOrder() throws Exception {
+        MergeChunks chunks = new MergeChunks(getTracks(), new HashMap<>(), MergeChunks.FULL, CHUNK_SIZE);
+        assertEquals(NB_TRACKS, chunks.size());
+        assertEquals(5, chunks.getNbChunks());
+        assertEquals(5, chunks.getChunk(4).size());
+        assertEquals(1, chunks.getChunk(0).get(0).getIdFileRemote());
+        assertEquals(19, chunks.getMergedUpTo(0));
+        assertEquals(89, chunks.getMergedUpTo(4));
+        assertEquals(20, chunks.getNbMerged(1));
+        assertEquals(NB_TRACKS, chunks.getNbMerged(4));
+        assertTrue(chunks.getMerged(0).isEmpty());
+    }
+
+    @Test
+    public void interruptedFullMerge_resumesAtNextChunk() throws Exception {
+        List<Track> tracks = getTracks();
+        Map<Integer, Long> dirty = new HashMap<>();
+        //In chunk 1, merged before interruption, and in chunk 4, not merged yet
+        dirty.put(25, 1L);
+        dirty.put(85, 3L);
+        MergeChunks chunks = new MergeChunks(tracks, dirty, MergeChunks.FULL, CHUNK_SIZE);
+        //Interrupted after chunk 2
+        failingPost = 3;
+        int mergedUpTo = merge(chunks, dirty, MergeChunks.FULL);
+        assertEquals(4, posted.size());
+        assertEquals(chunks.getMergedUpTo(2), mergedUpTo);
+        assertFalse(dirty.containsKey(25));
+        assertTrue(dirty.containsKey(85));
+
+        //Resumes at chunk 3, and dirty files of merged chunks are not merged again
+        failingPost = -1;
+        MergeChunks resumed = new MergeChunks(tracks, dirty, mergedUpTo, CHUNK_SIZE);
+        assertEquals(2, resumed.getNbChunks());
+        assertEquals(getIds(chunks.getChunk(3)), getIds(resumed.getChunk(0)));
+        assertEquals(MergeChunks.FULL, merge(resumed, dirty, mergedUpTo));
+        assertEquals(6, posted.size());
+        assertEquals(getIds(chunks.getChunk(3)), posted.get(4));
+        assertEquals(getIds(chunks.getChunk(4)), posted.get(5));
+        assertTrue(dirty.isEmpty());
+
+        //Every file was merged once
+        List<Integer> merged = new ArrayList<>();
+        for (int i = 0; i < posted.size(); i++) {
+            if (i != 3) {
+                merged.addAll(posted.get(i));
+            }
+        }
+        List<Integer> expected = getIds(tracks);
+        Collections.sort(expected);
+        assertEquals(expected, merged);
+    }
+
+    /**
+     * As ServiceSync.requestMerge(): posts chunks in order, and once each is merged,
+     * clears dirty state of its files (as MusicLibrary.clearDirty()) and keeps progress
+     *
+     * @return progress to resume from, or FULL once done (progress removed, next full merge starts over)
+     */
+    private int merge(MergeChunks chunks, Map<Integer, Long> dirty, int mergedUpTo) throws IOException {
+        for (int i = 0; i < chunks.getNbChunks(); i++) {
+            List<Integer> ids = getIds(chunks.getChunk(i));
+            StringBuilder body = new StringBuilder();
+            for (int id : ids) {
+                body.append(body.length() == 0 ? "" : ",").append(id);
+            }
+            Request request = clientInfo.getRequestBuilder(clientInfo.getUrlBuilder("files")) //NON-NLS
+                    .post(RequestBody.create(body.toString(), MediaType.parse("text/plain"))).build(); //NON-NLS
+            try (ResponseBody responseBody = clientInfo.getBody(client.newCall(request))) {
+                assertEquals(String.valueOf(ids.size()), responseBody.string());
+            } catch (ServiceSync.ServerException ex) {
+                return mergedUpTo;
+            }
+            for (Map.Entry<Integer, Long> entry : chunks.getMerged(i).entrySet()) {
+                dirty.remove(entry.getKey(), entry.getValue());
+            }
+            mergedUpTo = chunks.getMergedUpTo(i);
+        }
+        return MergeChunks.FULL;
+    }
+}
@@ -0,0 +1,141 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the database migration chain, and runs migrations SQL on an in-memory SQLite database.
+ */
+public class MusicLibraryDbTest {
+
+    @Test
+    public void migrations_coverEveryVersion() {
+        Set<Integer> versions = new HashSet<>();
+        for (MusicLibraryDb.Migration migration : MusicLibraryDb.MIGRATIONS) {
+            assertTrue("Duplicate migration " + migration.version, versions.add(migration.version));
+            assertTrue(migration.version > MusicLibraryDb.DB_VERSION_MIN_MIGRATION);
+            assertTrue(migration.version <= MusicLibraryDb.DB_VERSION);
+            assertFalse(migration.statements.isEmpty());
+            for (String statement : migration.statements) {
+                assertFalse(statement.trim().isEmpty());
+            }
+        }
+        assertEquals(MusicLibraryDb.DB_VERSION - MusicLibraryDb.DB_VERSION_MIN_MIGRATION, versions.size());
+    }
+
+    @Test
+    public void migrations_areOrderedFromAnySupportedVersion() {
+        for (int oldVersion = MusicLibraryDb.DB_VERSION_MIN_MIGRATION; oldVersion <= MusicLibraryDb.DB_VERSION; oldVersion++) {
+            List<MusicLibraryDb.Migration> migrations = MusicLibraryDb.getMigrations(oldVersion, MusicLibraryDb.DB_VERSION);
+            assertEquals(MusicLibraryDb.DB_VERSION - oldVersion, migrations.size());
+            int expected = oldVersion + 1;
+            for (MusicLibraryDb.Migration migration : migrations) {
+                assertEquals(expected++, migration.version);
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void migrations_failOnMissingVersion() {
+        MusicLibraryDb.getMigrations(MusicLibraryDb.DB_VERSION, MusicLibraryDb.DB_VERSION + 1);
+    }
+
+    @Test
+    public void migration9_convertsDatesToEpochMillis() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:"); //NON-NLS
+             Statement statement = connection.createStatement()) {
+            createTablesV8(statement);
+            statement.execute("INSERT INTO tracks VALUES (7, 42, 3, 'Album Artist', '2001', 1, 10, 1, 1, " //NON-NLS
+                    + "'320', 'mp3', '120', '2020-01-02 03:04:05', 'UNCHECKED', '', 'hash', 'Artist', " //NON-NLS
+                    + "'Title', 'Album', 'Rock', 4, '2021-06-15 12:00:00', 5, '', 'REC', 1234, 180, " //NON-NLS
+                    + "'2019-12-31 23:59:59', 'mbid', 'comment', -6.5, NULL, '/music/a.mp3')"); //NON-NLS
+
+            for (MusicLibraryDb.Migration migration : MusicLibraryDb.getMigrations(8, 9)) {
+                for (String sql : migration.statements) {
+                    statement.execute(sql);
+                }
+            }
+
+            try (ResultSet resultSet = statement.executeQuery("SELECT idFileRemote, modifDate, addedDate, " //NON-NLS
+                    + "lastPlayed, pathModifDate, typeof(modifDate), title, trackGain, albumGain, path FROM tracks")) { //NON-NLS
+                assertTrue(resultSet.next());
+                assertEquals(7, resultSet.getInt(1));
+                assertEquals(1577934245000L, resultSet.getLong(2));
+                assertEquals(1623758400000L, resultSet.getLong(3));
+                //Never played
+                assertEquals(0L, resultSet.getLong(4));
+                assertEquals(1577836799000L, resultSet.getLong(5));
+                assertEquals("integer", resultSet.getString(6)); //NON-NLS
+                assertEquals("Title", resultSet.getString(7)); //NON-NLS
+                assertEquals(-6.5, resultSet.getDouble(8), 0);
+                resultSet.getDouble(9);
+                assertTrue(resultSet.wasNull());
+                assertEquals("/music/a.mp3", resultSet.getString(10)); //NON-NLS
+                assertFalse(resultSet.next());
+            }
+        }
+    }
+
+    @Test
+    public void migration8_createsIndexesOfVersion8Only() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:"); //NON-NLS
+             Statement statement = connection.createStatement()) {
+            createTablesV8(statement);
+            for (String sql : MusicLibraryDb.getMigrations(7, 8).get(0).statements) {
+                statement.execute(sql);
+            }
+            Set<String> expected = new HashSet<>(Arrays.asList("idx_tracks_idFileServer", "idx_tracks_path", //NON-NLS
+                    "idx_tracks_status_rating", "idx_tracks_idPath", "idx_tracks_lastPlayed", "idx_tagfile_idTag")); //NON-NLS
+            assertEquals(expected, getIndexes(statement));
+            //Later indexes are created on open
+            for (String sql : MusicLibraryDb.CREATE_INDEXES) {
+                statement.execute(sql);
+            }
+            Set<String> all = getIndexes(statement);
+            assertTrue(all.containsAll(expected));
+            assertEquals(MusicLibraryDb.CREATE_INDEXES.size(), all.size());
+        }
+    }
+
+    /**
+     * Creates tables of version 8 schema (same as version 7, but indexes), with "yyyy-MM-dd HH:mm:ss" UTC TEXT dates
+     */
+    private static void createTablesV8(Statement statement) throws SQLException {
+        statement.execute("CREATE TABLE tracks (" //NON-NLS
+                + "idFileRemote INTEGER PRIMARY KEY AUTOINCREMENT, idFileServer INTEGER NOT NULL, " //NON-NLS
+                + "idPath INTEGER NOT NULL, albumArtist TEXT NOT NULL, year TEXT NOT NULL, " //NON-NLS
+                + "trackNo INTEGER NOT NULL, trackTotal INTEGER NOT NULL, discNo INTEGER NOT NULL, " //NON-NLS
+                + "discTotal INTEGER NOT NULL, bitrate TEXT NOT NULL, format TEXT NOT NULL, " //NON-NLS
+                + "bpm TEXT NOT NULL, modifDate TEXT NOT NULL, checkedFlag TEXT NOT NULL, " //NON-NLS
+                + "copyright TEXT NOT NULL, coverhash TEXT NOT NULL, artist TEXT NOT NULL, " //NON-NLS
+                + "title TEXT NOT NULL, album TEXT NOT NULL, genre TEXT NOT NULL, " //NON-NLS
+                + "rating INTEGER NOT NULL, addedDate TEXT NOT NULL, playCounter INTEGER NOT NULL, " //NON-NLS
+                + "lastPlayed TEXT NOT NULL, status TEXT NOT NULL, size LONG NOT NULL, " //NON-NLS
+                + "length INTEGER NOT NULL, pathModifDate TEXT NOT NULL, pathMbId TEXT NOT NULL, " //NON-NLS
+                + "comment TEXT NOT NULL, trackGain REAL, albumGain REAL, path TEXT NOT NULL)"); //NON-NLS
+        statement.execute("CREATE TABLE tagfile (idFile INTEGER NOT NULL, idTag INTEGER NOT NULL, " //NON-NLS
+                + "PRIMARY KEY (idFile, idTag))"); //NON-NLS
+    }
+
+    private static Set<String> getIndexes(Statement statement) throws SQLException {
+        Set<String> indexes = new HashSet<>();
+        try (ResultSet resultSet = statement.executeQuery("SELECT name FROM sqlite_master " //NON-NLS
+                + "WHERE type='index' AND name LIKE 'idx_%'")) { //NON-NLS
+            while (resultSet.next()) {
+                indexes.add(resultSet.getString(1));
+            }
+        }
+        return indexes;
+    }
+}
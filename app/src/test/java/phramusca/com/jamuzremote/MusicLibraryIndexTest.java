@@ -0,0 +1,134 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures hot lookups of MusicLibrary on a generated library of 100k tracks,
+ * before and after MusicLibraryDb.CREATE_INDEXES, and checks their query plans use the indexes.
+ */
+public class MusicLibraryIndexTest {
+
+    private static final int NB_TRACKS = 100000;
+    private static final int NB_LOOKUPS = 1000;
+    /**
+     * Fewer lookups without indexes, as each scans the whole table
+     */
+    private static final int NB_LOOKUPS_SCAN = 20;
+
+    private static final String BY_ID_SERVER = "SELECT idFileRemote FROM tracks WHERE idFileServer=?"; //NON-NLS
+    private static final String BY_PATH = "SELECT idFileRemote FROM tracks WHERE path=?"; //NON-NLS
+    private static final String BY_STATUS_RATING = "SELECT count(idFileRemote) FROM tracks " //NON-NLS
+            + "WHERE status IN (?, ?) AND rating >= ?"; //NON-NLS
+
+    @Test
+    public void indexes_areUsedByLookups_100kRows() throws Exception {
+        try (TestLibrary library = new TestLibrary(NB_TRACKS, false)) {
+            Connection connection = library.getConnection();
+            assertTrue(TestLibrary.explain(connection, BY_ID_SERVER, 1).contains("SCAN")); //NON-NLS
+            long[] before = measure(connection, NB_LOOKUPS_SCAN);
+
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : MusicLibraryDb.CREATE_INDEXES) {
+                    statement.execute(sql);
+                }
+                statement.execute("ANALYZE"); //NON-NLS
+            }
+            assertUses(connection, "idx_tracks_idFileServer", BY_ID_SERVER, 1); //NON-NLS
+            assertUses(connection, "idx_tracks_path", BY_PATH, TestLibrary.getPath(1)); //NON-NLS
+            //Rating is bound as a string, as by PlaylistQuery
+            assertUses(connection, "idx_tracks_status_rating", BY_STATUS_RATING, "REC", "NEW", "3"); //NON-NLS
+            long[] after = measure(connection, NB_LOOKUPS);
+
+            System.out.printf(Locale.ENGLISH, "%d tracks, average time of a lookup by idFileServer: %d us -> %d us, " //NON-NLS
+                            + "by path: %d us -> %d us, count by status and rating: %d us -> %d us%n", //NON-NLS
+                    NB_TRACKS, before[0], after[0], before[1], after[1], before[2], after[2]);
+        }
+    }
+
+    /**
+     * A partial UNIQUE index on idFileServer >= 0 (leaving out LOCAL tracks, which have -1)
+     * is not used by lookups with a bound idFileServer, as SQLite cannot prove the bound value is >= 0.
+     * So the plain index is kept.
+     */
+    @Test
+    public void partialIndex_isNotUsedByBoundLookups() throws Exception {
+        try (TestLibrary library = new TestLibrary(1000, false)) {
+            Connection connection = library.getConnection();
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE UNIQUE INDEX idx_tracks_idFileServer_partial " //NON-NLS
+                        + "ON tracks (idFileServer) WHERE idFileServer >= 0"); //NON-NLS
+                statement.execute("ANALYZE"); //NON-NLS
+            }
+            assertFalse(TestLibrary.explain(connection, BY_ID_SERVER, 5).contains("idx_tracks_idFileServer_partial")); //NON-NLS
+            assertUses(connection, "idx_tracks_idFileServer_partial", //NON-NLS
+                    BY_ID_SERVER + " AND idFileServer >= 0", 5); //NON-NLS
+        }
+    }
+
+    private static void assertUses(Connection connection, String index, String sql, Object... args) throws SQLException {
+        String plan = TestLibrary.explain(connection, sql, args);
+        assertTrue(plan, plan.contains(index));
+        assertFalse(plan, plan.contains("SCAN")); //NON-NLS
+    }
+
+    /**
+     * @return average time, in us, of a lookup by idFileServer, by path, and of a count by status and rating
+     */
+    private static long[] measure(Connection connection, int nbLookups) throws SQLException {
+        long[] times = new long[3];
+        Random random = new Random(42);
+        int found = 0;
+        long start = System.nanoTime();
+        try (PreparedStatement statement = connection.prepareStatement(BY_ID_SERVER)) {
+            for (int i = 0; i < nbLookups; i++) {
+                statement.setInt(1, random.nextInt(NB_TRACKS) + 1);
+                found += count(statement);
+            }
+        }
+        times[0] = (System.nanoTime() - start) / 1000 / nbLookups;
+        start = System.nanoTime();
+        try (PreparedStatement statement = connection.prepareStatement(BY_PATH)) {
+            for (int i = 0; i < nbLookups; i++) {
+                statement.setString(1, TestLibrary.getPath(random.nextInt(NB_TRACKS) + 1));
+                found += count(statement);
+            }
+        }
+        times[1] = (System.nanoTime() - start) / 1000 / nbLookups;
+        start = System.nanoTime();
+        try (PreparedStatement statement = connection.prepareStatement(BY_STATUS_RATING)) {
+            for (int i = 0; i < nbLookups; i++) {
+                statement.setString(1, "REC"); //NON-NLS
+                statement.setString(2, i % 2 == 0 ? "NEW" : "INFO"); //NON-NLS
+                statement.setString(3, String.valueOf(i % 6));
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    assertTrue(resultSet.next());
+                    assertTrue(resultSet.getInt(1) > 0);
+                }
+            }
+        }
+        times[2] = (System.nanoTime() - start) / 1000 / nbLookups;
+        //Every path is found, and every idFileServer but those of LOCAL tracks
+        assertTrue(found >= nbLookups);
+        return times;
+    }
+
+    private static int count(PreparedStatement statement) throws SQLException {
+        int count = 0;
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
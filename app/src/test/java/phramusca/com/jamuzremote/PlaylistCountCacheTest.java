@@ -0,0 +1,53 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks PlaylistCountCache only returns counts read at current library version, for equal queries.
+ */
+public class PlaylistCountCacheTest {
+
+    private static PlaylistQuery build(String tag) {
+        return new PlaylistQuery.Builder()
+                .status(Track.Status.REC.name())
+                .rating(Playlist.Operator.GREATERTHAN.toString(), 3)
+                .tag(tag, TriStateButton.STATE.TRUE)
+                .exclude(Collections.emptyList())
+                .build();
+    }
+
+    @Test
+    public void get_matchesQueryAndVersion() {
+        PlaylistCountCache cache = new PlaylistCountCache();
+        Triplet<Integer, Long, Long> nb = new Triplet<>(12, 3400L, 560L);
+        cache.put(build("Calm"), 1, nb); //NON-NLS
+
+        assertSame(nb, cache.get(build("Calm"), 1)); //NON-NLS
+        assertNull(cache.get(build("Calm"), 2)); //NON-NLS
+        assertNull(cache.get(build("Party"), 1)); //NON-NLS
+
+        //An older count does not replace a newer one
+        cache.put(build("Calm"), 2, new Triplet<>(13, 3500L, 600L)); //NON-NLS
+        cache.put(build("Calm"), 1, nb); //NON-NLS
+        assertEquals(13, (int) cache.get(build("Calm"), 2).getFirst()); //NON-NLS
+    }
+
+    @Test
+    public void put_dropsLeastRecentlyUsed() {
+        PlaylistCountCache cache = new PlaylistCountCache();
+        Triplet<Integer, Long, Long> nb = new Triplet<>(1, 1L, 1L);
+        cache.put(build("first"), 1, nb); //NON-NLS
+        for (int i = 1; i < PlaylistCountCache.MAX_SIZE; i++) {
+            cache.put(build("tag" + i), 1, nb); //NON-NLS
+        }
+        assertNotNull(cache.get(build("first"), 1)); //NON-NLS
+        cache.put(build("one too many"), 1, nb); //NON-NLS
+        assertEquals(PlaylistCountCache.MAX_SIZE, cache.size());
+        assertNotNull(cache.get(build("first"), 1)); //NON-NLS
+        assertNull(cache.get(build("tag1"), 1)); //NON-NLS
+    }
+}
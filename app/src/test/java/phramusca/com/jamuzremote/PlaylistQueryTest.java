@@ -0,0 +1,240 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks PlaylistQuery SQL and bindings, for every combination of genre, tag and untagged states.
+ */
+public class PlaylistQueryTest {
+
+    private static final TriStateButton.STATE[] STATES = TriStateButton.STATE.values();
+
+    private static PlaylistQuery build(TriStateButton.STATE genre1, TriStateButton.STATE genre2,
+                                       TriStateButton.STATE tag1, TriStateButton.STATE tag2,
+                                       TriStateButton.STATE unTagged, String suffix, List<Integer> excluded) {
+        return new PlaylistQuery.Builder()
+                .status(Track.Status.REC.name())
+                .status(Track.Status.LOCAL.name())
+                .rating(Playlist.Operator.GREATERTHAN.toString(), 3)
+                .genre("Rock" + suffix, genre1) //NON-NLS
+                .genre("Jazz \"Fusion\"" + suffix, genre2) //NON-NLS
+                .tag("Calm" + suffix, tag1) //NON-NLS
+                .tag("It's party" + suffix, tag2) //NON-NLS
+                .unTagged(unTagged)
+                .exclude(excluded)
+                .build();
+    }
+
+    private static int countBindings(String sql) {
+        int count = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int count(TriStateButton.STATE state, TriStateButton.STATE... states) {
+        return Collections.frequency(Arrays.asList(states), state);
+    }
+
+    @Test
+    public void everyStateCombination_bindsAllValues() {
+        for (TriStateButton.STATE genre1 : STATES) {
+            for (TriStateButton.STATE genre2 : STATES) {
+                for (TriStateButton.STATE tag1 : STATES) {
+                    for (TriStateButton.STATE tag2 : STATES) {
+                        for (TriStateButton.STATE unTagged : STATES) {
+                            PlaylistQuery query = build(genre1, genre2, tag1, tag2, unTagged, "", Arrays.asList(1, 2));
+                            PlaylistQuery other = build(genre1, genre2, tag1, tag2, unTagged, " 2", Arrays.asList(3, 4, 5));
+                            String message = query.getSignature();
+                            String where = query.getWhere();
+
+                            //SQL only depends on shape, values are bound
+                            assertEquals(message, query.getSignature(), other.getSignature());
+                            assertSame(message, where, other.getWhere());
+                            assertEquals(message, countBindings(where), query.getArgs().length);
+                            assertFalse(message, where.contains("Rock")); //NON-NLS
+                            assertFalse(message, where.contains("\"")); //NON-NLS
+
+                            int genresIn = count(TriStateButton.STATE.TRUE, genre1, genre2);
+                            int genresOut = count(TriStateButton.STATE.FALSE, genre1, genre2);
+                            assertEquals(message, genresIn > 0, where.contains(MusicLibraryDb.COL_TRACKS_GENRE + " IN (")); //NON-NLS
+                            assertEquals(message, genresOut > 0, where.contains(MusicLibraryDb.COL_TRACKS_GENRE + " NOT IN (")); //NON-NLS
+
+                            int tagsIn = count(TriStateButton.STATE.TRUE, tag1, tag2);
+                            int tagsOut = count(TriStateButton.STATE.FALSE, tag1, tag2);
+                            List<String> args = Arrays.asList(query.getArgs());
+                            String[] tagClauses = where.split("\n AND ", -1); //NON-NLS
+                            if (unTagged.equals(TriStateButton.STATE.TRUE)) {
+                                assertTrue(message, where.endsWith("\n AND NOT " + PlaylistQuery.TAGGED + " ")); //NON-NLS
+                                assertFalse(message, where.contains(PlaylistQuery.HAS_TAG));
+                                assertFalse(message, args.contains("Calm")); //NON-NLS
+                            } else {
+                                assertEquals(message, tagsIn, where.split(Pattern.quote(PlaylistQuery.HAS_TAG), -1).length - 1);
+                                assertEquals(message, tagsOut > 0, where.contains(
+                                        String.format(PlaylistQuery.HAS_NO_TAG_IN, PlaylistQuery.getBindings(tagsOut))));
+                                assertEquals(message, !tag1.equals(TriStateButton.STATE.ANY), args.contains("Calm")); //NON-NLS
+                                assertEquals(message, !tag2.equals(TriStateButton.STATE.ANY), args.contains("It's party")); //NON-NLS
+                                assertEquals(message, unTagged.equals(TriStateButton.STATE.ANY) && tagsIn > 0,
+                                        where.contains("\n OR NOT " + PlaylistQuery.TAGGED)); //NON-NLS
+                                assertEquals(message, unTagged.equals(TriStateButton.STATE.FALSE),
+                                        tagClauses[tagClauses.length - 1].equals(PlaylistQuery.TAGGED + " ")); //NON-NLS
+                            }
+                            //No join with tags
+                            assertFalse(message, where.contains(MusicLibraryDb.TABLE_TAG + "." + MusicLibraryDb.COL_TAG_VALUE));
+                            assertEquals(message, !genre2.equals(TriStateButton.STATE.ANY), args.contains("Jazz \"Fusion\"")); //NON-NLS
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tag filter with EXISTS / NOT EXISTS selects the same tracks as the former join with tags,
+     * grouped and filtered in having, for every include/exclude/untagged combination
+     */
+    @Test
+    public void everyTagStateCombination_selectsSameTracksAsHaving() throws Exception {
+        try (TestLibrary library = new TestLibrary(2000, true)) {
+            Connection connection = library.getConnection();
+            PlaylistQuery withoutTags = new PlaylistQuery.Builder()
+                    .status(Track.Status.REC.name())
+                    .status(Track.Status.LOCAL.name())
+                    .rating(Playlist.Operator.GREATERTHAN.toString(), 0)
+                    .build();
+            String grouped = "SELECT " + MusicLibraryDb.TABLE_TRACKS + "." + MusicLibraryDb.COL_TRACKS_ID_REMOTE //NON-NLS
+                    + HavingTagFilter.FROM + withoutTags.getWhere() + HavingTagFilter.GROUP_BY;
+            int nbCombinations = 0;
+            int nbNotEmpty = 0;
+            for (TriStateButton.STATE tag1 : STATES) {
+                for (TriStateButton.STATE tag2 : STATES) {
+                    for (TriStateButton.STATE tag3 : STATES) {
+                        for (TriStateButton.STATE unTagged : STATES) {
+                            TriStateButton.STATE[] states = {tag1, tag2, tag3};
+                            PlaylistQuery.Builder builder = new PlaylistQuery.Builder()
+                                    .status(Track.Status.REC.name())
+                                    .status(Track.Status.LOCAL.name())
+                                    .rating(Playlist.Operator.GREATERTHAN.toString(), 0)
+                                    .unTagged(unTagged);
+                            List<String> included = new ArrayList<>();
+                            List<String> excluded = new ArrayList<>();
+                            for (int k = 0; k < states.length; k++) {
+                                builder.tag(TestLibrary.TAGS[k], states[k]);
+                                if (states[k].equals(TriStateButton.STATE.TRUE)) {
+                                    included.add(TestLibrary.TAGS[k]);
+                                } else if (states[k].equals(TriStateButton.STATE.FALSE)) {
+                                    excluded.add(TestLibrary.TAGS[k]);
+                                }
+                            }
+                            PlaylistQuery query = builder.build();
+                            HavingTagFilter having = new HavingTagFilter(included, excluded, unTagged);
+
+                            List<Integer> expected = TestLibrary.queryIds(connection,
+                                    grouped + having.getHaving() + " ORDER BY 1", //NON-NLS
+                                    (Object[]) having.getArgs(withoutTags.getArgs()));
+                            List<Integer> ids = TestLibrary.queryIds(connection,
+                                    "SELECT " + MusicLibraryDb.COL_TRACKS_ID_REMOTE + " FROM " //NON-NLS
+                                            + MusicLibraryDb.TABLE_TRACKS + query.getWhere() + " ORDER BY 1", //NON-NLS
+                                    (Object[]) query.getArgs());
+                            String message = Arrays.toString(states) + " " + unTagged; //NON-NLS
+                            assertEquals(message, expected, ids);
+                            nbCombinations++;
+                            if (!ids.isEmpty()) {
+                                nbNotEmpty++;
+                            }
+                        }
+                    }
+                }
+            }
+            assertEquals(81, nbCombinations);
+            //Some combinations select nothing, as tags of generated tracks depend on one another
+            assertTrue(nbNotEmpty > nbCombinations / 2);
+        }
+    }
+
+    @Test
+    public void excluded_arePaddedToBuckets() {
+        assertEquals(0, PlaylistQuery.getBucket(0));
+        assertEquals(PlaylistQuery.MIN_EXCLUDED_BUCKET, PlaylistQuery.getBucket(1));
+        assertEquals(PlaylistQuery.MIN_EXCLUDED_BUCKET, PlaylistQuery.getBucket(PlaylistQuery.MIN_EXCLUDED_BUCKET));
+        assertEquals(PlaylistQuery.MIN_EXCLUDED_BUCKET * 2, PlaylistQuery.getBucket(PlaylistQuery.MIN_EXCLUDED_BUCKET + 1));
+
+        List<Integer> excluded = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            excluded.add(i);
+        }
+        PlaylistQuery query = build(TriStateButton.STATE.ANY, TriStateButton.STATE.ANY, TriStateButton.STATE.ANY,
+                TriStateButton.STATE.ANY, TriStateButton.STATE.ANY, "", excluded);
+        PlaylistQuery other = build(TriStateButton.STATE.ANY, TriStateButton.STATE.ANY, TriStateButton.STATE.ANY,
+                TriStateButton.STATE.ANY, TriStateButton.STATE.ANY, "", excluded.subList(0, 17));
+        assertSame(query.getWhere(), other.getWhere());
+        List<String> args = Arrays.asList(query.getArgs());
+        assertEquals(countBindings(query.getWhere()), args.size());
+        assertTrue(args.contains("20"));
+        assertEquals(32 - 20, Collections.frequency(args, PlaylistQuery.NO_ID));
+    }
+
+    @Test
+    public void manyExcluded_stayBelowSqliteBindingsLimit() {
+        assertEquals(PlaylistQuery.MAX_EXCLUDED_BINDINGS, PlaylistQuery.getBucket(5000));
+        List<Integer> excluded = new ArrayList<>();
+        for (int i = 1; i <= 1200; i++) {
+            excluded.add(i);
+        }
+        PlaylistQuery query = build(TriStateButton.STATE.TRUE, TriStateButton.STATE.FALSE, TriStateButton.STATE.TRUE,
+                TriStateButton.STATE.FALSE, TriStateButton.STATE.ANY, "", excluded);
+        List<String> args = Arrays.asList(query.getArgs());
+        assertEquals(countBindings(query.getWhere()), args.size());
+        assertTrue(args.size() < 999);
+        //First ids are inlined, last ones bound
+        assertTrue(query.getWhere().contains(" NOT IN (1,2,3,")); //NON-NLS
+        assertTrue(query.getWhere().contains(",688) ")); //NON-NLS
+        assertFalse(args.contains("688"));
+        assertTrue(args.contains("689"));
+        assertTrue(args.contains("1200"));
+        assertFalse(args.contains(PlaylistQuery.NO_ID));
+
+        //Other inlined ids, other query
+        excluded.set(0, 5000);
+        PlaylistQuery other = build(TriStateButton.STATE.TRUE, TriStateButton.STATE.FALSE, TriStateButton.STATE.TRUE,
+                TriStateButton.STATE.FALSE, TriStateButton.STATE.ANY, "", excluded);
+        assertNotEquals(query, other);
+        assertTrue(other.getWhere().contains(" NOT IN (5000,2,3,")); //NON-NLS
+    }
+
+    @Test
+    public void playedBefore_cutOffIsTruncatedToTheMinute() {
+        long before = System.currentTimeMillis();
+        long cutOff = Playlist.LimitUnit.HOURS.getCutOff(2);
+        long after = System.currentTimeMillis();
+        assertEquals(0, cutOff % (60 * 1000));
+        assertTrue(cutOff > before - 2 * 3600 * 1000 - 60 * 1000);
+        assertTrue(cutOff <= after - 2 * 3600 * 1000);
+
+        //Same cutoff, same query: counts are cached
+        PlaylistQuery query = new PlaylistQuery.Builder().status(Track.Status.REC.name()).playedBefore(cutOff).build();
+        PlaylistQuery other = new PlaylistQuery.Builder().status(Track.Status.REC.name()).playedBefore(cutOff).build();
+        PlaylistCountCache cache = new PlaylistCountCache();
+        cache.put(query, 1, new Triplet<>(1, 2L, 3L));
+        assertNotNull(cache.get(other, 1));
+    }
+
+    @Test
+    public void noStatus_selectsNothing() {
+        PlaylistQuery query = new PlaylistQuery.Builder().tag("Calm", TriStateButton.STATE.TRUE).build(); //NON-NLS
+        assertEquals(" WHERE 0 ", query.getWhere()); //NON-NLS
+        assertEquals(countBindings(query.getWhere()), query.getArgs().length);
+    }
+}
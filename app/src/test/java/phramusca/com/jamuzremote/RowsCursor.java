@@ -0,0 +1,256 @@
+package phramusca.com.jamuzremote;
+
+import android.content.ContentResolver;
+import android.database.CharArrayBuffer;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.os.Bundle;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only Cursor over rows held in memory, as a CursorWindow holds them, for JVM tests
+ * (Android cursors are only stubs there). Like SQLiteCursor, column indexes are looked up in a map.
+ */
+class RowsCursor implements Cursor {
+
+    private final String[] columns;
+    private final Map<String, Integer> columnIndexes = new HashMap<>();
+    private final List<Object[]> rows;
+    private int position = -1;
+    private boolean closed = false;
+
+    RowsCursor(String[] columns, List<Object[]> rows) {
+        this.columns = columns;
+        this.rows = rows;
+        for (int i = 0; i < columns.length; i++) {
+            columnIndexes.put(columns[i], i);
+        }
+    }
+
+    /**
+     * @return cursor over all rows of query, read with sqlite-jdbc
+     */
+    static RowsCursor query(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            String[] columns = new String[metaData.getColumnCount()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = metaData.getColumnName(i + 1);
+            }
+            List<Object[]> rows = new ArrayList<>();
+            while (resultSet.next()) {
+                Object[] row = new Object[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    row[i] = resultSet.getObject(i + 1);
+                }
+                rows.add(row);
+            }
+            return new RowsCursor(columns, rows);
+        }
+    }
+
+    private Object get(int column) {
+        return rows.get(position)[column];
+    }
+
+    public int getCount() {
+        return rows.size();
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public boolean move(int offset) {
+        return moveToPosition(position + offset);
+    }
+
+    public boolean moveToPosition(int position) {
+        this.position = Math.max(-1, Math.min(position, rows.size()));
+        return this.position >= 0 && this.position < rows.size();
+    }
+
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    public boolean moveToLast() {
+        return moveToPosition(rows.size() - 1);
+    }
+
+    public boolean moveToNext() {
+        return moveToPosition(position + 1);
+    }
+
+    public boolean moveToPrevious() {
+        return moveToPosition(position - 1);
+    }
+
+    public boolean isFirst() {
+        return position == 0 && !rows.isEmpty();
+    }
+
+    public boolean isLast() {
+        return position == rows.size() - 1 && !rows.isEmpty();
+    }
+
+    public boolean isBeforeFirst() {
+        return rows.isEmpty() || position == -1;
+    }
+
+    public boolean isAfterLast() {
+        return rows.isEmpty() || position == rows.size();
+    }
+
+    public int getColumnIndex(String columnName) {
+        //As SQLiteCursor
+        int periodIndex = columnName.lastIndexOf('.');
+        if (periodIndex != -1) {
+            columnName = columnName.substring(periodIndex + 1);
+        }
+        Integer index = columnIndexes.get(columnName);
+        return index == null ? -1 : index;
+    }
+
+    public int getColumnIndexOrThrow(String columnName) {
+        int index = getColumnIndex(columnName);
+        if (index < 0) {
+            throw new IllegalArgumentException("column '" + columnName + "' does not exist"); //NON-NLS
+        }
+        return index;
+    }
+
+    public String getColumnName(int columnIndex) {
+        return columns[columnIndex];
+    }
+
+    public String[] getColumnNames() {
+        return columns;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public byte[] getBlob(int columnIndex) {
+        return (byte[]) get(columnIndex);
+    }
+
+    public String getString(int columnIndex) {
+        Object value = get(columnIndex);
+        return value == null ? null : value.toString();
+    }
+
+    public void copyStringToBuffer(int columnIndex, CharArrayBuffer buffer) {
+        throw new UnsupportedOperationException();
+    }
+
+    public short getShort(int columnIndex) {
+        return (short) getLong(columnIndex);
+    }
+
+    public int getInt(int columnIndex) {
+        return (int) getLong(columnIndex);
+    }
+
+    public long getLong(int columnIndex) {
+        Object value = get(columnIndex);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    public float getFloat(int columnIndex) {
+        return (float) getDouble(columnIndex);
+    }
+
+    public double getDouble(int columnIndex) {
+        Object value = get(columnIndex);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return value == null ? 0 : Double.parseDouble(value.toString());
+    }
+
+    public int getType(int columnIndex) {
+        Object value = get(columnIndex);
+        if (value == null) {
+            return FIELD_TYPE_NULL;
+        } else if (value instanceof Double || value instanceof Float) {
+            return FIELD_TYPE_FLOAT;
+        } else if (value instanceof Number) {
+            return FIELD_TYPE_INTEGER;
+        } else if (value instanceof byte[]) {
+            return FIELD_TYPE_BLOB;
+        }
+        return FIELD_TYPE_STRING;
+    }
+
+    public boolean isNull(int columnIndex) {
+        return get(columnIndex) == null;
+    }
+
+    @Deprecated
+    public void deactivate() {
+    }
+
+    @Deprecated
+    public boolean requery() {
+        return false;
+    }
+
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void registerContentObserver(ContentObserver observer) {
+    }
+
+    public void unregisterContentObserver(ContentObserver observer) {
+    }
+
+    public void registerDataSetObserver(DataSetObserver observer) {
+    }
+
+    public void unregisterDataSetObserver(DataSetObserver observer) {
+    }
+
+    public void setNotificationUri(ContentResolver cr, Uri uri) {
+    }
+
+    public Uri getNotificationUri() {
+        return null;
+    }
+
+    public boolean getWantsAllOnMoveCalls() {
+        return false;
+    }
+
+    public void setExtras(Bundle extras) {
+    }
+
+    public Bundle getExtras() {
+        return null;
+    }
+
+    public Bundle respond(Bundle extras) {
+        return null;
+    }
+}
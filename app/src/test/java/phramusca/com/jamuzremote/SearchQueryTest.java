@@ -0,0 +1,162 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+import static phramusca.com.jamuzremote.MusicLibraryDb.*;
+
+/**
+ * Checks full-text MATCH expressions built from user searches and their ranking,
+ * and compares full-text searches with LIKE on a generated library.
+ */
+public class SearchQueryTest {
+
+    private static final String SEARCH_TRACKS = "SELECT " + TABLE_TRACKS + "." + COL_TRACKS_ID_REMOTE //NON-NLS
+            + " FROM " + TABLE_TRACKS + " WHERE " + TABLE_TRACKS + "." + COL_TRACKS_ID_REMOTE //NON-NLS
+            + " IN (" + SearchQuery.IDS + ") ORDER BY " //NON-NLS
+            + SearchQuery.getScore(TABLE_TRACKS + "." + COL_TRACKS_ID_REMOTE, SearchQuery.TRACK_WEIGHTS) + " DESC, " //NON-NLS
+            + COL_TRACKS_RATING + " DESC"; //NON-NLS
+
+    @Test
+    public void getMatch_prefixesEveryWord() {
+        assertEquals("pink* floyd*", SearchQuery.getMatch("Pink Floyd", null)); //NON-NLS
+        assertEquals("album:dark* album:side*", SearchQuery.getMatch("  dark   SIDE ", MusicLibraryDb.COL_TRACKS_ALBUM)); //NON-NLS
+        assertEquals("", SearchQuery.getMatch(" -- ", null)); //NON-NLS
+        assertEquals("", SearchQuery.getMatch("", null));
+    }
+
+    @Test
+    public void getMatch_dropsFtsSyntax() {
+        assertEquals(Arrays.asList("ac", "dc", "it", "s", "a", "long", "way"), //NON-NLS
+                SearchQuery.getWords("AC/DC \"It's a long way\"")); //NON-NLS
+        assertEquals("title* or* not* near*", SearchQuery.getMatch("title: OR -NOT NEAR*", null)); //NON-NLS
+        assertEquals("beyonc\u00e9* 2020*", SearchQuery.getMatch("Beyonc\u00e9 (2020)", null)); //NON-NLS
+    }
+
+    @Test
+    public void getScore_bindsOneMatchPerWeightedColumn() {
+        String score = SearchQuery.getScore(COL_TRACKS_ID_REMOTE, new int[]{8, 0, 2, 0});
+        assertEquals("(idFileRemote IN (" + SearchQuery.IDS + ")) * 8 + (idFileRemote IN (" //NON-NLS
+                + SearchQuery.IDS + ")) * 2", score); //NON-NLS
+        assertEquals(Arrays.asList("title:pink*", "album:pink*"), //NON-NLS
+                SearchQuery.getScoreArgs("Pink", new int[]{8, 0, 2, 0})); //NON-NLS
+        assertEquals("0", SearchQuery.getScore(COL_TRACKS_ID_REMOTE, new int[]{0, 0, 0, 0}));
+    }
+
+    /**
+     * Tracks matching in title first, then in artist, album and albumArtist; albums matching in album first
+     */
+    @Test
+    public void search_ranksByWeightedColumns() throws Exception {
+        try (TestLibrary library = new TestLibrary(6, true)) {
+            Connection connection = library.getConnection();
+            //idFileRemote, title, artist, album, albumArtist, rating
+            set(connection, 1, "Other", "Someone", "Blue Album", "Someone", 5); //NON-NLS
+            set(connection, 2, "Blue Moon", "Someone", "Moons", "Someone", 1); //NON-NLS
+            set(connection, 3, "Song", "Blue Band", "Songs", "Blue Band", 2); //NON-NLS
+            set(connection, 4, "Bl\u00fc", "Nobody", "Nothing", "Nobody", 5); //NON-NLS
+            set(connection, 5, "Blues \u00e0 Paris", "Someone", "Others", "Someone", 3); //NON-NLS
+            set(connection, 6, "Blue", "Blue", "Blue", "Blue", 0); //NON-NLS
+
+            Object[] args = getSearchArgs("BLUE", SearchQuery.TRACK_WEIGHTS); //NON-NLS
+            assertEquals(Arrays.asList(6, 5, 2, 3, 1), TestLibrary.queryIds(connection, SEARCH_TRACKS, args));
+
+            //Accents folded, words in any order
+            args = getSearchArgs("paris a blu", SearchQuery.TRACK_WEIGHTS); //NON-NLS
+            assertEquals(Arrays.asList(5), TestLibrary.queryIds(connection, SEARCH_TRACKS, args));
+
+            List<String> scoreArgs = SearchQuery.getScoreArgs("blue", SearchQuery.ALBUM_WEIGHTS); //NON-NLS
+            scoreArgs.add(SearchQuery.getMatch("blue", null)); //NON-NLS
+            String albums = "SELECT " + COL_TRACKS_ID_REMOTE + ", " //NON-NLS
+                    + SearchQuery.getScore(COL_TRACKS_ID_REMOTE, SearchQuery.ALBUM_WEIGHTS) + " AS rank" //NON-NLS
+                    + " FROM " + TABLE_TRACKS + " WHERE " + COL_TRACKS_ID_REMOTE + " IN (" + SearchQuery.IDS + ")" //NON-NLS
+                    + " ORDER BY rank DESC, " + COL_TRACKS_RATING + " DESC"; //NON-NLS
+            assertEquals(Arrays.asList(6, 1, 3, 5, 2), TestLibrary.queryIds(connection, albums, scoreArgs.toArray()));
+        }
+    }
+
+    /**
+     * Full-text MATCH of word prefixes against LIKE "%word%" on every searched column,
+     * on a generated library of 100k tracks
+     */
+    @Test
+    public void search_100kTracks_benchmarkAgainstLike() throws Exception {
+        int nbSearches = 20;
+        String[] searches = {"love", "night road", "dream 12", "artist 1999", "album 42 gold"}; //NON-NLS
+        try (TestLibrary library = new TestLibrary(100000, true)) {
+            Connection connection = library.getConnection();
+            for (String search : searches) {
+                Object[] args = getSearchArgs(search, SearchQuery.TRACK_WEIGHTS);
+                List<String> likeArgs = new ArrayList<>();
+                StringBuilder like = new StringBuilder();
+                for (String word : SearchQuery.getWords(search)) {
+                    like.append(like.length() > 0 ? " AND " : " WHERE ").append("("); //NON-NLS
+                    for (int i = 0; i < SearchQuery.COLUMNS.length; i++) {
+                        like.append(i > 0 ? " OR " : "").append(SearchQuery.COLUMNS[i]).append(" LIKE ?"); //NON-NLS
+                        likeArgs.add("%" + word + "%"); //NON-NLS
+                    }
+                    like.append(")");
+                }
+                String likeSql = "SELECT " + COL_TRACKS_ID_REMOTE + " FROM " + TABLE_TRACKS + like //NON-NLS
+                        + " ORDER BY " + COL_TRACKS_RATING + " DESC"; //NON-NLS
+
+                List<Integer> matched = null;
+                long start = System.nanoTime();
+                for (int i = 0; i < nbSearches; i++) {
+                    matched = TestLibrary.queryIds(connection, SEARCH_TRACKS, args);
+                }
+                long fts = (System.nanoTime() - start) / nbSearches;
+                List<Integer> liked = null;
+                start = System.nanoTime();
+                for (int i = 0; i < nbSearches; i++) {
+                    liked = TestLibrary.queryIds(connection, likeSql, likeArgs.toArray());
+                }
+                long likeTime = (System.nanoTime() - start) / nbSearches;
+
+                //LIKE also matches inside words ("rain" in "train")
+                assertFalse(search, matched.isEmpty());
+                assertTrue(search, new HashSet<>(liked).containsAll(matched));
+                System.out.printf(Locale.ENGLISH, "100000 tracks, search \"%s\": MATCH %d tracks %d ms, " //NON-NLS
+                                + "LIKE %d tracks %d ms%n", //NON-NLS
+                        search, matched.size(), fts / 1000000, liked.size(), likeTime / 1000000);
+            }
+        }
+    }
+
+    /**
+     * @return bindings of SEARCH_TRACKS
+     */
+    private static Object[] getSearchArgs(String search, int[] weights) {
+        List<String> args = new ArrayList<>();
+        args.add(SearchQuery.getMatch(search, null));
+        args.addAll(SearchQuery.getScoreArgs(search, weights));
+        return args.toArray();
+    }
+
+    /**
+     * Sets searched columns of a generated track, full-text index kept in sync by triggers
+     */
+    private static void set(Connection connection, int idFileRemote, String title, String artist, String album,
+                            String albumArtist, int rating) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("UPDATE " + TABLE_TRACKS //NON-NLS
+                + " SET " + COL_TRACKS_TITLE + "=?, " + COL_TRACKS_ARTIST + "=?, " + COL_TRACKS_ALBUM + "=?, " //NON-NLS
+                + COL_TRACKS_ALBUM_ARTIST + "=?, " + COL_TRACKS_RATING + "=? WHERE " + COL_TRACKS_ID_REMOTE + "=?")) { //NON-NLS
+            statement.setString(1, title);
+            statement.setString(2, artist);
+            statement.setString(3, album);
+            statement.setString(4, albumArtist);
+            statement.setInt(5, rating);
+            statement.setInt(6, idFileRemote);
+            assertEquals(1, statement.executeUpdate());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks SqlDateCodec against SimpleDateFormat, and compares their speed.
+ */
+public class SqlDateCodecTest {
+
+    private static final long MIN = -12219292800000L; // 1582-10-15
+    private static final long MAX = 253402300799000L; // 9999-12-31 23:59:59
+
+    private static SimpleDateFormat getSimpleDateFormat() {
+        SimpleDateFormat simpleDateFormat = new SimpleDateFormat(
+                HelperDateTime.DateTimeFormat.SQL.getPattern(), Locale.ENGLISH);
+        simpleDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return simpleDateFormat;
+    }
+
+    @Test
+    public void format_matchesSimpleDateFormat() {
+        SimpleDateFormat simpleDateFormat = getSimpleDateFormat();
+        Random random = new Random(42);
+        long[] fixed = {0, -1, 1, 999, 1000, 951782400000L, 951868799999L, 4107542400000L,
+                -12212553600000L, MAX};
+        for (long millis : fixed) {
+            assertEquals(simpleDateFormat.format(new Date(millis)), HelperDateTime.formatUTCtoSqlUTC(new Date(millis)));
+        }
+        for (int i = 0; i < 100000; i++) {
+            long millis = -12212553600000L + (long) (random.nextDouble() * (MAX + 12212553600000L));
+            assertTrue(SqlDateCodec.canFormat(millis));
+            assertEquals(simpleDateFormat.format(new Date(millis)), SqlDateCodec.format(millis));
+        }
+    }
+
+    @Test
+    public void parse_matchesSimpleDateFormat() throws ParseException {
+        SimpleDateFormat simpleDateFormat = getSimpleDateFormat();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long millis = (-12212553600000L + (long) (random.nextDouble() * (MAX + 12212553600000L))) / 1000 * 1000;
+            String date = simpleDateFormat.format(new Date(millis));
+            assertEquals(simpleDateFormat.parse(date).getTime(), SqlDateCodec.parse(date));
+        }
+    }
+
+    @Test
+    public void parse_fallsBackOnLooseInput() throws ParseException {
+        SimpleDateFormat simpleDateFormat = getSimpleDateFormat();
+        String[] loose = {"2020-1-5 3:04:05", "2020-02-30 10:00:00", "2020-01-05 03:04:05.123", //NON-NLS
+                "2020-13-01 00:00:00", "1500-01-01 00:00:00"}; //NON-NLS
+        for (String date : loose) {
+            assertEquals(SqlDateCodec.INVALID, SqlDateCodec.parse(date));
+            assertEquals(simpleDateFormat.parse(date), HelperDateTime.parseSqlUtc(date));
+        }
+        assertEquals(new Date(0), HelperDateTime.parseSqlUtc(""));
+        assertEquals(new Date(0), HelperDateTime.parseSqlUtc("not a date")); //NON-NLS
+        assertFalse(SqlDateCodec.canFormat(MIN - 1));
+        assertFalse(SqlDateCodec.canFormat(MAX + 1000));
+    }
+
+    @Test
+    public void benchmark() throws ParseException {
+        int count = 200000;
+        long[] millis = new long[count];
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            millis[i] = 946684800000L + (long) (random.nextDouble() * 1000L * 3600 * 24 * 365 * 30);
+        }
+        String[] dates = new String[count];
+        long checksum = 0;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                dates[i] = getSimpleDateFormat().format(new Date(millis[i]));
+            }
+            long formatSimple = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                checksum += getSimpleDateFormat().parse(dates[i]).getTime();
+            }
+            long parseSimple = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                dates[i] = HelperDateTime.formatUTCtoSqlUTC(new Date(millis[i]));
+            }
+            long formatCodec = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                checksum -= HelperDateTime.parseSqlUtc(dates[i]).getTime();
+            }
+            long parseCodec = System.nanoTime() - start;
+            System.out.printf(Locale.ENGLISH,
+                    "Round %d, %d dates: format %d ms -> %d ms, parse %d ms -> %d ms%n", //NON-NLS
+                    round, count, formatSimple / 1000000, formatCodec / 1000000,
+                    parseSimple / 1000000, parseCodec / 1000000);
+        }
+        assertEquals(0, checksum);
+    }
+}
@@ -0,0 +1,79 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks StringPool shares equal values, stays bounded,
+ * and reports heap saved on repeated metadata of a synthetic 100k tracks library.
+ */
+public class StringPoolTest {
+
+    /**
+     * Indexes of pooled values, in values of getUsedHeap()
+     */
+    private static final int[] POOLED = {0, 2, 3, 4, 5, 6};
+
+    @Test
+    public void intern_sharesEqualValues() {
+        StringPool pool = new StringPool(2);
+        String artist = pool.intern(new String("Artist")); //NON-NLS
+        assertSame(artist, pool.intern(new String("Artist"))); //NON-NLS
+        assertNull(pool.intern(null));
+        assertEquals(1, pool.size());
+        assertTrue(pool.getSavedBytes() > 0);
+
+        pool.intern("Album"); //NON-NLS
+        //Pool is full: new values are not kept
+        String genre = pool.intern(new String("Genre")); //NON-NLS
+        assertNotSame(genre, pool.intern(new String("Genre"))); //NON-NLS
+        assertEquals(2, pool.size());
+    }
+
+    /**
+     * 100k tracks of 10k albums by 2k artists: artist, album, albumArtist, genre, year, format, bitRate
+     * and coverHash, as new instances like read from a cursor, kept with and without pool.
+     * As TrackCursorMapper, only low-cardinality fields are pooled, not album and coverHash.
+     */
+    @Test
+    public void intern_savesHeapOnLibrary() {
+        int count = 100000;
+        long plain = getUsedHeap(count, null);
+        StringPool pool = new StringPool(StringPool.MAX_SIZE);
+        long pooled = getUsedHeap(count, pool);
+        System.out.println("100k tracks metadata: " + plain / 1024 + " KiB, pooled: " + pooled / 1024 //NON-NLS
+                + " KiB. " + pool); //NON-NLS
+        assertTrue(pooled < plain / 2);
+        //About one value per artist: the pool does not grow with the number of tracks or albums
+        assertTrue(pool.size() < count / 40);
+    }
+
+    private static long getUsedHeap(int count, StringPool pool) {
+        System.gc();
+        long before = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        String[][] tracks = new String[count][];
+        for (int i = 0; i < count; i++) {
+            int album = i / 10;
+            String[] values = {
+                    "Artist " + album / 5, //NON-NLS
+                    "Album " + album, //NON-NLS
+                    "Artist " + album / 5, //NON-NLS
+                    "Genre " + album % 40, //NON-NLS
+                    String.valueOf(1960 + album % 60),
+                    album % 3 == 0 ? "flac" : "mp3", //NON-NLS
+                    String.valueOf(128 + album % 4 * 64),
+                    Integer.toHexString(album * 31) + "0123456789abcdef0123456789abcdef"}; //NON-NLS
+            if (pool != null) {
+                for (int j : POOLED) {
+                    values[j] = pool.intern(values[j]);
+                }
+            }
+            tracks[i] = values;
+        }
+        System.gc();
+        long used = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory() - before;
+        assertEquals(count, tracks.length);
+        return used;
+    }
+}
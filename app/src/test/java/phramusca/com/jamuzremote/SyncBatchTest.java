@@ -0,0 +1,172 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks statistics of files unchanged on server are updated in library when they changed on server,
+ * unless they changed locally since read.
+ */
+public class SyncBatchTest {
+
+    private static final File APP_DATA_PATH = new File("/data"); //NON-NLS
+
+    private static Track getTrack(int rating, String tags) throws IOException, InterruptedException {
+        String body = "{\"type\":\"files\",\"files\":[{\"idFile\":7,\"path\":\"Artist/Album/7.mp3\"," //NON-NLS
+                + "\"rating\":" + rating + ",\"playCounter\":3,\"genre\":\"Rock\",\"tags\":[" + tags + "]," //NON-NLS
+                + "\"addedDate\":\"2021-03-04 05:06:07\",\"lastPlayed\":\"2022-01-02 03:04:05\"," //NON-NLS
+                + "\"artist\":\"Artist\",\"title\":\"Title\",\"album\":\"Album\",\"length\":215,\"size\":5123456," //NON-NLS
+                + "\"status\":\"NEW\",\"idPath\":\"1\",\"modifDate\":\"2020-01-01 00:00:00\"}]}"; //NON-NLS
+        List<Track> tracks = new ArrayList<>();
+        TrackJsonReader.read(new StringReader(body), APP_DATA_PATH, false, tracks::add);
+        Track track = tracks.get(0);
+        track.setIdFileRemote(12);
+        return track;
+    }
+
+    @Test
+    public void updateStatsIfChanged_serverRatingChange_reachesCleanLocalTrack()
+            throws IOException, InterruptedException {
+        Track trackLocal = getTrack(2, "\"Calm\",\"Live\""); //NON-NLS
+        Track trackServer = getTrack(5, "\"Calm\",\"Live\""); //NON-NLS
+        SyncBatch batch = new SyncBatch();
+        assertTrue(batch.updateStatsIfChanged(trackServer, trackLocal));
+        assertEquals(1, batch.size());
+        assertSame(trackServer, batch.getStatsUpdates().get(0));
+        assertEquals(5, batch.getStatsUpdates().get(0).getRating(), 0);
+        assertEquals(12, batch.getStatsUpdates().get(0).getIdFileRemote());
+    }
+
+    @Test
+    public void updateStatsIfChanged_sameStats_isNotUpdated() throws IOException, InterruptedException {
+        Track trackLocal = getTrack(4, "\"Live\",\"Calm\""); //NON-NLS
+        Track trackServer = getTrack(4, "\"Calm\",\"Live\""); //NON-NLS
+        SyncBatch batch = new SyncBatch();
+        assertFalse(batch.updateStatsIfChanged(trackServer, trackLocal));
+        assertTrue(batch.isEmpty());
+    }
+
+    @Test
+    public void isStatsChanged_eachStatistic() throws IOException, InterruptedException {
+        Track trackLocal = getTrack(4, "\"Calm\""); //NON-NLS
+        Track trackServer = getTrack(4, "\"Calm\""); //NON-NLS
+        assertFalse(SyncBatch.isStatsChanged(trackServer, trackLocal));
+        trackServer.setTags(new ArrayList<>(Arrays.asList("Calm", "Live"))); //NON-NLS
+        assertTrue(SyncBatch.isStatsChanged(trackServer, trackLocal));
+        trackServer.setTags(new ArrayList<>(Arrays.asList("Calm"))); //NON-NLS
+        trackServer.setGenre("Jazz"); //NON-NLS
+        assertTrue(SyncBatch.isStatsChanged(trackServer, trackLocal));
+        trackServer.setGenre("Rock"); //NON-NLS
+        trackServer.setPlayCounter(4);
+        assertTrue(SyncBatch.isStatsChanged(trackServer, trackLocal));
+        trackServer.setPlayCounter(3);
+        trackServer.setLastPlayed(new Date(0));
+        assertTrue(SyncBatch.isStatsChanged(trackServer, trackLocal));
+    }
+
+    /**
+     * Merge response of tracks changed locally while merging (TrackWriteQueue flushed,
+     * dirty counter incremented) is not applied, and those tracks stay dirty, to be merged next time.
+     */
+    @Test
+    public void statsUpdate_trackChangedWhileMerging_isSkipped() throws Exception {
+        try (TestLibrary library = new TestLibrary(10, true)) {
+            Connection connection = library.getConnection();
+            execute(connection, "UPDATE tracks SET rating=2, dirty=1 WHERE idFileRemote IN (1, 2)"); //NON-NLS
+            execute(connection, "UPDATE tracks SET rating=2, dirty=0 WHERE idFileRemote=3"); //NON-NLS
+            //Merge response, for dirty counters as read before merge
+            SyncBatch batch = new SyncBatch();
+            for (int idFileRemote = 1; idFileRemote <= 3; idFileRemote++) {
+                Track trackServer = getTrack(5, ""); //NON-NLS
+                trackServer.setIdFileRemote(idFileRemote);
+                batch.updateStats(trackServer, idFileRemote == 3 ? 0 : 1);
+            }
+            //Rated locally while merging
+            execute(connection, "UPDATE tracks SET rating=1, dirty=dirty+1 WHERE idFileRemote IN (2, 3)"); //NON-NLS
+
+            applyStatsUpdates(connection, batch);
+            assertEquals(1, batch.size());
+            assertEquals(1, batch.getStatsUpdates().get(0).getIdFileRemote());
+            assertEquals(5, getLong(connection, "rating", 1)); //NON-NLS
+            assertEquals(1, getLong(connection, "rating", 2)); //NON-NLS
+            assertEquals(1, getLong(connection, "rating", 3)); //NON-NLS
+
+            //As MusicLibrary.clearDirty(), for dirty tracks of chunk
+            try (PreparedStatement statement = connection.prepareStatement("UPDATE tracks SET dirty=0" //NON-NLS
+                    + MusicLibraryDb.WHERE_DIRTY_UNCHANGED)) {
+                for (int idFileRemote = 1; idFileRemote <= 2; idFileRemote++) {
+                    statement.setInt(1, idFileRemote);
+                    statement.setLong(2, 1);
+                    statement.executeUpdate();
+                }
+            }
+            assertEquals(0, getLong(connection, "dirty", 1)); //NON-NLS
+            assertEquals(2, getLong(connection, "dirty", 2)); //NON-NLS
+            assertEquals(1, getLong(connection, "dirty", 3)); //NON-NLS
+        }
+    }
+
+    /**
+     * As MusicLibrary.applySyncBatch(), for statistics updates (rating only): in a transaction,
+     * skipping tracks which dirty counter changed
+     */
+    private static void applyStatsUpdates(Connection connection, SyncBatch batch) throws SQLException {
+        connection.setAutoCommit(false);
+        try (PreparedStatement stmtDirty = connection.prepareStatement("SELECT count(*) FROM tracks" //NON-NLS
+                + MusicLibraryDb.WHERE_DIRTY_UNCHANGED);
+             PreparedStatement stmtUpdate = connection.prepareStatement(
+                     "UPDATE tracks SET rating=? WHERE idFileRemote=?")) { //NON-NLS
+            Iterator<Track> statsUpdates = batch.getStatsUpdates().iterator();
+            while (statsUpdates.hasNext()) {
+                Track track = statsUpdates.next();
+                stmtDirty.setInt(1, track.getIdFileRemote());
+                stmtDirty.setLong(2, batch.getStatsDirty(track));
+                try (ResultSet resultSet = stmtDirty.executeQuery()) {
+                    if (!resultSet.next() || resultSet.getLong(1) <= 0) {
+                        statsUpdates.remove();
+                        continue;
+                    }
+                }
+                stmtUpdate.setDouble(1, track.getRating());
+                stmtUpdate.setInt(2, track.getIdFileRemote());
+                stmtUpdate.executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static long getLong(Connection connection, String column, int idFileRemote) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT " + column //NON-NLS
+                     + " FROM tracks WHERE idFileRemote=" + idFileRemote)) { //NON-NLS
+            assertTrue(resultSet.next());
+            return resultSet.getLong(1);
+        }
+    }
+}
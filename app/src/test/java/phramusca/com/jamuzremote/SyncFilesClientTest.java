@@ -0,0 +1,130 @@
+package phramusca.com.jamuzremote;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks delta sync requests against a local stand-in server:
+ * watermark sent on connection, files changed or deleted since a watermark, and fallback to a full sync
+ * when watermark is rejected.
+ */
+public class SyncFilesClientTest {
+
+    private static final String WATERMARK = "1700000000"; //NON-NLS
+    private static final String WATERMARK_EXPIRED = "1500000000"; //NON-NLS
+
+    private HttpServer server;
+    private ClientInfo clientInfo;
+    private SyncFilesClient syncFilesClient;
+    private final List<String> queries = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0); //NON-NLS
+        server.createContext("/connect", exchange -> { //NON-NLS
+            exchange.getResponseHeaders().add(SyncFilesClient.HEADER_WATERMARK, WATERMARK);
+            send(exchange, 200, "");
+        });
+        server.createContext("/files/", this::handleFiles); //NON-NLS
+        server.start();
+        //Server port is ClientInfo port + 1
+        clientInfo = new ClientInfo("localhost", server.getAddress().getPort() - 1, //NON-NLS
+                "login", "password", 0, "appId", "/root", "model"); //NON-NLS
+        syncFilesClient = new SyncFilesClient(clientInfo, new OkHttpClient(), new File("/data")); //NON-NLS
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * 5 files, among which file 3 changed and file 4 was deleted since WATERMARK
+     */
+    private void handleFiles(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        queries.add(query);
+        String since = getParameter(query, "since"); //NON-NLS
+        if (WATERMARK_EXPIRED.equals(since)) {
+            send(exchange, SyncFilesClient.WATERMARK_REJECTED, "");
+            return;
+        }
+        int[] ids = since == null ? new int[]{0, 1, 2, 3} : new int[]{3, 4};
+        if (getParameter(query, "getCount") != null) { //NON-NLS
+            send(exchange, 200, String.valueOf(ids.length));
+            return;
+        }
+        StringBuilder body = new StringBuilder("{\"files\":["); //NON-NLS
+        for (int id : ids) {
+            body.append(id == ids[0] ? "" : ",")
+                    .append("{\"idFile\":").append(id) //NON-NLS
+                    .append(",\"path\":\"").append(id).append(".mp3\",\"status\":\"NEW\"") //NON-NLS
+                    .append(",\"deleted\":").append(id == 4).append("}"); //NON-NLS
+        }
+        send(exchange, 200, body.append("]}").toString());
+    }
+
+    private static String getParameter(String query, String name) {
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith(name + "=")) {
+                    return parameter.substring(name.length() + 1);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void send(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    @Test
+    public void connect_readsWatermark() throws Exception {
+        Request request = clientInfo.getRequestBuilder(clientInfo.getUrlBuilder("connect")).build(); //NON-NLS
+        assertEquals(WATERMARK, syncFilesClient.connect(request));
+    }
+
+    @Test
+    public void delta_listsChangedAndDeletedFiles() throws Exception {
+        assertTrue(syncFilesClient.isWatermarkAccepted(WATERMARK));
+        assertEquals(2, syncFilesClient.getFilesCount(Track.Status.NEW, WATERMARK));
+        List<Track> tracks = new ArrayList<>();
+        assertEquals(2, syncFilesClient.getFiles(0, 500, Track.Status.NEW, WATERMARK, tracks::add));
+        assertEquals(3, tracks.get(0).getIdFileServer());
+        assertFalse(tracks.get(0).isDeleted());
+        assertEquals(4, tracks.get(1).getIdFileServer());
+        assertTrue(tracks.get(1).isDeleted());
+        assertEquals("since=" + WATERMARK + "&idFrom=0&nbFilesInBatch=500", queries.get(queries.size() - 1)); //NON-NLS
+    }
+
+    @Test
+    public void rejectedWatermark_fallsBackToFullSync() throws Exception {
+        assertFalse(syncFilesClient.isWatermarkAccepted(WATERMARK_EXPIRED));
+        assertEquals(4, syncFilesClient.getFilesCount(Track.Status.NEW, null));
+        List<Track> tracks = new ArrayList<>();
+        assertEquals(4, syncFilesClient.getFiles(0, 500, Track.Status.NEW, null, tracks::add));
+        assertEquals("idFrom=0&nbFilesInBatch=500", queries.get(queries.size() - 1)); //NON-NLS
+    }
+}
@@ -0,0 +1,203 @@
+package phramusca.com.jamuzremote;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generated library, in a temporary sqlite-jdbc database created with MusicLibraryDb schema,
+ * for JVM tests and benchmarks of MusicLibrary SQL.
+ * <ul>
+ * <li>albums of 10 tracks (idPath), artists of 50 tracks;</li>
+ * <li>status by idFileRemote % 10: 1 is LOCAL (idFileServer -1), 2 is NEW, 3 is INFO, others are REC;</li>
+ * <li>tag TAGS[k] on tracks which idFileRemote % (k + 2) is 0, so some tracks have no tag.</li>
+ * </ul>
+ */
+class TestLibrary implements AutoCloseable {
+
+    static final String[] TAGS = {"Calm", "Live", "Party", "Sad", "Workout", "Night"}; //NON-NLS
+    static final String[] GENRES = {"Rock", "Jazz", "Pop", "Blues", "Reggae", "Soul", "Metal", "Folk"}; //NON-NLS
+    private static final String[] WORDS = {"love", "night", "blue", "road", "fire", "rain", "heart", "dream", //NON-NLS
+            "river", "light", "moon", "city", "gold", "wind", "summer", "stone", "angel", "train", "sky", "home"}; //NON-NLS
+    static final long LAST_PLAYED = 1600000000000L;
+    static final long HOUR = 3600000L;
+
+    private final File file;
+    private final Connection connection;
+    private final int nbTracks;
+
+    /**
+     * @param nbTracks number of tracks, with idFileRemote from 1 to nbTracks
+     * @param indexes  false to leave out CREATE_INDEXES (to measure without them)
+     */
+    TestLibrary(int nbTracks, boolean indexes) throws IOException, SQLException {
+        this.nbTracks = nbTracks;
+        file = File.createTempFile("library", ".db"); //NON-NLS
+        connection = connect();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL"); //NON-NLS
+            for (String sql : MusicLibraryDb.getCreateStatements()) {
+                if (indexes || !MusicLibraryDb.CREATE_INDEXES.contains(sql)) {
+                    statement.execute(sql);
+                }
+            }
+        }
+        connection.setAutoCommit(false);
+        try {
+            insertTags();
+            insertTracks();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE"); //NON-NLS
+        }
+    }
+
+    /**
+     * @return a new connection to the library, to be closed
+     */
+    Connection connect() throws SQLException {
+        return DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath()); //NON-NLS
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getNbTracks() {
+        return nbTracks;
+    }
+
+    static String getStatus(int idFileRemote) {
+        switch (idFileRemote % 10) {
+            case 1:
+                return "LOCAL"; //NON-NLS
+            case 2:
+                return "NEW"; //NON-NLS
+            case 3:
+                return "INFO"; //NON-NLS
+            default:
+                return "REC"; //NON-NLS
+        }
+    }
+
+    static String getPath(int idFileRemote) {
+        return "/music/Artist " + idFileRemote / 50 + "/Album " + idFileRemote / 10 + "/" + idFileRemote + ".mp3"; //NON-NLS
+    }
+
+    static String getTitle(int idFileRemote) {
+        return WORDS[idFileRemote % WORDS.length] + " " + WORDS[(idFileRemote / 7) % WORDS.length] //NON-NLS
+                + " " + idFileRemote;
+    }
+
+    private void insertTags() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO tag (id, value) VALUES (?, ?)")) { //NON-NLS
+            for (int k = 0; k < TAGS.length; k++) {
+                statement.setInt(1, k + 1);
+                statement.setString(2, TAGS[k]);
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    private void insertTracks() throws SQLException {
+        try (PreparedStatement track = connection.prepareStatement("INSERT INTO tracks (" //NON-NLS
+                + "idFileRemote, idFileServer, idPath, albumArtist, year, trackNo, trackTotal, discNo, discTotal, " //NON-NLS
+                + "bitrate, format, bpm, modifDate, checkedFlag, copyright, coverhash, artist, title, album, " //NON-NLS
+                + "genre, rating, addedDate, playCounter, lastPlayed, status, size, length, pathModifDate, " //NON-NLS
+                + "pathMbId, comment, trackGain, albumGain, path) " //NON-NLS
+                + "VALUES (?, ?, ?, ?, ?, ?, 10, 1, 1, '320', 'mp3', '120', ?, 'UNCHECKED', '', ?, ?, ?, ?, " //NON-NLS
+                + "?, ?, ?, ?, ?, ?, 5123456, 215, ?, '', '', -6.5, -7.25, ?)"); //NON-NLS
+             PreparedStatement tagFile = connection.prepareStatement("INSERT INTO tagfile (idFile, idTag) VALUES (?, ?)")) { //NON-NLS
+            for (int id = 1; id <= nbTracks; id++) {
+                String status = getStatus(id);
+                int i = 1;
+                track.setInt(i++, id);
+                track.setInt(i++, status.equals("LOCAL") ? -1 : id); //NON-NLS
+                track.setInt(i++, id / 10);
+                track.setString(i++, "Artist " + id / 50); //NON-NLS
+                track.setString(i++, String.valueOf(1960 + id % 60));
+                track.setInt(i++, id % 10 + 1);
+                track.setLong(i++, LAST_PLAYED - id * HOUR);
+                track.setString(i++, "hash" + id / 10); //NON-NLS
+                track.setString(i++, "Artist " + id / 50); //NON-NLS
+                track.setString(i++, getTitle(id));
+                track.setString(i++, "Album " + id / 10); //NON-NLS
+                track.setString(i++, GENRES[id % GENRES.length]);
+                track.setInt(i++, id % 6);
+                track.setLong(i++, LAST_PLAYED - id * HOUR);
+                track.setInt(i++, id % 20);
+                track.setLong(i++, id % 20 == 0 ? 0 : LAST_PLAYED - (id % 1000) * HOUR);
+                track.setString(i++, status);
+                track.setLong(i++, LAST_PLAYED - id * HOUR);
+                track.setString(i, getPath(id));
+                track.executeUpdate();
+                for (int k = 0; k < TAGS.length; k++) {
+                    if (id % (k + 2) == 0) {
+                        tagFile.setInt(1, id);
+                        tagFile.setInt(2, k + 1);
+                        tagFile.executeUpdate();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return idFileRemote of rows returned by query, in order
+     */
+    static List<Integer> queryIds(Connection connection, String sql, Object... args) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return query plan, one detail per line
+     */
+    static String explain(Connection connection, String sql, Object... args) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) { //NON-NLS
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    plan.append(resultSet.getString("detail")).append("\n"); //NON-NLS
+                }
+            }
+        }
+        return plan.toString();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        connection.close();
+        for (String suffix : new String[]{"", "-wal", "-shm"}) { //NON-NLS
+            //noinspection ResultOfMethodCallIgnored
+            new File(file.getAbsolutePath() + suffix).delete();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package phramusca.com.jamuzremote;
+
+import android.database.Cursor;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Date;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+import static phramusca.com.jamuzremote.MusicLibraryDb.*;
+
+/**
+ * Checks TrackCursorMapper maps rows as looking up column indexes on each row did,
+ * and compares their time on 100k rows of a generated library.
+ */
+public class TrackCursorMapperTest {
+
+    private static final File APP_DATA_PATH = new File("/music"); //NON-NLS
+    private static final int NB_TRACKS = 100000;
+    private static TestLibrary library;
+    private static RowsCursor cursor;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        library = new TestLibrary(NB_TRACKS, true);
+        cursor = RowsCursor.query(library.getConnection(), "SELECT * FROM tracks ORDER BY idFileRemote"); //NON-NLS
+    }
+
+    @AfterClass
+    public static void tearDown() throws Exception {
+        library.close();
+    }
+
+    @Test
+    public void map_isSameAsPerRowLookups() {
+        TrackCursorMapper mapper = new TrackCursorMapper(cursor, false, APP_DATA_PATH);
+        cursor.moveToPosition(-1);
+        int count = 0;
+        while (cursor.moveToNext() && count < 1000) {
+            Track expected = mapPerRow(cursor, false);
+            Track track = mapper.map(cursor);
+            assertEquals(expected.getIdFileRemote(), track.getIdFileRemote());
+            assertEquals(expected.getIdFileServer(), track.getIdFileServer());
+            assertEquals(expected.getTitle(), track.getTitle());
+            assertEquals(expected.getAlbum(), track.getAlbum());
+            assertEquals(expected.getArtist(), track.getArtist());
+            assertEquals(expected.getGenre(), track.getGenre());
+            assertEquals(expected.getRating(), track.getRating(), 0);
+            assertEquals(expected.getPlayCounter(), track.getPlayCounter());
+            assertEquals(expected.getLastPlayed(), track.getLastPlayed());
+            assertEquals(expected.getAddedDate(), track.getAddedDate());
+            assertEquals(expected.getModifDate(), track.getModifDate());
+            assertEquals(expected.getStatus(), track.getStatus());
+            assertEquals(expected.getPath(), track.getPath());
+            assertEquals(expected.getRelativeFullPath(), track.getRelativeFullPath());
+            assertEquals(expected.getSize(), track.getSize());
+            assertEquals(expected.getLength(), track.getLength());
+            assertEquals(TestLibrary.getTitle(track.getIdFileRemote()), track.getTitle());
+            count++;
+        }
+        assertEquals(1000, count);
+    }
+
+    @Test
+    public void map_100kRows_benchmark() {
+        long checksum = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                checksum += mapPerRow(cursor, false).getIdFileRemote();
+            }
+            long perRow = System.nanoTime() - start;
+            start = System.nanoTime();
+            cursor.moveToPosition(-1);
+            TrackCursorMapper mapper = new TrackCursorMapper(cursor, false, APP_DATA_PATH);
+            while (cursor.moveToNext()) {
+                checksum -= mapper.map(cursor).getIdFileRemote();
+            }
+            long mapped = System.nanoTime() - start;
+            start = System.nanoTime();
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                checksum += mapPerRow(cursor, true).getIdFileRemote();
+            }
+            long perRowStats = System.nanoTime() - start;
+            start = System.nanoTime();
+            cursor.moveToPosition(-1);
+            mapper = new TrackCursorMapper(cursor, true, APP_DATA_PATH);
+            while (cursor.moveToNext()) {
+                checksum -= mapper.map(cursor).getIdFileRemote();
+            }
+            long mappedStats = System.nanoTime() - start;
+            System.out.printf(Locale.ENGLISH,
+                    "Round %d, %d rows: per-row column lookups %d ms -> mapper %d ms, stats only %d ms -> %d ms%n", //NON-NLS
+                    round, cursor.getCount(), perRow / 1000000, mapped / 1000000,
+                    perRowStats / 1000000, mappedStats / 1000000);
+        }
+        assertEquals(0, checksum);
+    }
+
+    /**
+     * Maps current row as MusicLibrary.cursorToTrack did before TrackCursorMapper:
+     * column indexes looked up on each row
+     */
+    private static Track mapPerRow(Cursor c, boolean statsOnly) {
+        int idFileRemote = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_ID_REMOTE));
+        int idFileServer = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_ID_SERVER));
+        double rating = c.getDouble(c.getColumnIndexOrThrow(COL_TRACKS_RATING));
+        String status = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_STATUS));
+        long size = c.getLong(c.getColumnIndexOrThrow(COL_TRACKS_SIZE));
+        int length = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_LENGTH));
+        String path = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_PATH));
+        String genre = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_GENRE));
+        Date addedDate = new Date(c.getLong(c.getColumnIndexOrThrow(COL_TRACKS_ADDED_DATE)));
+        Date lastPlayed = new Date(c.getLong(c.getColumnIndexOrThrow(COL_TRACKS_LAST_PLAYED)));
+        int playCounter = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_PLAY_COUNTER));
+        String idPath = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_ID_PATH));
+        Date modifDate = new Date(c.getLong(c.getColumnIndexOrThrow(COL_TRACKS_MODIF_DATE)));
+
+        String title = "";
+        String album = "";
+        String artist = "";
+        String albumArtist = "";
+        String year = "";
+        int trackNo = -1;
+        int trackTotal = -1;
+        int discNo = -1;
+        int discTotal = -1;
+        String bitRate = "";
+        String format = "";
+        double bpm = -1;
+        String checkedFlag = "";
+        String copyRight = "";
+        String coverHash = "";
+        Date pathModifDate = new Date(0);
+        String pathMbid = "";
+        String comment = "";
+        float trackGain = -1;
+        float albumGain = -1;
+
+        if (!statsOnly) {
+            title = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_TITLE));
+            album = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_ALBUM));
+            artist = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_ARTIST));
+            albumArtist = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_ALBUM_ARTIST));
+            year = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_YEAR));
+            trackNo = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_TRACK_NO));
+            trackTotal = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_TRACK_TOTAL));
+            discNo = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_DISC_NO));
+            discTotal = c.getInt(c.getColumnIndexOrThrow(COL_TRACKS_DISC_TOTAL));
+            bitRate = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_BITRATE));
+            format = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_FORMAT));
+            bpm = c.getDouble(c.getColumnIndexOrThrow(COL_TRACKS_BPM));
+            checkedFlag = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_CHECKED_FLAG));
+            copyRight = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_COPYRIGHT));
+            coverHash = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_COVER_HASH));
+            pathModifDate = new Date(c.getLong(c.getColumnIndexOrThrow(COL_TRACKS_PATH_MODIF_DATE)));
+            pathMbid = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_PATH_MB_ID));
+            comment = c.getString(c.getColumnIndexOrThrow(COL_TRACKS_COMMENT));
+            trackGain = c.getFloat(c.getColumnIndexOrThrow(COL_TRACKS_TRACK_GAIN));
+            albumGain = c.getFloat(c.getColumnIndexOrThrow(COL_TRACKS_ALBUM_GAIN));
+        }
+
+        return new Track(pathModifDate, pathMbid, comment, idPath, albumArtist, year,
+                trackNo, trackTotal, discNo, discTotal, bitRate, format, bpm, modifDate, checkedFlag,
+                copyRight, APP_DATA_PATH, idFileRemote, idFileServer, rating, title, album, artist,
+                coverHash, path, genre, addedDate, lastPlayed, playCounter, status, size, length,
+                trackGain, albumGain);
+    }
+}
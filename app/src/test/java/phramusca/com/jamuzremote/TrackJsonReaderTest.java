@@ -0,0 +1,101 @@
+package phramusca.com.jamuzremote;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks TrackJsonReader decodes files responses as Track(JSONObject, File, boolean) does,
+ * and compares its parse time with parsing a tree of the whole body
+ * (Gson tree, as org.json is only a stub in JVM tests).
+ */
+public class TrackJsonReaderTest {
+
+    private static final File APP_DATA_PATH = new File("/data"); //NON-NLS
+
+    private static String getFile(int id) {
+        return "{\"idFile\":" + id + ",\"path\":\"Artist " + id / 50 + "/Album " + id / 10 + "/" + id + ".mp3\"," //NON-NLS
+                + "\"rating\":4,\"playCounter\":" + id % 7 + ",\"genre\":\"Rock\",\"tags\":[\"Calm\",\"Live\"]," //NON-NLS
+                + "\"addedDate\":\"2021-03-04 05:06:07\",\"lastPlayed\":\"2022-01-02 03:04:05\"," //NON-NLS
+                + "\"artist\":\"Artist " + id / 50 + "\",\"title\":\"Title " + id + "\",\"album\":\"Album " + id / 10 + "\"," //NON-NLS
+                + "\"length\":215,\"size\":5123456,\"status\":\"NEW\",\"idPath\":\"" + id / 10 + "\"," //NON-NLS
+                + "\"albumArtist\":\"Artist " + id / 50 + "\",\"year\":\"1999\",\"trackNo\":" + id % 10 + "," //NON-NLS
+                + "\"trackTotal\":10,\"discNo\":1,\"discTotal\":1,\"bitRate\":\"320\",\"format\":\"mp3\",\"BPM\":120.5," //NON-NLS
+                + "\"checkedFlag\":\"UNCHECKED\",\"copyRight\":\"\",\"coverHash\":\"abcdef" + id / 10 + "\"," //NON-NLS
+                + "\"modifDate\":\"2020-01-01 00:00:00\",\"pathModifDate\":\"2020-01-01 00:00:00\"," //NON-NLS
+                + "\"pathMbid\":\"\",\"comment\":null,\"deleted\":false,\"previousPlayCounter\":0," //NON-NLS
+                + "\"replaygain\":{\"trackGain\":-6.5,\"albumGain\":-7.25}}"; //NON-NLS
+    }
+
+    private static String getBody(int count) {
+        StringBuilder body = new StringBuilder("{\"type\":\"files\",\"files\":["); //NON-NLS
+        for (int i = 0; i < count; i++) {
+            body.append(i > 0 ? "," : "").append(getFile(i));
+        }
+        return body.append("]}").toString();
+    }
+
+    @Test
+    public void read_decodesTracks() throws IOException, InterruptedException {
+        List<Track> tracks = new ArrayList<>();
+        assertEquals(3, TrackJsonReader.read(new StringReader(getBody(3)), APP_DATA_PATH, false, tracks::add));
+        Track track = tracks.get(2);
+        assertEquals(2, track.getIdFileServer());
+        assertEquals("Artist 0/Album 0/2.mp3", track.getRelativeFullPath()); //NON-NLS
+        assertEquals("Title 2", track.getTitle()); //NON-NLS
+        assertEquals(tracks.get(0).getAlbum(), track.getAlbum());
+        assertSame(tracks.get(0).getArtist(), track.getArtist());
+        assertEquals(Track.Status.NEW, track.getStatus());
+        assertEquals(4, track.getRating(), 0);
+        assertEquals(215, track.getLength());
+        assertTrue(track.isTagsRead());
+
+        //Merge response: only statistics
+        tracks.clear();
+        TrackJsonReader.read(new StringReader(getBody(1)), APP_DATA_PATH, true, tracks::add);
+        assertEquals("", tracks.get(0).getTitle());
+        assertEquals(Track.Status.LOCAL, tracks.get(0).getStatus());
+        assertEquals("Rock", tracks.get(0).getGenre()); //NON-NLS
+
+        try {
+            TrackJsonReader.read(new StringReader(getBody(2).substring(0, 1000)), APP_DATA_PATH, false, tracks::add);
+            fail("Truncated body must fail"); //NON-NLS
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void read_benchmarkAgainstTree() throws IOException, InterruptedException {
+        String body = getBody(20000);
+        long streamTime = Long.MAX_VALUE;
+        long treeTime = Long.MAX_VALUE;
+        for (int run = 0; run < 3; run++) {
+            long start = System.nanoTime();
+            int[] count = {0};
+            TrackJsonReader.read(new StringReader(body), APP_DATA_PATH, false, track -> count[0]++);
+            streamTime = Math.min(streamTime, System.nanoTime() - start);
+            assertEquals(20000, count[0]);
+
+            start = System.nanoTime();
+            JsonArray files = JsonParser.parseString(body).getAsJsonObject().getAsJsonArray("files"); //NON-NLS
+            for (JsonElement file : files) {
+                JsonObject object = file.getAsJsonObject();
+                count[0] += object.get("idFile").getAsInt() + object.get("title").getAsString().length(); //NON-NLS
+            }
+            treeTime = Math.min(treeTime, System.nanoTime() - start);
+        }
+        System.out.println("20k files (" + body.length() / 1024 + " KiB): stream " + streamTime / 1000000 //NON-NLS
+                + " ms, tree " + treeTime / 1000000 + " ms"); //NON-NLS
+    }
+}
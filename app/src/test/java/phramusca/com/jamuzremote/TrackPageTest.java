@@ -0,0 +1,160 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks keyset pagination SQL of TrackPage.Key, pages of a shuffled selection,
+ * and that TrackPager reads pages in order and keeps a bounded number of them.
+ */
+public class TrackPageTest {
+
+    @Test
+    public void key_buildsKeysetCondition() {
+        TrackPage.Key first = TrackPage.Key.first(Playlist.Order.PLAYCOUNTER_LASTPLAYED);
+        assertEquals("", first.getWhere());
+        assertEquals(0, first.getArgs().length);
+        assertEquals("ORDER BY playCounter, lastPlayed, idFileRemote", first.getOrderBy()); //NON-NLS
+
+        TrackPage.Key key = TrackPage.Key.of(Playlist.Order.PLAYCOUNTER_LASTPLAYED, new long[]{3, 1000}, 42);
+        assertEquals(" AND playCounter >= CAST(? AS INTEGER)" //NON-NLS
+                        + " AND (playCounter > CAST(? AS INTEGER) OR (playCounter = CAST(? AS INTEGER)" //NON-NLS
+                        + " AND (lastPlayed > CAST(? AS INTEGER) OR (lastPlayed = CAST(? AS INTEGER)" //NON-NLS
+                        + " AND (idFileRemote > CAST(? AS INTEGER))))))", //NON-NLS
+                key.getWhere());
+        assertArrayEquals(new String[]{"3", "3", "3", "1000", "1000", "42"}, key.getArgs());
+    }
+
+    @Test
+    public void shuffledKey_readsPagesByIds() {
+        TrackPage.Key key = TrackPage.Key.shuffled(new int[]{5, 3, 9, 1, 7}, 2);
+        assertEquals("", key.getOrderBy());
+        assertEquals(" AND tracks.idFileRemote IN (?,?)", key.getWhere()); //NON-NLS
+        assertArrayEquals(new String[]{"5", "3"}, key.getArgs());
+
+        //Tracks of a page are sorted as their ids, whatever the order they are read in
+        List<Track> tracks = new ArrayList<>();
+        tracks.add(getTrack(3));
+        tracks.add(getTrack(5));
+        key.sort(tracks);
+        assertEquals(5, tracks.get(0).getIdFileRemote());
+        assertEquals(3, tracks.get(1).getIdFileRemote());
+
+        //Next pages do not depend on the tracks read (some may have been deleted since ids were shuffled)
+        key = key.next(tracks.subList(0, 1), 2);
+        assertArrayEquals(new String[]{"9", "1"}, key.getArgs());
+        key = key.next(new ArrayList<>(), 2);
+        assertArrayEquals(new String[]{"7"}, key.getArgs());
+        assertNull(key.next(new ArrayList<>(), 2));
+    }
+
+    /**
+     * Pages of a random order, read with SQL of their keys on a generated library,
+     * hold every matching track once, in shuffled order
+     */
+    @Test
+    public void shuffledPager_readsEveryTrackOnce() throws Exception {
+        try (TestLibrary library = new TestLibrary(1000, true)) {
+            Connection connection = library.getConnection();
+            String where = " WHERE " + MusicLibraryDb.COL_TRACKS_STATUS + "='REC'"; //NON-NLS
+            List<Integer> matching = TestLibrary.queryIds(connection, "SELECT " //NON-NLS
+                    + MusicLibraryDb.COL_TRACKS_ID_REMOTE + " FROM " + MusicLibraryDb.TABLE_TRACKS + where); //NON-NLS
+            int[] ids = new int[matching.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = matching.get(i);
+            }
+            ids = TrackSampler.sample(ids, ids.length, new Random(42));
+
+            TrackPager pager = new TrackPager(ids.length, TrackPage.Key.shuffled(ids, 10), 10, (key, pageSize) -> {
+                List<Track> tracks = new ArrayList<>();
+                try {
+                    for (int id : TestLibrary.queryIds(connection, "SELECT " + MusicLibraryDb.COL_TRACKS_ID_REMOTE //NON-NLS
+                                    + " FROM " + MusicLibraryDb.TABLE_TRACKS + where + key.getWhere() + key.getOrderBy(), //NON-NLS
+                            (Object[]) key.getArgs())) {
+                        tracks.add(getTrack(id));
+                    }
+                } catch (SQLException ex) {
+                    return null;
+                }
+                key.sort(tracks);
+                return new TrackPage(tracks, key.next(tracks, pageSize));
+            });
+            Set<Integer> read = new HashSet<>();
+            for (int position = 0; position < pager.getCount(); position++) {
+                Track track = pager.load(position);
+                assertEquals(ids[position], track.getIdFileRemote());
+                assertTrue(read.add(track.getIdFileRemote()));
+            }
+            assertEquals(new HashSet<>(matching), read);
+            assertNull(pager.load(pager.getCount()));
+            //Shuffled, not in id order
+            assertNotEquals(matching.subList(0, 10), Arrays.asList(ids[0], ids[1], ids[2], ids[3], ids[4],
+                    ids[5], ids[6], ids[7], ids[8], ids[9]));
+        }
+    }
+
+    private static Track getTrack(int idFileRemote) {
+        Track track = new Track("track" + idFileRemote, "1"); //NON-NLS
+        track.setIdFileRemote(idFileRemote);
+        return track;
+    }
+
+    /**
+     * Pages of count tracks, 10 per page
+     */
+    private static TrackPager getPager(int count, int[] loads) {
+        List<Track> tracks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tracks.add(new Track("track" + i, "1")); //NON-NLS
+        }
+        Map<TrackPage.Key, Integer> offsets = new HashMap<>();
+        TrackPage.Key first = TrackPage.Key.first(Playlist.Order.DISC_TRACK);
+        offsets.put(first, 0);
+        return new TrackPager(count, first, 10, (key, pageSize) -> {
+            loads[0]++;
+            int offset = offsets.get(key);
+            int end = Math.min(offset + pageSize, tracks.size());
+            TrackPage.Key next = null;
+            if (end - offset == pageSize) {
+                next = TrackPage.Key.of(Playlist.Order.DISC_TRACK, new long[]{1, end}, end);
+                offsets.put(next, end);
+            }
+            return new TrackPage(new ArrayList<>(tracks.subList(offset, end)), next);
+        });
+    }
+
+    @Test
+    public void pager_readsPagesInOrder() {
+        int[] loads = {0};
+        TrackPager pager = getPager(95, loads);
+        assertNull(pager.get(0));
+        assertEquals("track0", pager.load(0).getPath()); //NON-NLS
+        assertEquals(1, loads[0]);
+
+        //Pages before are read to get the key of page 5
+        assertEquals("track57", pager.load(57).getPath()); //NON-NLS
+        assertEquals(6, loads[0]);
+        assertEquals("track94", pager.load(94).getPath()); //NON-NLS
+        assertEquals(10, loads[0]);
+        assertTrue(pager.isLoaded(10));
+        assertNull(pager.load(95));
+        assertEquals(10, loads[0]);
+
+        //Older pages were dropped, and are read again from their key
+        assertNull(pager.get(5));
+        assertEquals("track5", pager.load(5).getPath()); //NON-NLS
+        assertEquals(11, loads[0]);
+    }
+}
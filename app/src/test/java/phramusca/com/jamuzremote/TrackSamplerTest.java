@@ -0,0 +1,181 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static phramusca.com.jamuzremote.MusicLibraryDb.*;
+
+/**
+ * Checks TrackSampler picks distinct ids uniformly, and compares sampling with ORDER BY RANDOM()
+ * on a generated SQLite library.
+ */
+public class TrackSamplerTest {
+
+    private static final int NB_PICKED = 10;
+
+    private static int[] getIds(int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i;
+        }
+        return ids;
+    }
+
+    @Test
+    public void sample_returnsDistinctIds() {
+        Random random = new Random(42);
+        int[] sample = TrackSampler.sample(getIds(1000), 10, random);
+        assertEquals(10, sample.length);
+        Set<Integer> distinct = new HashSet<>();
+        for (int id : sample) {
+            assertTrue(id >= 0 && id < 1000);
+            assertTrue(distinct.add(id));
+        }
+        assertEquals(5, TrackSampler.sample(getIds(5), 10, random).length);
+        assertEquals(0, TrackSampler.sample(getIds(0), 10, random).length);
+        assertEquals(0, TrackSampler.sample(getIds(5), 0, random).length);
+    }
+
+    @Test
+    public void sample_isUniform() {
+        Random random = new Random(42);
+        int nbIds = 50;
+        int count = 10;
+        int rounds = 100000;
+        int[] hits = new int[nbIds];
+        for (int round = 0; round < rounds; round++) {
+            for (int id : TrackSampler.sample(getIds(nbIds), count, random)) {
+                hits[id]++;
+            }
+        }
+        //Chi-square, 49 degrees of freedom: 0.999 quantile is ~85
+        double expected = (double) rounds * count / nbIds;
+        double chiSquare = 0;
+        for (int hit : hits) {
+            chiSquare += (hit - expected) * (hit - expected) / expected;
+        }
+        assertTrue("chiSquare=" + chiSquare, chiSquare < 85); //NON-NLS
+    }
+
+    /**
+     * Compares, on a generated library, picking random tracks of a playlist as MusicLibrary did
+     * (tracks joined with tags, grouped, filtered in having, then ORDER BY RANDOM())
+     * with MusicLibrary.getTracksSample (ids of matching tracks, sampled, then only sampled tracks
+     * and their tags read).
+     */
+    @Test
+    public void sample_benchmarkAgainstOrderByRandom() throws Exception {
+        Random random = new Random(42);
+        for (int nbTracks : new int[]{10000, 100000}) {
+            try (TestLibrary library = new TestLibrary(nbTracks, true)) {
+                Connection connection = library.getConnection();
+                PlaylistQuery query = new PlaylistQuery.Builder()
+                        .status("REC") //NON-NLS
+                        .status("LOCAL") //NON-NLS
+                        .rating(">=", 2) //NON-NLS
+                        .build();
+                HavingTagFilter tags = new HavingTagFilter(Collections.singletonList("Calm"), //NON-NLS
+                        Collections.singletonList("Party"), TriStateButton.STATE.ANY); //NON-NLS
+                String[] args = tags.getArgs(query.getArgs());
+                String grouped = "SELECT " + TABLE_TRACKS + "." + COL_TRACKS_ID_REMOTE + ", " //NON-NLS
+                        + "GROUP_CONCAT(" + TABLE_TAG + "." + COL_TAG_VALUE + ") AS tags, " //NON-NLS
+                        + TABLE_TRACKS + ".*" + HavingTagFilter.FROM + query.getWhere() //NON-NLS
+                        + HavingTagFilter.GROUP_BY + tags.getHaving();
+                Set<Integer> matching = new HashSet<>(TestLibrary.queryIds(connection, grouped, (Object[]) args));
+                String where = query.getWhere() + "\n AND ((" + PlaylistQuery.HAS_TAG + ")\n OR NOT " //NON-NLS
+                        + PlaylistQuery.TAGGED + ") \n AND " //NON-NLS
+                        + String.format(PlaylistQuery.HAS_NO_TAG_IN, "?"); //NON-NLS
+                assertEquals(matching, new HashSet<>(TestLibrary.queryIds(connection,
+                        "SELECT " + COL_TRACKS_ID_REMOTE + " FROM " + TABLE_TRACKS + where, (Object[]) args))); //NON-NLS
+
+                int rounds = nbTracks > 10000 ? 5 : 20;
+                long orderByRandom = 0;
+                long sample = 0;
+                for (int round = 0; round < rounds; round++) {
+                    long start = System.nanoTime();
+                    List<Integer> picked = readRows(connection, grouped + " ORDER BY RANDOM() LIMIT " + NB_PICKED, //NON-NLS
+                            args);
+                    orderByRandom += System.nanoTime() - start;
+                    assertEquals(NB_PICKED, picked.size());
+                    assertTrue(matching.containsAll(picked));
+
+                    start = System.nanoTime();
+                    picked = getTracksSample(connection, where, args, random);
+                    sample += System.nanoTime() - start;
+                    assertEquals(NB_PICKED, picked.size());
+                    assertTrue(matching.containsAll(picked));
+                }
+                System.out.printf(Locale.ENGLISH, "%d tracks, %d matching, %d picked: " //NON-NLS
+                                + "ORDER BY RANDOM() %d ms -> ids, sample and IN (...) %d ms%n", //NON-NLS
+                        nbTracks, matching.size(), NB_PICKED,
+                        orderByRandom / rounds / 1000000, sample / rounds / 1000000);
+            }
+        }
+    }
+
+    /**
+     * As MusicLibrary.getTracksSample
+     *
+     * @return idFileRemote of sampled tracks
+     */
+    private static List<Integer> getTracksSample(Connection connection, String where, String[] args,
+                                                 Random random) throws SQLException {
+        List<Integer> ids = TestLibrary.queryIds(connection, "SELECT " + TABLE_TRACKS + "." //NON-NLS
+                + COL_TRACKS_ID_REMOTE + " FROM " + TABLE_TRACKS + where, (Object[]) args); //NON-NLS
+        int[] array = new int[ids.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ids.get(i);
+        }
+        int[] sample = TrackSampler.sample(array, NB_PICKED, random);
+        String[] sampleArgs = new String[sample.length];
+        for (int i = 0; i < sample.length; i++) {
+            sampleArgs[i] = String.valueOf(sample[i]);
+        }
+        String in = " IN (" + PlaylistQuery.getBindings(sample.length) + ")"; //NON-NLS
+        List<Integer> picked = readRows(connection, "SELECT " + TABLE_TRACKS + "." + COL_TRACKS_ID_REMOTE //NON-NLS
+                + ", " + TABLE_TRACKS + ".* FROM " + TABLE_TRACKS //NON-NLS
+                + " WHERE " + TABLE_TRACKS + "." + COL_TRACKS_ID_REMOTE + in, sampleArgs); //NON-NLS
+        //Tags, read in bulk
+        readRows(connection, "SELECT F." + COL_TAG_FILE_ID_FILE + ", T." + COL_TAG_VALUE //NON-NLS
+                + " FROM " + TABLE_TAG_FILE + " F JOIN " + TABLE_TAG + " T ON T." + COL_TAG_ID //NON-NLS
+                + "=F." + COL_TAG_FILE_ID_TAG + " WHERE F." + COL_TAG_FILE_ID_FILE + in //NON-NLS
+                + " ORDER BY T." + COL_TAG_VALUE, sampleArgs); //NON-NLS
+        return picked;
+    }
+
+    /**
+     * Reads every column of every row, as a cursor fills its window
+     *
+     * @return first column of rows
+     */
+    private static List<Integer> readRows(Connection connection, String sql, String[] args) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < args.length; i++) {
+                statement.setString(i + 1, args[i]);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                int nbColumns = resultSet.getMetaData().getColumnCount();
+                while (resultSet.next()) {
+                    ids.add(resultSet.getInt(1));
+                    for (int i = 1; i <= nbColumns; i++) {
+                        resultSet.getObject(i);
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,71 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks merge of the writes of a failed flush with the updates queued since
+ */
+public class TrackWriteQueueTest {
+
+    @Test
+    public void merge_newerValuesWin_olderOnesKept() {
+        TrackWriteQueue.TrackWrite failed = new TrackWriteQueue.TrackWrite(1);
+        failed.rating = 3.0;
+        failed.genre = "Rock"; //NON-NLS
+        failed.playCounter = 7;
+        failed.lastPlayed = 1000;
+        failed.tags.put("a", true); //NON-NLS
+        failed.tags.put("b", true); //NON-NLS
+        TrackWriteQueue.TrackWrite failedOther = new TrackWriteQueue.TrackWrite(2);
+        failedOther.rating = 1.0;
+
+        TrackWriteQueue.TrackWrite newer = new TrackWriteQueue.TrackWrite(1);
+        newer.rating = 5.0;
+        newer.tags.put("a", false); //NON-NLS
+        newer.tags.put("c", true); //NON-NLS
+        TrackWriteQueue.TrackWrite newerOther = new TrackWriteQueue.TrackWrite(3);
+        newerOther.genre = "Jazz"; //NON-NLS
+        Map<Integer, TrackWriteQueue.TrackWrite> pending = new LinkedHashMap<>();
+        pending.put(1, newer);
+        pending.put(3, newerOther);
+
+        Map<Integer, TrackWriteQueue.TrackWrite> merged =
+                TrackWriteQueue.merge(Arrays.asList(failed, failedOther), pending);
+
+        assertEquals(Arrays.asList(1, 2, 3), new ArrayList<>(merged.keySet()));
+        TrackWriteQueue.TrackWrite write = merged.get(1);
+        assertEquals(5.0, write.rating, 0);
+        assertEquals("Rock", write.genre); //NON-NLS
+        assertEquals(Integer.valueOf(7), write.playCounter);
+        assertEquals(1000, write.lastPlayed);
+        assertEquals(Boolean.FALSE, write.tags.get("a")); //NON-NLS
+        assertEquals(Boolean.TRUE, write.tags.get("b")); //NON-NLS
+        assertEquals(Boolean.TRUE, write.tags.get("c")); //NON-NLS
+        assertSame(failedOther, merged.get(2));
+        assertSame(newerOther, merged.get(3));
+    }
+
+    @Test
+    public void merge_newerPlayCounter_keepsItsLastPlayed() {
+        TrackWriteQueue.TrackWrite failed = new TrackWriteQueue.TrackWrite(1);
+        failed.playCounter = 7;
+        failed.lastPlayed = 1000;
+        TrackWriteQueue.TrackWrite newer = new TrackWriteQueue.TrackWrite(1);
+        newer.playCounter = 8;
+        newer.lastPlayed = 2000;
+        Map<Integer, TrackWriteQueue.TrackWrite> pending = new LinkedHashMap<>();
+        pending.put(1, newer);
+
+        TrackWriteQueue.TrackWrite write = TrackWriteQueue.merge(Arrays.asList(failed), pending).get(1);
+
+        assertEquals(Integer.valueOf(8), write.playCounter);
+        assertEquals(2000, write.lastPlayed);
+    }
+}
@@ -0,0 +1,129 @@
+package phramusca.com.jamuzremote;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sqlite.SQLiteConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the reader/writer split of MusicLibrary on a WAL SQLite database:
+ * the read-only connection is not blocked by the writer, and only sees committed transactions.
+ */
+public class WalReaderTest {
+
+    private File file;
+    private Connection writer;
+    private Connection reader;
+
+    @Before
+    public void setUp() throws IOException, SQLException {
+        file = File.createTempFile("wal", ".db"); //NON-NLS
+        writer = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath()); //NON-NLS
+        try (Statement statement = writer.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL"); //NON-NLS
+            statement.execute("CREATE TABLE tracks (idFileRemote INTEGER PRIMARY KEY AUTOINCREMENT, " //NON-NLS
+                    + "rating INTEGER NOT NULL)"); //NON-NLS
+        }
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        //No busy timeout: a blocked read fails at once
+        config.setBusyTimeout(0);
+        reader = config.createConnection("jdbc:sqlite:" + file.getAbsolutePath()); //NON-NLS
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        reader.close();
+        writer.close();
+        for (String suffix : new String[]{"", "-wal", "-shm"}) { //NON-NLS
+            //noinspection ResultOfMethodCallIgnored
+            new File(file.getAbsolutePath() + suffix).delete();
+        }
+    }
+
+    @Test
+    public void reader_seesCommittedChangesOnly_withoutWaiting() throws SQLException {
+        insert(3);
+        writer.setAutoCommit(false);
+        try (Statement statement = writer.createStatement()) {
+            statement.execute("UPDATE tracks SET rating=5"); //NON-NLS
+            statement.execute("INSERT INTO tracks (rating) VALUES (1)"); //NON-NLS
+            //Writer transaction is open
+            assertEquals(3, count(""));
+            assertEquals(0, count("WHERE rating=5")); //NON-NLS
+            writer.commit();
+        } finally {
+            writer.setAutoCommit(true);
+        }
+        assertEquals(4, count(""));
+        assertEquals(3, count("WHERE rating=5")); //NON-NLS
+    }
+
+    @Test
+    public void reader_isConsistentWhileWriting_stress() throws Exception {
+        int nbBatches = 200;
+        int batchSize = 10;
+        List<Exception> errors = new ArrayList<>();
+        Thread writerThread = new Thread(() -> {
+            try {
+                for (int i = 0; i < nbBatches; i++) {
+                    insert(batchSize);
+                }
+            } catch (SQLException ex) {
+                errors.add(ex);
+            }
+        });
+        writerThread.start();
+        int last = 0;
+        int nbReads = 0;
+        while (writerThread.isAlive() || last < nbBatches * batchSize) {
+            int count = count("");
+            //Batches are seen whole, in order
+            assertEquals(0, count % batchSize);
+            assertTrue(count >= last);
+            last = count;
+            nbReads++;
+        }
+        writerThread.join();
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(nbBatches * batchSize, last);
+        assertTrue(nbReads > 1);
+    }
+
+    /**
+     * Inserts rows in a transaction
+     */
+    private void insert(int nb) throws SQLException {
+        writer.setAutoCommit(false);
+        try (PreparedStatement statement = writer.prepareStatement("INSERT INTO tracks (rating) VALUES (?)")) { //NON-NLS
+            for (int i = 0; i < nb; i++) {
+                statement.setInt(1, i % 6);
+                statement.executeUpdate();
+            }
+            writer.commit();
+        } finally {
+            writer.setAutoCommit(true);
+        }
+    }
+
+    private int count(String where) throws SQLException {
+        try (Statement statement = reader.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM tracks " + where)) { //NON-NLS
+            assertTrue(resultSet.next());
+            return resultSet.getInt(1);
+        }
+    }
+}